@@ -0,0 +1,304 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre;
+
+import android.net.Uri;
+import android.os.Parcel;
+import android.os.Parcelable;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.andremion.louvre.data.PlaceIndex;
+import com.andremion.louvre.data.SectionIndex;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The options of a picker, set through {@link Louvre} and passed along to the gallery, the preview and their loader
+ */
+public final class GalleryOptions implements Parcelable {
+
+    public static final int DEFAULT_MAX_SELECTION = 1;
+
+    private final int mMaxSelection;
+    @NonNull
+    private final String[] mMediaTypeFilter;
+    @Nullable
+    private final Uri mMediaSourceUri;
+    @NonNull
+    private final String[] mMediaDirectories;
+    private final boolean mDetectDuplicates;
+    @SectionIndex.Granularity
+    private final int mTimeline;
+    private final boolean mJustified;
+    private final boolean mPlaceholders;
+    private final boolean mFolderTree;
+    private final boolean mNameSearch;
+    @PlaceIndex.Zoom
+    private final int mPlaces;
+
+    private GalleryOptions(@NonNull Builder builder) {
+        mMaxSelection = builder.mMaxSelection;
+        mMediaTypeFilter = builder.mMediaTypeFilter;
+        mMediaSourceUri = builder.mMediaSourceUri;
+        mMediaDirectories = builder.mMediaDirectories.toArray(new String[builder.mMediaDirectories.size()]);
+        mDetectDuplicates = builder.mDetectDuplicates;
+        mTimeline = builder.mTimeline;
+        mJustified = builder.mJustified;
+        mPlaceholders = builder.mPlaceholders;
+        mFolderTree = builder.mFolderTree;
+        mNameSearch = builder.mNameSearch;
+        mPlaces = builder.mPlaces;
+    }
+
+    @SuppressWarnings("WrongConstant")
+    private GalleryOptions(@NonNull Parcel in) {
+        mMaxSelection = in.readInt();
+        mMediaTypeFilter = in.createStringArray();
+        mMediaSourceUri = in.readParcelable(Uri.class.getClassLoader());
+        mMediaDirectories = in.createStringArray();
+        mDetectDuplicates = in.readInt() != 0;
+        mTimeline = in.readInt();
+        mJustified = in.readInt() != 0;
+        mPlaceholders = in.readInt() != 0;
+        mFolderTree = in.readInt() != 0;
+        mNameSearch = in.readInt() != 0;
+        mPlaces = in.readInt();
+    }
+
+    /**
+     * @return The options of a plain gallery, which picks one image of any type from the MediaStore
+     */
+    @NonNull
+    public static GalleryOptions defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return A builder with these options, to change some of them
+     */
+    @NonNull
+    public Builder buildUpon() {
+        return new Builder(this);
+    }
+
+    /**
+     * @return The max count of images allowed to pick
+     */
+    public int getMaxSelection() {
+        return mMaxSelection;
+    }
+
+    /**
+     * @return The media types to filter the query with, or an empty array for all of them
+     */
+    @NonNull
+    public String[] getMediaTypeFilter() {
+        return mMediaTypeFilter.clone();
+    }
+
+    /**
+     * @return The content Uri to query the media from, or null to use the MediaStore
+     */
+    @Nullable
+    public Uri getMediaSourceUri() {
+        return mMediaSourceUri;
+    }
+
+    /**
+     * @return The directories to show the not indexed images from, or an empty array
+     */
+    @NonNull
+    public String[] getMediaDirectories() {
+        return mMediaDirectories.clone();
+    }
+
+    public boolean isDetectDuplicates() {
+        return mDetectDuplicates;
+    }
+
+    @SectionIndex.Granularity
+    public int getTimeline() {
+        return mTimeline;
+    }
+
+    public boolean isJustified() {
+        return mJustified;
+    }
+
+    public boolean isPlaceholders() {
+        return mPlaceholders;
+    }
+
+    public boolean isFolderTree() {
+        return mFolderTree;
+    }
+
+    public boolean isNameSearch() {
+        return mNameSearch;
+    }
+
+    @PlaceIndex.Zoom
+    public int getPlaces() {
+        return mPlaces;
+    }
+
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel dest, int flags) {
+        dest.writeInt(mMaxSelection);
+        dest.writeStringArray(mMediaTypeFilter);
+        dest.writeParcelable(mMediaSourceUri, flags);
+        dest.writeStringArray(mMediaDirectories);
+        dest.writeInt(mDetectDuplicates ? 1 : 0);
+        dest.writeInt(mTimeline);
+        dest.writeInt(mJustified ? 1 : 0);
+        dest.writeInt(mPlaceholders ? 1 : 0);
+        dest.writeInt(mFolderTree ? 1 : 0);
+        dest.writeInt(mNameSearch ? 1 : 0);
+        dest.writeInt(mPlaces);
+    }
+
+    public static final Creator<GalleryOptions> CREATOR = new Creator<GalleryOptions>() {
+        @Override
+        public GalleryOptions createFromParcel(Parcel in) {
+            return new GalleryOptions(in);
+        }
+
+        @Override
+        public GalleryOptions[] newArray(int size) {
+            return new GalleryOptions[size];
+        }
+    };
+
+    public static final class Builder {
+
+        private int mMaxSelection = DEFAULT_MAX_SELECTION;
+        private String[] mMediaTypeFilter = new String[0];
+        private Uri mMediaSourceUri;
+        private final List<String> mMediaDirectories = new ArrayList<>();
+        private boolean mDetectDuplicates;
+        @SectionIndex.Granularity
+        private int mTimeline = SectionIndex.NONE;
+        private boolean mJustified;
+        private boolean mPlaceholders;
+        private boolean mFolderTree;
+        private boolean mNameSearch;
+        @PlaceIndex.Zoom
+        private int mPlaces = PlaceIndex.NONE;
+
+        public Builder() {
+        }
+
+        private Builder(@NonNull GalleryOptions options) {
+            mMaxSelection = options.mMaxSelection;
+            mMediaTypeFilter = options.mMediaTypeFilter;
+            mMediaSourceUri = options.mMediaSourceUri;
+            for (String directory : options.mMediaDirectories) {
+                mMediaDirectories.add(directory);
+            }
+            mDetectDuplicates = options.mDetectDuplicates;
+            mTimeline = options.mTimeline;
+            mJustified = options.mJustified;
+            mPlaceholders = options.mPlaceholders;
+            mFolderTree = options.mFolderTree;
+            mNameSearch = options.mNameSearch;
+            mPlaces = options.mPlaces;
+        }
+
+        /**
+         * Set the max images allowed to pick, or 0 to keep the default of {@link GalleryOptions#DEFAULT_MAX_SELECTION}
+         */
+        public Builder setMaxSelection(@IntRange(from = 0) int maxSelection) {
+            mMaxSelection = maxSelection > 0 ? maxSelection : DEFAULT_MAX_SELECTION;
+            return this;
+        }
+
+        /**
+         * Set the media types to filter the query with, or none for all of them
+         */
+        public Builder setMediaTypeFilter(@Nullable String... mediaTypeFilter) {
+            mMediaTypeFilter = mediaTypeFilter != null ? mediaTypeFilter.clone() : new String[0];
+            return this;
+        }
+
+        /**
+         * Set the content Uri to query the media from instead of the MediaStore, or null to use the MediaStore
+         */
+        public Builder setMediaSourceUri(@Nullable Uri mediaSourceUri) {
+            mMediaSourceUri = mediaSourceUri;
+            return this;
+        }
+
+        /**
+         * Add a directory to show the images under it that the MediaStore has not indexed
+         */
+        public Builder addMediaDirectory(@NonNull File directory) {
+            mMediaDirectories.add(directory.getAbsolutePath());
+            return this;
+        }
+
+        public Builder setDetectDuplicates(boolean detectDuplicates) {
+            mDetectDuplicates = detectDuplicates;
+            return this;
+        }
+
+        public Builder setTimeline(@SectionIndex.Granularity int timeline) {
+            mTimeline = timeline;
+            return this;
+        }
+
+        public Builder setJustified(boolean justified) {
+            mJustified = justified;
+            return this;
+        }
+
+        public Builder setPlaceholders(boolean placeholders) {
+            mPlaceholders = placeholders;
+            return this;
+        }
+
+        public Builder setFolderTree(boolean folderTree) {
+            mFolderTree = folderTree;
+            return this;
+        }
+
+        public Builder setNameSearch(boolean nameSearch) {
+            mNameSearch = nameSearch;
+            return this;
+        }
+
+        public Builder setPlaces(@PlaceIndex.Zoom int zoom) {
+            mPlaces = zoom;
+            return this;
+        }
+
+        @NonNull
+        public GalleryOptions build() {
+            return new GalleryOptions(this);
+        }
+    }
+
+}
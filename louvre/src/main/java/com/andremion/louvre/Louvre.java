@@ -17,16 +17,35 @@
 package com.andremion.louvre;
 
 import android.app.Activity;
+import android.content.Context;
 import android.content.Intent;
 import android.net.Uri;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
 import android.support.annotation.StringDef;
 import android.support.v4.app.Fragment;
 import android.support.v7.app.AppCompatDelegate;
 
+import com.andremion.louvre.data.MediaBucket;
+import com.andremion.louvre.data.MediaItem;
+import com.andremion.louvre.data.MediaPublisher;
+import com.andremion.louvre.data.MediaSource;
+import com.andremion.louvre.data.PlaceIndex;
+import com.andremion.louvre.data.SectionIndex;
 import com.andremion.louvre.home.GalleryActivity;
+import com.andremion.louvre.home.GalleryFragment;
+import com.andremion.louvre.image.ImageEngine;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.metrics.Metrics;
+import com.andremion.louvre.metrics.MetricsListener;
+import com.andremion.louvre.metrics.Tracer;
+import com.andremion.louvre.util.LouvreGlideModule;
+import com.andremion.louvre.util.SharedBitmapPool;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
 
+import java.io.File;
 import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.List;
@@ -53,9 +72,8 @@ public class Louvre {
     private Activity mActivity;
     private Fragment mFragment;
     private int mRequestCode;
-    private int mMaxSelection;
     private List<Uri> mSelection;
-    private String[] mMediaTypeFilter;
+    private final GalleryOptions.Builder mOptions = new GalleryOptions.Builder();
 
     private Louvre(@NonNull Activity activity) {
         mActivity = activity;
@@ -75,6 +93,79 @@ public class Louvre {
         return new Louvre(fragment);
     }
 
+    /**
+     * Set the listener to receive the performance metrics of every picker, or null to stop measuring.
+     * Nothing is measured while there is no listener.
+     */
+    public static void setMetricsListener(@Nullable MetricsListener listener) {
+        Metrics.setListener(listener);
+    }
+
+    /**
+     * Set the engine to load the images of every picker with, like one backed by the app's own image pipeline,
+     * or null to load them with Glide
+     */
+    public static void setImageEngine(@Nullable ImageEngine engine) {
+        ImageEngines.set(engine);
+    }
+
+    /**
+     * @return The counters of the bitmap pool the gallery and the preview decode into, like its reuse rate,
+     * or null if Glide was not set up with {@link LouvreGlideModule}
+     */
+    @Nullable
+    public static SharedBitmapPool.Stats getBitmapPoolStats(@NonNull Context context) {
+        BitmapPool pool = Glide.get(context).getBitmapPool();
+        return pool instanceof SharedBitmapPool ? ((SharedBitmapPool) pool).getStats() : null;
+    }
+
+    /**
+     * Set if the picker should emit named trace sections, prefixed with "Louvre:", to profile it with systrace or Perfetto
+     */
+    public static void setTracingEnabled(boolean enabled) {
+        Tracer.setEnabled(enabled);
+    }
+
+    /**
+     * Stream the media of a bucket without the picker UI, page by page and newest first, with the same
+     * query engine and filters as the picker
+     *
+     * @param bucketId   The bucket or place to stream, or {@link MediaSource#ALL_MEDIA_BUCKET_ID}
+     * @param mediaTypes The media types to filter the query with, or none for all of them
+     */
+    @NonNull
+    public static MediaPublisher<MediaItem> publishMedia(@NonNull Context context, long bucketId, @MediaType String... mediaTypes) {
+        return MediaPublisher.media(context, bucketId, mediaTypes);
+    }
+
+    /**
+     * Stream the media of a bucket without the picker UI, from the source Uri and with the media type filter of the options
+     *
+     * @param bucketId The bucket or place to stream, or {@link MediaSource#ALL_MEDIA_BUCKET_ID}
+     */
+    @NonNull
+    public static MediaPublisher<MediaItem> publishMedia(@NonNull Context context, long bucketId, @NonNull GalleryOptions options) {
+        return MediaPublisher.media(context, bucketId, options);
+    }
+
+    /**
+     * Stream the buckets without the picker UI, page by page and newest first
+     *
+     * @param mediaTypes The media types to filter the query with, or none for all of them
+     */
+    @NonNull
+    public static MediaPublisher<MediaBucket> publishBuckets(@NonNull Context context, @MediaType String... mediaTypes) {
+        return MediaPublisher.buckets(context, mediaTypes);
+    }
+
+    /**
+     * Stream the buckets without the picker UI, from the source Uri and with the media type filter of the options
+     */
+    @NonNull
+    public static MediaPublisher<MediaBucket> publishBuckets(@NonNull Context context, @NonNull GalleryOptions options) {
+        return MediaPublisher.buckets(context, options);
+    }
+
     /**
      * Set the request code to return on {@link Activity#onActivityResult(int, int, Intent)}
      */
@@ -87,7 +178,7 @@ public class Louvre {
      * Set the max images allowed to pick
      */
     public Louvre setMaxSelection(@IntRange(from = 0) int maxSelection) {
-        mMaxSelection = maxSelection;
+        mOptions.setMaxSelection(maxSelection);
         return this;
     }
 
@@ -103,18 +194,108 @@ public class Louvre {
      * Set the media type to filter the query with a combination of one of these types: {@link #IMAGE_TYPE_BMP}, {@link #IMAGE_TYPE_JPEG}, {@link #IMAGE_TYPE_PNG}
      */
     public Louvre setMediaTypeFilter(@MediaType @NonNull String... mediaTypeFilter) {
-        mMediaTypeFilter = mediaTypeFilter;
+        mOptions.setMediaTypeFilter(mediaTypeFilter);
+        return this;
+    }
+
+    /**
+     * Set the content Uri to query the media from instead of the MediaStore, like a provider of synthetic media for load testing.
+     * It must provide the {@link android.provider.MediaStore.Images} columns.
+     */
+    public Louvre setMediaSourceUri(@NonNull Uri mediaSourceUri) {
+        mOptions.setMediaSourceUri(mediaSourceUri);
         return this;
     }
 
+    /**
+     * Add a directory to show the images under it that the MediaStore has not indexed, like the app's own download folders.
+     * Its images are merged into the MediaStore buckets of the same folders.
+     */
+    public Louvre addMediaDirectory(@NonNull File directory) {
+        mOptions.addMediaDirectory(directory);
+        return this;
+    }
+
+    /**
+     * Set if the near-duplicate images, like burst shots, should be flagged in the gallery.
+     * Use {@link com.andremion.louvre.data.DuplicateDetector#collapse} to remove them from the result.
+     */
+    public Louvre setDetectDuplicates(boolean detectDuplicates) {
+        mOptions.setDetectDuplicates(detectDuplicates);
+        return this;
+    }
+
+    /**
+     * Set the granularity of the date sections to show the media as a timeline, with a header per section and
+     * a fast scroller to jump between them: {@link SectionIndex#DAY}, {@link SectionIndex#MONTH} or {@link SectionIndex#YEAR}.
+     * The default is {@link SectionIndex#NONE}, a plain grid.
+     */
+    public Louvre setTimeline(@SectionIndex.Granularity int timeline) {
+        mOptions.setTimeline(timeline);
+        return this;
+    }
+
+    /**
+     * Set if the media should be laid out in justified rows that keep the aspect ratio of the images,
+     * instead of a grid of center cropped squares
+     */
+    public Louvre setJustified(boolean justified) {
+        mOptions.setJustified(justified);
+        return this;
+    }
+
+    /**
+     * Set if tiny placeholders with the colors of the images should be painted while their thumbnails are loaded.
+     * They are computed in background and kept in the cache directory, so they show up from the next loads on.
+     */
+    public Louvre setPlaceholders(boolean placeholders) {
+        mOptions.setPlaceholders(placeholders);
+        return this;
+    }
+
+    /**
+     * Set if the buckets should be listed as a tree of folders, with the count of the media under every folder,
+     * instead of a flat list of buckets
+     */
+    public Louvre setFolderTree(boolean folderTree) {
+        mOptions.setFolderTree(folderTree);
+        return this;
+    }
+
+    /**
+     * Set if the gallery should have a search box that filters the loaded media by name as the query is typed
+     */
+    public Louvre setNameSearch(boolean nameSearch) {
+        mOptions.setNameSearch(nameSearch);
+        return this;
+    }
+
+    /**
+     * Set the zoom level of the places, clustered from the locations of the geotagged images, to list after the buckets:
+     * {@link PlaceIndex#REGION}, {@link PlaceIndex#CITY}, {@link PlaceIndex#STREET} or {@link PlaceIndex#NONE}
+     */
+    public Louvre setPlaces(@PlaceIndex.Zoom int zoom) {
+        mOptions.setPlaces(zoom);
+        return this;
+    }
+
+    /**
+     * Create the gallery with the options set, to embed in the host's own window instead of opening {@link GalleryActivity}.
+     * The parent fragment or the activity it is added to must implement {@link GalleryFragment.Callbacks}.
+     */
+    @NonNull
+    public GalleryFragment createFragment() {
+        return GalleryFragment.newInstance(mOptions.build(), mSelection);
+    }
+
     public void open() {
         if (mRequestCode == -1) {
             throw new IllegalArgumentException("You need to define a request code in setRequestCode(int) method");
         }
         if (mActivity != null) {
-            GalleryActivity.startActivity(mActivity, mRequestCode, mMaxSelection, mSelection, mMediaTypeFilter);
+            GalleryActivity.startActivity(mActivity, mRequestCode, mSelection, mOptions.build());
         } else {
-            GalleryActivity.startActivity(mFragment, mRequestCode, mMaxSelection, mSelection, mMediaTypeFilter);
+            GalleryActivity.startActivity(mFragment, mRequestCode, mSelection, mOptions.build());
         }
     }
 
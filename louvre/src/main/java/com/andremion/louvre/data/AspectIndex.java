@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Prefix sums of the aspect ratios of the loaded media, built in a single pass over the rows.
+ * <p>
+ * The sum of the aspect ratios of any range of rows is the width it takes in a row of height one, so
+ * a layout can find where a row of a given width breaks with a binary search instead of walking the rows.
+ */
+public class AspectIndex {
+
+    // Panoramas and very tall images are cropped to these bounds, so a single image can't take a whole row alone
+    private static final float MIN_ASPECT_RATIO = .5f;
+    private static final float MAX_ASPECT_RATIO = 3f;
+
+    private final double[] mPrefixSums;
+
+    private AspectIndex(@NonNull double[] prefixSums) {
+        mPrefixSums = prefixSums;
+    }
+
+    /**
+     * Build the index from the {@link MediaStore.Images.ImageColumns#WIDTH}, {@link MediaStore.Images.ImageColumns#HEIGHT}
+     * and {@link MediaStore.Images.ImageColumns#ORIENTATION} of the given rows. The rows without dimensions count as squares.
+     */
+    @WorkerThread
+    @NonNull
+    static AspectIndex build(@NonNull Cursor cursor) {
+        double[] prefixSums = new double[cursor.getCount() + 1];
+        int widthColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.WIDTH);
+        int heightColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.HEIGHT);
+        int orientationColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.ORIENTATION);
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            int width = cursor.getInt(widthColumn);
+            int height = cursor.getInt(heightColumn);
+            int orientation = cursor.getInt(orientationColumn);
+            if (orientation == 90 || orientation == 270) {
+                int swap = width;
+                width = height;
+                height = swap;
+            }
+            float aspectRatio = width > 0 && height > 0 ? width / (float) height : 1f;
+            aspectRatio = Math.max(MIN_ASPECT_RATIO, Math.min(MAX_ASPECT_RATIO, aspectRatio));
+            int position = cursor.getPosition();
+            prefixSums[position + 1] = prefixSums[position] + aspectRatio;
+        }
+        return new AspectIndex(prefixSums);
+    }
+
+    /**
+     * Get the aspect index of the given cursor, if it was loaded for a justified layout
+     */
+    @Nullable
+    public static AspectIndex of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mAspectIndex : null;
+    }
+
+    public int getCount() {
+        return mPrefixSums.length - 1;
+    }
+
+    /**
+     * @return The sum of the aspect ratios of the rows from {@code from}, inclusive, to {@code to}, exclusive
+     */
+    public double getWidth(int from, int to) {
+        return mPrefixSums[to] - mPrefixSums[from];
+    }
+
+    /**
+     * @return The first row after {@code from}, up to {@code to}, where the rows starting at {@code from} reach the given width.
+     * Or {@code to} if they don't reach it.
+     */
+    public int findEnd(int from, int to, double width) {
+        double target = mPrefixSums[from] + width;
+        int low = from + 1;
+        int high = to;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (mPrefixSums[middle] >= target) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.CursorWrapper;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Debug guard that reports the cursor window fills made from the main thread.
+ * <p>
+ * Moving a cursor outside of its window makes it fill the next window from the database, which
+ * is disk I/O on the calling thread. With a listener set, the cursors delivered by {@link MediaLoader}
+ * are wrapped and every main thread access that fills a window is reported as a {@link Violation}
+ * holding the position, the time blocked and the stack of the caller. The accesses inside the filled
+ * window are only read from memory, so they are never reported. Without a listener, or for cursors
+ * without a window, the cursors are delivered untouched.
+ * <pre>
+ * if (BuildConfig.DEBUG) {
+ *     CursorGuard.setListener(CursorGuard.PENALTY_LOG);
+ * }
+ * </pre>
+ * Use {@link #PENALTY_DEATH} in the Robolectric and instrumentation tests to fail them on the first violation.
+ */
+public class CursorGuard {
+
+    private static final String TAG = CursorGuard.class.getSimpleName();
+
+    public interface Listener {
+
+        /**
+         * Called on the main thread, right after the offending access
+         */
+        void onViolation(@NonNull Violation violation);
+    }
+
+    /**
+     * Log the first violation of every call site
+     */
+    public static final Listener PENALTY_LOG = new Listener() {
+
+        private final Set<String> mLoggedCallSites = new HashSet<>();
+
+        @Override
+        public void onViolation(@NonNull Violation violation) {
+            if (mLoggedCallSites.add(violation.getCallSite())) {
+                Log.w(TAG, violation.getMessage(), violation);
+            }
+        }
+    };
+
+    /**
+     * Throw the violation
+     */
+    public static final Listener PENALTY_DEATH = new Listener() {
+        @Override
+        public void onViolation(@NonNull Violation violation) {
+            throw violation;
+        }
+    };
+
+    @Nullable
+    private static volatile Listener sListener;
+
+    private CursorGuard() {
+    }
+
+    /**
+     * Set the listener to report the main thread cursor accesses to, or null to stop guarding the cursors
+     */
+    public static void setListener(@Nullable Listener listener) {
+        sListener = listener;
+    }
+
+    /**
+     * Wrap the given cursor to guard it, if there is a listener set and it reads from a window
+     */
+    @Nullable
+    static Cursor wrap(@Nullable Cursor cursor) {
+        if (sListener == null || cursor == null || cursor instanceof StrictCursor) {
+            return cursor;
+        }
+        List<AbstractWindowedCursor> windowedCursors = new ArrayList<>();
+        collectWindowedCursors(cursor, windowedCursors);
+        return windowedCursors.isEmpty() ? cursor : new StrictCursor(cursor, windowedCursors);
+    }
+
+    /**
+     * Find the cursors that fill windows behind the wrappers and the merges of the given one
+     */
+    private static void collectWindowedCursors(@NonNull Cursor cursor, @NonNull List<AbstractWindowedCursor> windowedCursors) {
+        if (cursor instanceof AbstractWindowedCursor) {
+            windowedCursors.add((AbstractWindowedCursor) cursor);
+        } else if (cursor instanceof CursorWrapper) {
+            collectWindowedCursors(((CursorWrapper) cursor).getWrappedCursor(), windowedCursors);
+        } else if (cursor instanceof SortedMergeCursor) {
+            for (Cursor merged : ((SortedMergeCursor) cursor).getCursors()) {
+                collectWindowedCursors(merged, windowedCursors);
+            }
+        }
+    }
+
+    /**
+     * A cursor access made from the main thread that filled a window
+     */
+    public static class Violation extends RuntimeException {
+
+        private final String mOperation;
+        private final int mPosition;
+        private final long mBlockedNanos;
+
+        Violation(@NonNull String operation, int position, long blockedNanos) {
+            super(String.format(Locale.US, "Cursor.%s() at position %d on the main thread, blocked for %.3fms",
+                    operation, position, blockedNanos / 1e6));
+            mOperation = operation;
+            mPosition = position;
+            mBlockedNanos = blockedNanos;
+        }
+
+        @NonNull
+        public String getOperation() {
+            return mOperation;
+        }
+
+        public int getPosition() {
+            return mPosition;
+        }
+
+        public long getBlockedNanos() {
+            return mBlockedNanos;
+        }
+
+        /**
+         * The first frame of the stack outside of the guard, which is the code that accessed the cursor
+         */
+        @NonNull
+        public String getCallSite() {
+            for (StackTraceElement element : getStackTrace()) {
+                if (!element.getClassName().startsWith(CursorGuard.class.getName())) {
+                    return element.toString();
+                }
+            }
+            return mOperation;
+        }
+    }
+
+    private static class StrictCursor extends CursorWrapper {
+
+        // The window of every windowed cursor behind this one and where it started, before the last access
+        private final AbstractWindowedCursor[] mWindowedCursors;
+        private final CursorWindow[] mWindows;
+        private final int[] mStartPositions;
+
+        StrictCursor(@NonNull Cursor cursor, @NonNull List<AbstractWindowedCursor> windowedCursors) {
+            super(cursor);
+            mWindowedCursors = windowedCursors.toArray(new AbstractWindowedCursor[windowedCursors.size()]);
+            mWindows = new CursorWindow[mWindowedCursors.length];
+            mStartPositions = new int[mWindowedCursors.length];
+        }
+
+        private static boolean isMainThread() {
+            return Looper.myLooper() == Looper.getMainLooper();
+        }
+
+        private void snapshot() {
+            for (int i = 0; i < mWindowedCursors.length; i++) {
+                CursorWindow window = mWindowedCursors[i].getWindow();
+                mWindows[i] = window;
+                mStartPositions[i] = window != null ? window.getStartPosition() : -1;
+            }
+        }
+
+        /**
+         * Report the access if it replaced or refilled the window of any windowed cursor
+         */
+        private void check(@NonNull String operation, long startedAt) {
+            for (int i = 0; i < mWindowedCursors.length; i++) {
+                CursorWindow window = mWindowedCursors[i].getWindow();
+                if (window != mWindows[i] || (window != null && window.getStartPosition() != mStartPositions[i])) {
+                    Listener listener = sListener;
+                    if (listener != null) {
+                        listener.onViolation(new Violation(operation, getPosition(), System.nanoTime() - startedAt));
+                    }
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public int getCount() {
+            if (!isMainThread()) {
+                return super.getCount();
+            }
+            // The first count of a database cursor fills its first window
+            snapshot();
+            long startedAt = System.nanoTime();
+            int count = super.getCount();
+            check("getCount", startedAt);
+            return count;
+        }
+
+        @Override
+        public boolean move(int offset) {
+            if (!isMainThread()) {
+                return super.move(offset);
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.move(offset);
+            check("move", startedAt);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToPosition(int position) {
+            if (!isMainThread()) {
+                return super.moveToPosition(position);
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.moveToPosition(position);
+            check("moveToPosition", startedAt);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToFirst() {
+            if (!isMainThread()) {
+                return super.moveToFirst();
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.moveToFirst();
+            check("moveToFirst", startedAt);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToLast() {
+            if (!isMainThread()) {
+                return super.moveToLast();
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.moveToLast();
+            check("moveToLast", startedAt);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToNext() {
+            if (!isMainThread()) {
+                return super.moveToNext();
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.moveToNext();
+            check("moveToNext", startedAt);
+            return moved;
+        }
+
+        @Override
+        public boolean moveToPrevious() {
+            if (!isMainThread()) {
+                return super.moveToPrevious();
+            }
+            snapshot();
+            long startedAt = System.nanoTime();
+            boolean moved = super.moveToPrevious();
+            check("moveToPrevious", startedAt);
+            return moved;
+        }
+    }
+
+}
@@ -0,0 +1,383 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.graphics.BitmapFactory;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.andremion.louvre.util.BackgroundThreadFactory;
+import com.andremion.louvre.util.MemoryPolicy;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static com.andremion.louvre.data.MediaQuery.BUCKET_COLUMNS;
+import static com.andremion.louvre.data.MediaQuery.GALLERY_URI;
+import static com.andremion.louvre.data.MediaQuery.IMAGE_PROJECTION;
+
+/**
+ * {@link MediaSource} of the images under some directories, like the app's own download folders, that
+ * the MediaStore has not indexed.
+ * <p>
+ * The directory trees are walked in parallel, one task per directory, and the type of every file is sniffed
+ * from its header instead of trusting its extension. Hidden directories and the ones with a ".nomedia"
+ * file are skipped, like the MediaStore scanner does. The bucket ids are computed like the MediaStore
+ * does, so a directory that is partially indexed is merged into its MediaStore bucket.
+ * <p>
+ * The directories are scanned on every bucket query and the media queries reuse the last scan, unless
+ * the {@link MemoryPolicy} released it.
+ */
+public class DirectorySource implements MediaSource, MemoryPolicy.Releasable {
+
+    private static final int PARALLELISM = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int HEADER_SIZE = 12;
+    private static final String NO_MEDIA = ".nomedia";
+
+    private final Context mContext;
+    private final File[] mRoots;
+    // Volatile so it can be released while a scan holds the monitor
+    @Nullable
+    private volatile List<Entry> mSnapshot;
+
+    public DirectorySource(@NonNull Context context, @NonNull File... roots) {
+        mContext = context.getApplicationContext();
+        mRoots = roots;
+        MemoryPolicy.get(mContext).register(this);
+    }
+
+    @NonNull
+    public static DirectorySource of(@NonNull Context context, @NonNull String[] paths) {
+        File[] roots = new File[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            roots[i] = new File(paths[i]);
+        }
+        return new DirectorySource(context, roots);
+    }
+
+    @Nullable
+    @Override
+    public synchronized Cursor queryBuckets(@NonNull String[] mediaTypes) {
+        List<Entry> snapshot = scan();
+        mSnapshot = snapshot;
+        List<Entry> entries = filter(snapshot, ALL_MEDIA_BUCKET_ID, mediaTypes);
+        // The entries are sorted newest first, so the first entry of every bucket is its cover
+        Map<Long, Entry> covers = new LinkedHashMap<>();
+        for (Entry entry : entries) {
+            if (!covers.containsKey(entry.bucketId)) {
+                covers.put(entry.bucketId, entry);
+            }
+        }
+        MatrixCursor cursor = new MatrixCursor(BUCKET_COLUMNS, covers.size());
+        for (Entry entry : covers.values()) {
+            cursor.newRow()
+                    .add(entry.bucketId)
+                    .add(entry.bucketName)
+                    .add(entry.path)
+                    .add(entry.dateTaken);
+        }
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public synchronized Cursor queryMedia(long bucketId, @NonNull String[] mediaTypes) {
+        List<Entry> snapshot = mSnapshot;
+        if (snapshot == null) {
+            snapshot = scan();
+            mSnapshot = snapshot;
+        }
+        List<Entry> entries = filter(snapshot, bucketId, mediaTypes);
+        MatrixCursor cursor = new MatrixCursor(IMAGE_PROJECTION, entries.size());
+        for (Entry entry : entries) {
+            // The orientation is left unknown, since it would take reading the EXIF of every image
+            cursor.newRow()
+                    .add(entry.id)
+                    .add(bucketId)
+                    .add(entry.name)
+                    .add(entry.path)
+                    .add(entry.dateModified)
+                    .add(entry.dateTaken)
+                    .add(entry.width)
+                    .add(entry.height)
+                    .add(0);
+        }
+        if (!MemoryPolicy.get(mContext).isSnapshotsKept()) {
+            mSnapshot = null;
+        }
+        return cursor;
+    }
+
+    @Override
+    public void releaseMemory() {
+        mSnapshot = null;
+    }
+
+    @NonNull
+    private static List<Entry> filter(@NonNull List<Entry> snapshot, long bucketId, @NonNull String[] mediaTypes) {
+        Set<String> types = new HashSet<>(Arrays.asList(mediaTypes));
+        List<Entry> entries = new ArrayList<>(snapshot.size());
+        for (Entry entry : snapshot) {
+            if ((bucketId == ALL_MEDIA_BUCKET_ID || bucketId == entry.bucketId)
+                    && (types.isEmpty() || types.contains(entry.mimeType))) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Walk the directory trees and return the images not indexed by the MediaStore yet, newest first.
+     */
+    @WorkerThread
+    @NonNull
+    private List<Entry> scan() {
+        Set<String> indexed = queryIndexedPaths();
+        ExecutorService executor = Executors.newFixedThreadPool(PARALLELISM, new BackgroundThreadFactory(DirectorySource.class.getSimpleName()));
+        Walker walker = new Walker(executor, indexed);
+        try {
+            for (File root : mRoots) {
+                walker.submit(root);
+            }
+            walker.await();
+        } finally {
+            executor.shutdownNow();
+        }
+        List<Entry> entries = new ArrayList<>(walker.mEntries);
+        Collections.sort(entries, new Comparator<Entry>() {
+            @Override
+            public int compare(Entry e1, Entry e2) {
+                return e1.dateTaken < e2.dateTaken ? 1 : e1.dateTaken > e2.dateTaken ? -1 : 0;
+            }
+        });
+        return entries;
+    }
+
+    @NonNull
+    private Set<String> queryIndexedPaths() {
+        Set<String> paths = new HashSet<>();
+        for (File root : mRoots) {
+            Cursor cursor = mContext.getContentResolver().query(GALLERY_URI,
+                    new String[]{MediaStore.Images.ImageColumns.DATA},
+                    MediaStore.Images.ImageColumns.DATA + " LIKE ?",
+                    new String[]{root.getAbsolutePath() + "/%"},
+                    null);
+            if (cursor == null) {
+                continue;
+            }
+            try {
+                while (cursor.moveToNext()) {
+                    paths.add(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Sniff the image type from the file header
+     *
+     * @return The MIME type, or null if it is not a supported image
+     */
+    @Nullable
+    static String sniffMimeType(@NonNull File file) {
+        byte[] header = new byte[HEADER_SIZE];
+        int read;
+        try {
+            InputStream in = new FileInputStream(file);
+            try {
+                read = in.read(header);
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            return null;
+        }
+        if (read >= 3 && (header[0] & 0xff) == 0xff && (header[1] & 0xff) == 0xd8 && (header[2] & 0xff) == 0xff) {
+            return "image/jpeg";
+        }
+        if (read >= 8 && (header[0] & 0xff) == 0x89 && header[1] == 'P' && header[2] == 'N' && header[3] == 'G'
+                && header[4] == 0x0d && header[5] == 0x0a && header[6] == 0x1a && header[7] == 0x0a) {
+            return "image/png";
+        }
+        if (read >= 2 && header[0] == 'B' && header[1] == 'M') {
+            return "image/bmp";
+        }
+        if (read >= 4 && header[0] == 'G' && header[1] == 'I' && header[2] == 'F' && header[3] == '8') {
+            return "image/gif";
+        }
+        if (read >= 12 && header[0] == 'R' && header[1] == 'I' && header[2] == 'F' && header[3] == 'F'
+                && header[8] == 'W' && header[9] == 'E' && header[10] == 'B' && header[11] == 'P') {
+            return "image/webp";
+        }
+        return null;
+    }
+
+    /**
+     * Same bucket id the MediaStore gives to the media of a directory
+     */
+    static long bucketIdOf(@NonNull File directory) {
+        return directory.getAbsolutePath().toLowerCase(Locale.ROOT).hashCode();
+    }
+
+    /**
+     * Negative id derived from the path, so it is stable across scans and doesn't clash with the MediaStore ids
+     */
+    static long idOf(@NonNull String path) {
+        // 64-bit FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < path.length(); i++) {
+            hash ^= path.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return -(hash & Long.MAX_VALUE) - 1;
+    }
+
+    private static class Entry {
+
+        final long id;
+        final long bucketId;
+        final String bucketName;
+        final String name;
+        final String path;
+        final String mimeType;
+        final long dateModified;
+        final long dateTaken;
+        final int width;
+        final int height;
+
+        Entry(@NonNull File file, @NonNull File directory, @NonNull String mimeType) {
+            this.path = file.getAbsolutePath();
+            this.id = idOf(path);
+            this.bucketId = bucketIdOf(directory);
+            this.bucketName = directory.getName();
+            this.name = file.getName();
+            this.mimeType = mimeType;
+            // Without reading the EXIF, the best guess of the date taken is the last modification
+            this.dateTaken = file.lastModified();
+            // Seconds, like the MediaStore
+            this.dateModified = dateTaken / 1000;
+            // The bounds are read from the header, without decoding the pixels
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
+            this.width = Math.max(0, options.outWidth);
+            this.height = Math.max(0, options.outHeight);
+        }
+    }
+
+    /**
+     * Walks the directory trees with one task per directory, so sibling trees are walked in parallel.
+     */
+    private static class Walker {
+
+        private final ExecutorService mExecutor;
+        private final Set<String> mIndexed;
+        private final ConcurrentLinkedQueue<Entry> mEntries = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger mPending = new AtomicInteger();
+
+        Walker(@NonNull ExecutorService executor, @NonNull Set<String> indexed) {
+            mExecutor = executor;
+            mIndexed = indexed;
+        }
+
+        void submit(@NonNull final File directory) {
+            mPending.incrementAndGet();
+            try {
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        try {
+                            visit(directory);
+                        } finally {
+                            done();
+                        }
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // The scan was interrupted
+                done();
+            }
+        }
+
+        private void done() {
+            if (mPending.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+            }
+        }
+
+        synchronized void await() {
+            try {
+                while (mPending.get() > 0) {
+                    wait();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        private void visit(@NonNull File directory) {
+            if (Thread.currentThread().isInterrupted() || new File(directory, NO_MEDIA).exists()) {
+                return;
+            }
+            File[] files = directory.listFiles();
+            if (files == null) {
+                return;
+            }
+            for (File file : files) {
+                if (file.isHidden()) {
+                    continue;
+                }
+                if (file.isDirectory()) {
+                    submit(file);
+                } else if (!mIndexed.contains(file.getAbsolutePath())) {
+                    String mimeType = sniffMimeType(file);
+                    if (mimeType != null) {
+                        mEntries.add(new Entry(file, directory, mimeType));
+                    }
+                }
+            }
+        }
+    }
+
+}
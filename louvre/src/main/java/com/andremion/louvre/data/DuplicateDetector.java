@@ -0,0 +1,307 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LongSparseArray;
+
+import com.andremion.louvre.util.BackgroundThreadFactory;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static com.andremion.louvre.data.MediaQuery.GALLERY_URI;
+import static com.andremion.louvre.data.MediaQuery.HASH_PROJECTION;
+
+/**
+ * Background engine that finds near-duplicate images, like burst shots, through their {@link PerceptualHash}.
+ * <p>
+ * Hashes are computed in parallel on background priority threads and kept in a {@link MediaValueCache},
+ * so once the cache is warm a detection is just a query and a few lookups.
+ */
+public class DuplicateDetector {
+
+    // Max different bits between two hashes to consider the images the same
+    private static final int MAX_DISTANCE = 6;
+    // Near-duplicates are taken close in time, so each item is just compared with its neighbours in date order
+    private static final int WINDOW = 8;
+    private static final long NO_ID = -1;
+
+    public interface Callbacks {
+
+        void onDuplicatesDetected(@NonNull Duplicates duplicates);
+    }
+
+    /**
+     * Result of a detection. Each duplicate points to the first item of its group, which is not a duplicate itself.
+     */
+    public static class Duplicates {
+
+        private final LongSparseArray<Long> mOriginals;
+
+        private Duplicates(@NonNull LongSparseArray<Long> originals) {
+            mOriginals = originals;
+        }
+
+        public boolean isDuplicate(long id) {
+            return mOriginals.indexOfKey(id) >= 0;
+        }
+
+        /**
+         * @return The id of the item the given one is a duplicate of, or the given id if it is not a duplicate
+         */
+        public long getOriginal(long id) {
+            return mOriginals.get(id, id);
+        }
+
+        public int size() {
+            return mOriginals.size();
+        }
+    }
+
+    private final Context mContext;
+    private final ContentResolver mContentResolver;
+    private final Handler mHandler;
+    private final ExecutorService mCoordinator;
+    private final ExecutorService mHashers;
+    @Nullable
+    private Future<?> mCurrent;
+    private int mGeneration;
+
+    DuplicateDetector(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mContentResolver = context.getContentResolver();
+        mHandler = new Handler(Looper.getMainLooper());
+        mCoordinator = Executors.newSingleThreadExecutor(new BackgroundThreadFactory(DuplicateDetector.class.getSimpleName()));
+        mHashers = Executors.newFixedThreadPool(Math.max(1, Runtime.getRuntime().availableProcessors() - 1),
+                new BackgroundThreadFactory(DuplicateDetector.class.getSimpleName()));
+    }
+
+    /**
+     * Detect the duplicates among the media of the given query, cancelling the previous detection.
+     */
+    void detect(@NonNull final Uri uri, @Nullable final String selection, @Nullable final String sortOrder,
+                @NonNull final Callbacks callbacks) {
+        cancel();
+        final int generation = mGeneration;
+        mCurrent = mCoordinator.submit(new Runnable() {
+            @Override
+            public void run() {
+                final Duplicates duplicates = detectInBackground(uri, selection, sortOrder);
+                if (duplicates == null || Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration) {
+                            callbacks.onDuplicatesDetected(duplicates);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    void cancel() {
+        mGeneration++;
+        if (mCurrent != null) {
+            mCurrent.cancel(true);
+            mCurrent = null;
+        }
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    void shutdown() {
+        cancel();
+        mCoordinator.shutdownNow();
+        mHashers.shutdownNow();
+    }
+
+    @WorkerThread
+    @Nullable
+    private Duplicates detectInBackground(@NonNull Uri uri, @Nullable String selection, @Nullable String sortOrder) {
+        Cursor cursor = mContentResolver.query(uri, HASH_PROJECTION, selection, null, sortOrder);
+        if (cursor == null) {
+            return null;
+        }
+        MediaValueCache cache = MediaValueCache.hashes(mContext, uri);
+        long[] ids;
+        long[] hashes;
+        boolean[] hashed;
+        try {
+            int count = cursor.getCount();
+            ids = new long[count];
+            hashes = new long[count];
+            hashed = new boolean[count];
+            List<Callable<Void>> misses = new ArrayList<>();
+            for (int i = 0; cursor.moveToNext(); i++) {
+                ids[i] = cursor.getLong(0);
+                long dateModified = cursor.getLong(1);
+                hashed[i] = cache.get(ids[i], dateModified, hashes, i);
+                if (!hashed[i]) {
+                    misses.add(new HashTask(cache, ids[i], dateModified, cursor.getString(2), hashes, hashed, i));
+                }
+            }
+            if (!misses.isEmpty()) {
+                mHashers.invokeAll(misses);
+                cache.flush();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } finally {
+            cursor.close();
+        }
+        return new Duplicates(group(ids, hashes, hashed));
+    }
+
+    @NonNull
+    private static LongSparseArray<Long> group(@NonNull long[] ids, @NonNull long[] hashes, @NonNull boolean[] hashed) {
+        LongSparseArray<Long> originals = new LongSparseArray<>();
+        for (int i = 0; i < ids.length; i++) {
+            if (!hashed[i]) {
+                continue;
+            }
+            for (int j = i - 1; j >= 0 && j >= i - WINDOW; j--) {
+                if (hashed[j] && PerceptualHash.distance(hashes[i], hashes[j]) <= MAX_DISTANCE) {
+                    // Point to the original of the neighbour, so the group has a single original
+                    originals.put(ids[i], originals.get(ids[j], ids[j]));
+                    break;
+                }
+            }
+        }
+        return originals;
+    }
+
+    /**
+     * Remove the near-duplicates from a selection, like the one returned by
+     * {@link com.andremion.louvre.home.GalleryActivity#getSelection}, keeping the first item of each group.
+     * <p>
+     * This decodes the items not hashed yet, so it should not be called on the main thread.
+     */
+    @WorkerThread
+    @NonNull
+    public static List<Uri> collapse(@NonNull Context context, @NonNull List<Uri> selection) {
+        MediaValueCache cache = MediaValueCache.hashes(context, GALLERY_URI);
+        ContentResolver resolver = context.getContentResolver();
+        long[] hashes = new long[selection.size()];
+        boolean[] hashed = new boolean[selection.size()];
+        for (int i = 0; i < selection.size(); i++) {
+            hashed[i] = hashOf(resolver, cache, selection.get(i), hashes, i);
+        }
+        cache.flush();
+        List<Uri> collapsed = new ArrayList<>(selection.size());
+        for (int i = 0; i < selection.size(); i++) {
+            boolean duplicate = false;
+            for (int j = 0; j < i && !duplicate; j++) {
+                duplicate = hashed[i] && hashed[j]
+                        && PerceptualHash.distance(hashes[i], hashes[j]) <= MAX_DISTANCE;
+            }
+            if (!duplicate) {
+                collapsed.add(selection.get(i));
+            }
+        }
+        return collapsed;
+    }
+
+    /**
+     * @return If the hash of the given item could be written into {@code hashes[index]}
+     */
+    private static boolean hashOf(@NonNull ContentResolver resolver, @NonNull MediaValueCache cache, @NonNull Uri uri,
+                                  @NonNull long[] hashes, int index) {
+        String path = uri.getPath();
+        if (path == null) {
+            return false;
+        }
+        Cursor cursor = resolver.query(GALLERY_URI, HASH_PROJECTION,
+                MediaStore.Images.ImageColumns.DATA + "=?", new String[]{path}, null);
+        long id = NO_ID;
+        long dateModified = 0;
+        if (cursor != null) {
+            try {
+                if (cursor.moveToFirst()) {
+                    id = cursor.getLong(0);
+                    dateModified = cursor.getLong(1);
+                }
+            } finally {
+                cursor.close();
+            }
+        }
+        if (id != NO_ID && cache.get(id, dateModified, hashes, index)) {
+            return true;
+        }
+        try {
+            hashes[index] = PerceptualHash.compute(path);
+            if (id != NO_ID) {
+                cache.put(id, dateModified, hashes[index]);
+            }
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private static class HashTask implements Callable<Void> {
+
+        private final MediaValueCache mCache;
+        private final long mId;
+        private final long mDateModified;
+        private final String mPath;
+        private final long[] mHashes;
+        private final boolean[] mHashed;
+        private final int mIndex;
+
+        HashTask(MediaValueCache cache, long id, long dateModified, String path, long[] hashes, boolean[] hashed, int index) {
+            mCache = cache;
+            mId = id;
+            mDateModified = dateModified;
+            mPath = path;
+            mHashes = hashes;
+            mHashed = hashed;
+            mIndex = index;
+        }
+
+        @Override
+        public Void call() {
+            try {
+                long hash = PerceptualHash.compute(mPath);
+                mHashes[mIndex] = hash;
+                mHashed[mIndex] = true;
+                mCache.put(mId, mDateModified, hash);
+            } catch (IOException | RuntimeException e) {
+                // Not hashed, so it is never a duplicate
+            }
+            return null;
+        }
+    }
+
+}
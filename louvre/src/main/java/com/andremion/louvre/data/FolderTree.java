@@ -0,0 +1,282 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LongSparseArray;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Tree of the folders of the media, built in a single pass over the loaded rows by inserting the directory of
+ * every row into a path trie.
+ * <p>
+ * The chains of folders that hold no media and a single subfolder are compressed into one node, like
+ * {@code storage/emulated/0}. Every node keeps the count of the media under it and the newest of them as its
+ * cover, so the subfolders of a node are listed from memory, without querying again.
+ * <p>
+ * The folders are listed as bucket rows. The ones that have subfolders get a folder id, which is derived from the
+ * path like the bucket ids but never clashes with them, and the others the bucket id of their directory, so they
+ * are opened like any bucket. Both are stable across loads.
+ */
+public class FolderTree {
+
+    /**
+     * The column of the bucket rows with the count of the media under them
+     */
+    public static final String COUNT = BaseColumns._COUNT;
+
+    /**
+     * The folder id of the root, which lists the top level folders
+     */
+    public static final long ROOT_ID = 1L << 32;
+
+    private static final String[] COLUMNS = {
+            MediaStore.Images.ImageColumns.BUCKET_ID,
+            MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME,
+            MediaStore.Images.ImageColumns.DATA,
+            MediaStore.Images.ImageColumns.DATE_TAKEN,
+            COUNT
+    };
+
+    private static final Comparator<Node> NEWEST_FIRST = new Comparator<Node>() {
+        @Override
+        public int compare(Node node1, Node node2) {
+            return node1.coverDate < node2.coverDate ? 1 : (node1.coverDate == node2.coverDate ? 0 : -1);
+        }
+    };
+
+    private final LongSparseArray<Node> mNodes;
+
+    private FolderTree(@NonNull LongSparseArray<Node> nodes) {
+        mNodes = nodes;
+    }
+
+    /**
+     * Build the tree of the given rows, sorted by {@link MediaStore.Images.ImageColumns#DATE_TAKEN}, newest first
+     */
+    @WorkerThread
+    @NonNull
+    static FolderTree build(@NonNull Cursor cursor) {
+        Node root = new Node(null, "", "");
+        // Every directory seen so far, so the rows of a known one don't walk the trie
+        Map<String, Node> directories = new HashMap<>();
+        int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATA);
+        int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATE_TAKEN);
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            String data = cursor.getString(dataColumn);
+            int end = data != null ? data.lastIndexOf(File.separatorChar) : -1;
+            if (end <= 0) {
+                continue;
+            }
+            String directory = data.substring(0, end);
+            Node node = directories.get(directory);
+            if (node == null) {
+                node = insert(root, directories, directory);
+            }
+            long date = cursor.getLong(dateColumn);
+            // The rows come newest first, so the first one under a node is its cover
+            if (node.ownCount++ == 0) {
+                node.ownCoverData = data;
+                node.ownCoverDate = date;
+            }
+            for (; node != null; node = node.parent) {
+                if (node.count++ == 0) {
+                    node.coverData = data;
+                    node.coverDate = date;
+                }
+            }
+        }
+        compress(root);
+        LongSparseArray<Node> nodes = new LongSparseArray<>();
+        finish(root, nodes);
+        return new FolderTree(nodes);
+    }
+
+    /**
+     * Get the folder tree of the given cursor, if it was loaded with one
+     */
+    @Nullable
+    public static FolderTree of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mFolderTree : null;
+    }
+
+    @NonNull
+    private static Node insert(@NonNull Node root, @NonNull Map<String, Node> directories, @NonNull String directory) {
+        int end = directory.lastIndexOf(File.separatorChar);
+        Node parent;
+        if (end <= 0) {
+            parent = root;
+        } else {
+            String parentDirectory = directory.substring(0, end);
+            parent = directories.get(parentDirectory);
+            if (parent == null) {
+                parent = insert(root, directories, parentDirectory);
+            }
+        }
+        Node node = new Node(parent, directory.substring(end + 1), directory);
+        parent.childMap.put(node.name, node);
+        directories.put(directory, node);
+        return node;
+    }
+
+    /**
+     * Merge every folder without media of its own into its only subfolder
+     */
+    private static void compress(@NonNull Node node) {
+        while (node.ownCount == 0 && node.childMap.size() == 1) {
+            Node child = node.childMap.values().iterator().next();
+            node.name = node.name.isEmpty() ? child.name : node.name + File.separatorChar + child.name;
+            node.path = child.path;
+            node.ownCount = child.ownCount;
+            node.ownCoverData = child.ownCoverData;
+            node.ownCoverDate = child.ownCoverDate;
+            node.childMap = child.childMap;
+            for (Node grandchild : node.childMap.values()) {
+                grandchild.parent = node;
+            }
+        }
+        for (Node child : node.childMap.values()) {
+            compress(child);
+        }
+    }
+
+    /**
+     * Sort the subfolders newest first and give the nodes their ids
+     */
+    private static void finish(@NonNull Node node, @NonNull LongSparseArray<Node> nodes) {
+        node.bucketId = DirectorySource.bucketIdOf(new File(node.path));
+        // The bucket ids are ints, so the folder ids take the upper half of the long
+        node.id = node.parent == null ? ROOT_ID : ROOT_ID | (node.path.toLowerCase(Locale.ROOT).hashCode() & 0xffffffffL);
+        nodes.put(node.id, node);
+        node.children = new ArrayList<>(node.childMap.values());
+        node.childMap = null;
+        Collections.sort(node.children, NEWEST_FIRST);
+        for (Node child : node.children) {
+            finish(child, nodes);
+        }
+    }
+
+    /**
+     * @return If the given bucket id is the folder id of a node with subfolders, which is listed by {@link #query(long)}
+     */
+    public boolean isFolder(long id) {
+        Node node = findNode(id);
+        return node != null && !node.children.isEmpty();
+    }
+
+    /**
+     * @return The folder id of the parent of the given folder, or {@link #ROOT_ID} for the top level ones
+     */
+    public long getParentId(long folderId) {
+        Node node = findNode(folderId);
+        return node != null && node.parent != null ? node.parent.id : ROOT_ID;
+    }
+
+    /**
+     * @return The name of the given folder, which for the compressed ones has more than one path segment
+     */
+    @Nullable
+    public String getLabel(long folderId) {
+        Node node = findNode(folderId);
+        return node != null ? node.name : null;
+    }
+
+    /**
+     * @return The count of the media under the given folder, including the subfolders
+     */
+    public int getCount(long folderId) {
+        Node node = findNode(folderId);
+        return node != null ? node.count : 0;
+    }
+
+    /**
+     * List the given folder as bucket rows with their {@link #COUNT}: a row with the media of the folder itself,
+     * if it has some, and a row per subfolder, newest first
+     */
+    @NonNull
+    public Cursor query(long folderId) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        Node node = findNode(folderId);
+        if (node == null) {
+            return cursor;
+        }
+        if (node.ownCount > 0) {
+            cursor.newRow()
+                    .add(node.bucketId)
+                    .add(node.name)
+                    .add(node.ownCoverData)
+                    .add(node.ownCoverDate)
+                    .add(node.ownCount);
+        }
+        for (Node child : node.children) {
+            cursor.newRow()
+                    .add(child.children.isEmpty() ? child.bucketId : child.id)
+                    .add(child.name)
+                    .add(child.coverData)
+                    .add(child.coverDate)
+                    .add(child.count);
+        }
+        return cursor;
+    }
+
+    @Nullable
+    private Node findNode(long folderId) {
+        return mNodes.get(folderId);
+    }
+
+    private static class Node {
+
+        @Nullable
+        Node parent;
+        @NonNull
+        String name;
+        @NonNull
+        String path;
+        Map<String, Node> childMap = new HashMap<>();
+        List<Node> children;
+        long id;
+        long bucketId;
+        int count;
+        int ownCount;
+        String coverData;
+        long coverDate;
+        String ownCoverData;
+        long ownCoverDate;
+
+        Node(@Nullable Node parent, @NonNull String name, @NonNull String path) {
+            this.parent = parent;
+            this.name = name;
+            this.path = path;
+        }
+    }
+
+}
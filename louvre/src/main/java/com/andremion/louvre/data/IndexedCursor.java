@@ -0,0 +1,68 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Cursor that carries the indexes built over its rows from the loader to the adapter
+ */
+class IndexedCursor extends CursorWrapper {
+
+    @Nullable
+    final SectionIndex mSectionIndex;
+    @Nullable
+    final AspectIndex mAspectIndex;
+    @Nullable
+    final PlaceholderIndex mPlaceholderIndex;
+    @Nullable
+    final FolderTree mFolderTree;
+    @Nullable
+    final NameIndex mNameIndex;
+    @Nullable
+    final PlaceIndex mPlaceIndex;
+
+    IndexedCursor(@NonNull Cursor cursor, @Nullable SectionIndex sectionIndex, @Nullable AspectIndex aspectIndex,
+                  @Nullable PlaceholderIndex placeholderIndex, @Nullable FolderTree folderTree,
+                  @Nullable NameIndex nameIndex, @Nullable PlaceIndex placeIndex) {
+        super(cursor);
+        mSectionIndex = sectionIndex;
+        mAspectIndex = aspectIndex;
+        mPlaceholderIndex = placeholderIndex;
+        mFolderTree = folderTree;
+        mNameIndex = nameIndex;
+        mPlaceIndex = placeIndex;
+    }
+
+    /**
+     * Find the indexed cursor in the chain of wrappers of the given one, like the {@link CursorGuard} adds
+     */
+    @Nullable
+    static IndexedCursor find(@Nullable Cursor cursor) {
+        while (cursor instanceof CursorWrapper) {
+            if (cursor instanceof IndexedCursor) {
+                return (IndexedCursor) cursor;
+            }
+            cursor = ((CursorWrapper) cursor).getWrappedCursor();
+        }
+        return null;
+    }
+
+}
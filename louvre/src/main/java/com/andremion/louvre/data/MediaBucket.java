@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * A bucket streamed by a {@link MediaPublisher}, with the newest of its media as cover
+ */
+public class MediaBucket {
+
+    private final long mId;
+    private final String mDisplayName;
+    private final Uri mCoverUri;
+    private final long mDateTaken;
+
+    MediaBucket(@NonNull Cursor cursor) {
+        mId = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID));
+        mDisplayName = cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME));
+        mCoverUri = Uri.fromFile(new File(cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATA))));
+        mDateTaken = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATE_TAKEN));
+    }
+
+    /**
+     * @return The id to stream the media of this bucket with {@link MediaPublisher#media}
+     */
+    public long getId() {
+        return mId;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    @NonNull
+    public Uri getCoverUri() {
+        return mCoverUri;
+    }
+
+    /**
+     * @return The date the newest media of the bucket was taken
+     */
+    public long getDateTaken() {
+        return mDateTaken;
+    }
+
+}
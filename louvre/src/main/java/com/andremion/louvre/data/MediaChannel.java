@@ -0,0 +1,136 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Read-only access to a selected media through its file descriptor.
+ * <p>
+ * The bytes go from storage to the target channel through {@link FileChannel#transferTo}, so uploads
+ * don't need to copy them into heap arrays. Every read takes an explicit position, which makes it easy
+ * to resume an interrupted upload from the last byte sent.
+ */
+public class MediaChannel implements Closeable {
+
+    private final ParcelFileDescriptor mFileDescriptor;
+    private final FileInputStream mInputStream;
+    private final FileChannel mChannel;
+
+    private MediaChannel(@NonNull ParcelFileDescriptor fileDescriptor) {
+        mFileDescriptor = fileDescriptor;
+        mInputStream = new FileInputStream(fileDescriptor.getFileDescriptor());
+        mChannel = mInputStream.getChannel();
+    }
+
+    /**
+     * Open the given media, like one of the items returned by {@link com.andremion.louvre.home.GalleryActivity#getSelection}
+     */
+    @NonNull
+    public static MediaChannel open(@NonNull Context context, @NonNull Uri uri) throws FileNotFoundException {
+        ParcelFileDescriptor fileDescriptor = context.getContentResolver().openFileDescriptor(uri, "r");
+        if (fileDescriptor == null) {
+            throw new FileNotFoundException("Unable to open " + uri);
+        }
+        return new MediaChannel(fileDescriptor);
+    }
+
+    @NonNull
+    public ParcelFileDescriptor getFileDescriptor() {
+        return mFileDescriptor;
+    }
+
+    @NonNull
+    public FileChannel getChannel() {
+        return mChannel;
+    }
+
+    /**
+     * @return The size in bytes of the media
+     */
+    public long size() throws IOException {
+        long size = mFileDescriptor.getStatSize();
+        return size >= 0 ? size : mChannel.size();
+    }
+
+    /**
+     * Transfer the whole media into the given channel.
+     *
+     * @return The count of bytes transferred
+     */
+    public long transferTo(@NonNull WritableByteChannel target) throws IOException {
+        return transferTo(0, size(), target);
+    }
+
+    /**
+     * Transfer a byte range of the media into the given channel.
+     * <p>
+     * This blocks until the whole range is transferred, the end of the media is reached or the target stops
+     * accepting bytes, like a non-blocking socket with a full buffer. In the last case just call it again
+     * from {@code position} plus the returned count.
+     *
+     * @param position The position of the first byte to transfer
+     * @param count    The max count of bytes to transfer
+     * @param target   The channel to write the bytes
+     * @return The count of bytes transferred
+     */
+    public long transferTo(@IntRange(from = 0) long position, @IntRange(from = 0) long count,
+                           @NonNull WritableByteChannel target) throws IOException {
+        long end = Math.min(position + count, size());
+        long transferred = 0;
+        while (position + transferred < end) {
+            long bytes = mChannel.transferTo(position + transferred, end - position - transferred, target);
+            if (bytes <= 0) {
+                break;
+            }
+            transferred += bytes;
+        }
+        return transferred;
+    }
+
+    /**
+     * Read a chunk of the media into the given buffer. Use a direct buffer to keep the bytes out of the heap.
+     *
+     * @return The count of bytes read, or -1 at the end of the media
+     */
+    public int read(@NonNull ByteBuffer buffer, @IntRange(from = 0) long position) throws IOException {
+        return mChannel.read(buffer, position);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            mChannel.close();
+            mInputStream.close();
+        } finally {
+            mFileDescriptor.close();
+        }
+    }
+
+}
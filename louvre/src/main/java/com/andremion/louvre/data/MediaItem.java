@@ -0,0 +1,93 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+
+import java.io.File;
+
+/**
+ * A media row streamed by a {@link MediaPublisher}, read out of the cursor so no cursor is held by the host
+ */
+public class MediaItem {
+
+    private final long mId;
+    private final long mBucketId;
+    private final String mDisplayName;
+    private final Uri mUri;
+    private final long mDateTaken;
+    private final long mDateModified;
+    private final int mWidth;
+    private final int mHeight;
+    private final int mOrientation;
+
+    MediaItem(@NonNull Cursor cursor) {
+        mId = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns._ID));
+        mBucketId = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID));
+        mDisplayName = cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DISPLAY_NAME));
+        mUri = Uri.fromFile(new File(cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATA))));
+        mDateTaken = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATE_TAKEN));
+        mDateModified = cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATE_MODIFIED));
+        mWidth = cursor.getInt(cursor.getColumnIndex(MediaStore.Images.ImageColumns.WIDTH));
+        mHeight = cursor.getInt(cursor.getColumnIndex(MediaStore.Images.ImageColumns.HEIGHT));
+        mOrientation = cursor.getInt(cursor.getColumnIndex(MediaStore.Images.ImageColumns.ORIENTATION));
+    }
+
+    public long getId() {
+        return mId;
+    }
+
+    public long getBucketId() {
+        return mBucketId;
+    }
+
+    public String getDisplayName() {
+        return mDisplayName;
+    }
+
+    /**
+     * @return The file Uri of the media, the same the picker returns in its selection
+     */
+    @NonNull
+    public Uri getUri() {
+        return mUri;
+    }
+
+    public long getDateTaken() {
+        return mDateTaken;
+    }
+
+    public long getDateModified() {
+        return mDateModified;
+    }
+
+    public int getWidth() {
+        return mWidth;
+    }
+
+    public int getHeight() {
+        return mHeight;
+    }
+
+    public int getOrientation() {
+        return mOrientation;
+    }
+
+}
@@ -16,9 +16,11 @@
 
 package com.andremion.louvre.data;
 
+import android.content.Context;
 import android.database.Cursor;
 import android.database.MatrixCursor;
 import android.database.MergeCursor;
+import android.os.AsyncTask;
 import android.os.Bundle;
 import android.provider.MediaStore;
 import android.support.annotation.IntRange;
@@ -28,28 +30,53 @@ import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.LoaderManager;
 import android.support.v4.content.CursorLoader;
 import android.support.v4.content.Loader;
+import android.support.v4.os.OperationCanceledException;
+import android.util.Log;
 
+import com.andremion.louvre.GalleryOptions;
 import com.andremion.louvre.R;
+import com.andremion.louvre.metrics.Metrics;
+import com.andremion.louvre.metrics.Tracer;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
 
 import static com.andremion.louvre.data.MediaQuery.ALL_IMAGE_PROJECTION;
+import static com.andremion.louvre.data.MediaQuery.BUCKET_COLUMNS;
 import static com.andremion.louvre.data.MediaQuery.BUCKET_PROJECTION;
 import static com.andremion.louvre.data.MediaQuery.BUCKET_SELECTION;
 import static com.andremion.louvre.data.MediaQuery.BUCKET_SORT_ORDER;
 import static com.andremion.louvre.data.MediaQuery.GALLERY_URI;
 import static com.andremion.louvre.data.MediaQuery.IMAGE_PROJECTION;
 import static com.andremion.louvre.data.MediaQuery.MEDIA_SORT_ORDER;
+import static com.andremion.louvre.data.MediaQuery.PLACE_PROJECTION;
+import static com.andremion.louvre.data.MediaQuery.PLACE_SELECTION;
+import static com.andremion.louvre.data.MediaQuery.mediaSelectionOf;
+import static com.andremion.louvre.data.MediaQuery.typeFilterOf;
 
 /**
  * {@link Loader} for media and bucket data
+ * <p>
+ * The media is queried from the MediaStore, or the content Uri set as source, concurrently with the
+ * additional {@link MediaSource}s, and their rows are merged in date order by a {@link SortedMergeCursor}.
  */
 public class MediaLoader implements LoaderManager.LoaderCallbacks<Cursor> {
 
+    // The loader ids are also the MetricsListener query types
     private static final int TIME_LOADER = 0;
     private static final int BUCKET_LOADER = 1;
     private static final int MEDIA_LOADER = 2;
+    private static final int FOLDER_LOADER = 3;
 
     static final long ALL_MEDIA_BUCKET_ID = 0;
     private static final String BUCKET_ID = MediaStore.Images.Media.BUCKET_ID;
+    private static final String DATE_TAKEN = MediaStore.Images.Media.DATE_TAKEN;
+    private static final String TAG = MediaLoader.class.getSimpleName();
 
     public interface Callbacks {
 
@@ -59,49 +86,91 @@ public class MediaLoader implements LoaderManager.LoaderCallbacks<Cursor> {
     }
 
     private FragmentActivity mActivity;
+    private LoaderManager mLoaderManager;
     private Callbacks mCallbacks;
+    private GalleryOptions mOptions;
     private String mTypeFilter;
+    private final List<MediaSource> mMediaSources;
+    @Nullable
+    private PlaceIndex mPlaceIndex;
+    @Nullable
+    private FolderTree mFolderTree;
+    private long mFolderId = FolderTree.ROOT_ID;
+    @Nullable
+    private DuplicateDetector.Callbacks mDuplicateCallbacks;
+    @Nullable
+    private DuplicateDetector mDuplicateDetector;
+    @Nullable
+    private PlaceholderExtractor mPlaceholderExtractor;
 
     public MediaLoader() {
+        mOptions = GalleryOptions.defaults();
         // 1 means all media type.
         mTypeFilter = "1";
+        mMediaSources = new ArrayList<>();
     }
 
     @Override
     public final Loader<Cursor> onCreateLoader(int id, Bundle args) {
+        boolean traced = Tracer.begin("Louvre:createLoader");
+        try {
+            return createLoader(id, args);
+        } finally {
+            Tracer.end(traced);
+        }
+    }
+
+    private Loader<Cursor> createLoader(int id, Bundle args) {
         if (id == TIME_LOADER) {
-            return new CursorLoader(mActivity,
-                    GALLERY_URI,
+            return new MediaCursorLoader(mActivity, id, ALL_MEDIA_BUCKET_ID, getMediaSources(), mOptions,
+                    ALL_IMAGE_PROJECTION,
+                    mTypeFilter,
+                    MEDIA_SORT_ORDER);
+        }
+        if (id == FOLDER_LOADER) {
+            return new MediaCursorLoader(mActivity, id, ALL_MEDIA_BUCKET_ID, getMediaSources(), mOptions,
                     ALL_IMAGE_PROJECTION,
                     mTypeFilter,
-                    null,
                     MEDIA_SORT_ORDER);
         }
         if (id == BUCKET_LOADER) {
-            return new CursorLoader(mActivity,
-                    GALLERY_URI,
+            return new MediaCursorLoader(mActivity, id, ALL_MEDIA_BUCKET_ID, getMediaSources(), mOptions,
                     BUCKET_PROJECTION,
                     String.format("%s AND %s", mTypeFilter, BUCKET_SELECTION),
-                    null,
                     BUCKET_SORT_ORDER);
         }
         // id == MEDIA_LOADER
-        return new CursorLoader(mActivity,
-                GALLERY_URI,
+        long bucketId = args.getLong(BUCKET_ID);
+        return new MediaCursorLoader(mActivity, id, bucketId, getMediaSources(), mOptions,
                 IMAGE_PROJECTION,
-                String.format("%s=%s AND %s", MediaStore.Images.Media.BUCKET_ID, args.getLong(BUCKET_ID), mTypeFilter),
-                null,
+                mediaSelectionOf(bucketId, mTypeFilter),
                 MEDIA_SORT_ORDER);
     }
 
     @Override
     public final void onLoadFinished(@NonNull Loader<Cursor> loader, @Nullable Cursor data) {
-        if (mCallbacks != null) {
-            if (loader.getId() == BUCKET_LOADER) {
-                mCallbacks.onBucketLoadFinished(addAllMediaBucketItem(data));
-            } else {
-                mCallbacks.onMediaLoadFinished(data);
+        boolean traced = Tracer.begin("Louvre:loadFinished");
+        try {
+            if (mCallbacks != null) {
+                data = CursorGuard.wrap(data);
+                if (loader.getId() == BUCKET_LOADER) {
+                    mPlaceIndex = PlaceIndex.of(data);
+                    mCallbacks.onBucketLoadFinished(addPlaces(addAllMediaBucketItem(data)));
+                } else if (loader.getId() == FOLDER_LOADER) {
+                    mFolderTree = FolderTree.of(data);
+                    mPlaceIndex = PlaceIndex.of(data);
+                    // A reload lists the same folder again, if it is still there
+                    if (!loadFolder(mFolderId)) {
+                        loadFolder(FolderTree.ROOT_ID);
+                    }
+                } else {
+                    mCallbacks.onMediaLoadFinished(data);
+                    extractPlaceholders(data);
+                    detectDuplicates(loader);
+                }
             }
+        } finally {
+            Tracer.end(traced);
         }
     }
 
@@ -111,42 +180,151 @@ public class MediaLoader implements LoaderManager.LoaderCallbacks<Cursor> {
     }
 
     public void onAttach(@NonNull FragmentActivity activity, @NonNull Callbacks callbacks) {
+        onAttach(activity, activity.getSupportLoaderManager(), callbacks);
+    }
+
+    /**
+     * Attach to the given loader manager, like the one of an embedded fragment, so the loader ids don't clash with the
+     * ones of the host activity or of another picker
+     */
+    public void onAttach(@NonNull FragmentActivity activity, @NonNull LoaderManager loaderManager, @NonNull Callbacks callbacks) {
         mActivity = activity;
+        mLoaderManager = loaderManager;
         mCallbacks = callbacks;
     }
 
     public void onDetach() {
         mActivity = null;
+        mLoaderManager = null;
         mCallbacks = null;
+        mFolderTree = null;
+        mPlaceIndex = null;
+        if (mDuplicateDetector != null) {
+            mDuplicateDetector.shutdown();
+            mDuplicateDetector = null;
+        }
+        if (mPlaceholderExtractor != null) {
+            mPlaceholderExtractor.shutdown();
+            mPlaceholderExtractor = null;
+        }
     }
 
-    public void setMediaTypes(@NonNull String[] mediaTypes) {
-        StringBuilder filter = new StringBuilder();
-        for (String type : mediaTypes) {
-            if (filter.length() > 0) {
-                filter.append(",");
-            }
-            filter.append(String.format("'%s'", type));
+    /**
+     * Set the callbacks to be notified about the near-duplicates of every loaded media, or null to not detect them.
+     */
+    public void setDuplicateCallbacks(@Nullable DuplicateDetector.Callbacks callbacks) {
+        mDuplicateCallbacks = callbacks;
+        if (callbacks == null && mDuplicateDetector != null) {
+            mDuplicateDetector.cancel();
         }
-        if (filter.length() > 0) {
-            mTypeFilter = MediaStore.Images.ImageColumns.MIME_TYPE + " IN (" + filter + ")";
+    }
+
+    /**
+     * Set the options of the media to load, like the content Uri to query it from, which must provide the
+     * {@link MediaStore.Images} columns, and the indexes to build along with it in background.
+     * The default is every media of the {@link MediaStore.Images.Media#EXTERNAL_CONTENT_URI}, not indexed.
+     * <p>
+     * The indexes of the loaded media are available through {@link SectionIndex#of(Cursor)}, {@link AspectIndex#of(Cursor)},
+     * {@link PlaceholderIndex#of(Cursor)} and {@link NameIndex#of(Cursor)}. The {@link FolderTree} is built by
+     * {@link #loadBuckets()} and its folders are listed from memory by {@link #loadFolder(long)}, and the places are
+     * listed after the buckets and opened like them, by {@link #loadByBucket(long)}.
+     */
+    public void setOptions(@NonNull GalleryOptions options) {
+        mOptions = options;
+        mTypeFilter = typeFilterOf(options.getMediaTypeFilter());
+    }
+
+    /**
+     * Add a source of media to merge into the MediaStore rows, like a {@link DirectorySource}
+     */
+    public void addMediaSource(@NonNull MediaSource mediaSource) {
+        mMediaSources.add(mediaSource);
+    }
+
+    public void removeMediaSource(@NonNull MediaSource mediaSource) {
+        mMediaSources.remove(mediaSource);
+    }
+
+    @NonNull
+    private MediaSource[] getMediaSources() {
+        return mMediaSources.toArray(new MediaSource[mMediaSources.size()]);
+    }
+
+    /**
+     * @return The last loaded folder tree, or null if the buckets are not listed as one or it is not loaded yet
+     */
+    @Nullable
+    public FolderTree getFolderTree() {
+        return mFolderTree;
+    }
+
+    /**
+     * @return The folder id of the folder listed last, or {@link FolderTree#ROOT_ID}
+     */
+    public long getFolderId() {
+        return mFolderId;
+    }
+
+    /**
+     * List the subfolders of the given folder of the loaded tree as buckets, without querying again
+     *
+     * @return If the given id is a folder of the loaded tree, which was listed
+     */
+    public boolean loadFolder(long folderId) {
+        if (mCallbacks == null || mFolderTree == null
+                || (folderId != FolderTree.ROOT_ID && !mFolderTree.isFolder(folderId))) {
+            return false;
         }
+        mFolderId = folderId;
+        Cursor folders = mFolderTree.query(folderId);
+        mCallbacks.onBucketLoadFinished(folderId == FolderTree.ROOT_ID ? addPlaces(addAllMediaBucketItem(folders)) : folders);
+        return true;
+    }
+
+    public void setMediaTypes(@NonNull String[] mediaTypes) {
+        setOptions(mOptions.buildUpon().setMediaTypeFilter(mediaTypes).build());
     }
 
     public void loadBuckets() {
         ensureActivityAttached();
-        mActivity.getSupportLoaderManager().restartLoader(BUCKET_LOADER, null, this);
+        mFolderId = FolderTree.ROOT_ID;
+        mLoaderManager.restartLoader(mOptions.isFolderTree() ? FOLDER_LOADER : BUCKET_LOADER, null, this);
     }
 
     public void loadByBucket(@IntRange(from = 0) long bucketId) {
         ensureActivityAttached();
         if (ALL_MEDIA_BUCKET_ID == bucketId) {
-            mActivity.getSupportLoaderManager().restartLoader(TIME_LOADER, null, this);
+            mLoaderManager.restartLoader(TIME_LOADER, null, this);
         } else {
             Bundle args = new Bundle();
             args.putLong(BUCKET_ID, bucketId);
-            mActivity.getSupportLoaderManager().restartLoader(MEDIA_LOADER, args, this);
+            mLoaderManager.restartLoader(MEDIA_LOADER, args, this);
+        }
+    }
+
+    private void extractPlaceholders(@Nullable Cursor data) {
+        PlaceholderIndex index = PlaceholderIndex.of(data);
+        if (index == null || !index.hasPending()) {
+            return;
         }
+        ensureActivityAttached();
+        if (mPlaceholderExtractor == null) {
+            mPlaceholderExtractor = new PlaceholderExtractor();
+        }
+        mPlaceholderExtractor.extract(index);
+    }
+
+    private void detectDuplicates(@NonNull Loader<Cursor> loader) {
+        if (mDuplicateCallbacks == null || !(loader instanceof CursorLoader)) {
+            return;
+        }
+        ensureActivityAttached();
+        if (mDuplicateDetector == null) {
+            mDuplicateDetector = new DuplicateDetector(mActivity);
+        }
+        CursorLoader cursorLoader = (CursorLoader) loader;
+        mDuplicateDetector.detect(cursorLoader.getUri(), cursorLoader.getSelection(), cursorLoader.getSortOrder(),
+                mDuplicateCallbacks);
     }
 
     /**
@@ -165,19 +343,273 @@ public class MediaLoader implements LoaderManager.LoaderCallbacks<Cursor> {
      * @return The data with "All Media" item added
      */
     private Cursor addAllMediaBucketItem(@Nullable Cursor cursor) {
-        if (cursor == null || !cursor.moveToPosition(0)) {
-            return null;
-        }
         ensureActivityAttached();
-        long id = ALL_MEDIA_BUCKET_ID;
-        String label = mActivity.getString(R.string.activity_gallery_bucket_all_media);
-        String data = cursor.getString(cursor.getColumnIndex(MediaStore.Images.Media.DATA));
-        MatrixCursor allMediaRow = new MatrixCursor(BUCKET_PROJECTION);
-        allMediaRow.newRow()
-                .add(id)
-                .add(label)
-                .add(data);
-        return new MergeCursor(new Cursor[]{allMediaRow, cursor});
+        return addAllMediaBucketItem(cursor, mActivity.getString(R.string.activity_gallery_bucket_all_media));
+    }
+
+    /**
+     * Add the places of the loaded place index after the bucket items
+     */
+    @Nullable
+    private Cursor addPlaces(@Nullable Cursor buckets) {
+        if (mPlaceIndex == null || mPlaceIndex.getPlaceCount(mOptions.getPlaces()) == 0) {
+            return buckets;
+        }
+        Cursor places = mPlaceIndex.query(mOptions.getPlaces());
+        return buckets != null ? new MergeCursor(new Cursor[]{buckets, places}) : places;
+    }
+
+    @Nullable
+    static Cursor addAllMediaBucketItem(@Nullable Cursor cursor, @NonNull String label) {
+        boolean traced = Tracer.begin("Louvre:addAllMediaBucketItem");
+        try {
+            if (cursor == null || !cursor.moveToPosition(0)) {
+                return null;
+            }
+            long id = ALL_MEDIA_BUCKET_ID;
+            String data = cursor.getString(cursor.getColumnIndex(MediaStore.Images.Media.DATA));
+            long date = cursor.getLong(cursor.getColumnIndex(DATE_TAKEN));
+            MatrixCursor allMediaRow = new MatrixCursor(BUCKET_COLUMNS);
+            allMediaRow.newRow()
+                    .add(id)
+                    .add(label)
+                    .add(data)
+                    .add(date);
+            return new MergeCursor(new Cursor[]{allMediaRow, cursor});
+        } finally {
+            Tracer.end(traced);
+        }
+    }
+
+    /**
+     * {@link CursorLoader} that merges the rows of the additional media sources into the queried ones,
+     * indexes their date sections, aspect ratios, placeholders, folders, names and places and reports the duration of its queries to the {@link Metrics}
+     */
+    private static class MediaCursorLoader extends CursorLoader {
+
+        private final int mQuery;
+        private final long mBucketId;
+        private final MediaSource[] mMediaSources;
+        private final String[] mMediaTypes;
+        @SectionIndex.Granularity
+        private final int mTimeline;
+        private final boolean mJustified;
+        private final boolean mPlaceholders;
+        private final boolean mFolders;
+        private final boolean mNameSearch;
+        @Nullable
+        private final String mPlaceSelection;
+
+        MediaCursorLoader(@NonNull Context context, int query, long bucketId, @NonNull MediaSource[] mediaSources,
+                          @NonNull GalleryOptions options, @Nullable String[] projection, @Nullable String selection,
+                          @Nullable String sortOrder) {
+            super(context, options.getMediaSourceUri() != null ? options.getMediaSourceUri() : GALLERY_URI,
+                    projection, selection, null, sortOrder);
+            mQuery = query;
+            mBucketId = bucketId;
+            mMediaSources = mediaSources;
+            mMediaTypes = options.getMediaTypeFilter();
+            // The media is indexed for the grid, and the buckets for the folders and places listed along with them
+            boolean media = query == TIME_LOADER || query == MEDIA_LOADER;
+            mTimeline = media ? options.getTimeline() : SectionIndex.NONE;
+            mJustified = media && options.isJustified();
+            mPlaceholders = media && options.isPlaceholders();
+            mFolders = query == FOLDER_LOADER;
+            mNameSearch = media && options.isNameSearch();
+            mPlaceSelection = !media && options.getPlaces() != PlaceIndex.NONE
+                    ? String.format("%s AND %s", typeFilterOf(mMediaTypes), PLACE_SELECTION) : null;
+        }
+
+        @Override
+        public Cursor loadInBackground() {
+            boolean traced = Tracer.begin("Louvre:query");
+            try {
+                boolean measure = Metrics.isEnabled();
+                long startedAt = measure ? Metrics.now() : 0;
+                // The media sources are queried concurrently with the MediaStore
+                List<FutureTask<Cursor>> sourceQueries = queryMediaSources();
+                Cursor cursor;
+                try {
+                    cursor = super.loadInBackground();
+                } catch (RuntimeException e) {
+                    closeAll(sourceQueries);
+                    throw e;
+                }
+                if (!sourceQueries.isEmpty()) {
+                    cursor = merge(cursor, awaitAll(sourceQueries));
+                }
+                PlaceIndex placeIndex = cursor != null && mPlaceSelection != null ? queryPlaces() : null;
+                if (cursor != null && (mTimeline != SectionIndex.NONE || mJustified || mPlaceholders || mFolders || mNameSearch
+                        || placeIndex != null)) {
+                    // Passes over the rows here, so the list never walks them to find its sections and rows
+                    cursor = new IndexedCursor(cursor,
+                            mTimeline != SectionIndex.NONE ? SectionIndex.build(cursor, mTimeline) : null,
+                            mJustified ? AspectIndex.build(cursor) : null,
+                            mPlaceholders ? PlaceholderIndex.build(cursor, MediaValueCache.placeholders(getContext(), getUri())) : null,
+                            mFolders ? FolderTree.build(cursor) : null,
+                            mNameSearch ? NameIndex.build(cursor) : null,
+                            placeIndex);
+                    // The indexes walked every row, so the window is moved back to the rows the list shows first
+                    if (cursor.moveToFirst()) {
+                        cursor.moveToPosition(-1);
+                    }
+                }
+                if (measure) {
+                    // CursorLoader already filled the cursor window by counting it
+                    Metrics.reportQuery(mQuery, startedAt, cursor != null ? cursor.getCount() : -1);
+                }
+                return cursor;
+            } finally {
+                Tracer.end(traced);
+            }
+        }
+
+        /**
+         * Query the coordinates of the geotagged media and cluster them, while still on the loader thread
+         */
+        @Nullable
+        private PlaceIndex queryPlaces() {
+            boolean traced = Tracer.begin("Louvre:queryPlaces");
+            Cursor cursor = null;
+            try {
+                cursor = getContext().getContentResolver().query(getUri(), PLACE_PROJECTION, mPlaceSelection, null,
+                        MEDIA_SORT_ORDER);
+                return cursor != null ? PlaceIndex.build(cursor) : null;
+            } catch (IllegalArgumentException e) {
+                // A source Uri without the location columns
+                Log.w(TAG, "Unable to query the places", e);
+                return null;
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+                Tracer.end(traced);
+            }
+        }
+
+        @NonNull
+        private List<FutureTask<Cursor>> queryMediaSources() {
+            List<FutureTask<Cursor>> queries = new ArrayList<>(mMediaSources.length);
+            for (final MediaSource mediaSource : mMediaSources) {
+                FutureTask<Cursor> query = new FutureTask<>(new Callable<Cursor>() {
+                    @Override
+                    public Cursor call() {
+                        return mQuery == BUCKET_LOADER
+                                ? mediaSource.queryBuckets(mMediaTypes)
+                                : mediaSource.queryMedia(mBucketId, mMediaTypes);
+                    }
+                });
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(query);
+                queries.add(query);
+            }
+            return queries;
+        }
+
+        /**
+         * Wait for the media source queries, leaving out the failed ones
+         */
+        @NonNull
+        private static List<Cursor> awaitAll(@NonNull List<FutureTask<Cursor>> queries) {
+            List<Cursor> cursors = new ArrayList<>(queries.size());
+            for (FutureTask<Cursor> query : queries) {
+                try {
+                    Cursor cursor = query.get();
+                    if (cursor != null) {
+                        cursors.add(cursor);
+                    }
+                } catch (ExecutionException e) {
+                    Log.w(TAG, "Unable to query a media source", e.getCause());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    for (Cursor cursor : cursors) {
+                        cursor.close();
+                    }
+                    closeAll(queries);
+                    throw new OperationCanceledException();
+                }
+            }
+            return cursors;
+        }
+
+        private static void closeAll(@NonNull List<FutureTask<Cursor>> queries) {
+            for (FutureTask<Cursor> query : queries) {
+                if (!query.cancel(true) && query.isDone()) {
+                    try {
+                        Cursor cursor = query.get();
+                        if (cursor != null) {
+                            cursor.close();
+                        }
+                    } catch (ExecutionException | InterruptedException e) {
+                        // Nothing to close
+                    }
+                }
+            }
+        }
+
+        /**
+         * Merge the media source rows into the queried ones, in date order
+         */
+        @Nullable
+        private Cursor merge(@Nullable Cursor cursor, @NonNull List<Cursor> sourceCursors) {
+            List<Cursor> cursors = new ArrayList<>(sourceCursors.size() + 1);
+            if (cursor != null) {
+                cursors.add(cursor);
+            }
+            if (mQuery == BUCKET_LOADER) {
+                if (!sourceCursors.isEmpty()) {
+                    Cursor buckets = mergeNewBuckets(cursor, sourceCursors);
+                    if (buckets.getCount() > 0) {
+                        cursors.add(buckets);
+                    } else {
+                        buckets.close();
+                    }
+                }
+            } else {
+                cursors.addAll(sourceCursors);
+            }
+            if (cursors.isEmpty()) {
+                return null;
+            }
+            if (cursors.size() == 1) {
+                return cursors.get(0);
+            }
+            return new SortedMergeCursor(cursors.toArray(new Cursor[cursors.size()]), DATE_TAKEN);
+        }
+
+        /**
+         * Merge the buckets of the media sources in date order, leaving out the ones already queried, which have their media merged.
+         * The queried cursor is kept as is, since the loader observes it for changes.
+         */
+        @NonNull
+        private static Cursor mergeNewBuckets(@Nullable Cursor cursor, @NonNull List<Cursor> sourceCursors) {
+            Set<Long> bucketIds = new HashSet<>();
+            if (cursor != null) {
+                int column = cursor.getColumnIndex(BUCKET_ID);
+                for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+                    bucketIds.add(cursor.getLong(column));
+                }
+            }
+            MatrixCursor newBuckets = new MatrixCursor(BUCKET_COLUMNS);
+            Cursor buckets = new SortedMergeCursor(sourceCursors.toArray(new Cursor[sourceCursors.size()]), DATE_TAKEN);
+            try {
+                int id = buckets.getColumnIndex(BUCKET_ID);
+                int label = buckets.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME);
+                int data = buckets.getColumnIndex(MediaStore.Images.ImageColumns.DATA);
+                int date = buckets.getColumnIndex(DATE_TAKEN);
+                while (buckets.moveToNext()) {
+                    if (bucketIds.add(buckets.getLong(id))) {
+                        newBuckets.newRow()
+                                .add(buckets.getLong(id))
+                                .add(buckets.getString(label))
+                                .add(buckets.getString(data))
+                                .add(buckets.getLong(date));
+                    }
+                }
+            } finally {
+                buckets.close();
+            }
+            return newBuckets;
+        }
     }
 
 }
@@ -0,0 +1,524 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.annotation.TargetApi;
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.ContentObserver;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.OperationCanceledException;
+import android.provider.MediaStore;
+import android.support.annotation.IntRange;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.andremion.louvre.GalleryOptions;
+import com.andremion.louvre.util.BackgroundThreadFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static com.andremion.louvre.data.MediaQuery.BUCKET_PROJECTION;
+import static com.andremion.louvre.data.MediaQuery.BUCKET_SELECTION;
+import static com.andremion.louvre.data.MediaQuery.BUCKET_SORT_ORDER;
+import static com.andremion.louvre.data.MediaQuery.GALLERY_URI;
+import static com.andremion.louvre.data.MediaQuery.IMAGE_PROJECTION;
+import static com.andremion.louvre.data.MediaQuery.mediaSelectionOf;
+import static com.andremion.louvre.data.MediaQuery.typeFilterOf;
+
+/**
+ * Headless access to the media the picker lists, streamed page by page in its sort order, newest first.
+ * <p>
+ * Nothing is queried until the subscriber requests pages, and every page is a query of its own run in
+ * background after the previous one, so no cursor is held between pages. The media is paged by date and id
+ * instead of by offset, so the pages don't shift when media is added in front of them. While subscribed,
+ * the changes of the media invalidate the stream and the next request starts over from the first page.
+ * <p>
+ * The media is read from the MediaStore, or from the {@link GalleryOptions#getMediaSourceUri() content Uri} set as
+ * source, which is queried and observed the same way. The {@link MediaSource}s added to a {@link MediaLoader} are not
+ * merged into the stream, since they can't be paged by date and id.
+ * <p>
+ * All the calls and callbacks are made on the main thread.
+ */
+public abstract class MediaPublisher<T> {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    // The MediaStore changes come in bursts while it scans, so they are told once the burst is over
+    private static final long CHANGE_DELAY = 500;
+    private static final long NO_ID = -1;
+    // Build.VERSION_CODES.Q, from which the limit is not taken in the sort order anymore
+    private static final int QUERY_ARGS_VERSION = 29;
+
+    private static ExecutorService sExecutor;
+
+    public interface Subscriber<T> {
+
+        /**
+         * Called first, with the subscription to request the pages through
+         */
+        void onSubscribe(@NonNull Subscription subscription);
+
+        /**
+         * Called with the next page, once per requested page at most
+         */
+        void onNext(@NonNull List<T> page);
+
+        /**
+         * Called after the last page. The subscription is kept to tell about the changes until it is cancelled.
+         */
+        void onComplete();
+
+        /**
+         * Called when the media has changed. The pages requested so far are dropped and
+         * the next request starts over from the first page.
+         */
+        void onInvalidated();
+
+        /**
+         * Called when a query fails, like when the storage permission is missing. The subscription is cancelled.
+         */
+        void onError(@NonNull Throwable error);
+    }
+
+    public interface Subscription {
+
+        /**
+         * Request the given number of pages more
+         */
+        void request(@IntRange(from = 1) long pages);
+
+        /**
+         * Stop the stream, cancel the running query and stop observing the media
+         */
+        void cancel();
+    }
+
+    /**
+     * @param bucketId   The bucket or place to stream, or {@link MediaSource#ALL_MEDIA_BUCKET_ID}
+     * @param mediaTypes The mime types to filter the media with, or none for all of them
+     */
+    @NonNull
+    public static MediaPublisher<MediaItem> media(@NonNull Context context, long bucketId, @NonNull String... mediaTypes) {
+        return media(context, bucketId, new GalleryOptions.Builder().setMediaTypeFilter(mediaTypes).build());
+    }
+
+    /**
+     * @param bucketId The bucket or place to stream, or {@link MediaSource#ALL_MEDIA_BUCKET_ID}
+     * @param options  The options to take the source Uri and the media type filter from
+     */
+    @NonNull
+    public static MediaPublisher<MediaItem> media(@NonNull Context context, long bucketId, @NonNull GalleryOptions options) {
+        final String selection = mediaSelectionOf(bucketId, typeFilterOf(options.getMediaTypeFilter()));
+        return new MediaPublisher<MediaItem>(context, options) {
+            @Override
+            PageSource<MediaItem> newSource(@NonNull Uri uri) {
+                return new MediaPageSource(uri, selection);
+            }
+        };
+    }
+
+    /**
+     * @param mediaTypes The mime types to filter the media with, or none for all of them
+     */
+    @NonNull
+    public static MediaPublisher<MediaBucket> buckets(@NonNull Context context, @NonNull String... mediaTypes) {
+        return buckets(context, new GalleryOptions.Builder().setMediaTypeFilter(mediaTypes).build());
+    }
+
+    /**
+     * @param options The options to take the source Uri and the media type filter from
+     */
+    @NonNull
+    public static MediaPublisher<MediaBucket> buckets(@NonNull Context context, @NonNull GalleryOptions options) {
+        final String selection = String.format("%s AND %s", typeFilterOf(options.getMediaTypeFilter()), BUCKET_SELECTION);
+        return new MediaPublisher<MediaBucket>(context, options) {
+            @Override
+            PageSource<MediaBucket> newSource(@NonNull Uri uri) {
+                return new BucketPageSource(uri, selection);
+            }
+        };
+    }
+
+    private final Context mContext;
+    private final Handler mHandler;
+    private final Uri mUri;
+    private int mPageSize = DEFAULT_PAGE_SIZE;
+
+    private MediaPublisher(@NonNull Context context, @NonNull GalleryOptions options) {
+        mContext = context.getApplicationContext();
+        mHandler = new Handler(Looper.getMainLooper());
+        mUri = options.getMediaSourceUri() != null ? options.getMediaSourceUri() : GALLERY_URI;
+    }
+
+    /**
+     * Set the max number of items of every page. The default is {@link #DEFAULT_PAGE_SIZE}.
+     */
+    @NonNull
+    public MediaPublisher<T> setPageSize(@IntRange(from = 1) int pageSize) {
+        if (pageSize < 1) {
+            throw new IllegalArgumentException("The page size must be positive");
+        }
+        mPageSize = pageSize;
+        return this;
+    }
+
+    /**
+     * Start a new stream for the given subscriber. Every subscription streams the media on its own.
+     */
+    @MainThread
+    public void subscribe(@NonNull Subscriber<T> subscriber) {
+        MediaSubscription subscription = new MediaSubscription(subscriber, newSource(mUri), mPageSize);
+        subscriber.onSubscribe(subscription);
+        subscription.observe();
+    }
+
+    abstract PageSource<T> newSource(@NonNull Uri uri);
+
+    private static synchronized ExecutorService getExecutor() {
+        // A single thread, so the pages of every stream are queried one after the other
+        if (sExecutor == null) {
+            sExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory(MediaPublisher.class.getSimpleName()));
+        }
+        return sExecutor;
+    }
+
+    private class MediaSubscription implements Subscription {
+
+        private final Subscriber<T> mSubscriber;
+        private final PageSource<T> mSource;
+        private final int mPageSize;
+        private final ContentObserver mObserver;
+        private final Runnable mInvalidate = new Runnable() {
+            @Override
+            public void run() {
+                invalidate();
+            }
+        };
+        private long mDemand;
+        // Bumped on every invalidation, so the pages queried before it are dropped
+        private int mGeneration;
+        @Nullable
+        private CancellationSignal mSignal;
+        private boolean mObserving;
+        private boolean mComplete;
+        private boolean mCancelled;
+
+        MediaSubscription(@NonNull Subscriber<T> subscriber, @NonNull PageSource<T> source, int pageSize) {
+            mSubscriber = subscriber;
+            mSource = source;
+            mPageSize = pageSize;
+            mObserver = new ContentObserver(mHandler) {
+                @Override
+                public void onChange(boolean selfChange) {
+                    mHandler.removeCallbacks(mInvalidate);
+                    mHandler.postDelayed(mInvalidate, CHANGE_DELAY);
+                }
+            };
+        }
+
+        void observe() {
+            if (!mCancelled) {
+                mContext.getContentResolver().registerContentObserver(mUri, true, mObserver);
+                mObserving = true;
+            }
+        }
+
+        @Override
+        public void request(long pages) {
+            if (mCancelled) {
+                return;
+            }
+            if (pages < 1) {
+                cancel();
+                mSubscriber.onError(new IllegalArgumentException("The number of pages must be positive"));
+                return;
+            }
+            // Saturate rather than overflow, Long.MAX_VALUE means all the pages
+            mDemand = mDemand + pages < 0 ? Long.MAX_VALUE : mDemand + pages;
+            queryNext();
+        }
+
+        @Override
+        public void cancel() {
+            if (mCancelled) {
+                return;
+            }
+            mCancelled = true;
+            cancelQuery();
+            mHandler.removeCallbacks(mInvalidate);
+            if (mObserving) {
+                mContext.getContentResolver().unregisterContentObserver(mObserver);
+                mObserving = false;
+            }
+        }
+
+        private void queryNext() {
+            if (mCancelled || mComplete || mSignal != null || mDemand == 0) {
+                return;
+            }
+            final int generation = mGeneration;
+            final CancellationSignal signal = new CancellationSignal();
+            final ContentResolver resolver = mContext.getContentResolver();
+            mSignal = signal;
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    List<T> page = null;
+                    Throwable error = null;
+                    try {
+                        page = mSource.next(resolver, mPageSize, signal);
+                    } catch (OperationCanceledException e) {
+                        // Invalidated or cancelled, nothing to tell
+                    } catch (RuntimeException e) {
+                        error = e;
+                    }
+                    final List<T> result = page;
+                    final Throwable failure = error;
+                    final boolean exhausted = mSource.isExhausted();
+                    mHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            onQueried(generation, signal, result, exhausted, failure);
+                        }
+                    });
+                }
+            });
+        }
+
+        private void onQueried(int generation, @NonNull CancellationSignal signal, @Nullable List<T> page, boolean exhausted, @Nullable Throwable error) {
+            if (mCancelled || generation != mGeneration) {
+                return;
+            }
+            if (mSignal == signal) {
+                mSignal = null;
+            }
+            if (error != null) {
+                cancel();
+                mSubscriber.onError(error);
+                return;
+            }
+            if (page == null) {
+                return;
+            }
+            if (!page.isEmpty()) {
+                mDemand--;
+                mSubscriber.onNext(page);
+            }
+            if (exhausted) {
+                mComplete = true;
+                if (!mCancelled) {
+                    mSubscriber.onComplete();
+                }
+            } else {
+                queryNext();
+            }
+        }
+
+        private void invalidate() {
+            if (mCancelled) {
+                return;
+            }
+            mGeneration++;
+            mDemand = 0;
+            mComplete = false;
+            cancelQuery();
+            // Queued after the running query, so the next page is queried from the start
+            getExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    mSource.reset();
+                }
+            });
+            mSubscriber.onInvalidated();
+        }
+
+        private void cancelQuery() {
+            if (mSignal != null) {
+                mSignal.cancel();
+                mSignal = null;
+            }
+        }
+    }
+
+    /**
+     * The query state of a stream, only touched by the background thread
+     */
+    abstract static class PageSource<T> {
+
+        final Uri mUri;
+        boolean mExhausted;
+
+        PageSource(@NonNull Uri uri) {
+            mUri = uri;
+        }
+
+        @WorkerThread
+        @NonNull
+        abstract List<T> next(@NonNull ContentResolver resolver, int pageSize, @NonNull CancellationSignal signal);
+
+        @WorkerThread
+        abstract void reset();
+
+        @WorkerThread
+        boolean isExhausted() {
+            return mExhausted;
+        }
+    }
+
+    static class MediaPageSource extends PageSource<MediaItem> {
+
+        // The media without date is sorted as the oldest one, the same as the picker does
+        private static final String DATE = "IFNULL(" + MediaStore.Images.ImageColumns.DATE_TAKEN + ",0)";
+        private static final String ID = MediaStore.Images.ImageColumns._ID;
+        private static final String SORT_ORDER = DATE + " DESC," + ID + " DESC";
+        // The arguments are bound as text, which an expression without affinity, like DATE, never equals
+        private static final String AFTER = DATE + "<CAST(? AS INTEGER) OR (" + DATE + "=CAST(? AS INTEGER) AND "
+                + ID + "<CAST(? AS INTEGER))";
+
+        private final String mSelection;
+        private long mLastDate;
+        private long mLastId = NO_ID;
+
+        MediaPageSource(@NonNull Uri uri, @NonNull String selection) {
+            super(uri);
+            mSelection = selection;
+        }
+
+        @NonNull
+        @Override
+        List<MediaItem> next(@NonNull ContentResolver resolver, int pageSize, @NonNull CancellationSignal signal) {
+            String selection = mSelection;
+            String[] selectionArgs = null;
+            if (mLastId != NO_ID) {
+                // Continue right after the last item instead of skipping an offset
+                selection = String.format("(%s) AND (%s)", mSelection, AFTER);
+                String date = String.valueOf(mLastDate);
+                selectionArgs = new String[]{date, date, String.valueOf(mLastId)};
+            }
+            List<MediaItem> page = new ArrayList<>();
+            Cursor cursor = query(resolver, mUri, IMAGE_PROJECTION, selection, selectionArgs, SORT_ORDER, pageSize, signal);
+            if (cursor != null) {
+                try {
+                    while (page.size() < pageSize && cursor.moveToNext()) {
+                        page.add(new MediaItem(cursor));
+                    }
+                } finally {
+                    cursor.close();
+                }
+            }
+            if (!page.isEmpty()) {
+                MediaItem last = page.get(page.size() - 1);
+                mLastDate = last.getDateTaken();
+                mLastId = last.getId();
+            }
+            mExhausted = page.size() < pageSize;
+            return page;
+        }
+
+        @Override
+        void reset() {
+            mLastDate = 0;
+            mLastId = NO_ID;
+            mExhausted = false;
+        }
+    }
+
+    private static class BucketPageSource extends PageSource<MediaBucket> {
+
+        private final String mSelection;
+        // The buckets are few, so they are all read by the first page and handed out from memory
+        @Nullable
+        private List<MediaBucket> mBuckets;
+        private int mPosition;
+
+        BucketPageSource(@NonNull Uri uri, @NonNull String selection) {
+            super(uri);
+            mSelection = selection;
+        }
+
+        @NonNull
+        @Override
+        List<MediaBucket> next(@NonNull ContentResolver resolver, int pageSize, @NonNull CancellationSignal signal) {
+            if (mBuckets == null) {
+                mBuckets = queryBuckets(resolver, signal);
+            }
+            int end = Math.min(mPosition + pageSize, mBuckets.size());
+            List<MediaBucket> page = new ArrayList<>(mBuckets.subList(mPosition, end));
+            mPosition = end;
+            mExhausted = end == mBuckets.size();
+            return page;
+        }
+
+        @NonNull
+        private List<MediaBucket> queryBuckets(@NonNull ContentResolver resolver, @NonNull CancellationSignal signal) {
+            Cursor cursor = resolver.query(mUri, BUCKET_PROJECTION, mSelection, null, BUCKET_SORT_ORDER, signal);
+            if (cursor == null) {
+                return Collections.emptyList();
+            }
+            try {
+                List<MediaBucket> buckets = new ArrayList<>(cursor.getCount());
+                while (cursor.moveToNext()) {
+                    buckets.add(new MediaBucket(cursor));
+                }
+                return buckets;
+            } finally {
+                cursor.close();
+            }
+        }
+
+        @Override
+        void reset() {
+            mBuckets = null;
+            mPosition = 0;
+            mExhausted = false;
+        }
+    }
+
+    @Nullable
+    private static Cursor query(@NonNull ContentResolver resolver, @NonNull Uri uri, @NonNull String[] projection, @NonNull String selection,
+                                @Nullable String[] selectionArgs, @NonNull String sortOrder, int limit, @NonNull CancellationSignal signal) {
+        if (Build.VERSION.SDK_INT >= QUERY_ARGS_VERSION) {
+            return queryWithArgs(resolver, uri, projection, selection, selectionArgs, sortOrder, limit, signal);
+        }
+        return resolver.query(uri, projection, selection, selectionArgs, sortOrder + " LIMIT " + limit, signal);
+    }
+
+    @TargetApi(Build.VERSION_CODES.O)
+    @Nullable
+    private static Cursor queryWithArgs(@NonNull ContentResolver resolver, @NonNull Uri uri, @NonNull String[] projection, @NonNull String selection,
+                                        @Nullable String[] selectionArgs, @NonNull String sortOrder, int limit, @NonNull CancellationSignal signal) {
+        Bundle args = new Bundle();
+        args.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, selection);
+        args.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, selectionArgs);
+        args.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+        args.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+        return resolver.query(uri, projection, args, signal);
+    }
+
+}
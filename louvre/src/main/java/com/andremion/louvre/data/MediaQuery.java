@@ -18,9 +18,10 @@ package com.andremion.louvre.data;
 
 import android.net.Uri;
 import android.provider.MediaStore;
+import android.support.annotation.NonNull;
 
 /**
- * Helper class used by {@link MediaLoader}
+ * Helper class used by {@link MediaLoader} and {@link MediaPublisher}
  */
 class MediaQuery {
 
@@ -33,20 +34,57 @@ class MediaQuery {
             MediaStore.Images.ImageColumns._ID,
             MediaStore.Images.ImageColumns.BUCKET_ID,
             MediaStore.Images.ImageColumns.DISPLAY_NAME,
-            MediaStore.Images.ImageColumns.DATA
+            MediaStore.Images.ImageColumns.DATA,
+            MediaStore.Images.ImageColumns.DATE_MODIFIED,
+            MediaStore.Images.ImageColumns.DATE_TAKEN,
+            MediaStore.Images.ImageColumns.WIDTH,
+            MediaStore.Images.ImageColumns.HEIGHT,
+            MediaStore.Images.ImageColumns.ORIENTATION
     };
     static final String[] ALL_IMAGE_PROJECTION = {
             MediaStore.Images.ImageColumns._ID,
             MediaLoader.ALL_MEDIA_BUCKET_ID + " AS " + MediaStore.Images.ImageColumns.BUCKET_ID,
             MediaStore.Images.ImageColumns.DISPLAY_NAME,
-            MediaStore.Images.ImageColumns.DATA
+            MediaStore.Images.ImageColumns.DATA,
+            MediaStore.Images.ImageColumns.DATE_MODIFIED,
+            MediaStore.Images.ImageColumns.DATE_TAKEN,
+            MediaStore.Images.ImageColumns.WIDTH,
+            MediaStore.Images.ImageColumns.HEIGHT,
+            MediaStore.Images.ImageColumns.ORIENTATION
     };
     static final String MEDIA_SORT_ORDER = MediaStore.Images.Media.DATE_TAKEN + " DESC";
 
+    static final String[] HASH_PROJECTION = {
+            MediaStore.Images.ImageColumns._ID,
+            MediaStore.Images.ImageColumns.DATE_MODIFIED,
+            MediaStore.Images.ImageColumns.DATA
+    };
+
+    static final String[] PLACE_PROJECTION = {
+            MediaStore.Images.ImageColumns._ID,
+            MediaStore.Images.ImageColumns.DATA,
+            MediaStore.Images.ImageColumns.DATE_TAKEN,
+            MediaStore.Images.ImageColumns.LATITUDE,
+            MediaStore.Images.ImageColumns.LONGITUDE
+    };
+    // Null Island is what some cameras write when they have no fix
+    static final String PLACE_SELECTION = MediaStore.Images.ImageColumns.LATITUDE + " IS NOT NULL AND "
+            + MediaStore.Images.ImageColumns.LONGITUDE + " IS NOT NULL AND NOT ("
+            + MediaStore.Images.ImageColumns.LATITUDE + "=0 AND " + MediaStore.Images.ImageColumns.LONGITUDE + "=0)";
+
+    // The date of a bucket is the one of its newest media, which the grouped row is also taken from
     static final String[] BUCKET_PROJECTION = {
             MediaStore.Images.ImageColumns.BUCKET_ID,
             MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME,
-            MediaStore.Images.ImageColumns.DATA
+            MediaStore.Images.ImageColumns.DATA,
+            "MAX(" + MediaStore.Images.ImageColumns.DATE_TAKEN + ") AS " + MediaStore.Images.ImageColumns.DATE_TAKEN
+    };
+    // The columns of the bucket rows, to build them by hand
+    static final String[] BUCKET_COLUMNS = {
+            MediaStore.Images.ImageColumns.BUCKET_ID,
+            MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME,
+            MediaStore.Images.ImageColumns.DATA,
+            MediaStore.Images.ImageColumns.DATE_TAKEN
     };
     // The template for "WHERE" parameter is like:
     //    SELECT ... FROM ... WHERE (%s)
@@ -60,4 +98,33 @@ class MediaQuery {
     static final String BUCKET_SELECTION = "1) GROUP BY (1";
     static final String BUCKET_SORT_ORDER = "MAX(" + MediaStore.Images.Media.DATE_TAKEN + ") DESC";
 
+    /**
+     * @return The selection of the given mime types, or "1", which means all media types, if there is none
+     */
+    static String typeFilterOf(@NonNull String[] mediaTypes) {
+        StringBuilder filter = new StringBuilder();
+        for (String type : mediaTypes) {
+            if (filter.length() > 0) {
+                filter.append(",");
+            }
+            filter.append(String.format("'%s'", type));
+        }
+        if (filter.length() > 0) {
+            return MediaStore.Images.ImageColumns.MIME_TYPE + " IN (" + filter + ")";
+        }
+        return "1";
+    }
+
+    /**
+     * @return The selection of the media of the given bucket or place
+     */
+    static String mediaSelectionOf(long bucketId, @NonNull String typeFilter) {
+        if (MediaLoader.ALL_MEDIA_BUCKET_ID == bucketId) {
+            return typeFilter;
+        }
+        return PlaceIndex.isPlace(bucketId)
+                ? String.format("%s AND %s", PlaceIndex.selectionOf(bucketId), typeFilter)
+                : String.format("%s=%s AND %s", MediaStore.Images.Media.BUCKET_ID, bucketId, typeFilter);
+    }
+
 }
@@ -0,0 +1,64 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Additional source of media for {@link MediaLoader}, queried concurrently with the MediaStore and merged
+ * into its rows in date order.
+ * <p>
+ * The cursors must provide the same snapshot format as the MediaStore queries:
+ * <ul>
+ * <li>Buckets: {@link MediaStore.Images.ImageColumns#BUCKET_ID}, {@link MediaStore.Images.ImageColumns#BUCKET_DISPLAY_NAME},
+ * and the {@link MediaStore.Images.ImageColumns#DATA} and {@link MediaStore.Images.ImageColumns#DATE_TAKEN} of the newest image,
+ * one row per bucket, newest bucket first.
+ * A bucket with the id of a MediaStore bucket is merged into it.</li>
+ * <li>Media: {@link MediaStore.Images.ImageColumns#_ID}, {@link MediaStore.Images.ImageColumns#BUCKET_ID},
+ * {@link MediaStore.Images.ImageColumns#DISPLAY_NAME}, {@link MediaStore.Images.ImageColumns#DATA},
+ * {@link MediaStore.Images.ImageColumns#DATE_MODIFIED} and {@link MediaStore.Images.ImageColumns#DATE_TAKEN},
+ * sorted by {@link MediaStore.Images.ImageColumns#DATE_TAKEN}, newest first. The ids must not clash with the MediaStore ones,
+ * so negative ids are recommended, and the bucket id column holds the requested bucket id.</li>
+ * </ul>
+ */
+public interface MediaSource {
+
+    /**
+     * The bucket id that stands for the media of all buckets
+     */
+    long ALL_MEDIA_BUCKET_ID = MediaLoader.ALL_MEDIA_BUCKET_ID;
+
+    /**
+     * @param mediaTypes The MIME types to include, or empty to include all of them
+     */
+    @WorkerThread
+    @Nullable
+    Cursor queryBuckets(@NonNull String[] mediaTypes);
+
+    /**
+     * @param bucketId   The bucket to query, or {@link #ALL_MEDIA_BUCKET_ID}
+     * @param mediaTypes The MIME types to include, or empty to include all of them
+     */
+    @WorkerThread
+    @Nullable
+    Cursor queryMedia(long bucketId, @NonNull String[] mediaTypes);
+
+}
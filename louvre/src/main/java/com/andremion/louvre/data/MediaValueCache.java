@@ -0,0 +1,407 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import com.andremion.louvre.util.MemoryPolicy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static com.andremion.louvre.data.MediaQuery.GALLERY_URI;
+
+/**
+ * Incremental on-disk cache of 64-bit values computed from the media, like the {@link PerceptualHash}es,
+ * keyed by media id and modification date. The ids are only unique within a source, so every source
+ * other than the MediaStore has a cache file of its own.
+ * <p>
+ * The file is a log of fixed size records appended as values are computed. It is read once into memory
+ * and rewritten only when the outdated records take more room than the live ones. The memory copy is
+ * kept in primitive arrays sorted by id, with the recent values kept apart and merged into them a batch
+ * at a time. It is released when the {@link MemoryPolicy} sheds its snapshots and read again on the next look up.
+ */
+class MediaValueCache implements MemoryPolicy.Releasable {
+
+    private static final String TAG = MediaValueCache.class.getSimpleName();
+    private static final String HASHES_FILE_NAME = "louvre-hashes";
+    private static final String PLACEHOLDERS_FILE_NAME = "louvre-placeholders";
+    private static final String FILE_EXTENSION = ".bin";
+    private static final int RECORD_SIZE = 3 * 8;
+    private static final int RECENT_CAPACITY = 64;
+    private static final long[] EMPTY = new long[0];
+
+    private static final Map<String, MediaValueCache> sCaches = new HashMap<>();
+
+    /**
+     * @return The cache of the {@link PerceptualHash}es of the media of the given source
+     */
+    static MediaValueCache hashes(@NonNull Context context, @NonNull Uri source) {
+        return get(context, HASHES_FILE_NAME, source);
+    }
+
+    /**
+     * @return The cache of the {@link PlaceholderIndex} values of the media of the given source
+     */
+    static MediaValueCache placeholders(@NonNull Context context, @NonNull Uri source) {
+        return get(context, PLACEHOLDERS_FILE_NAME, source);
+    }
+
+    @NonNull
+    private static synchronized MediaValueCache get(@NonNull Context context, @NonNull String name, @NonNull Uri source) {
+        String fileName = GALLERY_URI.equals(source)
+                ? name + FILE_EXTENSION
+                : name + "-" + Integer.toHexString(source.toString().hashCode()) + FILE_EXTENSION;
+        MediaValueCache cache = sCaches.get(fileName);
+        if (cache == null) {
+            cache = new MediaValueCache(new File(context.getApplicationContext().getCacheDir(), fileName));
+            MemoryPolicy.get(context).register(cache);
+            sCaches.put(fileName, cache);
+        }
+        return cache;
+    }
+
+    private final File mFile;
+    // Sorted by id
+    private long[] mIds = EMPTY;
+    private long[] mDates = EMPTY;
+    private long[] mValues = EMPTY;
+    private int mSize;
+    // Not sorted, the newest last
+    private final long[] mRecentIds = new long[RECENT_CAPACITY];
+    private final long[] mRecentDates = new long[RECENT_CAPACITY];
+    private final long[] mRecentValues = new long[RECENT_CAPACITY];
+    private final boolean[] mRecentKnown = new boolean[RECENT_CAPACITY];
+    private int mRecentSize;
+    private DataOutputStream mOutput;
+    private boolean mLoaded;
+
+    MediaValueCache(@NonNull File file) {
+        mFile = file;
+    }
+
+    /**
+     * Look up the value of the given media.
+     *
+     * @return If there is a value for this exact version of the media, written into {@code out[index]}
+     */
+    @WorkerThread
+    synchronized boolean get(long id, long dateModified, @NonNull long[] out, int index) {
+        ensureLoaded();
+        for (int i = mRecentSize - 1; i >= 0; i--) {
+            if (mRecentIds[i] == id) {
+                return read(mRecentDates[i], mRecentValues[i], dateModified, out, index);
+            }
+        }
+        int i = Arrays.binarySearch(mIds, 0, mSize, id);
+        return i >= 0 && read(mDates[i], mValues[i], dateModified, out, index);
+    }
+
+    private static boolean read(long date, long value, long dateModified, @NonNull long[] out, int index) {
+        if (date != dateModified) {
+            return false;
+        }
+        out[index] = value;
+        return true;
+    }
+
+    @WorkerThread
+    synchronized void put(long id, long dateModified, long value) {
+        ensureLoaded();
+        if (mRecentSize == RECENT_CAPACITY) {
+            mergeRecent();
+        }
+        mRecentIds[mRecentSize] = id;
+        mRecentDates[mRecentSize] = dateModified;
+        mRecentValues[mRecentSize] = value;
+        mRecentSize++;
+        try {
+            if (mOutput == null) {
+                mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mFile, true)));
+            }
+            mOutput.writeLong(id);
+            mOutput.writeLong(dateModified);
+            mOutput.writeLong(value);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mFile, e);
+        }
+    }
+
+    @WorkerThread
+    synchronized void flush() {
+        if (mOutput != null) {
+            try {
+                mOutput.flush();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write " + mFile, e);
+            }
+        }
+    }
+
+    /**
+     * @return The count of media with a value
+     */
+    @WorkerThread
+    synchronized int size() {
+        ensureLoaded();
+        mergeRecent();
+        return mSize;
+    }
+
+    @Override
+    public synchronized void releaseMemory() {
+        // Closed, so the next load can rewrite the file without the appends going to the replaced one
+        closeOutput();
+        mIds = EMPTY;
+        mDates = EMPTY;
+        mValues = EMPTY;
+        mSize = 0;
+        mRecentSize = 0;
+        mLoaded = false;
+    }
+
+    private void closeOutput() {
+        if (mOutput != null) {
+            try {
+                mOutput.close();
+            } catch (IOException e) {
+                Log.w(TAG, "Unable to write " + mFile, e);
+            }
+            mOutput = null;
+        }
+    }
+
+    /**
+     * Merge the recent values into the sorted ones, in place from the end
+     */
+    private void mergeRecent() {
+        if (mRecentSize == 0) {
+            return;
+        }
+        // A stable insertion sort of the few recent values, keeping just the newest value of every id
+        int count = 0;
+        for (int i = 0; i < mRecentSize; i++) {
+            long id = mRecentIds[i];
+            long date = mRecentDates[i];
+            long value = mRecentValues[i];
+            int j = count - 1;
+            while (j >= 0 && mRecentIds[j] > id) {
+                j--;
+            }
+            if (j >= 0 && mRecentIds[j] == id) {
+                mRecentDates[j] = date;
+                mRecentValues[j] = value;
+                continue;
+            }
+            System.arraycopy(mRecentIds, j + 1, mRecentIds, j + 2, count - j - 1);
+            System.arraycopy(mRecentDates, j + 1, mRecentDates, j + 2, count - j - 1);
+            System.arraycopy(mRecentValues, j + 1, mRecentValues, j + 2, count - j - 1);
+            mRecentIds[j + 1] = id;
+            mRecentDates[j + 1] = date;
+            mRecentValues[j + 1] = value;
+            count++;
+        }
+        mRecentSize = 0;
+        // The known ids are just updated, the new ones are merged from the end
+        int added = 0;
+        for (int i = 0; i < count; i++) {
+            int position = Arrays.binarySearch(mIds, 0, mSize, mRecentIds[i]);
+            mRecentKnown[i] = position >= 0;
+            if (mRecentKnown[i]) {
+                mDates[position] = mRecentDates[i];
+                mValues[position] = mRecentValues[i];
+            } else {
+                added++;
+            }
+        }
+        if (added == 0) {
+            return;
+        }
+        ensureCapacity(mSize + added);
+        int i = mSize - 1;
+        int k = mSize + added - 1;
+        for (int j = count - 1; j >= 0; j--) {
+            if (mRecentKnown[j]) {
+                continue;
+            }
+            while (i >= 0 && mIds[i] > mRecentIds[j]) {
+                mIds[k] = mIds[i];
+                mDates[k] = mDates[i];
+                mValues[k] = mValues[i];
+                i--;
+                k--;
+            }
+            mIds[k] = mRecentIds[j];
+            mDates[k] = mRecentDates[j];
+            mValues[k] = mRecentValues[j];
+            k--;
+        }
+        mSize += added;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > mIds.length) {
+            int length = Math.max(capacity, mIds.length + (mIds.length >> 1));
+            mIds = Arrays.copyOf(mIds, length);
+            mDates = Arrays.copyOf(mDates, length);
+            mValues = Arrays.copyOf(mValues, length);
+        }
+    }
+
+    private void ensureLoaded() {
+        if (mLoaded) {
+            return;
+        }
+        mLoaded = true;
+        if (!mFile.exists()) {
+            return;
+        }
+        int capacity = (int) Math.min(Integer.MAX_VALUE, mFile.length() / RECORD_SIZE);
+        long[] ids = new long[capacity];
+        long[] dates = new long[capacity];
+        long[] values = new long[capacity];
+        int records = 0;
+        DataInputStream input = null;
+        try {
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mFile)));
+            while (records < capacity) {
+                ids[records] = input.readLong();
+                dates[records] = input.readLong();
+                values[records] = input.readLong();
+                records++;
+            }
+        } catch (EOFException e) {
+            // Done. A partially written record at the end is just ignored.
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + mFile, e);
+        } finally {
+            closeQuietly(input);
+        }
+        load(ids, dates, values, records);
+        // Rewrite when mostly outdated or when the last write was interrupted in the middle of a record
+        if (records > mSize * 2 || mFile.length() != (long) records * RECORD_SIZE) {
+            compact();
+        }
+    }
+
+    /**
+     * Sort the records read from the log by id, keeping the last record of every id
+     */
+    private void load(@NonNull long[] ids, @NonNull long[] dates, @NonNull long[] values, int records) {
+        int[] order = sortedOrder(ids, records);
+        mIds = new long[records];
+        mDates = new long[records];
+        mValues = new long[records];
+        mSize = 0;
+        for (int i = 0; i < records; i++) {
+            int record = order[i];
+            if (i + 1 < records && ids[order[i + 1]] == ids[record]) {
+                // A later record of the same id, since the sort is stable
+                continue;
+            }
+            mIds[mSize] = ids[record];
+            mDates[mSize] = dates[record];
+            mValues[mSize] = values[record];
+            mSize++;
+        }
+    }
+
+    /**
+     * @return The positions of the given keys in ascending order, keeping the order of the equal ones
+     */
+    @NonNull
+    static int[] sortedOrder(@NonNull long[] keys, int size) {
+        int[] order = new int[size];
+        int[] buffer = new int[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        // A bottom-up merge sort, which is stable and doesn't box the keys
+        for (int width = 1; width < size; width *= 2) {
+            for (int low = 0; low < size; low += 2 * width) {
+                int middle = Math.min(low + width, size);
+                int high = Math.min(low + 2 * width, size);
+                int i = low, j = middle, k = low;
+                while (i < middle && j < high) {
+                    buffer[k++] = keys[order[j]] < keys[order[i]] ? order[j++] : order[i++];
+                }
+                while (i < middle) {
+                    buffer[k++] = order[i++];
+                }
+                while (j < high) {
+                    buffer[k++] = order[j++];
+                }
+            }
+            int[] sorted = buffer;
+            buffer = order;
+            order = sorted;
+        }
+        return order;
+    }
+
+    private void compact() {
+        // Never append to the file that is about to be replaced
+        closeOutput();
+        mergeRecent();
+        File temp = new File(mFile.getPath() + ".tmp");
+        DataOutputStream output = null;
+        try {
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)));
+            for (int i = 0; i < mSize; i++) {
+                output.writeLong(mIds[i]);
+                output.writeLong(mDates[i]);
+                output.writeLong(mValues[i]);
+            }
+            output.close();
+            output = null;
+            if (!temp.renameTo(mFile)) {
+                throw new IOException("Unable to rename " + temp);
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to compact " + mFile, e);
+            //noinspection ResultOfMethodCallIgnored
+            temp.delete();
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+}
@@ -0,0 +1,313 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * In-memory prefix index of the names of the loaded media, built in a single pass over the loaded rows.
+ * <p>
+ * Every name is split into its words, like {@code img}, {@code 2017} and {@code jpg}, which are kept sorted with
+ * the row position of their name. A media matches a query when every word of the query is the prefix of one
+ * of its words, so the words matching a query word are a range of the sorted ones, found with binary searches.
+ * Typing one more character only narrows the previous ranges and results, which {@link Search} keeps.
+ * <p>
+ * Only the narrowest range is turned into row positions. The other query words, and every query word of a
+ * refined search, filter the candidate rows by the sorted indexes of their own words instead.
+ */
+public class NameIndex {
+
+    private final String[] mWords;
+    private final int[] mPositions;
+    // The indexes of the sorted words of every row position, from mWordStarts[position] to mWordStarts[position + 1]
+    private final int[] mWordStarts;
+    private final int[] mWordsOf;
+
+    private NameIndex(@NonNull String[] words, @NonNull int[] positions, int rowCount) {
+        mWords = words;
+        mPositions = positions;
+        mWordStarts = new int[rowCount + 1];
+        for (int position : positions) {
+            mWordStarts[position + 1]++;
+        }
+        for (int position = 0; position < rowCount; position++) {
+            mWordStarts[position + 1] += mWordStarts[position];
+        }
+        mWordsOf = new int[words.length];
+        int[] next = Arrays.copyOf(mWordStarts, rowCount);
+        // In the order of the sorted words, so the words of every row are sorted too
+        for (int word = 0; word < positions.length; word++) {
+            mWordsOf[next[positions[word]]++] = word;
+        }
+    }
+
+    /**
+     * Build the index of the {@link MediaStore.Images.ImageColumns#DISPLAY_NAME}s of the given rows
+     */
+    @WorkerThread
+    @NonNull
+    static NameIndex build(@NonNull Cursor cursor) {
+        List<Word> words = new ArrayList<>(cursor.getCount() * 2);
+        int column = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DISPLAY_NAME);
+        List<String> split = new ArrayList<>();
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            split(cursor.getString(column), split);
+            for (String word : split) {
+                words.add(new Word(word, cursor.getPosition()));
+            }
+        }
+        Collections.sort(words);
+        String[] sortedWords = new String[words.size()];
+        int[] positions = new int[words.size()];
+        for (int i = 0; i < sortedWords.length; i++) {
+            Word word = words.get(i);
+            sortedWords[i] = word.text;
+            positions[i] = word.position;
+        }
+        return new NameIndex(sortedWords, positions, cursor.getCount());
+    }
+
+    /**
+     * Get the name index of the given cursor, if it was loaded with one
+     */
+    @Nullable
+    public static NameIndex of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mNameIndex : null;
+    }
+
+    /**
+     * Find the media whose names match the given query
+     *
+     * @param previous The previous search over this index, which is refined when the query extends its query
+     * @return The search, or null if the query has no words and so doesn't filter anything
+     */
+    @Nullable
+    public Search search(@NonNull String query, @Nullable Search previous) {
+        List<String> terms = new ArrayList<>();
+        split(query, terms);
+        if (terms.isEmpty()) {
+            return null;
+        }
+        boolean refines = previous != null && previous.mIndex == this && previous.refinedBy(terms);
+        int[] froms = new int[terms.size()];
+        int[] tos = new int[terms.size()];
+        int narrowest = 0;
+        for (int i = 0; i < terms.size(); i++) {
+            String term = terms.get(i);
+            // The range of a longer prefix is inside the range of the shorter one
+            int from = refines && i < previous.mTerms.length ? previous.mFroms[i] : 0;
+            int to = refines && i < previous.mTerms.length ? previous.mTos[i] : mWords.length;
+            froms[i] = lowerBound(from, to, term);
+            tos[i] = lowerBound(froms[i], to, term + Character.MAX_VALUE);
+            if (tos[i] - froms[i] < tos[narrowest] - froms[narrowest]) {
+                narrowest = i;
+            }
+        }
+        int[] result;
+        if (refines) {
+            // A refined search can only keep the previous results, filtered by the ranges that narrowed
+            boolean[] narrowed = new boolean[terms.size()];
+            for (int i = 0; i < narrowed.length; i++) {
+                narrowed[i] = i >= previous.mTerms.length || froms[i] != previous.mFroms[i] || tos[i] != previous.mTos[i];
+            }
+            result = filter(previous.mResult, froms, tos, narrowed);
+        } else {
+            boolean[] others = new boolean[terms.size()];
+            Arrays.fill(others, true);
+            others[narrowest] = false;
+            result = filter(positionsOf(froms[narrowest], tos[narrowest]), froms, tos, others);
+        }
+        return new Search(this, terms.toArray(new String[terms.size()]), froms, tos, result);
+    }
+
+    /**
+     * @param checked The ranges to check, the others being known to match every candidate
+     * @return The candidate row positions with a word in every checked range, in their order
+     */
+    @NonNull
+    private int[] filter(@NonNull int[] candidates, @NonNull int[] froms, @NonNull int[] tos, @NonNull boolean[] checked) {
+        boolean any = false;
+        for (boolean check : checked) {
+            any |= check;
+        }
+        if (!any) {
+            return candidates;
+        }
+        int[] result = new int[candidates.length];
+        int count = 0;
+        for (int position : candidates) {
+            if (matches(position, froms, tos, checked)) {
+                result[count++] = position;
+            }
+        }
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+
+    private boolean matches(int position, @NonNull int[] froms, @NonNull int[] tos, @NonNull boolean[] checked) {
+        int start = mWordStarts[position];
+        int end = mWordStarts[position + 1];
+        for (int i = 0; i < froms.length; i++) {
+            if (!checked[i]) {
+                continue;
+            }
+            boolean found = false;
+            for (int j = start; j < end && !found; j++) {
+                int word = mWordsOf[j];
+                found = word >= froms[i] && word < tos[i];
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The index of the first word not smaller than the key, in [from, to)
+     */
+    private int lowerBound(int from, int to, @NonNull String key) {
+        while (from < to) {
+            int middle = (from + to) >>> 1;
+            if (mWords[middle].compareTo(key) < 0) {
+                from = middle + 1;
+            } else {
+                to = middle;
+            }
+        }
+        return from;
+    }
+
+    /**
+     * @return The sorted and distinct row positions of the words in [from, to)
+     */
+    @NonNull
+    private int[] positionsOf(int from, int to) {
+        int[] positions = Arrays.copyOfRange(mPositions, from, to);
+        Arrays.sort(positions);
+        int count = 0;
+        for (int i = 0; i < positions.length; i++) {
+            if (i == 0 || positions[i] != positions[i - 1]) {
+                positions[count++] = positions[i];
+            }
+        }
+        return count == positions.length ? positions : Arrays.copyOf(positions, count);
+    }
+
+    /**
+     * Split the text into its lower case words, made of letters and digits
+     */
+    private static void split(@Nullable String text, @NonNull List<String> words) {
+        words.clear();
+        if (text == null) {
+            return;
+        }
+        String lowerCase = text.toLowerCase(Locale.ROOT);
+        int start = -1;
+        for (int i = 0; i <= lowerCase.length(); i++) {
+            boolean wordChar = i < lowerCase.length() && Character.isLetterOrDigit(lowerCase.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                words.add(lowerCase.substring(start, i));
+                start = -1;
+            }
+        }
+    }
+
+    /**
+     * The media found by {@link #search(String, Search)}, as row positions of the loaded cursor in their order
+     */
+    public static class Search {
+
+        private final NameIndex mIndex;
+        private final String[] mTerms;
+        private final int[] mFroms;
+        private final int[] mTos;
+        private final int[] mResult;
+
+        private Search(@NonNull NameIndex index, @NonNull String[] terms, @NonNull int[] froms, @NonNull int[] tos,
+                       @NonNull int[] result) {
+            mIndex = index;
+            mTerms = terms;
+            mFroms = froms;
+            mTos = tos;
+            mResult = result;
+        }
+
+        public int getCount() {
+            return mResult.length;
+        }
+
+        /**
+         * @return The row position of the given result
+         */
+        public int getPosition(int index) {
+            return mResult[index];
+        }
+
+        /**
+         * @return The index of the result with the given row position, or a negative value if it is not a result
+         */
+        public int indexOf(int position) {
+            return Arrays.binarySearch(mResult, position);
+        }
+
+        /**
+         * @return If the given terms can only match the results of this search, since every term of this search
+         * is the prefix of the term at the same place
+         */
+        private boolean refinedBy(@NonNull List<String> terms) {
+            if (terms.size() < mTerms.length) {
+                return false;
+            }
+            for (int i = 0; i < mTerms.length; i++) {
+                if (!terms.get(i).startsWith(mTerms[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class Word implements Comparable<Word> {
+
+        final String text;
+        final int position;
+
+        Word(@NonNull String text, int position) {
+            this.text = text;
+            this.position = position;
+        }
+
+        @Override
+        public int compareTo(@NonNull Word other) {
+            return text.compareTo(other.text);
+        }
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.support.annotation.NonNull;
+import android.support.annotation.VisibleForTesting;
+
+import com.andremion.louvre.metrics.Tracer;
+
+import java.io.IOException;
+
+/**
+ * Difference hash (dHash) of an image: 64 bits telling if each pixel of a 9x8 grayscale version
+ * of the image is brighter than its right neighbour. Similar images have a small Hamming distance.
+ */
+class PerceptualHash {
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+    // The smallest side we need from the decoder before scaling down to 9x8
+    private static final int MIN_DECODE_SIZE = 32;
+
+    private PerceptualHash() {
+    }
+
+    static long compute(@NonNull String path) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to decode " + path);
+        }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = 1;
+        int smallest = Math.min(options.outWidth, options.outHeight);
+        while (smallest / (options.inSampleSize * 2) >= MIN_DECODE_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        boolean traced = Tracer.begin("Louvre:hashDecode");
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        Tracer.end(traced);
+        if (decoded == null) {
+            throw new IOException("Unable to decode " + path);
+        }
+        Bitmap scaled = Bitmap.createScaledBitmap(decoded, WIDTH, HEIGHT, true);
+        try {
+            return compute(scaled);
+        } finally {
+            if (scaled != decoded) {
+                scaled.recycle();
+            }
+            decoded.recycle();
+        }
+    }
+
+    @VisibleForTesting
+    static long compute(@NonNull Bitmap bitmap) {
+        int[] pixels = new int[WIDTH * HEIGHT];
+        bitmap.getPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        long hash = 0;
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH - 1; x++) {
+                hash <<= 1;
+                if (luminance(pixels[y * WIDTH + x]) > luminance(pixels[y * WIDTH + x + 1])) {
+                    hash |= 1;
+                }
+            }
+        }
+        return hash;
+    }
+
+    private static int luminance(int color) {
+        return (Color.red(color) * 299 + Color.green(color) * 587 + Color.blue(color) * 114) / 1000;
+    }
+
+    static int distance(long hash1, long hash2) {
+        return Long.bitCount(hash1 ^ hash2);
+    }
+
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Spatial grid index of the locations of the media, which clusters them into places at a few zoom levels.
+ * <p>
+ * The coordinates are collected into primitive arrays in a single pass over the geotagged rows. At every zoom
+ * level, the rows are keyed by the grid cell they fall into and sorted by it, so every cluster is a run of rows,
+ * which keep their date order. The clusters are listed as synthetic buckets with their count, centroid and
+ * newest media as cover, and keep the ids of their media, so a place is opened by its id list.
+ * <p>
+ * The place ids are derived from the zoom level and the grid cell, so they are stable across loads and never
+ * clash with the bucket ids nor the {@link FolderTree} ids. The last built index is kept, so other loaders, like
+ * the one of the preview, open the same places.
+ */
+public class PlaceIndex {
+
+    public static final int NONE = 0;
+    public static final int REGION = 1;
+    public static final int CITY = 2;
+    public static final int STREET = 3;
+
+    @IntDef({NONE, REGION, CITY, STREET})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Zoom {
+    }
+
+    // The size, in degrees, of the grid cells of every zoom level, about 1000km, 20km and 1km at the equator
+    private static final double[] CELL_SIZES = {0, 10, .2, .01};
+    // The precision of the coordinates of the labels of every zoom level
+    private static final int[] LABEL_DECIMALS = {0, 0, 1, 2};
+    private static final int PLACE_ID_TAG = 2;
+    // Larger places are selected by their grid cell, so the selection stays a few kilobytes at most
+    private static final int MAX_SELECTION_IDS = 500;
+
+    private static volatile PlaceIndex sLatest;
+
+    // Indexed by zoom level
+    private final Clusters[] mClusters;
+
+    private PlaceIndex(@NonNull Clusters[] clusters) {
+        mClusters = clusters;
+    }
+
+    /**
+     * Build the index of the given geotagged rows, sorted by {@link MediaStore.Images.ImageColumns#DATE_TAKEN},
+     * newest first
+     */
+    @WorkerThread
+    @NonNull
+    static PlaceIndex build(@NonNull Cursor cursor) {
+        int count = cursor.getCount();
+        long[] ids = new long[count];
+        double[] latitudes = new double[count];
+        double[] longitudes = new double[count];
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns._ID);
+        int latitudeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.LATITUDE);
+        int longitudeColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.LONGITUDE);
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            int row = cursor.getPosition();
+            ids[row] = cursor.getLong(idColumn);
+            // Clamped, so a broken tag can't fall out of the grid
+            latitudes[row] = Math.max(-90, Math.min(90, cursor.getDouble(latitudeColumn)));
+            longitudes[row] = Math.max(-180, Math.min(180, cursor.getDouble(longitudeColumn)));
+        }
+        Clusters[] clusters = new Clusters[CELL_SIZES.length];
+        for (int zoom = REGION; zoom < CELL_SIZES.length; zoom++) {
+            clusters[zoom] = Clusters.build(cursor, zoom, ids, latitudes, longitudes);
+        }
+        PlaceIndex index = new PlaceIndex(clusters);
+        sLatest = index;
+        return index;
+    }
+
+    /**
+     * Get the place index of the given cursor, if it was loaded with one
+     */
+    @Nullable
+    public static PlaceIndex of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mPlaceIndex : null;
+    }
+
+    /**
+     * @return If the given bucket id is the id of a place
+     */
+    public static boolean isPlace(long bucketId) {
+        long tag = bucketId >>> 32;
+        return tag > PLACE_ID_TAG && tag < PLACE_ID_TAG + CELL_SIZES.length;
+    }
+
+    /**
+     * @return The selection of the media of the given place: its precomputed id list if it is small, or its grid cell
+     * if it is large or the places were not loaded in this process
+     */
+    @NonNull
+    static String selectionOf(long placeId) {
+        PlaceIndex index = sLatest;
+        long[] ids = index != null && index.getCount(placeId) <= MAX_SELECTION_IDS ? index.getIds(placeId) : null;
+        if (ids != null) {
+            StringBuilder selection = new StringBuilder(MediaStore.Images.ImageColumns._ID).append(" IN (");
+            for (int i = 0; i < ids.length; i++) {
+                if (i > 0) {
+                    selection.append(',');
+                }
+                selection.append(ids[i]);
+            }
+            return selection.append(')').toString();
+        }
+        int zoom = (int) (placeId >>> 32) - PLACE_ID_TAG;
+        String size = Double.toString(CELL_SIZES[zoom]);
+        long latitudeCell = ((placeId >>> 16) & 0x7fff) - Clusters.LATITUDE_CELL_OFFSET;
+        long longitudeCell = (placeId & 0xffff) - Clusters.LONGITUDE_CELL_OFFSET;
+        return String.format(Locale.US, "%s=%d AND %s=%d",
+                cellOf(MediaStore.Images.ImageColumns.LATITUDE, 90, size), latitudeCell,
+                cellOf(MediaStore.Images.ImageColumns.LONGITUDE, 180, size), longitudeCell);
+    }
+
+    /**
+     * @return The SQL of the grid cell of the given coordinate column, clamped and floored like {@link Clusters#build}
+     * does, so the rows at the bounds of a cell are selected from the cell they were clustered in
+     */
+    @NonNull
+    private static String cellOf(@NonNull String column, int bound, @NonNull String size) {
+        String value = "MAX(-" + bound + ",MIN(" + bound + "," + column + "))/" + size;
+        // CAST truncates toward zero, so the negative values with a fraction are one cell further down
+        return "(CAST(" + value + " AS INTEGER)-(" + value + "<CAST(" + value + " AS INTEGER)))";
+    }
+
+    /**
+     * @return The ids of the media of the given place, newest first, or null if it is not a place of this index
+     */
+    @Nullable
+    public long[] getIds(long placeId) {
+        if (!isPlace(placeId)) {
+            return null;
+        }
+        Clusters clusters = mClusters[(int) (placeId >>> 32) - PLACE_ID_TAG];
+        int cluster = clusters.indexOf(placeId);
+        return cluster >= 0 ? clusters.getIds(cluster) : null;
+    }
+
+    /**
+     * @return The count of the media of the given place, or 0 if it is not a place of this index
+     */
+    public int getCount(long placeId) {
+        if (!isPlace(placeId)) {
+            return 0;
+        }
+        Clusters clusters = mClusters[(int) (placeId >>> 32) - PLACE_ID_TAG];
+        int cluster = clusters.indexOf(placeId);
+        return cluster >= 0 ? clusters.mStarts[cluster + 1] - clusters.mStarts[cluster] : 0;
+    }
+
+    /**
+     * @return The count of the places at the given zoom level
+     */
+    public int getPlaceCount(@Zoom int zoom) {
+        return zoom != NONE ? mClusters[zoom].mCount : 0;
+    }
+
+    /**
+     * List the places of the given zoom level as bucket rows with their {@link FolderTree#COUNT}, newest first
+     */
+    @NonNull
+    public Cursor query(@Zoom int zoom) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Images.ImageColumns.BUCKET_ID,
+                MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME,
+                MediaStore.Images.ImageColumns.DATA,
+                MediaStore.Images.ImageColumns.DATE_TAKEN,
+                FolderTree.COUNT
+        });
+        if (zoom == NONE) {
+            return cursor;
+        }
+        Clusters clusters = mClusters[zoom];
+        for (int i = 0; i < clusters.mCount; i++) {
+            int cluster = clusters.mOrder[i];
+            cursor.newRow()
+                    .add(clusters.mPlaceIds[cluster])
+                    .add(formatLabel(zoom, clusters.mLatitudes[cluster], clusters.mLongitudes[cluster]))
+                    .add(clusters.mCoverData[cluster])
+                    .add(clusters.mCoverDates[cluster])
+                    .add(clusters.mStarts[cluster + 1] - clusters.mStarts[cluster]);
+        }
+        return cursor;
+    }
+
+    @NonNull
+    private static String formatLabel(@Zoom int zoom, double latitude, double longitude) {
+        String format = "%." + LABEL_DECIMALS[zoom] + "f°%s %." + LABEL_DECIMALS[zoom] + "f°%s";
+        return String.format(Locale.getDefault(), format,
+                Math.abs(latitude), latitude >= 0 ? "N" : "S",
+                Math.abs(longitude), longitude >= 0 ? "E" : "W");
+    }
+
+    /**
+     * The clusters of a zoom level. The arrays are indexed by cluster, in grid cell order, and the media ids of
+     * every cluster are a range of a single array.
+     */
+    private static class Clusters {
+
+        static final long LATITUDE_CELL_OFFSET = 9000;
+        static final long LONGITUDE_CELL_OFFSET = 18000;
+
+        final int mCount;
+        final long[] mPlaceIds;
+        final int[] mStarts;
+        final long[] mIds;
+        final double[] mLatitudes;
+        final double[] mLongitudes;
+        final String[] mCoverData;
+        final long[] mCoverDates;
+        // The clusters newest first, like the buckets
+        final int[] mOrder;
+
+        private Clusters(int count, long[] placeIds, int[] starts, long[] ids, double[] latitudes, double[] longitudes,
+                         String[] coverData, long[] coverDates, int[] order) {
+            mCount = count;
+            mPlaceIds = placeIds;
+            mStarts = starts;
+            mIds = ids;
+            mLatitudes = latitudes;
+            mLongitudes = longitudes;
+            mCoverData = coverData;
+            mCoverDates = coverDates;
+            mOrder = order;
+        }
+
+        @NonNull
+        static Clusters build(@NonNull Cursor cursor, @Zoom int zoom, @NonNull long[] ids,
+                              @NonNull double[] latitudes, @NonNull double[] longitudes) {
+            int rows = ids.length;
+            double size = CELL_SIZES[zoom];
+            // The cell in the upper 32 bits and the row in the lower ones, so sorting keeps the date order in a cell
+            long[] keys = new long[rows];
+            for (int row = 0; row < rows; row++) {
+                long latitudeCell = (long) Math.floor(latitudes[row] / size) + LATITUDE_CELL_OFFSET;
+                long longitudeCell = (long) Math.floor(longitudes[row] / size) + LONGITUDE_CELL_OFFSET;
+                long cell = (latitudeCell << 16 | longitudeCell) & 0x7fffffffL;
+                keys[row] = cell << 32 | row;
+            }
+            Arrays.sort(keys);
+            int count = 0;
+            for (int i = 0; i < rows; i++) {
+                if (i == 0 || keys[i] >>> 32 != keys[i - 1] >>> 32) {
+                    count++;
+                }
+            }
+            long[] placeIds = new long[count];
+            int[] starts = new int[count + 1];
+            long[] clusterIds = new long[rows];
+            double[] clusterLatitudes = new double[count];
+            double[] clusterLongitudes = new double[count];
+            String[] coverData = new String[count];
+            long[] coverDates = new long[count];
+            long[] newest = new long[count];
+            int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATA);
+            int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATE_TAKEN);
+            int cluster = -1;
+            for (int i = 0; i < rows; i++) {
+                long cell = keys[i] >>> 32;
+                int row = (int) keys[i];
+                if (i == 0 || cell != keys[i - 1] >>> 32) {
+                    cluster++;
+                    placeIds[cluster] = (long) (PLACE_ID_TAG + zoom) << 32 | cell;
+                    starts[cluster] = i;
+                    // The first row of a cell is its newest one
+                    cursor.moveToPosition(row);
+                    coverData[cluster] = cursor.getString(dataColumn);
+                    coverDates[cluster] = cursor.getLong(dateColumn);
+                    newest[cluster] = (long) row << 32 | cluster;
+                }
+                clusterIds[i] = ids[row];
+                clusterLatitudes[cluster] += latitudes[row];
+                clusterLongitudes[cluster] += longitudes[row];
+            }
+            starts[count] = rows;
+            for (int i = 0; i < count; i++) {
+                int members = starts[i + 1] - starts[i];
+                clusterLatitudes[i] /= members;
+                clusterLongitudes[i] /= members;
+            }
+            Arrays.sort(newest);
+            int[] order = new int[count];
+            for (int i = 0; i < count; i++) {
+                order[i] = (int) newest[i];
+            }
+            return new Clusters(count, placeIds, starts, clusterIds, clusterLatitudes, clusterLongitudes,
+                    coverData, coverDates, order);
+        }
+
+        /**
+         * @return The cluster of the given place id, or a negative value if there is none
+         */
+        int indexOf(long placeId) {
+            return Arrays.binarySearch(mPlaceIds, 0, mCount, placeId);
+        }
+
+        @NonNull
+        long[] getIds(int cluster) {
+            return Arrays.copyOfRange(mIds, mStarts[cluster], mStarts[cluster + 1]);
+        }
+    }
+
+}
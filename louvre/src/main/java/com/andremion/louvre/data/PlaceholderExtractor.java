@@ -0,0 +1,66 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.andremion.louvre.util.BackgroundThreadFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Background engine that computes the placeholders missing from the {@link PlaceholderIndex} of a load.
+ * <p>
+ * A single background priority thread does it, so it never competes with the thumbnail decodes, and
+ * a new load cancels the extraction of the previous one.
+ */
+class PlaceholderExtractor {
+
+    private final ExecutorService mExecutor;
+    @Nullable
+    private Future<?> mCurrent;
+
+    PlaceholderExtractor() {
+        mExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory(PlaceholderExtractor.class.getSimpleName()));
+    }
+
+    void extract(@NonNull final PlaceholderIndex index) {
+        cancel();
+        mCurrent = mExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                index.computePending();
+            }
+        });
+    }
+
+    void cancel() {
+        if (mCurrent != null) {
+            mCurrent.cancel(true);
+            mCurrent = null;
+        }
+    }
+
+    void shutdown() {
+        cancel();
+        mExecutor.shutdownNow();
+    }
+
+}
@@ -0,0 +1,211 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.andremion.louvre.metrics.Tracer;
+
+import java.io.IOException;
+
+/**
+ * Tiny placeholders of the loaded media, painted while their thumbnails are decoded: the colors of the
+ * four quadrants of the center square of every image, packed as RGB 565 in a single {@code long}.
+ * <p>
+ * The values are indexed by row position and read from a {@link MediaValueCache} in the pass over the rows
+ * the loader does. The missing ones are computed later in background by the {@link PlaceholderExtractor},
+ * a batch per load, so the first load of a large library doesn't decode all of it at once.
+ */
+public class PlaceholderIndex {
+
+    /**
+     * Count of colors of a placeholder, in row order
+     */
+    public static final int SIZE = 4;
+
+    private static final long NONE = 0;
+    // Pure black is stored as the darkest green, so it isn't taken as a missing value
+    private static final long BLACK = 0x0020002000200020L;
+    private static final int MAX_PENDING = 2000;
+    // The smallest side we need from the decoder before scaling down to 2x2
+    private static final int MIN_DECODE_SIZE = 16;
+
+    private final MediaValueCache mCache;
+    private final long[] mValues;
+    private final int[] mPendingPositions;
+    private final long[] mPendingIds;
+    private final long[] mPendingDates;
+    private final String[] mPendingPaths;
+    private final int mPendingCount;
+
+    private PlaceholderIndex(@NonNull MediaValueCache cache, @NonNull long[] values, @NonNull int[] pendingPositions,
+                             @NonNull long[] pendingIds, @NonNull long[] pendingDates, @NonNull String[] pendingPaths, int pendingCount) {
+        mCache = cache;
+        mValues = values;
+        mPendingPositions = pendingPositions;
+        mPendingIds = pendingIds;
+        mPendingDates = pendingDates;
+        mPendingPaths = pendingPaths;
+        mPendingCount = pendingCount;
+    }
+
+    /**
+     * Build the index from the cached values of the given rows, and remember the first rows without one
+     */
+    @WorkerThread
+    @NonNull
+    static PlaceholderIndex build(@NonNull Cursor cursor, @NonNull MediaValueCache cache) {
+        int count = cursor.getCount();
+        long[] values = new long[count];
+        int pendingSize = Math.min(count, MAX_PENDING);
+        int[] pendingPositions = new int[pendingSize];
+        long[] pendingIds = new long[pendingSize];
+        long[] pendingDates = new long[pendingSize];
+        String[] pendingPaths = new String[pendingSize];
+        int pendingCount = 0;
+        int idColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns._ID);
+        int dateColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATE_MODIFIED);
+        int dataColumn = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATA);
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            int position = cursor.getPosition();
+            long id = cursor.getLong(idColumn);
+            long dateModified = cursor.getLong(dateColumn);
+            if (!cache.get(id, dateModified, values, position) && pendingCount < pendingSize) {
+                pendingPositions[pendingCount] = position;
+                pendingIds[pendingCount] = id;
+                pendingDates[pendingCount] = dateModified;
+                pendingPaths[pendingCount] = cursor.getString(dataColumn);
+                pendingCount++;
+            }
+        }
+        return new PlaceholderIndex(cache, values, pendingPositions, pendingIds, pendingDates, pendingPaths, pendingCount);
+    }
+
+    /**
+     * Get the placeholder index of the given cursor, if it was loaded with placeholders
+     */
+    @Nullable
+    public static PlaceholderIndex of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mPlaceholderIndex : null;
+    }
+
+    /**
+     * Write the {@link #SIZE} colors of the placeholder of the given row into {@code colors}
+     *
+     * @return If the row has a placeholder yet
+     */
+    public boolean getColors(int position, @NonNull int[] colors) {
+        long value = mValues[position];
+        if (value == NONE) {
+            return false;
+        }
+        for (int i = 0; i < SIZE; i++) {
+            colors[i] = toColor((int) (value >>> (16 * i)) & 0xffff);
+        }
+        return true;
+    }
+
+    boolean hasPending() {
+        return mPendingCount > 0;
+    }
+
+    /**
+     * Compute the missing values remembered by {@link #build(Cursor, MediaValueCache)}, until interrupted
+     */
+    @WorkerThread
+    void computePending() {
+        for (int i = 0; i < mPendingCount && !Thread.currentThread().isInterrupted(); i++) {
+            int position = mPendingPositions[i];
+            if (mValues[position] != NONE) {
+                continue;
+            }
+            try {
+                long value = compute(mPendingPaths[i]);
+                // Read by the binds on the main thread, where a stale value just means the flat placeholder
+                mValues[position] = value;
+                mCache.put(mPendingIds[i], mPendingDates[i], value);
+            } catch (IOException | RuntimeException e) {
+                // Left without placeholder
+            }
+        }
+        mCache.flush();
+    }
+
+    @WorkerThread
+    private static long compute(@NonNull String path) throws IOException {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            throw new IOException("Unable to decode " + path);
+        }
+        options.inJustDecodeBounds = false;
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        options.inSampleSize = 1;
+        int smallest = Math.min(options.outWidth, options.outHeight);
+        while (smallest / (options.inSampleSize * 2) >= MIN_DECODE_SIZE) {
+            options.inSampleSize *= 2;
+        }
+        boolean traced = Tracer.begin("Louvre:placeholderDecode");
+        Bitmap decoded = BitmapFactory.decodeFile(path, options);
+        Tracer.end(traced);
+        if (decoded == null) {
+            throw new IOException("Unable to decode " + path);
+        }
+        // The thumbnails are center cropped, so are the placeholders
+        int side = Math.min(decoded.getWidth(), decoded.getHeight());
+        Bitmap cropped = Bitmap.createBitmap(decoded, (decoded.getWidth() - side) / 2, (decoded.getHeight() - side) / 2, side, side);
+        Bitmap scaled = Bitmap.createScaledBitmap(cropped, 2, 2, true);
+        try {
+            int[] pixels = new int[SIZE];
+            scaled.getPixels(pixels, 0, 2, 0, 0, 2, 2);
+            long value = 0;
+            for (int i = 0; i < SIZE; i++) {
+                value |= (long) toRgb565(pixels[i]) << (16 * i);
+            }
+            return value != NONE ? value : BLACK;
+        } finally {
+            if (scaled != cropped) {
+                scaled.recycle();
+            }
+            if (cropped != decoded) {
+                cropped.recycle();
+            }
+            decoded.recycle();
+        }
+    }
+
+    private static int toRgb565(int color) {
+        return (Color.red(color) >> 3) << 11 | (Color.green(color) >> 2) << 5 | Color.blue(color) >> 3;
+    }
+
+    private static int toColor(int rgb565) {
+        int red = rgb565 >> 11 & 0x1f;
+        int green = rgb565 >> 5 & 0x3f;
+        int blue = rgb565 & 0x1f;
+        return Color.rgb(red << 3 | red >> 2, green << 2 | green >> 4, blue << 3 | blue >> 2);
+    }
+
+}
@@ -0,0 +1,258 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.provider.MediaStore;
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.text.format.DateUtils;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.Arrays;
+import java.util.Calendar;
+
+/**
+ * Compact index of the date sections of a media timeline, built in a single pass over the loaded rows.
+ * <p>
+ * Every section takes an int with the position of its first row and a long with its start date. The list
+ * shows a header before every section, so the index also maps between list positions, which count the
+ * headers, and data positions, which don't. All the lookups are binary searches over the section starts,
+ * so jumping to any section is O(log sections) and doesn't touch the rows in between.
+ */
+public class SectionIndex {
+
+    public static final int NONE = 0;
+    public static final int DAY = 1;
+    public static final int MONTH = 2;
+    public static final int YEAR = 3;
+
+    @IntDef({NONE, DAY, MONTH, YEAR})
+    @Retention(RetentionPolicy.SOURCE)
+    public @interface Granularity {
+    }
+
+    private static final int INITIAL_CAPACITY = 64;
+
+    @Granularity
+    private final int mGranularity;
+    private final int[] mStarts;
+    private final long[] mDates;
+    private final int mDataCount;
+    // The first row of every section in the grid of the last span count, only touched from the main thread
+    private int mRowsSpanCount;
+    @Nullable
+    private int[] mRowStarts;
+
+    private SectionIndex(@Granularity int granularity, @NonNull int[] starts, @NonNull long[] dates, int dataCount) {
+        mGranularity = granularity;
+        mStarts = starts;
+        mDates = dates;
+        mDataCount = dataCount;
+    }
+
+    /**
+     * Build the index of the given rows, sorted by {@link MediaStore.Images.ImageColumns#DATE_TAKEN}, newest first
+     */
+    @WorkerThread
+    @NonNull
+    static SectionIndex build(@NonNull Cursor cursor, @Granularity int granularity) {
+        int[] starts = new int[INITIAL_CAPACITY];
+        long[] dates = new long[INITIAL_CAPACITY];
+        int count = 0;
+        int column = cursor.getColumnIndexOrThrow(MediaStore.Images.ImageColumns.DATE_TAKEN);
+        Calendar calendar = Calendar.getInstance();
+        // The current section covers [from, to), so the calendar is only used when a row crosses into a new section
+        long from = Long.MAX_VALUE;
+        long to = Long.MIN_VALUE;
+        for (cursor.moveToPosition(-1); cursor.moveToNext(); ) {
+            long date = cursor.getLong(column);
+            if (date >= from && date < to) {
+                continue;
+            }
+            truncate(calendar, date, granularity);
+            from = calendar.getTimeInMillis();
+            calendar.add(granularity == DAY ? Calendar.DAY_OF_MONTH : granularity == MONTH ? Calendar.MONTH : Calendar.YEAR, 1);
+            to = calendar.getTimeInMillis();
+            if (count == starts.length) {
+                starts = Arrays.copyOf(starts, count * 2);
+                dates = Arrays.copyOf(dates, count * 2);
+            }
+            starts[count] = cursor.getPosition();
+            dates[count] = from;
+            count++;
+        }
+        return new SectionIndex(granularity, Arrays.copyOf(starts, count), Arrays.copyOf(dates, count), cursor.getCount());
+    }
+
+    private static void truncate(@NonNull Calendar calendar, long date, @Granularity int granularity) {
+        calendar.setTimeInMillis(date);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        if (granularity != DAY) {
+            calendar.set(Calendar.DAY_OF_MONTH, 1);
+        }
+        if (granularity == YEAR) {
+            calendar.set(Calendar.MONTH, Calendar.JANUARY);
+        }
+    }
+
+    /**
+     * Get the section index of the given cursor, if it was loaded as a timeline
+     */
+    @Nullable
+    public static SectionIndex of(@Nullable Cursor cursor) {
+        IndexedCursor indexedCursor = IndexedCursor.find(cursor);
+        return indexedCursor != null ? indexedCursor.mSectionIndex : null;
+    }
+
+    @Granularity
+    public int getGranularity() {
+        return mGranularity;
+    }
+
+    public int getSectionCount() {
+        return mStarts.length;
+    }
+
+    /**
+     * @return The count of list items, which are the rows plus the section headers
+     */
+    public int getItemCount() {
+        return mDataCount + mStarts.length;
+    }
+
+    /**
+     * @return The data position of the first row of the given section
+     */
+    public int getSectionStart(int section) {
+        return mStarts[section];
+    }
+
+    /**
+     * @return The list position of the header of the given section
+     */
+    public int getHeaderPosition(int section) {
+        return mStarts[section] + section;
+    }
+
+    public boolean isHeader(int position) {
+        int section = getSectionForPosition(position);
+        return section >= 0 && getHeaderPosition(section) == position;
+    }
+
+    /**
+     * @return The section of the given list position
+     */
+    public int getSectionForPosition(int position) {
+        int low = 0;
+        int high = mStarts.length - 1;
+        int section = -1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            if (getHeaderPosition(middle) <= position) {
+                section = middle;
+                low = middle + 1;
+            } else {
+                high = middle - 1;
+            }
+        }
+        return section;
+    }
+
+    /**
+     * @return The data position of the given list position, which must not be a header
+     */
+    public int toDataPosition(int position) {
+        return position - getSectionForPosition(position) - 1;
+    }
+
+    /**
+     * @return The list position of the given data position
+     */
+    public int toPosition(int dataPosition) {
+        int index = Arrays.binarySearch(mStarts, dataPosition);
+        // The section is the last one starting at or before the data position
+        int section = index >= 0 ? index : -index - 2;
+        return dataPosition + section + 1;
+    }
+
+    /**
+     * @return The column of the given list position in a grid where every header takes a full row
+     */
+    public int getSpanIndex(int position, int spanCount) {
+        int header = getHeaderPosition(getSectionForPosition(position));
+        return position == header ? 0 : (position - header - 1) % spanCount;
+    }
+
+    /**
+     * @return The row of the given list position in a grid where every header takes a full row
+     */
+    public int getSpanGroupIndex(int position, int spanCount) {
+        int section = getSectionForPosition(position);
+        int rows = getRowStarts(spanCount)[section];
+        int header = getHeaderPosition(section);
+        return position == header ? rows : rows + 1 + (position - header - 1) / spanCount;
+    }
+
+    /**
+     * @return The row of the header of every section, counted once per span count
+     */
+    @NonNull
+    private int[] getRowStarts(int spanCount) {
+        int[] rowStarts = mRowStarts;
+        if (rowStarts == null || mRowsSpanCount != spanCount) {
+            rowStarts = new int[mStarts.length];
+            for (int i = 1; i < mStarts.length; i++) {
+                int size = mStarts[i] - mStarts[i - 1];
+                rowStarts[i] = rowStarts[i - 1] + 1 + (size + spanCount - 1) / spanCount;
+            }
+            mRowStarts = rowStarts;
+            mRowsSpanCount = spanCount;
+        }
+        return rowStarts;
+    }
+
+    /**
+     * @return The start date of the given section, in milliseconds
+     */
+    public long getSectionDate(int section) {
+        return mDates[section];
+    }
+
+    @NonNull
+    public String formatSection(@NonNull Context context, int section) {
+        int flags;
+        if (mGranularity == DAY) {
+            flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_SHOW_WEEKDAY | DateUtils.FORMAT_SHOW_YEAR;
+        } else if (mGranularity == MONTH) {
+            flags = DateUtils.FORMAT_SHOW_DATE | DateUtils.FORMAT_NO_MONTH_DAY | DateUtils.FORMAT_SHOW_YEAR;
+        } else {
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTimeInMillis(mDates[section]);
+            return String.valueOf(calendar.get(Calendar.YEAR));
+        }
+        return DateUtils.formatDateTime(context, mDates[section], flags);
+    }
+
+}
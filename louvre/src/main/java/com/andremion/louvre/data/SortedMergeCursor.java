@@ -0,0 +1,209 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+
+/**
+ * Cursor that merges cursors already sorted by a descending long column into one sorted cursor.
+ * <p>
+ * Unlike a {@link android.database.MergeCursor}, which concatenates the cursors, this is a k-way merge.
+ * It is streaming: rows are merged lazily the first time a position is reached, and every merged position
+ * is remembered, so moving back or binding visible positions again costs no comparisons.
+ * Rows with the same key keep the order of the cursors.
+ * <p>
+ * The columns are the ones of the first cursor and are looked up by name in the others.
+ */
+class SortedMergeCursor extends AbstractCursor {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Cursor[] mCursors;
+    private final int[][] mColumnMaps;
+    private final int[] mKeyColumns;
+    private final String[] mColumnNames;
+    private final int mCount;
+
+    // The next row of every cursor still to be merged and its key
+    private final int[] mHeadRows;
+    private final long[] mHeadKeys;
+
+    // The cursor and row of every position merged so far
+    private byte[] mCursorOf;
+    private int[] mRowOf;
+    private int mMerged;
+
+    private Cursor mCurrent;
+    private int[] mCurrentColumns;
+
+    /**
+     * @param cursors   The cursors sorted by the key column, newest first. At most 127 of them.
+     * @param keyColumn The name of the long column they are sorted by
+     */
+    SortedMergeCursor(@NonNull Cursor[] cursors, @NonNull String keyColumn) {
+        if (cursors.length == 0 || cursors.length > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException("Unable to merge " + cursors.length + " cursors");
+        }
+        mCursors = cursors;
+        mColumnNames = cursors[0].getColumnNames();
+        mColumnMaps = new int[cursors.length][];
+        mKeyColumns = new int[cursors.length];
+        mHeadRows = new int[cursors.length];
+        mHeadKeys = new long[cursors.length];
+        int count = 0;
+        for (int i = 0; i < cursors.length; i++) {
+            Cursor cursor = cursors[i];
+            mColumnMaps[i] = new int[mColumnNames.length];
+            for (int column = 0; column < mColumnNames.length; column++) {
+                mColumnMaps[i][column] = cursor.getColumnIndex(mColumnNames[column]);
+            }
+            mKeyColumns[i] = cursor.getColumnIndexOrThrow(keyColumn);
+            count += cursor.getCount();
+            readHead(i);
+        }
+        mCount = count;
+        int capacity = Math.min(count, INITIAL_CAPACITY);
+        mCursorOf = new byte[capacity];
+        mRowOf = new int[capacity];
+    }
+
+    @NonNull
+    Cursor[] getCursors() {
+        return mCursors;
+    }
+
+    @Override
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String[] getColumnNames() {
+        return mColumnNames;
+    }
+
+    @Override
+    public boolean onMove(int oldPosition, int newPosition) {
+        while (mMerged <= newPosition) {
+            mergeNext();
+        }
+        int index = mCursorOf[newPosition];
+        mCurrent = mCursors[index];
+        mCurrentColumns = mColumnMaps[index];
+        return mCurrent.moveToPosition(mRowOf[newPosition]);
+    }
+
+    private void mergeNext() {
+        int next = -1;
+        for (int i = 0; i < mCursors.length; i++) {
+            if (mHeadRows[i] < mCursors[i].getCount() && (next == -1 || mHeadKeys[i] > mHeadKeys[next])) {
+                next = i;
+            }
+        }
+        if (mMerged == mCursorOf.length) {
+            int capacity = Math.min(mCount, mMerged * 2);
+            mCursorOf = Arrays.copyOf(mCursorOf, capacity);
+            mRowOf = Arrays.copyOf(mRowOf, capacity);
+        }
+        mCursorOf[mMerged] = (byte) next;
+        mRowOf[mMerged] = mHeadRows[next];
+        mMerged++;
+        mHeadRows[next]++;
+        readHead(next);
+    }
+
+    private void readHead(int index) {
+        Cursor cursor = mCursors[index];
+        if (cursor.moveToPosition(mHeadRows[index])) {
+            mHeadKeys[index] = cursor.getLong(mKeyColumns[index]);
+        }
+    }
+
+    private int column(int column) {
+        int mapped = mCurrentColumns[column];
+        if (mapped == -1) {
+            throw new IllegalStateException("Missing column " + mColumnNames[column]);
+        }
+        return mapped;
+    }
+
+    @Override
+    public String getString(int column) {
+        return mCurrent.getString(column(column));
+    }
+
+    @Override
+    public short getShort(int column) {
+        return mCurrent.getShort(column(column));
+    }
+
+    @Override
+    public int getInt(int column) {
+        return mCurrent.getInt(column(column));
+    }
+
+    @Override
+    public long getLong(int column) {
+        return mCurrent.getLong(column(column));
+    }
+
+    @Override
+    public float getFloat(int column) {
+        return mCurrent.getFloat(column(column));
+    }
+
+    @Override
+    public double getDouble(int column) {
+        return mCurrent.getDouble(column(column));
+    }
+
+    @Override
+    public byte[] getBlob(int column) {
+        return mCurrent.getBlob(column(column));
+    }
+
+    @Override
+    public int getType(int column) {
+        return mCurrent.getType(column(column));
+    }
+
+    @Override
+    public boolean isNull(int column) {
+        return mCurrent.isNull(column(column));
+    }
+
+    @Override
+    public void deactivate() {
+        for (Cursor cursor : mCursors) {
+            cursor.deactivate();
+        }
+        super.deactivate();
+    }
+
+    @Override
+    public void close() {
+        for (Cursor cursor : mCursors) {
+            cursor.close();
+        }
+        super.close();
+    }
+
+}
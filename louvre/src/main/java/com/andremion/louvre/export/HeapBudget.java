@@ -0,0 +1,147 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.export;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Byte budget shared by the {@link MediaExporter} workers.
+ * <p>
+ * Every decode reserves the bytes it will hold before allocating anything, so the bitmaps alive at
+ * the same time, including the ones kept for reuse, never add up to more than the limit. The callers size
+ * their decodes to fit it, since a single lease bigger than the limit is refused.
+ */
+class HeapBudget {
+
+    static class Lease {
+
+        final long bytes;
+        @Nullable
+        final Bitmap reusable;
+
+        private Lease(long bytes, @Nullable Bitmap reusable) {
+            this.bytes = bytes;
+            this.reusable = reusable;
+        }
+    }
+
+    private final long mLimit;
+    private final int mMaxPoolSize;
+    private final List<Bitmap> mPool;
+    private long mUsed;
+
+    HeapBudget(long limit, int maxPoolSize) {
+        mLimit = limit;
+        mMaxPoolSize = maxPoolSize;
+        mPool = new LinkedList<>();
+    }
+
+    /**
+     * Block until the requested bytes fit into the budget.
+     *
+     * @param bytes         The bytes the caller is going to allocate, up to the limit
+     * @param reusableBytes The bytes a reused bitmap should have to take part of this lease, or 0 to not reuse
+     * @return The lease to give back on {@link #release(Lease, Bitmap)}
+     * @throws IllegalArgumentException If the bytes are more than the whole budget
+     */
+    @NonNull
+    synchronized Lease acquire(long bytes, long reusableBytes) throws InterruptedException {
+        if (bytes > mLimit) {
+            throw new IllegalArgumentException("Unable to lease " + bytes + " bytes from a budget of " + mLimit);
+        }
+        Bitmap reusable = reusableBytes > 0 ? takeReusable(reusableBytes) : null;
+        if (reusable != null) {
+            // The pooled bitmap is already accounted, so just the remaining bytes are needed
+            bytes = Math.max(0, bytes - reusableBytes);
+        }
+        while (mUsed + bytes > mLimit) {
+            if (!evictOne()) {
+                wait();
+            }
+        }
+        mUsed += bytes;
+        return new Lease(reusable != null ? bytes + sizeOf(reusable) : bytes, reusable);
+    }
+
+    /**
+     * Give the lease back, keeping the given bitmap for the next decode if it is worth it.
+     */
+    synchronized void release(@NonNull Lease lease, @Nullable Bitmap reusable) {
+        mUsed -= lease.bytes;
+        if (reusable != null && !reusable.isRecycled()) {
+            if (canReuse(reusable) && mPool.size() < mMaxPoolSize && mUsed + sizeOf(reusable) <= mLimit) {
+                mPool.add(reusable);
+                mUsed += sizeOf(reusable);
+            } else {
+                reusable.recycle();
+            }
+        }
+        notifyAll();
+    }
+
+    synchronized void clear() {
+        for (Bitmap bitmap : mPool) {
+            mUsed -= sizeOf(bitmap);
+            bitmap.recycle();
+        }
+        mPool.clear();
+        notifyAll();
+    }
+
+    @Nullable
+    private Bitmap takeReusable(long bytes) {
+        Iterator<Bitmap> iterator = mPool.iterator();
+        while (iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            if (sizeOf(bitmap) >= bytes) {
+                iterator.remove();
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private boolean evictOne() {
+        if (mPool.isEmpty()) {
+            return false;
+        }
+        Bitmap bitmap = mPool.remove(0);
+        mUsed -= sizeOf(bitmap);
+        bitmap.recycle();
+        return true;
+    }
+
+    private static boolean canReuse(@NonNull Bitmap bitmap) {
+        // Before KitKat inBitmap requires the exact same size, which an export almost never has
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT && bitmap.isMutable();
+    }
+
+    static long sizeOf(@NonNull Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+}
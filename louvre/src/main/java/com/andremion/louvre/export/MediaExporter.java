@@ -0,0 +1,502 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.export;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.IntRange;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.media.ExifInterface;
+
+import com.andremion.louvre.metrics.Tracer;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Optional post-pick stage that downscales, rotates and re-encodes the selected images into cache files.
+ * <p>
+ * The selection is processed by a bounded worker pool. Every worker reserves the bytes of its bitmaps
+ * from a shared budget before decoding, so the peak heap used by the export never goes above
+ * {@link #setMemoryLimit(long)}.
+ */
+public class MediaExporter {
+
+    private static final String EXPORT_DIR = "louvre-export";
+    private static final int DEFAULT_MAX_DIMENSION = 1920;
+    private static final int DEFAULT_QUALITY = 85;
+    private static final int BYTES_PER_PIXEL = 4;
+
+    public interface Callbacks {
+
+        /**
+         * Called on the main thread after each item is done, successfully or not.
+         */
+        void onExportProgress(int completed, int total);
+
+        void onExportFailed(@NonNull Uri source, @NonNull Exception e);
+
+        /**
+         * Called on the main thread with the exported files in the selection order.
+         * Items that failed are not part of the result.
+         */
+        void onExportFinished(@NonNull List<Uri> exported);
+    }
+
+    /**
+     * A running export that can be cancelled.
+     */
+    public static class Task {
+
+        private final ThreadPoolExecutor mExecutor;
+        private final HeapBudget mBudget;
+        private volatile boolean mCancelled;
+
+        private Task(ThreadPoolExecutor executor, HeapBudget budget) {
+            mExecutor = executor;
+            mBudget = budget;
+        }
+
+        /**
+         * Stop the pending items. No callback is called after this.
+         */
+        public void cancel() {
+            mCancelled = true;
+            mExecutor.shutdownNow();
+            mBudget.clear();
+        }
+
+        public boolean isCancelled() {
+            return mCancelled;
+        }
+    }
+
+    private final Context mContext;
+    private int mMaxDimension;
+    private Bitmap.CompressFormat mFormat;
+    private int mQuality;
+    private int mParallelism;
+    private long mMemoryLimit;
+
+    private MediaExporter(@NonNull Context context) {
+        mContext = context.getApplicationContext();
+        mMaxDimension = DEFAULT_MAX_DIMENSION;
+        mFormat = Bitmap.CompressFormat.JPEG;
+        mQuality = DEFAULT_QUALITY;
+        mParallelism = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors() - 1));
+        mMemoryLimit = Runtime.getRuntime().maxMemory() / 8;
+    }
+
+    public static MediaExporter init(@NonNull Context context) {
+        return new MediaExporter(context);
+    }
+
+    /**
+     * Set the max width or height of the exported images. Smaller images are not upscaled.
+     */
+    public MediaExporter setMaxDimension(@IntRange(from = 1) int maxDimension) {
+        mMaxDimension = maxDimension;
+        return this;
+    }
+
+    /**
+     * Set the format and quality used to encode the exported images
+     */
+    public MediaExporter setFormat(@NonNull Bitmap.CompressFormat format, @IntRange(from = 0, to = 100) int quality) {
+        mFormat = format;
+        mQuality = quality;
+        return this;
+    }
+
+    /**
+     * Set the max count of images processed at the same time
+     */
+    public MediaExporter setParallelism(@IntRange(from = 1) int parallelism) {
+        mParallelism = parallelism;
+        return this;
+    }
+
+    /**
+     * Set the max bytes of bitmap memory the export is allowed to hold at the same time
+     */
+    public MediaExporter setMemoryLimit(@IntRange(from = 1) long bytes) {
+        mMemoryLimit = bytes;
+        return this;
+    }
+
+    /**
+     * Start exporting the given selection, like the one returned by {@link com.andremion.louvre.home.GalleryActivity#getSelection}
+     */
+    @NonNull
+    public Task export(@NonNull List<Uri> selection, @NonNull Callbacks callbacks) {
+        File dir = new File(mContext.getCacheDir(), EXPORT_DIR);
+        //noinspection ResultOfMethodCallIgnored
+        dir.mkdirs();
+
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(mParallelism, mParallelism,
+                0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>());
+        HeapBudget budget = new HeapBudget(mMemoryLimit, mParallelism);
+        Task task = new Task(executor, budget);
+        Progress progress = new Progress(task, selection.size(), callbacks);
+
+        if (selection.isEmpty()) {
+            progress.finish();
+        }
+        long timestamp = System.currentTimeMillis();
+        for (int i = 0; i < selection.size(); i++) {
+            File target = new File(dir, String.format("%s_%s.%s", timestamp, i, extensionOf(mFormat)));
+            executor.execute(new ExportItem(budget, progress, i, selection.get(i), target));
+        }
+        executor.shutdown();
+        return task;
+    }
+
+    @NonNull
+    private static String extensionOf(@NonNull Bitmap.CompressFormat format) {
+        switch (format) {
+            case PNG:
+                return "png";
+            case WEBP:
+                return "webp";
+            default:
+                return "jpg";
+        }
+    }
+
+    /**
+     * Delivers the worker results to the main thread.
+     */
+    private static class Progress {
+
+        private final Handler mHandler;
+        private final Task mTask;
+        private final Callbacks mCallbacks;
+        private final Uri[] mResults;
+        private final AtomicInteger mCompleted;
+
+        Progress(Task task, int total, Callbacks callbacks) {
+            mHandler = new Handler(Looper.getMainLooper());
+            mTask = task;
+            mCallbacks = callbacks;
+            mResults = new Uri[total];
+            mCompleted = new AtomicInteger();
+        }
+
+        void onItemExported(int index, @NonNull File file) {
+            synchronized (mResults) {
+                mResults[index] = Uri.fromFile(file);
+            }
+            onItemCompleted();
+        }
+
+        void onItemFailed(@NonNull final Uri source, @NonNull final Exception e) {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mTask.isCancelled()) {
+                        mCallbacks.onExportFailed(source, e);
+                    }
+                }
+            });
+            onItemCompleted();
+        }
+
+        private void onItemCompleted() {
+            final int completed = mCompleted.incrementAndGet();
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (!mTask.isCancelled()) {
+                        mCallbacks.onExportProgress(completed, mResults.length);
+                    }
+                }
+            });
+            if (completed == mResults.length) {
+                finish();
+            }
+        }
+
+        void finish() {
+            mHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if (mTask.isCancelled()) {
+                        return;
+                    }
+                    List<Uri> exported = new ArrayList<>(mResults.length);
+                    synchronized (mResults) {
+                        for (Uri uri : mResults) {
+                            if (uri != null) {
+                                exported.add(uri);
+                            }
+                        }
+                    }
+                    mCallbacks.onExportFinished(Collections.unmodifiableList(exported));
+                }
+            });
+        }
+    }
+
+    private class ExportItem implements Runnable {
+
+        private final HeapBudget mBudget;
+        private final Progress mProgress;
+        private final int mIndex;
+        private final Uri mSource;
+        private final File mTarget;
+
+        ExportItem(HeapBudget budget, Progress progress, int index, Uri source, File target) {
+            mBudget = budget;
+            mProgress = progress;
+            mIndex = index;
+            mSource = source;
+            mTarget = target;
+        }
+
+        @Override
+        public void run() {
+            try {
+                export();
+                mProgress.onItemExported(mIndex, mTarget);
+            } catch (InterruptedException e) {
+                // Cancelled
+                //noinspection ResultOfMethodCallIgnored
+                mTarget.delete();
+            } catch (IOException | RuntimeException e) {
+                //noinspection ResultOfMethodCallIgnored
+                mTarget.delete();
+                mProgress.onItemFailed(mSource, e);
+            }
+        }
+
+        private void export() throws IOException, InterruptedException {
+            ContentResolver resolver = mContext.getContentResolver();
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inJustDecodeBounds = true;
+            decode(resolver, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                throw new IOException("Unable to decode " + mSource);
+            }
+            int orientation = readOrientation(resolver);
+
+            boolean rotated = orientation != ExifInterface.ORIENTATION_NORMAL;
+            options.inJustDecodeBounds = false;
+            options.inSampleSize = calculateInSampleSize(options.outWidth, options.outHeight, mMaxDimension, rotated, mMemoryLimit);
+            if (options.inSampleSize == 0) {
+                throw new IOException("Unable to fit " + mSource + " into the memory limit");
+            }
+            options.inMutable = true;
+            int decodedWidth = ceilDiv(options.outWidth, options.inSampleSize);
+            int decodedHeight = ceilDiv(options.outHeight, options.inSampleSize);
+            float scale = scaleOf(decodedWidth, decodedHeight, mMaxDimension);
+            long decodedBytes = (long) decodedWidth * decodedHeight * BYTES_PER_PIXEL;
+
+            HeapBudget.Lease lease = mBudget.acquire(bytesOf(decodedWidth, decodedHeight, scale, rotated), decodedBytes);
+            Bitmap decoded = null;
+            Bitmap output = null;
+            try {
+                options.inBitmap = lease.reusable;
+                decoded = decodeReusing(resolver, options, lease.reusable);
+                output = transform(decoded, scale, orientation);
+                write(output);
+            } finally {
+                if (output != null && output != decoded) {
+                    output.recycle();
+                }
+                mBudget.release(lease, decoded);
+            }
+        }
+
+        @NonNull
+        private Bitmap decodeReusing(ContentResolver resolver, BitmapFactory.Options options, @Nullable Bitmap reusable) throws IOException {
+            Bitmap decoded = null;
+            try {
+                decoded = decode(resolver, options);
+            } catch (IllegalArgumentException e) {
+                // The reused bitmap can't hold this image. Decode it into a new one.
+                options.inBitmap = null;
+            }
+            if (decoded == null && options.inBitmap == null) {
+                decoded = decode(resolver, options);
+            }
+            if (reusable != null && decoded != reusable) {
+                reusable.recycle();
+            }
+            if (decoded == null) {
+                throw new IOException("Unable to decode " + mSource);
+            }
+            return decoded;
+        }
+
+        @Nullable
+        private Bitmap decode(ContentResolver resolver, BitmapFactory.Options options) throws IOException {
+            boolean traced = Tracer.begin("Louvre:exportDecode");
+            InputStream in = openInputStream(resolver);
+            try {
+                return BitmapFactory.decodeStream(in, null, options);
+            } finally {
+                in.close();
+                Tracer.end(traced);
+            }
+        }
+
+        private int readOrientation(ContentResolver resolver) {
+            try {
+                InputStream in = openInputStream(resolver);
+                try {
+                    return new ExifInterface(in).getAttributeInt(ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return ExifInterface.ORIENTATION_NORMAL;
+            }
+        }
+
+        @NonNull
+        private InputStream openInputStream(ContentResolver resolver) throws FileNotFoundException {
+            InputStream in = resolver.openInputStream(mSource);
+            if (in == null) {
+                throw new FileNotFoundException("Unable to open " + mSource);
+            }
+            return in;
+        }
+
+        private void write(@NonNull Bitmap bitmap) throws IOException {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(mTarget));
+            try {
+                if (!bitmap.compress(mFormat, mQuality, out)) {
+                    throw new IOException("Unable to encode " + mSource);
+                }
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    /**
+     * Apply the scale and the EXIF orientation in a single pass, so the output carries no orientation tag.
+     */
+    @NonNull
+    private static Bitmap transform(@NonNull Bitmap source, float scale, int orientation) {
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        switch (orientation) {
+            case ExifInterface.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_180:
+                matrix.postRotate(180);
+                break;
+            case ExifInterface.ORIENTATION_FLIP_VERTICAL:
+                matrix.postScale(1, -1);
+                break;
+            case ExifInterface.ORIENTATION_TRANSPOSE:
+                matrix.postRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_90:
+                matrix.postRotate(90);
+                break;
+            case ExifInterface.ORIENTATION_TRANSVERSE:
+                matrix.postRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifInterface.ORIENTATION_ROTATE_270:
+                matrix.postRotate(-90);
+                break;
+            default:
+                if (scale >= 1f) {
+                    return source;
+                }
+        }
+        return Bitmap.createBitmap(source, 0, 0, source.getWidth(), source.getHeight(), matrix, true);
+    }
+
+    /**
+     * Calculate the largest power of two sample size that keeps the decoded image at least as big as the target.
+     */
+    static int calculateInSampleSize(int width, int height, int maxDimension) {
+        int inSampleSize = 1;
+        int largest = Math.max(width, height);
+        while (largest / (inSampleSize * 2) >= maxDimension) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    /**
+     * Calculate the sample size like {@link #calculateInSampleSize(int, int, int)}, sampling the image further down
+     * while the decoded bitmap and its transformed copy don't fit the memory limit.
+     *
+     * @return The sample size, or 0 if not even a single pixel fits
+     */
+    static int calculateInSampleSize(int width, int height, int maxDimension, boolean rotated, long memoryLimit) {
+        int inSampleSize = calculateInSampleSize(width, height, maxDimension);
+        while (true) {
+            int decodedWidth = ceilDiv(width, inSampleSize);
+            int decodedHeight = ceilDiv(height, inSampleSize);
+            if (bytesOf(decodedWidth, decodedHeight, scaleOf(decodedWidth, decodedHeight, maxDimension), rotated) <= memoryLimit) {
+                return inSampleSize;
+            }
+            if (decodedWidth == 1 && decodedHeight == 1) {
+                return 0;
+            }
+            inSampleSize *= 2;
+        }
+    }
+
+    private static float scaleOf(int width, int height, int maxDimension) {
+        return Math.min(1f, (float) maxDimension / Math.max(width, height));
+    }
+
+    /**
+     * @return The bytes of the decoded bitmap plus the ones of its scaled or rotated copy, if it needs one
+     */
+    private static long bytesOf(int decodedWidth, int decodedHeight, float scale, boolean rotated) {
+        long bytes = (long) decodedWidth * decodedHeight * BYTES_PER_PIXEL;
+        if (scale < 1f || rotated) {
+            bytes += (long) Math.ceil(decodedWidth * scale) * (long) Math.ceil(decodedHeight * scale) * BYTES_PER_PIXEL;
+        }
+        return bytes;
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+
+}
@@ -37,8 +37,10 @@ import android.view.View;
 import android.view.ViewGroup;
 
 import com.andremion.counterfab.CounterFab;
+import com.andremion.louvre.GalleryOptions;
 import com.andremion.louvre.R;
 import com.andremion.louvre.StoragePermissionActivity;
+import com.andremion.louvre.metrics.Metrics;
 import com.andremion.louvre.preview.PreviewActivity;
 import com.andremion.louvre.util.transition.TransitionCallback;
 
@@ -48,10 +50,8 @@ import java.util.List;
 
 public class GalleryActivity extends StoragePermissionActivity implements GalleryFragment.Callbacks, View.OnClickListener {
 
-    private static final String EXTRA_MAX_SELECTION = GalleryActivity.class.getPackage().getName() + ".extra.MAX_SELECTION";
-    private static final String EXTRA_MEDIA_TYPE_FILTER = GalleryActivity.class.getPackage().getName() + ".extra.MEDIA_TYPE_FILTER";
+    private static final String EXTRA_OPTIONS = GalleryActivity.class.getPackage().getName() + ".extra.OPTIONS";
     private static final String EXTRA_SELECTION = GalleryActivity.class.getPackage().getName() + ".extra.SELECTION";
-    private static final int DEFAULT_MAX_SELECTION = 1;
     private static final String TITLE_STATE = "title_state";
     private static final int PREVIEW_REQUEST_CODE = 0;
 
@@ -68,8 +68,7 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
                                      @IntRange(from = 0) int maxSelection,
                                      List<Uri> selection,
                                      String... mediaTypeFilter) {
-        Intent intent = buildIntent(activity, maxSelection, selection, mediaTypeFilter);
-        activity.startActivityForResult(intent, requestCode);
+        startActivity(activity, requestCode, selection, optionsOf(maxSelection, mediaTypeFilter));
     }
 
     /**
@@ -85,22 +84,52 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
                                      @IntRange(from = 0) int maxSelection,
                                      List<Uri> selection,
                                      String... mediaTypeFilter) {
-        Intent intent = buildIntent(fragment.getContext(), maxSelection, selection, mediaTypeFilter);
+        startActivity(fragment, requestCode, selection, optionsOf(maxSelection, mediaTypeFilter));
+    }
+
+    /**
+     * Start the Gallery Activity with additional launch information.
+     *
+     * @param activity    Context to launch activity from.
+     * @param requestCode If >= 0, this code will be returned in onActivityResult() when the activity exits.
+     * @param selection   The current image selection
+     * @param options     The options of the gallery
+     */
+    public static void startActivity(@NonNull Activity activity, int requestCode,
+                                     @Nullable List<Uri> selection, @NonNull GalleryOptions options) {
+        Intent intent = buildIntent(activity, selection, options);
+        activity.startActivityForResult(intent, requestCode);
+    }
+
+    /**
+     * Start the Gallery Activity with additional launch information.
+     *
+     * @param fragment    Context to launch fragment from.
+     * @param requestCode If >= 0, this code will be returned in onActivityResult() when the fragment exits.
+     * @param selection   The current image selection
+     * @param options     The options of the gallery
+     */
+    public static void startActivity(@NonNull Fragment fragment, int requestCode,
+                                     @Nullable List<Uri> selection, @NonNull GalleryOptions options) {
+        Intent intent = buildIntent(fragment.getContext(), selection, options);
         fragment.startActivityForResult(intent, requestCode);
     }
 
     @NonNull
-    private static Intent buildIntent(@NonNull Context context, @IntRange(from = 0) int maxSelection, List<Uri> selection, String[] mediaTypeFilter) {
+    private static GalleryOptions optionsOf(@IntRange(from = 0) int maxSelection, String[] mediaTypeFilter) {
+        return new GalleryOptions.Builder()
+                .setMaxSelection(maxSelection)
+                .setMediaTypeFilter(mediaTypeFilter)
+                .build();
+    }
+
+    @NonNull
+    private static Intent buildIntent(@NonNull Context context, @Nullable List<Uri> selection, @NonNull GalleryOptions options) {
         Intent intent = new Intent(context, GalleryActivity.class);
-        if (maxSelection > 0) {
-            intent.putExtra(EXTRA_MAX_SELECTION, maxSelection);
-        }
+        intent.putExtra(EXTRA_OPTIONS, options);
         if (selection != null) {
             intent.putExtra(EXTRA_SELECTION, new LinkedList<>(selection));
         }
-        if (mediaTypeFilter != null && mediaTypeFilter.length > 0) {
-            intent.putExtra(EXTRA_MEDIA_TYPE_FILTER, mediaTypeFilter);
-        }
         return intent;
     }
 
@@ -108,6 +137,7 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
         return data.getParcelableArrayListExtra(EXTRA_SELECTION);
     }
 
+    private GalleryOptions mOptions;
     private GalleryFragment mFragment;
     private ViewGroup mContentView;
     private CounterFab mFab;
@@ -130,14 +160,15 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
         mFab.setOnClickListener(this);
 
         mFragment = (GalleryFragment) getSupportFragmentManager().findFragmentById(R.id.fragment_gallery);
-        mFragment.setMaxSelection(getIntent().getIntExtra(EXTRA_MAX_SELECTION, DEFAULT_MAX_SELECTION));
+        mOptions = getIntent().getParcelableExtra(EXTRA_OPTIONS);
+        if (mOptions == null) {
+            mOptions = GalleryOptions.defaults();
+        }
+        mFragment.setOptions(mOptions);
         if (getIntent().hasExtra(EXTRA_SELECTION)) {
             //noinspection unchecked
             mFragment.setSelection((List<Uri>) getIntent().getSerializableExtra(EXTRA_SELECTION));
         }
-        if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
-            mFragment.setMediaTypeFilter(getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
-        }
 
         if (savedInstanceState == null) {
             setResult(RESULT_CANCELED);
@@ -207,8 +238,13 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
 
     @Override
     public void onClick(View v) {
+        onSelectionDone(mFragment.getSelection());
+    }
+
+    @Override
+    public void onSelectionDone(@NonNull List<Uri> selection) {
         Intent data = new Intent();
-        data.putExtra(EXTRA_SELECTION, (ArrayList<Uri>) mFragment.getSelection());
+        data.putParcelableArrayListExtra(EXTRA_SELECTION, new ArrayList<Uri>(selection));
         setResult(RESULT_OK, data);
         finish();
     }
@@ -218,16 +254,16 @@ public class GalleryActivity extends StoragePermissionActivity implements Galler
         setActionBarTitle(label);
     }
 
+    @Override
+    public void onBucketsShown(@Nullable String label) {
+        setActionBarTitle(label != null ? label : "Gallery");
+    }
+
     @Override
     public void onMediaClick(@NonNull View imageView, @NonNull View checkView, long bucketId, int position) {
-        if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
-            PreviewActivity.startActivity(this, PREVIEW_REQUEST_CODE, imageView, checkView, bucketId, position, mFragment.getSelection(),
-                    getIntent().getIntExtra(EXTRA_MAX_SELECTION, DEFAULT_MAX_SELECTION),
-                    getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
-        } else {
-            PreviewActivity.startActivity(this, PREVIEW_REQUEST_CODE, imageView, checkView, bucketId, position, mFragment.getSelection(),
-                    getIntent().getIntExtra(EXTRA_MAX_SELECTION, DEFAULT_MAX_SELECTION));
-        }
+        Metrics.markPreviewRequested();
+        PreviewActivity.startActivity(this, PREVIEW_REQUEST_CODE, imageView, checkView, bucketId, position, mFragment.getSelection(),
+                mOptions);
     }
 
     @Override
@@ -16,14 +16,18 @@
 
 package com.andremion.louvre.home;
 
+import android.content.Context;
 import android.database.Cursor;
+import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.provider.MediaStore;
 import android.support.annotation.IntDef;
 import android.support.annotation.IntRange;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.VisibleForTesting;
 import android.support.v4.view.ViewCompat;
+import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
 import android.view.LayoutInflater;
@@ -34,9 +38,19 @@ import android.widget.ImageView;
 import android.widget.TextView;
 
 import com.andremion.louvre.R;
+import com.andremion.louvre.data.AspectIndex;
+import com.andremion.louvre.data.DuplicateDetector;
+import com.andremion.louvre.data.FolderTree;
+import com.andremion.louvre.data.NameIndex;
+import com.andremion.louvre.data.PlaceholderIndex;
+import com.andremion.louvre.data.SectionIndex;
+import com.andremion.louvre.image.ImageEngine;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.metrics.Metrics;
+import com.andremion.louvre.metrics.Tracer;
 import com.andremion.louvre.util.AnimationHelper;
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.request.RequestOptions;
+import com.andremion.louvre.util.FastScroller;
+import com.andremion.louvre.util.MemoryPolicy;
 
 import java.io.File;
 import java.lang.annotation.Retention;
@@ -47,18 +61,24 @@ import java.util.List;
 /**
  * {@link RecyclerView.Adapter} subclass used to bind {@link Cursor} items from {@link MediaStore} into {@link RecyclerView}
  * <p>
- * We can have two types of {@link View} items: {@link #VIEW_TYPE_BUCKET} or {@link #VIEW_TYPE_MEDIA}
+ * We can have two types of {@link View} items: {@link #VIEW_TYPE_BUCKET} or {@link #VIEW_TYPE_MEDIA}.
+ * The media loaded as a timeline also has {@link #VIEW_TYPE_SECTION} headers, placed by its {@link SectionIndex},
+ * so the positions of this adapter are mapped to the cursor positions through it.
  */
-class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
+class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> implements FastScroller.Sections {
 
     static final int VIEW_TYPE_BUCKET = 0;
     static final int VIEW_TYPE_MEDIA = 1;
+    static final int VIEW_TYPE_SECTION = 2;
 
     private static final String SELECTION_PAYLOAD = "selection";
+    private static final String DUPLICATE_PAYLOAD = "duplicate";
+    private static final String LAYOUT_PAYLOAD = "layout";
     private static final float SELECTED_SCALE = .8f;
     private static final float UNSELECTED_SCALE = 1f;
+    private static final ImageEngine.Listener THUMBNAIL_METRICS = new ThumbnailMetricsListener();
 
-    @IntDef({VIEW_TYPE_BUCKET, VIEW_TYPE_MEDIA})
+    @IntDef({VIEW_TYPE_BUCKET, VIEW_TYPE_MEDIA, VIEW_TYPE_SECTION})
     @Retention(RetentionPolicy.SOURCE)
     @interface ViewType {
     }
@@ -86,6 +106,23 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     private int mViewType = VIEW_TYPE_BUCKET;
     @Nullable
     private Cursor mData;
+    @Nullable
+    private SectionIndex mSectionIndex;
+    @Nullable
+    private JustifiedLayout mJustifiedLayout;
+    private int mJustifiedRowHeight;
+    private int mCellSize;
+    private int mTier = ThumbnailTiers.NO_TIER;
+    private int mPreviousTier = ThumbnailTiers.NO_TIER;
+    @Nullable
+    private MemoryPolicy mMemoryPolicy;
+    @Nullable
+    private DuplicateDetector.Duplicates mDuplicates;
+    @Nullable
+    private PlaceholderIndex mPlaceholderIndex;
+    private final int[] mPlaceholderColors = new int[PlaceholderIndex.SIZE];
+    @Nullable
+    private NameIndex.Search mSearch;
 
     GalleryAdapter() {
         mSelection = new LinkedList<>();
@@ -100,6 +137,10 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         mMaxSelection = maxSelection;
     }
 
+    void setMemoryPolicy(@Nullable MemoryPolicy memoryPolicy) {
+        mMemoryPolicy = memoryPolicy;
+    }
+
     public void setLayoutManager(@NonNull LinearLayoutManager layoutManager) {
         mLayoutManager = layoutManager;
     }
@@ -110,14 +151,143 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         }
         if (data != mData) {
             mData = data;
+            mSearch = null;
+            mSectionIndex = VIEW_TYPE_MEDIA == viewType ? SectionIndex.of(data) : null;
+            swapJustifiedLayout(VIEW_TYPE_MEDIA == viewType ? AspectIndex.of(data) : null);
+            mPlaceholderIndex = VIEW_TYPE_MEDIA == viewType ? PlaceholderIndex.of(data) : null;
             notifyDataSetChanged();
         }
     }
 
+    /**
+     * Show only the results of the given search over the names of the media, or all of them if null
+     */
+    void setSearch(@Nullable NameIndex.Search search) {
+        if (search == mSearch || VIEW_TYPE_MEDIA != mViewType) {
+            return;
+        }
+        boolean searching = search != null;
+        if (searching != (mSearch != null)) {
+            // The results are shown as a plain grid, without the date headers nor the justified rows
+            mSectionIndex = searching ? null : SectionIndex.of(mData);
+            swapJustifiedLayout(searching ? null : AspectIndex.of(mData));
+        }
+        mSearch = search;
+        notifyDataSetChanged();
+    }
+
+    /**
+     * Set the target height of the justified rows, which are laid out when the data has an {@link AspectIndex}
+     */
+    void setJustifiedRowHeight(int rowHeight) {
+        mJustifiedRowHeight = rowHeight;
+        if (mJustifiedLayout != null && mLayoutManager != null) {
+            mJustifiedLayout.setSize(getContentWidth(mLayoutManager), rowHeight);
+        }
+    }
+
+    /**
+     * Set the size of the square media cells, which the thumbnails are decoded for in {@link ThumbnailTiers}
+     */
+    void setCellSize(int cellSize) {
+        if (cellSize == mCellSize) {
+            return;
+        }
+        boolean larger = cellSize > mCellSize;
+        mCellSize = cellSize;
+        int tier = tierOf(cellSize);
+        boolean tierChanged = tier != mTier;
+        if (tierChanged) {
+            mPreviousTier = mTier;
+            mTier = tier;
+        }
+        if (VIEW_TYPE_MEDIA == mViewType) {
+            // Larger cells need sharper thumbnails, while smaller ones keep showing the ones they have
+            notifyItemRangeChanged(0, getItemCount(), larger && tierChanged ? null : LAYOUT_PAYLOAD);
+        }
+    }
+
+    /**
+     * Start decoding the thumbnails of the given positions for cells of the given size, so they are
+     * likely cached when a denser grid shows them
+     */
+    void preload(@NonNull Context context, int cellSize, int from, int to) {
+        if (VIEW_TYPE_MEDIA != mViewType || mJustifiedLayout != null || mData == null) {
+            return;
+        }
+        ImageEngine imageEngine = ImageEngines.get();
+        int size = ThumbnailTiers.sizeOf(tierOf(cellSize));
+        for (int position = Math.max(0, from); position < Math.min(to, getItemCount()); position++) {
+            if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
+                imageEngine.preloadThumbnail(context, getData(position), getMediaId(position), getDateModified(position), size);
+            }
+        }
+    }
+
+    /**
+     * @return The thumbnail tier of the given cell size, a smaller one on low RAM devices
+     */
+    private int tierOf(int cellSize) {
+        if (mMemoryPolicy != null && mMemoryPolicy.isLowRamDevice()) {
+            cellSize /= 2;
+        }
+        return ThumbnailTiers.tierOf(cellSize);
+    }
+
+    private boolean isTiered() {
+        return VIEW_TYPE_MEDIA == mViewType && mJustifiedLayout == null && mTier != ThumbnailTiers.NO_TIER;
+    }
+
+    boolean isJustified() {
+        return mJustifiedLayout != null;
+    }
+
+    private void swapJustifiedLayout(@Nullable AspectIndex aspectIndex) {
+        if (mJustifiedLayout != null) {
+            mJustifiedLayout.release();
+            mJustifiedLayout = null;
+        }
+        if (aspectIndex != null && mJustifiedRowHeight > 0) {
+            mJustifiedLayout = new JustifiedLayout(aspectIndex, mSectionIndex, mJustifiedRowHeight, new JustifiedLayout.Callback() {
+                @Override
+                public void onRowsChanged() {
+                    notifyItemRangeChanged(0, getItemCount(), LAYOUT_PAYLOAD);
+                }
+            });
+            if (mLayoutManager != null) {
+                // Start computing the rows now, so they are likely ready when the list is laid out
+                mJustifiedLayout.setSize(getContentWidth(mLayoutManager), mJustifiedRowHeight);
+            }
+        }
+    }
+
+    private static int getContentWidth(@NonNull RecyclerView.LayoutManager layoutManager) {
+        return layoutManager.getWidth() - layoutManager.getPaddingLeft() - layoutManager.getPaddingRight();
+    }
+
+    void setDuplicates(@Nullable DuplicateDetector.Duplicates duplicates) {
+        mDuplicates = duplicates;
+        if (VIEW_TYPE_MEDIA == mViewType) {
+            notifyItemRangeChanged(0, getItemCount(), DUPLICATE_PAYLOAD);
+        }
+    }
+
+    /**
+     * @return A lookup that makes the section headers take a full row of the given {@link GridLayoutManager}
+     */
+    @NonNull
+    GridLayoutManager.SpanSizeLookup createSpanSizeLookup(@NonNull GridLayoutManager layoutManager) {
+        return new GridSpanSizeLookup(layoutManager);
+    }
+
     @Override
     public long getItemId(int position) {
         if (mData != null && !mData.isClosed()) {
-            mData.moveToPosition(position);
+            if (isSection(position)) {
+                // Negative ids of the sections, which don't clash with the MediaStore ids
+                return Long.MIN_VALUE + mSectionIndex.getSectionForPosition(position);
+            }
+            moveToPosition(position);
             if (VIEW_TYPE_MEDIA == mViewType) {
                 return mData.getLong(mData.getColumnIndex(MediaStore.Images.ImageColumns._ID));
             } else {
@@ -130,7 +300,10 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     @Override
     public int getItemCount() {
         if (mData != null && !mData.isClosed()) {
-            return mData.getCount();
+            if (mSearch != null) {
+                return mSearch.getCount();
+            }
+            return mSectionIndex != null ? mSectionIndex.getItemCount() : mData.getCount();
         }
         return 0;
     }
@@ -141,32 +314,110 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
 
     @Override
     public int getItemViewType(int position) {
-        return mViewType;
+        return isSection(position) ? VIEW_TYPE_SECTION : mViewType;
+    }
+
+    @Override
+    public int getSectionCount() {
+        return mSectionIndex != null ? mSectionIndex.getSectionCount() : 0;
+    }
+
+    @Override
+    public int getSectionForPosition(int position) {
+        assert mSectionIndex != null; // It is supposed not be null here
+        return mSectionIndex.getSectionForPosition(position);
+    }
+
+    @Override
+    public int getPositionForSection(int section) {
+        assert mSectionIndex != null; // It is supposed not be null here
+        return mSectionIndex.getHeaderPosition(section);
+    }
+
+    @NonNull
+    @Override
+    public String getSectionLabel(@NonNull Context context, int section) {
+        assert mSectionIndex != null; // It is supposed not be null here
+        return mSectionIndex.formatSection(context, section);
+    }
+
+    /**
+     * @return The position of this adapter that shows the given cursor position, or {@link RecyclerView#NO_POSITION}
+     * if the search leaves it out
+     */
+    int toAdapterPosition(int dataPosition) {
+        if (mSearch != null) {
+            int index = mSearch.indexOf(dataPosition);
+            return index >= 0 ? index : RecyclerView.NO_POSITION;
+        }
+        return mSectionIndex != null ? mSectionIndex.toPosition(dataPosition) : dataPosition;
+    }
+
+    private int toDataPosition(int position) {
+        if (mSearch != null) {
+            return mSearch.getPosition(position);
+        }
+        return mSectionIndex != null ? mSectionIndex.toDataPosition(position) : position;
+    }
+
+    private boolean isSection(int position) {
+        return mSectionIndex != null && mSectionIndex.isHeader(position);
     }
 
     @Override
     public GalleryAdapter.ViewHolder onCreateViewHolder(ViewGroup parent, @ViewType int viewType) {
-        if (VIEW_TYPE_MEDIA == viewType) {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_media, parent, false);
-            return new MediaViewHolder(view);
-        } else {
-            View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_bucket, parent, false);
-            return new BucketViewHolder(view);
+        boolean traced = Tracer.begin("Louvre:createViewHolder");
+        try {
+            if (VIEW_TYPE_MEDIA == viewType) {
+                View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_media, parent, false);
+                return new MediaViewHolder(view);
+            } else if (VIEW_TYPE_SECTION == viewType) {
+                View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_section, parent, false);
+                return new SectionViewHolder(view);
+            } else {
+                View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.list_item_gallery_bucket, parent, false);
+                return new BucketViewHolder(view);
+            }
+        } finally {
+            Tracer.end(traced);
         }
     }
 
     @Override
     public void onBindViewHolder(@NonNull GalleryAdapter.ViewHolder holder, int position) {
+        boolean traced = Tracer.begin("Louvre:bindViewHolder");
+        try {
+            bindViewHolder(holder, position);
+        } finally {
+            Tracer.end(traced);
+        }
+    }
+
+    private void bindViewHolder(@NonNull GalleryAdapter.ViewHolder holder, int position) {
+        if (holder instanceof SectionViewHolder) {
+            assert mSectionIndex != null; // It is supposed not be null here
+            SectionViewHolder viewHolder = (SectionViewHolder) holder;
+            viewHolder.mTextView.setText(mSectionIndex.formatSection(holder.itemView.getContext(),
+                    mSectionIndex.getSectionForPosition(position)));
+            return;
+        }
+        boolean measure = Metrics.isEnabled();
+        long startedAt = measure ? Metrics.now() : 0;
         Uri data = getData(position);
         //String imageTransitionName = holder.itemView.getContext().getString(R.string.activity_gallery_image_transition, data.toString());
         //String checkboxTransitionName = holder.itemView.getContext().getString(R.string.activity_gallery_checkbox_transition, data.toString());
         //ViewCompat.setTransitionName(holder.mImageView, imageTransitionName);
-        Glide.with(holder.mImageView.getContext())
-                .load(data)
-                .apply(RequestOptions.skipMemoryCacheOf(true)
-                        .centerCrop()
-                        .placeholder(R.color.gallery_item_background))
-                .into(holder.mImageView);
+        long mediaId = getMediaId(position);
+        long dateModified = getDateModified(position);
+        Drawable placeholder = getPlaceholder(holder, position);
+        if (isTiered()) {
+            // The thumbnail cached at the previous density is shown until the one of this density is decoded
+            ImageEngines.get().loadThumbnail(holder.mImageView, data, mediaId, dateModified, ThumbnailTiers.sizeOf(mTier),
+                    ThumbnailTiers.sizeOf(mPreviousTier), placeholder, measure ? THUMBNAIL_METRICS : null);
+        } else {
+            ImageEngines.get().loadThumbnail(holder.mImageView, data, mediaId, dateModified, 0, 0,
+                    placeholder, measure ? THUMBNAIL_METRICS : null);
+        }
 
         boolean selected = isSelected(position);
         if (selected) {
@@ -181,10 +432,23 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
             MediaViewHolder viewHolder = (MediaViewHolder) holder;
             //ViewCompat.setTransitionName(viewHolder.mCheckView, checkboxTransitionName);
             viewHolder.mCheckView.setChecked(selected);
+            viewHolder.mDuplicateView.setVisibility(isDuplicate(position) ? View.VISIBLE : View.GONE);
+            viewHolder.updateHeight(position);
             holder.mImageView.setContentDescription(getLabel(position));
         } else {
             BucketViewHolder viewHolder = (BucketViewHolder) holder;
-            viewHolder.mTextView.setText(getLabel(position));
+            String label = getLabel(position);
+            // The folders of a folder tree come with the count of their media
+            int countColumn = mData.getColumnIndex(FolderTree.COUNT);
+            if (countColumn >= 0) {
+                label = holder.itemView.getContext().getString(R.string.activity_gallery_bucket_count, label,
+                        mData.getInt(countColumn));
+            }
+            viewHolder.mTextView.setText(label);
+        }
+
+        if (measure) {
+            Metrics.reportBind(startedAt);
         }
     }
 
@@ -208,11 +472,28 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
                             AnimationHelper.scaleView(holder.mImageView, UNSELECTED_SCALE);
                         }
                     }
+                } else if (DUPLICATE_PAYLOAD.equals(payload)) {
+                    if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
+                        MediaViewHolder viewHolder = (MediaViewHolder) holder;
+                        viewHolder.mDuplicateView.setVisibility(isDuplicate(position) ? View.VISIBLE : View.GONE);
+                    }
+                } else if (LAYOUT_PAYLOAD.equals(payload)) {
+                    if (VIEW_TYPE_MEDIA == getItemViewType(position)) {
+                        ((MediaViewHolder) holder).updateHeight(position);
+                    }
                 }
             }
         }
     }
 
+    @Override
+    public void onViewRecycled(@NonNull GalleryAdapter.ViewHolder holder) {
+        // Release the bitmap into the pool now, instead of holding it until the view is bound again
+        if (holder.mImageView != null) {
+            ImageEngines.get().cancel(holder.mImageView);
+        }
+    }
+
     List<Uri> getSelection() {
         return new LinkedList<>(mSelection);
     }
@@ -230,9 +511,9 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
             return;
         }
         List<Uri> selectionToAdd = new LinkedList<>();
-        int count = mData.getCount();
+        int count = getItemCount();
         for (int position = 0; position < count; position++) {
-            if (!isSelected(position)) {
+            if (VIEW_TYPE_MEDIA == getItemViewType(position) && !isSelected(position)) {
                 Uri data = getData(position);
                 selectionToAdd.add(data);
             }
@@ -267,7 +548,8 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         notifyItemRangeChanged(from, count, SELECTION_PAYLOAD);
     }
 
-    private boolean isSelected(int position) {
+    @VisibleForTesting
+    boolean isSelected(int position) {
         if (VIEW_TYPE_MEDIA != getItemViewType(position))
             return false;
 
@@ -275,9 +557,26 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         return mSelection.contains(data);
     }
 
+    private boolean isDuplicate(int position) {
+        return mDuplicates != null && mDuplicates.isDuplicate(getItemId(position));
+    }
+
+    /**
+     * Fill the placeholder of the media cell with the colors of its position, if they were computed yet
+     */
+    @Nullable
+    private Drawable getPlaceholder(@NonNull GalleryAdapter.ViewHolder holder, int position) {
+        if (mPlaceholderIndex == null || !(holder instanceof MediaViewHolder)
+                || !mPlaceholderIndex.getColors(toDataPosition(position), mPlaceholderColors)) {
+            return null;
+        }
+        PlaceholderDrawable placeholder = ((MediaViewHolder) holder).mPlaceholder;
+        placeholder.setColors(mPlaceholderColors);
+        return placeholder;
+    }
+
     private String getLabel(int position) {
-        assert mData != null; // It is supposed not be null here
-        mData.moveToPosition(position);
+        moveToPosition(position);
         if (mViewType == VIEW_TYPE_MEDIA) {
             return mData.getString(mData.getColumnIndex(MediaStore.Images.ImageColumns.DISPLAY_NAME));
         } else {
@@ -286,17 +585,36 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
     }
 
     private Uri getData(int position) {
-        assert mData != null; // It is supposed not be null here
-        mData.moveToPosition(position);
+        moveToPosition(position);
         return Uri.fromFile(new File(mData.getString(mData.getColumnIndex(MediaStore.Images.Media.DATA))));
     }
 
+    private long getMediaId(int position) {
+        if (VIEW_TYPE_MEDIA != mViewType) {
+            return ImageEngine.NO_MEDIA_ID;
+        }
+        moveToPosition(position);
+        return mData.getLong(mData.getColumnIndex(MediaStore.Images.ImageColumns._ID));
+    }
+
+    private long getDateModified(int position) {
+        if (VIEW_TYPE_MEDIA != mViewType) {
+            return 0;
+        }
+        moveToPosition(position);
+        return mData.getLong(mData.getColumnIndex(MediaStore.Images.ImageColumns.DATE_MODIFIED));
+    }
+
     private long getBucketId(int position) {
-        assert mData != null; // It is supposed not be null here
-        mData.moveToPosition(position);
+        moveToPosition(position);
         return mData.getLong(mData.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID));
     }
 
+    private void moveToPosition(int position) {
+        assert mData != null; // It is supposed not be null here
+        mData.moveToPosition(toDataPosition(position));
+    }
+
     abstract class ViewHolder extends RecyclerView.ViewHolder {
 
         final ImageView mImageView;
@@ -334,17 +652,51 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
 
     }
 
+    private class SectionViewHolder extends ViewHolder {
+
+        private final TextView mTextView;
+
+        private SectionViewHolder(View itemView) {
+            super(itemView);
+            mTextView = itemView.findViewById(R.id.text);
+        }
+
+    }
+
     class MediaViewHolder extends ViewHolder implements View.OnClickListener {
 
         final CheckedTextView mCheckView;
+        final View mDuplicateView;
+        final PlaceholderDrawable mPlaceholder;
+        private final int mDefaultHeight;
 
         private MediaViewHolder(View itemView) {
             super(itemView);
             mCheckView = itemView.findViewById(R.id.check);
+            mDuplicateView = itemView.findViewById(R.id.duplicate);
+            mPlaceholder = new PlaceholderDrawable();
+            mDefaultHeight = itemView.getLayoutParams().height;
             mCheckView.setOnClickListener(this);
             itemView.setOnClickListener(this);
         }
 
+        /**
+         * Match the height of the justified row of the given position, or the size of the square cells
+         */
+        private void updateHeight(int position) {
+            int height;
+            if (mJustifiedLayout != null) {
+                height = mJustifiedLayout.getRowHeight(toDataPosition(position));
+            } else {
+                height = mCellSize > 0 ? mCellSize : mDefaultHeight;
+            }
+            ViewGroup.LayoutParams params = itemView.getLayoutParams();
+            if (params.height != height) {
+                params.height = height;
+                itemView.setLayoutParams(params);
+            }
+        }
+
         @Override
         public void onClick(View v) {
             int position = getAdapterPosition();
@@ -369,7 +721,7 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
                 }
             } else {
                 if (mCallbacks != null) {
-                    mCallbacks.onMediaClick(mImageView, mCheckView, getBucketId(position), position);
+                    mCallbacks.onMediaClick(mImageView, mCheckView, getBucketId(position), toDataPosition(position));
                 }
             }
         }
@@ -388,4 +740,72 @@ class GalleryAdapter extends RecyclerView.Adapter<GalleryAdapter.ViewHolder> {
         }
         return true;
     }
+
+    private class GridSpanSizeLookup extends GridLayoutManager.SpanSizeLookup {
+
+        private final GridLayoutManager mLayoutManager;
+
+        private GridSpanSizeLookup(@NonNull GridLayoutManager layoutManager) {
+            mLayoutManager = layoutManager;
+        }
+
+        @Override
+        public int getSpanSize(int position) {
+            if (isSection(position)) {
+                return mLayoutManager.getSpanCount();
+            }
+            JustifiedLayout justifiedLayout = getJustifiedLayout();
+            return justifiedLayout != null
+                    ? justifiedLayout.getSpanSize(toDataPosition(position), mLayoutManager.getSpanCount()) : 1;
+        }
+
+        // Computed from the section index and the justified rows, since the default ones walk every position before the given one
+
+        @Override
+        public int getSpanIndex(int position, int spanCount) {
+            JustifiedLayout justifiedLayout = getJustifiedLayout();
+            if (justifiedLayout != null) {
+                return isSection(position) ? 0 : justifiedLayout.getSpanIndex(toDataPosition(position), spanCount);
+            }
+            return mSectionIndex != null ? mSectionIndex.getSpanIndex(position, spanCount) : position % spanCount;
+        }
+
+        @Override
+        public int getSpanGroupIndex(int adapterPosition, int spanCount) {
+            JustifiedLayout justifiedLayout = getJustifiedLayout();
+            if (justifiedLayout != null) {
+                if (mSectionIndex == null) {
+                    return justifiedLayout.getRow(adapterPosition);
+                }
+                // Every header takes a row of its own
+                int section = mSectionIndex.getSectionForPosition(adapterPosition);
+                if (isSection(adapterPosition)) {
+                    return justifiedLayout.getRow(mSectionIndex.getSectionStart(section)) + section;
+                }
+                return justifiedLayout.getRow(toDataPosition(adapterPosition)) + section + 1;
+            }
+            return mSectionIndex != null ? mSectionIndex.getSpanGroupIndex(adapterPosition, spanCount) : adapterPosition / spanCount;
+        }
+
+        @Nullable
+        private JustifiedLayout getJustifiedLayout() {
+            if (mJustifiedLayout != null) {
+                mJustifiedLayout.setSize(getContentWidth(mLayoutManager), mJustifiedRowHeight);
+            }
+            return mJustifiedLayout;
+        }
+    }
+
+    private static class ThumbnailMetricsListener implements ImageEngine.Listener {
+
+        @Override
+        public void onImageReady(boolean fromCache) {
+            Metrics.reportThumbnail(fromCache);
+        }
+
+        @Override
+        public void onImageFailed() {
+        }
+    }
+
 }
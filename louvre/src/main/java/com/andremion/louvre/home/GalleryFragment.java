@@ -31,33 +31,60 @@ import android.support.v4.app.FragmentActivity;
 import android.support.v4.app.SharedElementCallback;
 import android.support.v7.widget.GridLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.transition.Transition;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.Menu;
 import android.view.MenuInflater;
 import android.view.MenuItem;
+import android.view.MotionEvent;
+import android.view.ScaleGestureDetector;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.ViewTreeObserver;
 
 import android.widget.TextView;
+import com.andremion.louvre.GalleryOptions;
 import com.andremion.louvre.R;
+import com.andremion.louvre.data.DirectorySource;
+import com.andremion.louvre.data.DuplicateDetector;
+import com.andremion.louvre.data.FolderTree;
 import com.andremion.louvre.data.MediaLoader;
+import com.andremion.louvre.data.NameIndex;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.metrics.FrameTracker;
+import com.andremion.louvre.metrics.Metrics;
+import com.andremion.louvre.metrics.MetricsListener;
 import com.andremion.louvre.preview.PreviewActivity;
+import com.andremion.louvre.util.FastScroller;
 import com.andremion.louvre.util.ItemOffsetDecoration;
+import com.andremion.louvre.util.MemoryPolicy;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
 import com.andremion.louvre.util.transition.TransitionCallback;
 
 import java.util.ArrayList;
 import java.util.List;
 
-public class GalleryFragment extends Fragment implements MediaLoader.Callbacks, GalleryAdapter.Callbacks {
+/**
+ * The gallery of the picker. Besides in {@link GalleryActivity}, it can be embedded in a host's own window,
+ * like in a bottom sheet, with the result and the events sent to the {@link Callbacks} the parent fragment
+ * or the activity implements.
+ * <p>
+ * An embedding host calls {@link #loadBuckets()} once it has the storage permission, and may turn the
+ * options menu off with {@link #setHasOptionsMenu(boolean)}.
+ */
+public class GalleryFragment extends Fragment implements MediaLoader.Callbacks, GalleryAdapter.Callbacks, DuplicateDetector.Callbacks {
 
     public interface Callbacks {
 
         void onBucketClick(String label);
 
+        /**
+         * Called when going back to the buckets, with the label of the folder listed, or null for the root
+         */
+        void onBucketsShown(@Nullable String label);
+
         void onMediaClick(@NonNull View imageView, View checkView, long bucketId, int position);
 
         void onSelectionUpdated(int count);
@@ -65,24 +92,88 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         void onMaxSelectionReached();
 
         void onWillExceedMaxSelection();
+
+        /**
+         * Called when the user is done picking, from the check menu
+         */
+        void onSelectionDone(@NonNull List<Uri> selection);
     }
 
+    private static final String ARG_OPTIONS = "options";
+    private static final String ARG_SELECTION = "selection";
+    private static final String SELECTION_STATE = "selection_state";
+
+    // The densities of the media grid, which the pinch gestures move between
+    private static final int[] MEDIA_COLUMN_COUNTS = {2, 3, 5, 8};
+    private static final int DEFAULT_DENSITY = 1;
+    // Scale of a pinch that moves to the next density
+    private static final float DENSITY_STEP_SCALE = 1.25f;
+
     private final MediaLoader mMediaLoader;
     private final GalleryAdapter mAdapter;
     private View mEmptyView;
     private GridLayoutManager mLayoutManager;
     private RecyclerView mRecyclerView;
+    private FrameTracker mFrameTracker;
+    @Nullable
+    private String[] mMediaDirectories;
+    @Nullable
+    private DirectorySource mDirectorySource;
     private Callbacks mCallbacks;
     private boolean mShouldHandleBackPressed;
+    private boolean mBucketOpened;
+    @Nullable
+    private NameIndex mNameIndex;
+    @Nullable
+    private NameIndex.Search mSearch;
+    // The query typed in the search view, or null while it is collapsed
+    @Nullable
+    private String mQuery;
+    @Nullable
+    private MenuItem mSearchItem;
+    private int mDensity = DEFAULT_DENSITY;
 
     public GalleryFragment() {
         mMediaLoader = new MediaLoader();
         mAdapter = new GalleryAdapter();
         mAdapter.setCallbacks(this);
+        mAdapter.setMaxSelection(GalleryOptions.DEFAULT_MAX_SELECTION);
         setRetainInstance(true);
         setHasOptionsMenu(true);
     }
 
+    /**
+     * Create the gallery with the given options and selection, kept in its arguments so they are restored along with it
+     */
+    @NonNull
+    public static GalleryFragment newInstance(@NonNull GalleryOptions options, @Nullable List<Uri> selection) {
+        Bundle args = new Bundle();
+        args.putParcelable(ARG_OPTIONS, options);
+        if (selection != null) {
+            args.putParcelableArrayList(ARG_SELECTION, new ArrayList<Uri>(selection));
+        }
+        GalleryFragment fragment = new GalleryFragment();
+        fragment.setArguments(args);
+        return fragment;
+    }
+
+    /**
+     * Set the options of the gallery, like the media to show and how to lay it out
+     */
+    public void setOptions(@NonNull GalleryOptions options) {
+        mMediaLoader.setOptions(options);
+        mAdapter.setMaxSelection(options.getMaxSelection());
+        String[] directories = options.getMediaDirectories();
+        mMediaDirectories = directories.length > 0 ? directories : null;
+        if (getContext() != null) {
+            applyMediaDirectories(getContext());
+        }
+        mMediaLoader.setDuplicateCallbacks(options.isDetectDuplicates() ? this : null);
+        if (!options.isDetectDuplicates()) {
+            mAdapter.setDuplicates(null);
+        }
+    }
+
     public void setMediaTypeFilter(@NonNull String[] mediaTypes) {
         mMediaLoader.setMediaTypes(mediaTypes);
     }
@@ -91,17 +182,79 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         mAdapter.setMaxSelection(maxSelection);
     }
 
+    private void applyMediaDirectories(@NonNull Context context) {
+        if (mDirectorySource != null) {
+            mMediaLoader.removeMediaSource(mDirectorySource);
+            mDirectorySource = null;
+        }
+        if (mMediaDirectories != null) {
+            mDirectorySource = DirectorySource.of(context, mMediaDirectories);
+            mMediaLoader.addMediaSource(mDirectorySource);
+        }
+    }
+
     @Override
     public void onAttach(Context context) {
         super.onAttach(context);
-        if (!(context instanceof Callbacks)) {
-            throw new IllegalArgumentException(context.getClass().getSimpleName() + " must implement " + Callbacks.class.getName());
+        // An embedding parent fragment, like a bottom sheet, gets the callbacks before the activity
+        Fragment parent = getParentFragment();
+        if (parent instanceof Callbacks) {
+            mCallbacks = (Callbacks) parent;
+        } else if (context instanceof Callbacks) {
+            mCallbacks = (Callbacks) context;
+        } else {
+            throw new IllegalArgumentException(context.getClass().getSimpleName() + " or the parent fragment must implement " + Callbacks.class.getName());
         }
-        mCallbacks = (Callbacks) context;
         if (!(context instanceof FragmentActivity)) {
             throw new IllegalArgumentException(context.getClass().getSimpleName() + " must inherit from " + FragmentActivity.class.getName());
         }
-        mMediaLoader.onAttach((FragmentActivity) context, this);
+        // The loaders of this fragment, so they don't clash with the ones of an embedding activity
+        mMediaLoader.onAttach((FragmentActivity) context, getLoaderManager(), this);
+        mAdapter.setMemoryPolicy(MemoryPolicy.get(context));
+        if (mMediaDirectories != null && mDirectorySource == null) {
+            applyMediaDirectories(context);
+        }
+    }
+
+    @Override
+    public void onCreate(@Nullable Bundle savedInstanceState) {
+        Metrics.markGalleryCreated();
+        super.onCreate(savedInstanceState);
+        Bundle args = getArguments();
+        if (args != null && args.containsKey(ARG_OPTIONS)) {
+            //noinspection ConstantConditions
+            setOptions((GalleryOptions) args.getParcelable(ARG_OPTIONS));
+        }
+        // Retained, so it is only created again after the process was gone, with the selection saved by then
+        List<Uri> selection = null;
+        if (savedInstanceState != null) {
+            selection = savedInstanceState.getParcelableArrayList(SELECTION_STATE);
+        } else if (args != null) {
+            selection = args.getParcelableArrayList(ARG_SELECTION);
+        }
+        if (selection != null) {
+            setSelection(selection);
+        }
+    }
+
+    @Override
+    public void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putParcelableArrayList(SELECTION_STATE, new ArrayList<Uri>(mAdapter.getSelection()));
+    }
+
+    @Override
+    public void onStart() {
+        super.onStart();
+        // Coming back from the background, the tiers shed meanwhile are restored
+        MemoryPolicy.get(getContext()).onGalleryStarted();
+    }
+
+    @Override
+    public void onDestroy() {
+        super.onDestroy();
+        // Retained, so it is only destroyed when the gallery is gone for good
+        MemoryPolicy.get(getContext()).onGalleryFinished();
     }
 
     private TextView badgeTextView;
@@ -126,6 +279,8 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
             .setActionView(badgeTextView)
             .setShowAsAction(MenuItem.SHOW_AS_ACTION_ALWAYS);
         inflater.inflate(R.menu.check_menu, menu);
+        inflater.inflate(R.menu.search_menu, menu);
+        setUpSearchView(menu.findItem(R.id.action_search));
 
         //<TextView
         //android:id="@+id/tv_count"
@@ -153,13 +308,67 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
 
     @Override
     public void onPrepareOptionsMenu(Menu menu) {
-        int count = ((GalleryActivity) getActivity()).getSelectionCount();
+        int count = mAdapter.getSelection().size();
         menu.findItem(R.id.menu_check).setVisible(count > 0);
         menu.findItem(BADGE_ID).setVisible(count > 0);
+        menu.findItem(R.id.action_search).setVisible(mNameIndex != null);
         badgeTextView.setText(count > 100 ? "99+" : count + "");
         super.onPrepareOptionsMenu(menu);
     }
 
+    /**
+     * Search the names of the media as they are typed, restoring the search of the previous menu, if any
+     */
+    private void setUpSearchView(@NonNull MenuItem searchItem) {
+        mSearchItem = searchItem;
+        SearchView searchView = (SearchView) searchItem.getActionView();
+        if (mQuery != null) {
+            searchItem.expandActionView();
+            searchView.setQuery(mQuery, false);
+        }
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                return false;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                search(newText);
+                return true;
+            }
+        });
+        searchItem.setOnActionExpandListener(new MenuItem.OnActionExpandListener() {
+            @Override
+            public boolean onMenuItemActionExpand(MenuItem item) {
+                search("");
+                return true;
+            }
+
+            @Override
+            public boolean onMenuItemActionCollapse(MenuItem item) {
+                search(null);
+                return true;
+            }
+        });
+    }
+
+    /**
+     * Filter the loaded media by the given query, refining the current search when the query extends it
+     */
+    private void search(@Nullable String query) {
+        if (query == null ? mQuery == null : query.equals(mQuery)) {
+            return;
+        }
+        mQuery = query;
+        mSearch = mNameIndex != null && query != null ? mNameIndex.search(query, mSearch) : null;
+        mAdapter.setSearch(mSearch);
+        if (GalleryAdapter.VIEW_TYPE_MEDIA == mAdapter.getViewType()) {
+            applyDensity();
+        }
+        updateEmptyState();
+    }
+
     @Override
     public boolean onOptionsItemSelected(MenuItem item) {
         if (item.getItemId() == android.R.id.home) {
@@ -175,7 +384,7 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
             return true;
         }
         if (item.getItemId() == R.id.menu_check) {
-            ((GalleryActivity) getActivity()).onClick(null);
+            mCallbacks.onSelectionDone(getSelection());
             return true;
         }
         return super.onOptionsItemSelected(item);
@@ -185,23 +394,41 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
     public void onBucketLoadFinished(@Nullable Cursor data) {
         mLayoutManager.setSpanCount(2);
         mAdapter.swapData(GalleryAdapter.VIEW_TYPE_BUCKET, data);
+        mNameIndex = null;
+        mSearch = null;
+        mQuery = null;
         getActivity().invalidateOptionsMenu();
         updateEmptyState();
     }
 
     @Override
     public void onMediaLoadFinished(@Nullable Cursor data) {
-        mLayoutManager.setSpanCount(3);
         mAdapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, data);
+        mNameIndex = NameIndex.of(data);
+        // A reload keeps showing the results of the typed query
+        mSearch = mNameIndex != null && mQuery != null ? mNameIndex.search(mQuery, null) : null;
+        mAdapter.setSearch(mSearch);
+        applyDensity();
         getActivity().invalidateOptionsMenu();
         updateEmptyState();
     }
 
+    @Override
+    public void onDuplicatesDetected(@NonNull DuplicateDetector.Duplicates duplicates) {
+        mAdapter.setDuplicates(duplicates);
+    }
+
     private void updateEmptyState() {
         mRecyclerView.setVisibility(mAdapter.getItemCount() > 0 ? View.VISIBLE : View.INVISIBLE);
         mEmptyView.setVisibility(mAdapter.getItemCount() > 0 ? View.INVISIBLE : View.VISIBLE);
     }
 
+    @Override
+    public void onDestroyView() {
+        super.onDestroyView();
+        mFrameTracker.stop();
+    }
+
     @Override
     public void onDetach() {
         super.onDetach();
@@ -217,7 +444,9 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         mEmptyView = view.findViewById(android.R.id.empty);
 
         mLayoutManager = new GridLayoutManager(getContext(), 1);
+        mLayoutManager.setSpanSizeLookup(mAdapter.createSpanSizeLookup(mLayoutManager));
         mAdapter.setLayoutManager(mLayoutManager);
+        mAdapter.setJustifiedRowHeight(getResources().getDimensionPixelSize(R.dimen.gallery_item_media_size));
 
         final int spacing = getResources().getDimensionPixelSize(R.dimen.gallery_item_offset);
         mRecyclerView = (RecyclerView) view.findViewById(R.id.recycler_view);
@@ -226,6 +455,45 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         mRecyclerView.setClipToPadding(false);
         mRecyclerView.addItemDecoration(new ItemOffsetDecoration(spacing));
         mRecyclerView.setHasFixedSize(true);
+        FastScroller fastScroller = (FastScroller) view.findViewById(R.id.fast_scroller);
+        fastScroller.attachTo(mRecyclerView, mAdapter);
+        fastScroller.setOnDragListener(new FastScroller.OnDragListener() {
+            @Override
+            public void onDragStateChanged(boolean dragging) {
+                // Jumping through the sections would start loading the thumbnails of every one it passes by
+                if (dragging) {
+                    ImageEngines.get().pause(getActivity());
+                } else {
+                    ImageEngines.get().resume(getActivity());
+                }
+            }
+        });
+        mFrameTracker = new FrameTracker(getActivity());
+        mRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    mFrameTracker.stop();
+                } else {
+                    mFrameTracker.start(GalleryAdapter.VIEW_TYPE_MEDIA == mAdapter.getViewType()
+                                    ? MetricsListener.CONTENT_MEDIA : MetricsListener.CONTENT_BUCKETS,
+                            mAdapter.getItemCount());
+                }
+            }
+        });
+        final ScaleGestureDetector scaleDetector = new ScaleGestureDetector(getContext(), new DensityGestureListener());
+        mRecyclerView.addOnItemTouchListener(new RecyclerView.SimpleOnItemTouchListener() {
+            @Override
+            public boolean onInterceptTouchEvent(RecyclerView rv, MotionEvent e) {
+                scaleDetector.onTouchEvent(e);
+                return scaleDetector.isInProgress();
+            }
+
+            @Override
+            public void onTouchEvent(RecyclerView rv, MotionEvent e) {
+                scaleDetector.onTouchEvent(e);
+            }
+        });
         mRecyclerView.getViewTreeObserver().addOnPreDrawListener(new ViewTreeObserver.OnPreDrawListener() {
             @Override
             public boolean onPreDraw() {
@@ -233,7 +501,11 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
                 int size = getResources().getDimensionPixelSize(R.dimen.gallery_item_bucket_size);
                 int width = mRecyclerView.getMeasuredWidth();
                 int columnCount = width / (size + spacing);
-                mLayoutManager.setSpanCount(columnCount);
+                if (GalleryAdapter.VIEW_TYPE_MEDIA == mAdapter.getViewType()) {
+                    applyDensity();
+                } else {
+                    mLayoutManager.setSpanCount(columnCount);
+                }
                 return false;
             }
         });
@@ -245,9 +517,81 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
         return view;
     }
 
+    /**
+     * Lay the media out in the columns of the current density, or in justified rows as tall as its cells
+     */
+    private void applyDensity() {
+        int columnCount = MEDIA_COLUMN_COUNTS[mDensity];
+        int cellSize = getCellSize(columnCount);
+        if (cellSize > 0) {
+            mAdapter.setJustifiedRowHeight(cellSize);
+            mAdapter.setCellSize(cellSize);
+        }
+        mLayoutManager.setSpanCount(mAdapter.isJustified() ? JustifiedLayout.SPAN_COUNT : columnCount);
+    }
+
+    /**
+     * @return The size of the square media cells in the given count of columns, or 0 if the list was not measured yet
+     */
+    private int getCellSize(int columnCount) {
+        int width = mRecyclerView.getWidth() - mRecyclerView.getPaddingLeft() - mRecyclerView.getPaddingRight();
+        int spacing = getResources().getDimensionPixelSize(R.dimen.gallery_item_offset);
+        return width > 0 ? width / columnCount - 2 * spacing : 0;
+    }
+
+    /**
+     * Start decoding the thumbnails a denser grid would show, while the pinch that may move to it goes on
+     */
+    private void preloadDensity(int density) {
+        if (density >= MEDIA_COLUMN_COUNTS.length) {
+            return;
+        }
+        int columnCount = MEDIA_COLUMN_COUNTS[density];
+        int cellSize = getCellSize(columnCount);
+        int first = mLayoutManager.findFirstVisibleItemPosition();
+        if (cellSize <= 0 || first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int rowCount = mRecyclerView.getHeight() / cellSize + 1;
+        mAdapter.preload(getContext(), cellSize, first, first + columnCount * rowCount);
+    }
+
+    private class DensityGestureListener extends ScaleGestureDetector.SimpleOnScaleGestureListener {
+
+        private float mScale;
+
+        @Override
+        public boolean onScaleBegin(ScaleGestureDetector detector) {
+            if (GalleryAdapter.VIEW_TYPE_MEDIA != mAdapter.getViewType()) {
+                return false;
+            }
+            mScale = 1f;
+            preloadDensity(mDensity + 1);
+            return true;
+        }
+
+        @Override
+        public boolean onScale(ScaleGestureDetector detector) {
+            mScale *= detector.getScaleFactor();
+            if (mScale > DENSITY_STEP_SCALE && mDensity > 0) {
+                mDensity--;
+                mScale = 1f;
+                applyDensity();
+            } else if (mScale < 1f / DENSITY_STEP_SCALE && mDensity < MEDIA_COLUMN_COUNTS.length - 1) {
+                mDensity++;
+                mScale = 1f;
+                applyDensity();
+                preloadDensity(mDensity + 1);
+            }
+            return true;
+        }
+    }
+
     public void onActivityReenter(int resultCode, Intent data) {
 
-        final int position = PreviewActivity.getPosition(resultCode, data);
+        // The preview is positioned on the media, which doesn't count the section headers
+        int dataPosition = PreviewActivity.getPosition(resultCode, data);
+        final int position = dataPosition != RecyclerView.NO_POSITION ? mAdapter.toAdapterPosition(dataPosition) : RecyclerView.NO_POSITION;
         if (position != RecyclerView.NO_POSITION) {
             mRecyclerView.scrollToPosition(position);
         }
@@ -299,7 +643,11 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
 
     @Override
     public void onBucketClick(long bucketId, String label) {
-        mMediaLoader.loadByBucket(bucketId);
+        // The folders with subfolders are listed from memory, the others are opened like buckets
+        if (!mMediaLoader.loadFolder(bucketId)) {
+            mMediaLoader.loadByBucket(bucketId);
+            mBucketOpened = true;
+        }
         mCallbacks.onBucketClick(label);
         mShouldHandleBackPressed = true;
     }
@@ -311,8 +659,11 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
 
     @Override
     public void onSelectionUpdated(int count) {
-        mCallbacks.onSelectionUpdated(count);
-        getActivity().invalidateOptionsMenu();
+        // The selection may be set up before the fragment is added
+        if (mCallbacks != null) {
+            mCallbacks.onSelectionUpdated(count);
+            getActivity().invalidateOptionsMenu();
+        }
     }
 
     @Override
@@ -331,9 +682,27 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
      * @return If this Fragment handled the back pressed callback
      */
     public boolean onBackPressed() {
+        if (mSearchItem != null && mSearchItem.isActionViewExpanded()) {
+            mSearchItem.collapseActionView();
+            return true;
+        }
         if (mShouldHandleBackPressed) {
-            ((GalleryActivity)getActivity()).setActionBarTitle("Gallery");
-            loadBuckets();
+            // Back from a bucket goes to the folder it was opened from, and from a folder to its parent
+            FolderTree folderTree = mMediaLoader.getFolderTree();
+            long folderId = mMediaLoader.getFolderId();
+            if (folderTree != null && !mBucketOpened) {
+                folderId = folderTree.getParentId(folderId);
+            }
+            mBucketOpened = false;
+            if (folderTree != null && folderId != FolderTree.ROOT_ID && mMediaLoader.loadFolder(folderId)) {
+                mCallbacks.onBucketsShown(folderTree.getLabel(folderId));
+                return true;
+            }
+            mCallbacks.onBucketsShown(null);
+            if (folderTree == null || !mMediaLoader.loadFolder(FolderTree.ROOT_ID)) {
+                mMediaLoader.loadBuckets();
+            }
+            mShouldHandleBackPressed = false;
             return true;
         }
         return false;
@@ -342,6 +711,7 @@ public class GalleryFragment extends Fragment implements MediaLoader.Callbacks,
     public void loadBuckets() {
         mMediaLoader.loadBuckets();
         mShouldHandleBackPressed = false;
+        mBucketOpened = false;
     }
 
     public List<Uri> getSelection() {
@@ -0,0 +1,278 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import com.andremion.louvre.data.AspectIndex;
+import com.andremion.louvre.data.SectionIndex;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Justified rows of the media grid, where the images keep their aspect ratio and every row is filled edge to edge.
+ * <p>
+ * The row breaks only depend on the width of a row in aspect ratio units, the list width over the target row height.
+ * They are found with one binary search per row over the {@link AspectIndex} prefix sums, on a background thread.
+ * Until the first breaks are ready, the media are laid out as rows of squares, which need no computation, and
+ * when the list width changes, the rows already computed keep being laid out, scaled to the new width, until the
+ * new breaks are ready. So the layout never waits for them. The rows always break at the start of a section.
+ */
+class JustifiedLayout {
+
+    // Resolution of the widths in a row, as the span count of the GridLayoutManager
+    static final int SPAN_COUNT = 360;
+    // Before the list is measured, the rows hold three squares, like the plain grid
+    private static final double DEFAULT_ROW_WIDTH = 3;
+    // How often the background computation checks if it was cancelled
+    private static final int CANCEL_CHECK_ROWS = 1024;
+
+    interface Callback {
+
+        void onRowsChanged();
+    }
+
+    private final AspectIndex mAspectIndex;
+    private final int[] mSegmentStarts;
+    private final Callback mCallback;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+    private final AtomicInteger mGeneration = new AtomicInteger();
+    private int mWidth;
+    private int mRowHeight;
+    // The row width of the last computation, or 0 before the first one
+    private double mRowWidth;
+    @Nullable
+    private Rows mRows;
+    // The first row of every segment while the media are laid out as squares
+    @Nullable
+    private int[] mSquareRowStarts;
+    private int mSquareColumns;
+
+    JustifiedLayout(@NonNull AspectIndex aspectIndex, @Nullable SectionIndex sectionIndex, int rowHeight,
+                    @NonNull Callback callback) {
+        mAspectIndex = aspectIndex;
+        mRowHeight = rowHeight;
+        mCallback = callback;
+        int sectionCount = sectionIndex != null ? sectionIndex.getSectionCount() : 0;
+        if (sectionCount > 0) {
+            mSegmentStarts = new int[sectionCount];
+            for (int section = 0; section < sectionCount; section++) {
+                mSegmentStarts[section] = sectionIndex.getSectionStart(section);
+            }
+        } else {
+            mSegmentStarts = new int[]{0};
+        }
+    }
+
+    /**
+     * Set the width to fill and the target height of the rows, computing the new row breaks in background
+     * if they change the width of the rows
+     */
+    @MainThread
+    void setSize(int width, int rowHeight) {
+        if (width <= 0 || rowHeight <= 0 || (width == mWidth && rowHeight == mRowHeight)) {
+            return;
+        }
+        mWidth = width;
+        mRowHeight = rowHeight;
+        double rowWidth = width / (double) rowHeight;
+        if (rowWidth == mRowWidth) {
+            return;
+        }
+        mRowWidth = rowWidth;
+        final int generation = mGeneration.incrementAndGet();
+        final double targetRowWidth = rowWidth;
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final Rows rows = computeRows(targetRowWidth, generation);
+                if (rows == null) {
+                    return;
+                }
+                mHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (generation == mGeneration.get()) {
+                            mRows = rows;
+                            mSquareRowStarts = null;
+                            mCallback.onRowsChanged();
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    /**
+     * Drop the pending computations, since this layout is no longer used
+     */
+    @MainThread
+    void release() {
+        mGeneration.incrementAndGet();
+        mHandler.removeCallbacksAndMessages(null);
+    }
+
+    /**
+     * @return The index of the row of the given data position, which is also the count of rows before it
+     */
+    int getRow(int dataPosition) {
+        Rows rows = mRows;
+        if (rows == null) {
+            int segment = findSegment(dataPosition);
+            return ensureSquareRows()[segment] + (dataPosition - mSegmentStarts[segment]) / mSquareColumns;
+        }
+        int index = Arrays.binarySearch(rows.mStarts, 0, rows.mCount, dataPosition);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    int getSpanIndex(int dataPosition, int spanCount) {
+        Rows rows = mRows;
+        if (rows == null) {
+            return getSquareSpanBoundary(dataPosition, 0, spanCount);
+        }
+        int row = getRow(dataPosition);
+        return getSpanBoundary(rows, row, dataPosition, spanCount);
+    }
+
+    int getSpanSize(int dataPosition, int spanCount) {
+        Rows rows = mRows;
+        if (rows == null) {
+            return getSquareSpanBoundary(dataPosition, 1, spanCount) - getSquareSpanBoundary(dataPosition, 0, spanCount);
+        }
+        int row = getRow(dataPosition);
+        return getSpanBoundary(rows, row, dataPosition + 1, spanCount) - getSpanBoundary(rows, row, dataPosition, spanCount);
+    }
+
+    /**
+     * @return The height in pixels of the row of the given data position
+     */
+    int getRowHeight(int dataPosition) {
+        Rows rows = mRows;
+        if (rows == null) {
+            ensureSquareRows();
+            return mWidth > 0 ? Math.round(mWidth / (float) mSquareColumns) : mRowHeight;
+        }
+        int row = getRow(dataPosition);
+        return (int) Math.round(mWidth > 0 ? mWidth / getRowWidth(rows, row) : mRowHeight);
+    }
+
+    private int getSpanBoundary(@NonNull Rows rows, int row, int dataPosition, int spanCount) {
+        int start = rows.mStarts[row];
+        return (int) Math.round(spanCount * mAspectIndex.getWidth(start, dataPosition) / getRowWidth(rows, row));
+    }
+
+    /**
+     * @return The width the row is scaled to fill, which is its own width unless it is the short last row of a section
+     */
+    private double getRowWidth(@NonNull Rows rows, int row) {
+        if (rows.mShortRows.get(row)) {
+            return rows.mRowWidth;
+        }
+        int end = row + 1 < rows.mCount ? rows.mStarts[row + 1] : mAspectIndex.getCount();
+        return mAspectIndex.getWidth(rows.mStarts[row], end);
+    }
+
+    /**
+     * @return The span boundary before the given data position, plus the given offset, in its row of squares
+     */
+    private int getSquareSpanBoundary(int dataPosition, int offset, int spanCount) {
+        ensureSquareRows();
+        int column = (dataPosition - mSegmentStarts[findSegment(dataPosition)]) % mSquareColumns + offset;
+        return spanCount * column / mSquareColumns;
+    }
+
+    /**
+     * @return The first row of every segment laid out as squares, as many per row as fit the current row width
+     */
+    @NonNull
+    private int[] ensureSquareRows() {
+        int columns = Math.max(1, (int) Math.round(mRowWidth > 0 ? mRowWidth : DEFAULT_ROW_WIDTH));
+        if (mSquareRowStarts == null || columns != mSquareColumns) {
+            int count = mAspectIndex.getCount();
+            int[] rowStarts = new int[mSegmentStarts.length];
+            int rows = 0;
+            for (int segment = 0; segment < mSegmentStarts.length; segment++) {
+                rowStarts[segment] = rows;
+                int end = segment + 1 < mSegmentStarts.length ? mSegmentStarts[segment + 1] : count;
+                rows += (end - mSegmentStarts[segment] + columns - 1) / columns;
+            }
+            mSquareRowStarts = rowStarts;
+            mSquareColumns = columns;
+        }
+        return mSquareRowStarts;
+    }
+
+    private int findSegment(int dataPosition) {
+        int index = Arrays.binarySearch(mSegmentStarts, dataPosition);
+        return index >= 0 ? index : -index - 2;
+    }
+
+    @WorkerThread
+    @Nullable
+    private Rows computeRows(double rowWidth, int generation) {
+        int count = mAspectIndex.getCount();
+        int[] starts = new int[(int) (mAspectIndex.getWidth(0, count) / rowWidth) + mSegmentStarts.length + 1];
+        BitSet shortRows = new BitSet();
+        int rowCount = 0;
+        for (int segment = 0; segment < mSegmentStarts.length; segment++) {
+            int to = segment + 1 < mSegmentStarts.length ? mSegmentStarts[segment + 1] : count;
+            for (int start = mSegmentStarts[segment]; start < to; ) {
+                if (rowCount % CANCEL_CHECK_ROWS == 0 && generation != mGeneration.get()) {
+                    return null;
+                }
+                int end = mAspectIndex.findEnd(start, to, rowWidth);
+                double width = mAspectIndex.getWidth(start, end);
+                if (width < rowWidth) {
+                    shortRows.set(rowCount);
+                } else if (end - 1 > start && rowWidth - mAspectIndex.getWidth(start, end - 1) < width - rowWidth) {
+                    // The row without its last image is closer to the target height, so it is stretched instead of shrunk
+                    end--;
+                }
+                if (rowCount == starts.length) {
+                    starts = Arrays.copyOf(starts, rowCount * 2);
+                }
+                starts[rowCount++] = start;
+                start = end;
+            }
+        }
+        return new Rows(rowWidth, starts, rowCount, shortRows);
+    }
+
+    private static class Rows {
+
+        final double mRowWidth;
+        final int[] mStarts;
+        final int mCount;
+        final BitSet mShortRows;
+
+        Rows(double rowWidth, @NonNull int[] starts, int count, @NonNull BitSet shortRows) {
+            mRowWidth = rowWidth;
+            mStarts = starts;
+            mCount = count;
+            mShortRows = shortRows;
+        }
+    }
+
+}
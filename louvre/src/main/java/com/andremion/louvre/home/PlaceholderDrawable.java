@@ -0,0 +1,76 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.graphics.ColorFilter;
+import android.graphics.Paint;
+import android.graphics.PixelFormat;
+import android.graphics.drawable.Drawable;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.andremion.louvre.data.PlaceholderIndex;
+
+/**
+ * Drawable that paints the colors of a {@link PlaceholderIndex} as a 2x2 image stretched with filtering,
+ * so they blend into a soft gradient of the image until its thumbnail is ready.
+ * <p>
+ * Every media cell owns one and refills it on bind, so nothing is allocated while scrolling.
+ */
+class PlaceholderDrawable extends Drawable {
+
+    private final Bitmap mBitmap;
+    private final Paint mPaint;
+
+    PlaceholderDrawable() {
+        mBitmap = Bitmap.createBitmap(2, 2, Bitmap.Config.ARGB_8888);
+        mPaint = new Paint(Paint.FILTER_BITMAP_FLAG);
+    }
+
+    /**
+     * @param colors The {@link PlaceholderIndex#SIZE} colors of the placeholder, in row order
+     */
+    void setColors(@NonNull int[] colors) {
+        mBitmap.setPixels(colors, 0, 2, 0, 0, 2, 2);
+        invalidateSelf();
+    }
+
+    @Override
+    public void draw(@NonNull Canvas canvas) {
+        canvas.drawBitmap(mBitmap, null, getBounds(), mPaint);
+    }
+
+    @Override
+    public void setAlpha(int alpha) {
+        mPaint.setAlpha(alpha);
+        invalidateSelf();
+    }
+
+    @Override
+    public void setColorFilter(@Nullable ColorFilter colorFilter) {
+        mPaint.setColorFilter(colorFilter);
+        invalidateSelf();
+    }
+
+    @Override
+    public int getOpacity() {
+        return PixelFormat.OPAQUE;
+    }
+
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+/**
+ * Fixed sizes the square media thumbnails are decoded to, whatever the size of the grid cells.
+ * <p>
+ * Image loaders cache the decoded thumbnails by size, so decoding to a few tiers instead of the exact cell size
+ * lets the grid densities share them. A thumbnail already cached in another tier can be shown, scaled,
+ * while the one of the current tier is decoded.
+ */
+final class ThumbnailTiers {
+
+    static final int NO_TIER = -1;
+
+    private static final int[] SIZES = {128, 256, 512, 1024};
+
+    private ThumbnailTiers() {
+    }
+
+    /**
+     * @return The smallest tier that fills a cell of the given size without upscaling, or the largest one
+     */
+    static int tierOf(int cellSize) {
+        for (int tier = 0; tier < SIZES.length - 1; tier++) {
+            if (SIZES[tier] >= cellSize) {
+                return tier;
+            }
+        }
+        return SIZES.length - 1;
+    }
+
+    /**
+     * @return The size, in pixels, of the given tier, or 0 for {@link #NO_TIER}
+     */
+    static int sizeOf(int tier) {
+        return tier != NO_TIER ? SIZES[tier] : 0;
+    }
+
+}
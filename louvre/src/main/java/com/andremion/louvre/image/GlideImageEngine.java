@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.util.SparseArray;
+import android.widget.ImageView;
+
+import com.andremion.louvre.R;
+import com.andremion.louvre.util.MemoryPolicy;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.RequestBuilder;
+import com.bumptech.glide.RequestManager;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.MultiTransformation;
+import com.bumptech.glide.load.engine.DiskCacheStrategy;
+import com.bumptech.glide.load.engine.GlideException;
+import com.bumptech.glide.load.resource.bitmap.CenterCrop;
+import com.bumptech.glide.request.RequestListener;
+import com.bumptech.glide.request.RequestOptions;
+import com.bumptech.glide.request.target.Target;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Default {@link ImageEngine}, which loads the images with the Glide instance of the app.
+ * <p>
+ * The memory cache and the decode format follow the {@link MemoryPolicy}. The thumbnails are decoded to the
+ * exact requested sizes, which Glide caches them by, and the cached one of another size is shown meanwhile.
+ * Once {@link #registerComponents(Context, Registry)} is called, the thumbnails of the media are also kept in
+ * a persistent pack keyed by media id and modification date, and decoded from it on the next loads.
+ */
+public class GlideImageEngine implements ImageEngine {
+
+    private static final RequestOptions FIT_OPTIONS = RequestOptions.centerCropTransform()
+            .placeholder(R.color.gallery_item_background)
+            .lock();
+    private static final CenterCrop CENTER_CROP = new CenterCrop();
+
+    /**
+     * Let Glide load the thumbnails from the persistent pack, like from a Glide module
+     */
+    public static void registerComponents(@NonNull Context context, @NonNull Registry registry) {
+        ThumbnailPack.install(context);
+        registry.prepend(PackedThumbnail.class, ByteBuffer.class, new PackedThumbnailLoader.Factory());
+    }
+
+    // Only touched from the main thread
+    private final SparseArray<RequestOptions> mSizeOptions = new SparseArray<>();
+    private final SparseArray<RequestOptions> mCachedSizeOptions = new SparseArray<>();
+    private final SparseArray<RequestOptions> mPackedOptions = new SparseArray<>();
+
+    @Override
+    public void loadThumbnail(@NonNull ImageView view, @NonNull Uri uri, long mediaId, long dateModified, int size, int cachedSize,
+                              @Nullable Drawable placeholder, @Nullable Listener listener) {
+        Context context = view.getContext();
+        RequestManager requestManager = Glide.with(context);
+        RequestBuilder<Drawable> request = newThumbnailRequest(requestManager, context, uri, mediaId, dateModified, size);
+        if (size > 0 && cachedSize > 0 && cachedSize != size) {
+            request = request.thumbnail(newCachedThumbnailRequest(requestManager, context, uri, mediaId, dateModified, cachedSize));
+        }
+        if (placeholder != null) {
+            request = request.apply(RequestOptions.placeholderOf(placeholder));
+        }
+        if (listener != null) {
+            request = request.listener(new ListenerAdapter(listener));
+        }
+        request.into(view);
+    }
+
+    @Override
+    public void loadPreview(@NonNull ImageView view, @NonNull Uri uri, boolean animate, @Nullable Listener listener) {
+        RequestOptions options = new RequestOptions()
+                .apply(MemoryPolicy.get(view.getContext()).getPreviewOptions())
+                .fitCenter();
+        if (!animate) {
+            options.dontAnimate();
+        }
+        RequestBuilder<Drawable> request = Glide.with(view.getContext())
+                .load(uri)
+                .apply(options);
+        if (listener != null) {
+            request = request.listener(new ListenerAdapter(listener));
+        }
+        request.into(view);
+    }
+
+    @Override
+    public void preloadThumbnail(@NonNull Context context, @NonNull Uri uri, long mediaId, long dateModified, int size) {
+        newThumbnailRequest(Glide.with(context), context, uri, mediaId, dateModified, size).preload();
+    }
+
+    @Override
+    public void pause(@NonNull Context context) {
+        Glide.with(context).pauseRequests();
+    }
+
+    @Override
+    public void resume(@NonNull Context context) {
+        Glide.with(context).resumeRequests();
+    }
+
+    @Override
+    public void cancel(@NonNull ImageView view) {
+        Glide.with(view.getContext()).clear(view);
+    }
+
+    @NonNull
+    private RequestBuilder<Drawable> newThumbnailRequest(@NonNull RequestManager requestManager, @NonNull Context context,
+                                                         @NonNull Uri uri, long mediaId, long dateModified, int size) {
+        RequestOptions memoryOptions = MemoryPolicy.get(context).getThumbnailOptions();
+        if (size <= 0) {
+            return requestManager.load(uri).apply(memoryOptions).apply(FIT_OPTIONS);
+        }
+        ThumbnailPack pack = mediaId != NO_MEDIA_ID ? ThumbnailPack.getInstance() : null;
+        if (pack == null) {
+            return requestManager.load(uri).apply(memoryOptions).apply(getSizeOptions(size));
+        }
+        PackedThumbnail packed = pack.find(mediaId, dateModified, size);
+        if (packed != null) {
+            return requestManager.load(packed).apply(memoryOptions).apply(getPackedOptions(size));
+        }
+        // Decoded from the media this time, and packed on the way
+        return requestManager.load(uri)
+                .apply(memoryOptions)
+                .apply(getSizeOptions(size))
+                .apply(RequestOptions.bitmapTransform(new MultiTransformation<Bitmap>(CENTER_CROP,
+                        new PackingTransformation(pack, mediaId, dateModified, size))));
+    }
+
+    @NonNull
+    private RequestBuilder<Drawable> newCachedThumbnailRequest(@NonNull RequestManager requestManager, @NonNull Context context,
+                                                               @NonNull Uri uri, long mediaId, long dateModified, int size) {
+        RequestOptions memoryOptions = MemoryPolicy.get(context).getThumbnailOptions();
+        ThumbnailPack pack = mediaId != NO_MEDIA_ID ? ThumbnailPack.getInstance() : null;
+        PackedThumbnail packed = pack != null ? pack.find(mediaId, dateModified, size) : null;
+        if (packed != null) {
+            return requestManager.load(packed).apply(memoryOptions).apply(getPackedOptions(size));
+        }
+        return requestManager.load(uri).apply(memoryOptions).apply(getCachedSizeOptions(size));
+    }
+
+    @NonNull
+    private RequestOptions getSizeOptions(int size) {
+        RequestOptions options = mSizeOptions.get(size);
+        if (options == null) {
+            options = RequestOptions.centerCropTransform()
+                    .override(size)
+                    .placeholder(R.color.gallery_item_background)
+                    .lock();
+            mSizeOptions.put(size, options);
+        }
+        return options;
+    }
+
+    @NonNull
+    private RequestOptions getCachedSizeOptions(int size) {
+        RequestOptions options = mCachedSizeOptions.get(size);
+        if (options == null) {
+            options = RequestOptions.centerCropTransform()
+                    .override(size)
+                    .onlyRetrieveFromCache(true)
+                    .lock();
+            mCachedSizeOptions.put(size, options);
+        }
+        return options;
+    }
+
+    /**
+     * The packed thumbnails are already cropped to their size, and kept out of the Glide disk cache
+     */
+    @NonNull
+    private RequestOptions getPackedOptions(int size) {
+        RequestOptions options = mPackedOptions.get(size);
+        if (options == null) {
+            options = RequestOptions.diskCacheStrategyOf(DiskCacheStrategy.NONE)
+                    .override(size)
+                    .dontTransform()
+                    .placeholder(R.color.gallery_item_background)
+                    .lock();
+            mPackedOptions.put(size, options);
+        }
+        return options;
+    }
+
+    private static class ListenerAdapter implements RequestListener<Drawable> {
+
+        private final Listener mListener;
+
+        ListenerAdapter(@NonNull Listener listener) {
+            mListener = listener;
+        }
+
+        @Override
+        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+            mListener.onImageReady(dataSource == DataSource.MEMORY_CACHE
+                    || dataSource == DataSource.RESOURCE_DISK_CACHE
+                    || dataSource == DataSource.DATA_DISK_CACHE);
+            return false;
+        }
+
+        @Override
+        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+            mListener.onImageFailed();
+            return false;
+        }
+    }
+
+}
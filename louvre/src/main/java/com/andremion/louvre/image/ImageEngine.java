@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.ImageView;
+
+/**
+ * Loads the images of the picker, so the app can run them through its own image pipeline and caches.
+ * Set it with {@link com.andremion.louvre.Louvre#setImageEngine(ImageEngine)}, otherwise {@link GlideImageEngine} is used.
+ * <p>
+ * All the methods are called from the main thread.
+ */
+@MainThread
+public interface ImageEngine {
+
+    /**
+     * Media id of the images that are not a MediaStore or media source row, like the bucket covers
+     */
+    long NO_MEDIA_ID = 0;
+
+    /**
+     * Receives the outcome of a load
+     */
+    interface Listener {
+
+        /**
+         * @param fromCache If the image was served from a cache instead of decoded from the original media
+         */
+        void onImageReady(boolean fromCache);
+
+        void onImageFailed();
+    }
+
+    /**
+     * Load a center cropped gallery thumbnail into the view, replacing the load the view had.
+     *
+     * @param mediaId      The media id, which is stable across moves of the file, or {@link #NO_MEDIA_ID}
+     * @param dateModified The modification date of the media, which tells apart its versions
+     * @param size       The size, in pixels, of the square to decode the thumbnail to, or 0 to fit the view.
+     *                   It is one of a few sizes, so the thumbnails can be cached and shared between the grid densities.
+     * @param cachedSize The size of a thumbnail of the same media that is likely cached, to show until this one is
+     *                   ready, or 0 if there is none
+     * @param placeholder  The drawable to show until a thumbnail is ready, or null for the default background
+     */
+    void loadThumbnail(@NonNull ImageView view, @NonNull Uri uri, long mediaId, long dateModified, int size, int cachedSize,
+                       @Nullable Drawable placeholder, @Nullable Listener listener);
+
+    /**
+     * Load the fit centered image of a preview page into the view, replacing the load the view had
+     *
+     * @param animate If the image should be faded in, which breaks the shared element transitions
+     */
+    void loadPreview(@NonNull ImageView view, @NonNull Uri uri, boolean animate, @Nullable Listener listener);
+
+    /**
+     * Load a thumbnail like {@link #loadThumbnail(ImageView, Uri, long, long, int, int, Drawable, Listener)} does into
+     * the caches only, so it is likely ready when a view needs it
+     */
+    void preloadThumbnail(@NonNull Context context, @NonNull Uri uri, long mediaId, long dateModified, int size);
+
+    /**
+     * Stop starting the loads of the given context, like while jumping through the gallery with the fast scroller
+     */
+    void pause(@NonNull Context context);
+
+    /**
+     * Start the loads paused by {@link #pause(Context)}
+     */
+    void resume(@NonNull Context context);
+
+    /**
+     * Cancel the load of the view and release the image it shows
+     */
+    void cancel(@NonNull ImageView view);
+
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Internal entry point to the {@link ImageEngine} set by the app, or the default one
+ */
+public final class ImageEngines {
+
+    @Nullable
+    private static volatile ImageEngine sEngine;
+
+    private ImageEngines() {
+    }
+
+    public static void set(@Nullable ImageEngine engine) {
+        sEngine = engine;
+    }
+
+    @NonNull
+    public static ImageEngine get() {
+        ImageEngine engine = sEngine;
+        if (engine == null) {
+            synchronized (ImageEngines.class) {
+                engine = sEngine;
+                if (engine == null) {
+                    engine = new GlideImageEngine();
+                    sEngine = engine;
+                }
+            }
+        }
+        return engine;
+    }
+
+    /**
+     * @return If the images are loaded by Glide, whose caches the picker can then size
+     */
+    public static boolean usesGlide() {
+        return get() instanceof GlideImageEngine;
+    }
+
+}
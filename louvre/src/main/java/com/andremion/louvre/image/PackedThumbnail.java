@@ -0,0 +1,67 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+/**
+ * Glide model of a thumbnail in the {@link ThumbnailPack}. Equal for the same version of the same thumbnail,
+ * wherever it is in the pack.
+ */
+class PackedThumbnail {
+
+    final long id;
+    final long dateModified;
+    final int size;
+    // The pack files the offset is in
+    final int generation;
+    final long offset;
+    final int length;
+
+    PackedThumbnail(long id, long dateModified, int size, int generation, long offset, int length) {
+        this.id = id;
+        this.dateModified = dateModified;
+        this.size = size;
+        this.generation = generation;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof PackedThumbnail)) {
+            return false;
+        }
+        PackedThumbnail that = (PackedThumbnail) o;
+        return id == that.id && dateModified == that.dateModified && size == that.size;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = (int) (id ^ (id >>> 32));
+        result = 31 * result + (int) (dateModified ^ (dateModified >>> 32));
+        result = 31 * result + size;
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "PackedThumbnail{id=" + id + ", dateModified=" + dateModified + ", size=" + size + '}';
+    }
+
+}
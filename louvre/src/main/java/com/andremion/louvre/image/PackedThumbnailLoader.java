@@ -0,0 +1,104 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.support.annotation.NonNull;
+
+import com.bumptech.glide.Priority;
+import com.bumptech.glide.load.DataSource;
+import com.bumptech.glide.load.Options;
+import com.bumptech.glide.load.data.DataFetcher;
+import com.bumptech.glide.load.model.ModelLoader;
+import com.bumptech.glide.load.model.ModelLoaderFactory;
+import com.bumptech.glide.load.model.MultiModelLoaderFactory;
+import com.bumptech.glide.signature.ObjectKey;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Glide {@link ModelLoader} of the {@link PackedThumbnail}s, which Glide decodes from the mapped pack
+ * like any other encoded image
+ */
+class PackedThumbnailLoader implements ModelLoader<PackedThumbnail, ByteBuffer> {
+
+    @Override
+    public LoadData<ByteBuffer> buildLoadData(@NonNull PackedThumbnail model, int width, int height, @NonNull Options options) {
+        return new LoadData<>(new ObjectKey(model), new Fetcher(model));
+    }
+
+    @Override
+    public boolean handles(@NonNull PackedThumbnail model) {
+        return true;
+    }
+
+    private static class Fetcher implements DataFetcher<ByteBuffer> {
+
+        private final PackedThumbnail mModel;
+
+        Fetcher(@NonNull PackedThumbnail model) {
+            mModel = model;
+        }
+
+        @Override
+        public void loadData(Priority priority, DataCallback<? super ByteBuffer> callback) {
+            ThumbnailPack pack = ThumbnailPack.getInstance();
+            ByteBuffer data = pack != null ? pack.read(mModel) : null;
+            if (data != null) {
+                callback.onDataReady(data);
+            } else {
+                callback.onLoadFailed(new IOException("Unable to read " + mModel));
+            }
+        }
+
+        @Override
+        public void cleanup() {
+            // The mapping is shared by all the thumbnails
+        }
+
+        @Override
+        public void cancel() {
+            // Reading the mapping is not cancellable
+        }
+
+        @NonNull
+        @Override
+        public Class<ByteBuffer> getDataClass() {
+            return ByteBuffer.class;
+        }
+
+        @NonNull
+        @Override
+        public DataSource getDataSource() {
+            return DataSource.DATA_DISK_CACHE;
+        }
+    }
+
+    static class Factory implements ModelLoaderFactory<PackedThumbnail, ByteBuffer> {
+
+        @Override
+        public ModelLoader<PackedThumbnail, ByteBuffer> build(MultiModelLoaderFactory multiFactory) {
+            return new PackedThumbnailLoader();
+        }
+
+        @Override
+        public void teardown() {
+            // no-op
+        }
+    }
+
+}
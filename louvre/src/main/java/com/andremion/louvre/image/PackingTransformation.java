@@ -0,0 +1,71 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.graphics.Bitmap;
+import android.support.annotation.NonNull;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+import com.bumptech.glide.load.resource.bitmap.BitmapTransformation;
+
+import java.security.MessageDigest;
+
+/**
+ * Last transformation of a thumbnail decoded from its media, which writes it into the {@link ThumbnailPack}
+ * while Glide still owns it on the decode thread, and leaves it unchanged.
+ * <p>
+ * All the instances are equal, so it doesn't tell apart the Glide cache keys of the same media.
+ */
+class PackingTransformation extends BitmapTransformation {
+
+    private static final String ID = "com.andremion.louvre.image.PackingTransformation";
+    private static final byte[] ID_BYTES = ID.getBytes(CHARSET);
+
+    private final ThumbnailPack mPack;
+    private final long mId;
+    private final long mDateModified;
+    private final int mSize;
+
+    PackingTransformation(@NonNull ThumbnailPack pack, long id, long dateModified, int size) {
+        mPack = pack;
+        mId = id;
+        mDateModified = dateModified;
+        mSize = size;
+    }
+
+    @Override
+    protected Bitmap transform(@NonNull BitmapPool pool, @NonNull Bitmap toTransform, int outWidth, int outHeight) {
+        mPack.write(mId, mDateModified, mSize, toTransform);
+        return toTransform;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof PackingTransformation;
+    }
+
+    @Override
+    public int hashCode() {
+        return ID.hashCode();
+    }
+
+    @Override
+    public void updateDiskCacheKey(MessageDigest messageDigest) {
+        messageDigest.update(ID_BYTES);
+    }
+
+}
@@ -0,0 +1,394 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+import android.util.LongSparseArray;
+import android.util.SparseArray;
+
+import com.andremion.louvre.util.BackgroundThreadFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Persistent disk cache of the gallery thumbnails keyed by media id, modification date and size, so
+ * they survive moves of the files and are shared by every request of the same size.
+ * <p>
+ * The thumbnails are appended to a pack file, encoded as JPEG, and located by an index file of fixed size
+ * records. The index is read once into memory and the pack is read through a memory mapping.
+ * Both are dropped when the MediaStore version changes, since the media ids may have been reused,
+ * or when the pack outgrows its budget, and the thumbnails still shown are packed again as they are decoded.
+ */
+class ThumbnailPack {
+
+    private static final String TAG = ThumbnailPack.class.getSimpleName();
+    private static final String PACK_FILE_NAME = "louvre-thumbnails.pack";
+    private static final String INDEX_FILE_NAME = "louvre-thumbnails.idx";
+    private static final int MAGIC = 0x4c545031; // LTP1
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 8 + 4;
+    private static final long MAX_PACK_SIZE = 64 * 1024 * 1024;
+    private static final int QUALITY = 85;
+    private static final String LEGACY_VERSION = "legacy-";
+
+    @Nullable
+    private static volatile ThumbnailPack sInstance;
+
+    /**
+     * Set up the pack, which is only used by the Glide engine once its loader is registered
+     */
+    static synchronized void install(@NonNull Context context) {
+        if (sInstance == null) {
+            Context applicationContext = context.getApplicationContext();
+            sInstance = new ThumbnailPack(applicationContext.getCacheDir(), versionOf(applicationContext));
+        }
+    }
+
+    /**
+     * @return The MediaStore version, or below Jelly Bean MR1, which doesn't tell it, the last update time of the app,
+     * so the pack is at least dropped on every update
+     */
+    @NonNull
+    private static String versionOf(@NonNull Context context) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN_MR1) {
+            return MediaStore.getVersion(context);
+        }
+        try {
+            return LEGACY_VERSION + context.getPackageManager().getPackageInfo(context.getPackageName(), 0).lastUpdateTime;
+        } catch (PackageManager.NameNotFoundException e) {
+            return LEGACY_VERSION;
+        }
+    }
+
+    @Nullable
+    static ThumbnailPack getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Location of a thumbnail in the pack
+     */
+    private static class Entry {
+
+        final long dateModified;
+        final long offset;
+        final int length;
+
+        Entry(long dateModified, long offset, int length) {
+            this.dateModified = dateModified;
+            this.offset = offset;
+            this.length = length;
+        }
+    }
+
+    private final File mPackFile;
+    private final File mIndexFile;
+    private final String mVersion;
+    // Reads and writes are serialized on a single background thread, starting with the index load
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor(new BackgroundThreadFactory(ThumbnailPack.class.getSimpleName()));
+    // Entries by size and media id, guarded by this
+    private final SparseArray<LongSparseArray<Entry>> mEntries = new SparseArray<>();
+    private boolean mLoaded;
+    // The pack files, counted up on every reset, guarded by this
+    private int mGeneration;
+    // Mapped under its own lock, so the lookups of the main thread never wait for a mapping
+    private final Object mMappingLock = new Object();
+    @Nullable
+    private ByteBuffer mMapping;
+    private int mMappingGeneration;
+    // Only touched from the executor
+    private long mPackSize;
+    @Nullable
+    private FileOutputStream mPackOutput;
+    @Nullable
+    private DataOutputStream mIndexOutput;
+
+    private ThumbnailPack(@NonNull File directory, @NonNull String version) {
+        mPackFile = new File(directory, PACK_FILE_NAME);
+        mIndexFile = new File(directory, INDEX_FILE_NAME);
+        mVersion = version;
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                load();
+            }
+        });
+    }
+
+    /**
+     * Look up a thumbnail without touching the disk
+     *
+     * @return The packed thumbnail of this exact version of the media, or null if there is none or the index
+     * is still being read
+     */
+    @Nullable
+    synchronized PackedThumbnail find(long id, long dateModified, int size) {
+        if (!mLoaded) {
+            return null;
+        }
+        LongSparseArray<Entry> entries = mEntries.get(size);
+        Entry entry = entries != null ? entries.get(id) : null;
+        if (entry == null || entry.dateModified != dateModified) {
+            return null;
+        }
+        return new PackedThumbnail(id, dateModified, size, mGeneration, entry.offset, entry.length);
+    }
+
+    /**
+     * @return A view of the encoded thumbnail in the mapped pack, or null if the pack can't be mapped or was
+     * reset since the thumbnail was found
+     */
+    @Nullable
+    @WorkerThread
+    ByteBuffer read(@NonNull PackedThumbnail thumbnail) {
+        long end = thumbnail.offset + thumbnail.length;
+        ByteBuffer mapping;
+        synchronized (mMappingLock) {
+            if (thumbnail.generation != mMappingGeneration) {
+                return null;
+            }
+            if (mMapping == null || mMapping.capacity() < end) {
+                // The pack grew since it was mapped
+                mMapping = map(end);
+                if (mMapping == null) {
+                    return null;
+                }
+            }
+            mapping = mMapping;
+        }
+        ByteBuffer buffer = mapping.duplicate();
+        buffer.position((int) thumbnail.offset);
+        buffer.limit((int) end);
+        return buffer.slice();
+    }
+
+    /**
+     * Encode the thumbnail and append it in background, unless this version of it is already packed.
+     * The bitmap is encoded on the calling thread, so it can be recycled once this returns.
+     */
+    @WorkerThread
+    void write(final long id, final long dateModified, final int size, @NonNull Bitmap bitmap) {
+        if (bitmap.hasAlpha() || isPacked(id, dateModified, size)) {
+            return;
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream(bitmap.getWidth() * bitmap.getHeight() / 4);
+        if (!bitmap.compress(Bitmap.CompressFormat.JPEG, QUALITY, output)) {
+            return;
+        }
+        final byte[] data = output.toByteArray();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                append(id, dateModified, size, data);
+            }
+        });
+    }
+
+    private synchronized boolean isPacked(long id, long dateModified, int size) {
+        LongSparseArray<Entry> entries = mEntries.get(size);
+        Entry entry = entries != null ? entries.get(id) : null;
+        return entry != null && entry.dateModified == dateModified;
+    }
+
+    private synchronized void put(long id, int size, @NonNull Entry entry) {
+        LongSparseArray<Entry> entries = mEntries.get(size);
+        if (entries == null) {
+            entries = new LongSparseArray<>();
+            mEntries.put(size, entries);
+        }
+        entries.put(id, entry);
+    }
+
+    private void load() {
+        long packSize = mPackFile.length();
+        DataInputStream input = null;
+        try {
+            if (!mIndexFile.exists() || packSize > MAX_PACK_SIZE) {
+                reset();
+                return;
+            }
+            input = new DataInputStream(new BufferedInputStream(new FileInputStream(mIndexFile)));
+            if (input.readInt() != MAGIC || !mVersion.equals(input.readUTF())) {
+                reset();
+                return;
+            }
+            //noinspection InfiniteLoopStatement
+            while (true) {
+                long id = input.readLong();
+                long dateModified = input.readLong();
+                int size = input.readInt();
+                long offset = input.readLong();
+                int length = input.readInt();
+                // Records of thumbnails whose write was interrupted are ignored
+                if (offset + length <= packSize) {
+                    put(id, size, new Entry(dateModified, offset, length));
+                }
+            }
+        } catch (EOFException e) {
+            // Done. A partially written record at the end is just ignored.
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to read " + mIndexFile, e);
+            reset();
+            return;
+        } finally {
+            closeQuietly(input);
+        }
+        if (getLiveSize() * 2 < packSize) {
+            // Mostly thumbnails of outdated media, which are cheaper to decode again than to copy around
+            reset();
+            return;
+        }
+        mPackSize = packSize;
+        synchronized (this) {
+            mLoaded = true;
+        }
+    }
+
+    private synchronized long getLiveSize() {
+        long size = 0;
+        for (int i = 0; i < mEntries.size(); i++) {
+            LongSparseArray<Entry> entries = mEntries.valueAt(i);
+            for (int j = 0; j < entries.size(); j++) {
+                size += entries.valueAt(j).length;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Start over with new files. The old ones are deleted, not truncated, so a mapping of them stays valid.
+     */
+    private void reset() {
+        synchronized (this) {
+            mEntries.clear();
+            mGeneration++;
+        }
+        synchronized (mMappingLock) {
+            mMapping = null;
+            mMappingGeneration++;
+        }
+        closeQuietly(mPackOutput);
+        mPackOutput = null;
+        closeQuietly(mIndexOutput);
+        mIndexOutput = null;
+        //noinspection ResultOfMethodCallIgnored
+        mPackFile.delete();
+        //noinspection ResultOfMethodCallIgnored
+        mIndexFile.delete();
+        mPackSize = 0;
+        try {
+            DataOutputStream output = openIndexOutput();
+            output.writeInt(MAGIC);
+            output.writeUTF(mVersion);
+            output.flush();
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mIndexFile, e);
+            return;
+        }
+        synchronized (this) {
+            mLoaded = true;
+        }
+    }
+
+    private void append(long id, long dateModified, int size, @NonNull byte[] data) {
+        if (isPacked(id, dateModified, size)) {
+            return;
+        }
+        if (mPackSize + data.length > MAX_PACK_SIZE) {
+            // Full, so start over instead of leaving the newer media unpacked for good
+            reset();
+        }
+        try {
+            if (mPackOutput == null) {
+                mPackOutput = new FileOutputStream(mPackFile, true);
+            }
+            long offset = mPackSize;
+            mPackOutput.write(data);
+            mPackSize += data.length;
+            DataOutputStream output = openIndexOutput();
+            output.writeLong(id);
+            output.writeLong(dateModified);
+            output.writeInt(size);
+            output.writeLong(offset);
+            output.writeInt(data.length);
+            // The record is only written after its thumbnail, so a record never points to missing data
+            output.flush();
+            put(id, size, new Entry(dateModified, offset, data.length));
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write " + mPackFile, e);
+        }
+    }
+
+    @NonNull
+    private DataOutputStream openIndexOutput() throws IOException {
+        if (mIndexOutput == null) {
+            mIndexOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(mIndexFile, true), RECORD_SIZE * 16));
+        }
+        return mIndexOutput;
+    }
+
+    @Nullable
+    private ByteBuffer map(long minSize) {
+        RandomAccessFile file = null;
+        try {
+            file = new RandomAccessFile(mPackFile, "r");
+            long size = file.length();
+            if (size < minSize) {
+                return null;
+            }
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to map " + mPackFile, e);
+            return null;
+        } finally {
+            // The mapping stays valid after the file is closed
+            closeQuietly(file);
+        }
+    }
+
+    private static void closeQuietly(@Nullable Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException ignored) {
+            }
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.metrics;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.FrameMetrics;
+import android.view.Window;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Records the frame durations of a scroll session and reports them as {@link ScrollStats}.
+ * <p>
+ * It uses {@link FrameMetrics} on Nougat and above, which measures the actual work of every frame.
+ * Below it, the durations are the intervals between the {@link Choreographer} frame callbacks.
+ */
+public class FrameTracker {
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    private final Activity mActivity;
+    private long[] mFrames = new long[INITIAL_CAPACITY];
+    private int mFrameCount;
+    private boolean mTracking;
+    @MetricsListener.Content
+    private int mContent;
+    private int mItemCount;
+    private long mStartedAt;
+    private long mRefreshIntervalNanos;
+    private Object mFrameListener;
+
+    public FrameTracker(@NonNull Activity activity) {
+        mActivity = activity;
+    }
+
+    /**
+     * Start a scroll session, if the metrics are enabled and there is no session running yet
+     */
+    public void start(@MetricsListener.Content int content, int itemCount) {
+        if (mTracking || !Metrics.isEnabled()) {
+            return;
+        }
+        mTracking = true;
+        mContent = content;
+        mItemCount = itemCount;
+        mFrameCount = 0;
+        mStartedAt = Metrics.now();
+        mRefreshIntervalNanos = refreshIntervalNanos(mActivity);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            startFrameMetrics();
+        } else {
+            startChoreographer();
+        }
+    }
+
+    /**
+     * Stop the current scroll session and report it
+     */
+    public void stop() {
+        if (!mTracking) {
+            return;
+        }
+        mTracking = false;
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            stopFrameMetrics();
+        } else {
+            stopChoreographer();
+        }
+        if (mFrameCount > 0) {
+            Metrics.reportScroll(new ScrollStats(mContent, mItemCount, Metrics.now() - mStartedAt,
+                    mRefreshIntervalNanos, mFrames, mFrameCount));
+        }
+    }
+
+    /**
+     * Read on every session, since the refresh rate can change while the activity runs
+     *
+     * @return The refresh interval of the display showing the activity, or 0 if it is unknown
+     */
+    private static long refreshIntervalNanos(@NonNull Activity activity) {
+        Display display = activity.getWindowManager().getDefaultDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 0;
+        return refreshRate > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / refreshRate) : 0;
+    }
+
+    private void addFrame(long durationNanos) {
+        if (mFrameCount == mFrames.length) {
+            mFrames = Arrays.copyOf(mFrames, mFrameCount * 2);
+        }
+        mFrames[mFrameCount++] = durationNanos;
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void startFrameMetrics() {
+        Window.OnFrameMetricsAvailableListener listener = new Window.OnFrameMetricsAvailableListener() {
+            @Override
+            public void onFrameMetricsAvailable(Window window, FrameMetrics frameMetrics, int dropCountSinceLastInvocation) {
+                // Delivered on the main thread, but after the frame, so it can arrive once the session is over
+                if (mTracking && this == mFrameListener) {
+                    addFrame(frameMetrics.getMetric(FrameMetrics.TOTAL_DURATION));
+                }
+            }
+        };
+        mFrameListener = listener;
+        mActivity.getWindow().addOnFrameMetricsAvailableListener(listener, new Handler(Looper.getMainLooper()));
+    }
+
+    @TargetApi(Build.VERSION_CODES.N)
+    private void stopFrameMetrics() {
+        Window.OnFrameMetricsAvailableListener listener = (Window.OnFrameMetricsAvailableListener) mFrameListener;
+        mFrameListener = null;
+        try {
+            mActivity.getWindow().removeOnFrameMetricsAvailableListener(listener);
+        } catch (IllegalArgumentException e) {
+            // The window was already detached
+        }
+    }
+
+    private void startChoreographer() {
+        Choreographer.FrameCallback callback = new Choreographer.FrameCallback() {
+
+            private long mLastFrameTime;
+
+            @Override
+            public void doFrame(long frameTimeNanos) {
+                if (!mTracking || this != mFrameListener) {
+                    return;
+                }
+                if (mLastFrameTime > 0) {
+                    addFrame(frameTimeNanos - mLastFrameTime);
+                }
+                mLastFrameTime = frameTimeNanos;
+                Choreographer.getInstance().postFrameCallback(this);
+            }
+        };
+        mFrameListener = callback;
+        Choreographer.getInstance().postFrameCallback(callback);
+    }
+
+    private void stopChoreographer() {
+        Choreographer.getInstance().removeFrameCallback((Choreographer.FrameCallback) mFrameListener);
+        mFrameListener = null;
+    }
+
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * Internal entry point that forwards the picker metrics to the registered {@link MetricsListener}.
+ * <p>
+ * Call sites check {@link #isEnabled()} before measuring, so nothing is timed or allocated while
+ * no listener is registered.
+ */
+public final class Metrics {
+
+    private static final long NONE = -1;
+
+    @Nullable
+    private static volatile MetricsListener sListener;
+    // Only touched from the main thread
+    private static long sGalleryCreatedAt = NONE;
+    private static long sPreviewRequestedAt = NONE;
+
+    private Metrics() {
+    }
+
+    public static void setListener(@Nullable MetricsListener listener) {
+        sListener = listener;
+    }
+
+    public static boolean isEnabled() {
+        return sListener != null;
+    }
+
+    public static long now() {
+        return System.nanoTime();
+    }
+
+    public static void reportQuery(@MetricsListener.Query int query, long startedAt, int rowCount) {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onQueryFinished(query, now() - startedAt, rowCount);
+        }
+    }
+
+    public static void reportBind(long startedAt) {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onBind(now() - startedAt);
+        }
+    }
+
+    public static void reportScroll(@NonNull ScrollStats stats) {
+        MetricsListener listener = sListener;
+        if (listener != null) {
+            listener.onScrollFinished(stats);
+        }
+    }
+
+    public static void markGalleryCreated() {
+        sGalleryCreatedAt = isEnabled() ? now() : NONE;
+    }
+
+    /**
+     * Report a ready gallery thumbnail, which is also the first one if the gallery was just created.
+     */
+    public static void reportThumbnail(boolean cacheHit) {
+        MetricsListener listener = sListener;
+        if (listener == null) {
+            return;
+        }
+        if (sGalleryCreatedAt != NONE) {
+            listener.onFirstThumbnail(now() - sGalleryCreatedAt);
+            sGalleryCreatedAt = NONE;
+        }
+        listener.onThumbnailLoaded(cacheHit);
+    }
+
+    public static void markPreviewRequested() {
+        sPreviewRequestedAt = isEnabled() ? now() : NONE;
+    }
+
+    public static void reportPreviewOpened() {
+        MetricsListener listener = sListener;
+        if (listener != null && sPreviewRequestedAt != NONE) {
+            listener.onPreviewOpened(now() - sPreviewRequestedAt);
+        }
+        sPreviewRequestedAt = NONE;
+    }
+
+}
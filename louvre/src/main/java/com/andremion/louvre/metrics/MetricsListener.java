@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.metrics;
+
+import android.support.annotation.IntDef;
+import android.support.annotation.NonNull;
+
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+
+/**
+ * Receives performance metrics of the picker, to be aggregated by the app.
+ * Register it with {@link com.andremion.louvre.Louvre#setMetricsListener(MetricsListener)}.
+ * <p>
+ * The callbacks can be called from any thread and should return quickly.
+ */
+public interface MetricsListener {
+
+    /**
+     * The query of all media, sorted by date
+     */
+    int QUERY_ALL_MEDIA = 0;
+    /**
+     * The query of the buckets
+     */
+    int QUERY_BUCKETS = 1;
+    /**
+     * The query of the media of a single bucket
+     */
+    int QUERY_BUCKET_MEDIA = 2;
+    /**
+     * The query of all media to build the folder tree
+     */
+    int QUERY_FOLDERS = 3;
+
+    @IntDef({QUERY_ALL_MEDIA, QUERY_BUCKETS, QUERY_BUCKET_MEDIA, QUERY_FOLDERS})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Query {
+    }
+
+    /**
+     * The gallery is showing the buckets
+     */
+    int CONTENT_BUCKETS = 0;
+    /**
+     * The gallery is showing the media of a bucket
+     */
+    int CONTENT_MEDIA = 1;
+
+    @IntDef({CONTENT_BUCKETS, CONTENT_MEDIA})
+    @Retention(RetentionPolicy.SOURCE)
+    @interface Content {
+    }
+
+    /**
+     * Called when a media query finished in background
+     *
+     * @param query         The query type
+     * @param durationNanos The time taken by the query and to fill the cursor window
+     * @param rowCount      The count of rows returned, or -1 if the query failed
+     */
+    void onQueryFinished(@Query int query, long durationNanos, int rowCount);
+
+    /**
+     * Called once per gallery screen, when its first thumbnail is ready to be drawn
+     *
+     * @param durationNanos The time since the gallery screen was created
+     */
+    void onFirstThumbnail(long durationNanos);
+
+    /**
+     * Called after every gallery item bind
+     *
+     * @param durationNanos The time taken by the bind
+     */
+    void onBind(long durationNanos);
+
+    /**
+     * Called when a gallery thumbnail is ready
+     *
+     * @param cacheHit If the thumbnail was served from a cache instead of decoded from the original media
+     */
+    void onThumbnailLoaded(boolean cacheHit);
+
+    /**
+     * Called when the image of a preview screen is ready to be drawn
+     *
+     * @param durationNanos The time since the media was clicked in the gallery
+     */
+    void onPreviewOpened(long durationNanos);
+
+    /**
+     * Called when the gallery list stops scrolling, with the frame statistics of the scroll
+     */
+    void onScrollFinished(@NonNull ScrollStats stats);
+
+}
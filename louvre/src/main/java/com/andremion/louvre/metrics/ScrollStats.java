@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.metrics;
+
+import android.support.annotation.NonNull;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Frame statistics of a gallery scroll session, from the first drag or fling until the list is idle again
+ */
+public final class ScrollStats {
+
+    /**
+     * Refresh interval of a 60Hz display, used when the display doesn't report its refresh rate
+     */
+    public static final long DEFAULT_REFRESH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1) / 60;
+    /**
+     * Frames slower than this many refresh intervals miss at least one vsync
+     */
+    public static final float SLOW_FRAME_INTERVALS = 1.5f;
+    /**
+     * Frames slower than this are perceived as a frozen UI
+     */
+    public static final long FROZEN_FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(700);
+
+    /**
+     * One of {@link MetricsListener#CONTENT_BUCKETS} or {@link MetricsListener#CONTENT_MEDIA}
+     */
+    @MetricsListener.Content
+    public final int content;
+    /**
+     * The count of items in the list, which is the bucket size when scrolling media
+     */
+    public final int itemCount;
+    public final long durationNanos;
+    /**
+     * The refresh interval of the display, which the slow frames are relative to
+     */
+    public final long refreshIntervalNanos;
+    public final int frameCount;
+    public final int slowFrameCount;
+    public final int frozenFrameCount;
+    public final long p50FrameNanos;
+    public final long p90FrameNanos;
+    public final long p95FrameNanos;
+    public final long p99FrameNanos;
+
+    /**
+     * @param refreshIntervalNanos The refresh interval of the display, or 0 if it is unknown
+     * @param frames               The frame durations, which are sorted in place
+     * @param count                The count of valid frame durations
+     */
+    ScrollStats(@MetricsListener.Content int content, int itemCount, long durationNanos, long refreshIntervalNanos,
+                @NonNull long[] frames, int count) {
+        this.content = content;
+        this.itemCount = itemCount;
+        this.durationNanos = durationNanos;
+        this.refreshIntervalNanos = refreshIntervalNanos > 0 ? refreshIntervalNanos : DEFAULT_REFRESH_INTERVAL_NANOS;
+        Arrays.sort(frames, 0, count);
+        long slowFrameNanos = (long) (this.refreshIntervalNanos * SLOW_FRAME_INTERVALS);
+        int slow = 0;
+        int frozen = 0;
+        for (int i = count - 1; i >= 0 && frames[i] > slowFrameNanos; i--) {
+            slow++;
+            if (frames[i] > FROZEN_FRAME_NANOS) {
+                frozen++;
+            }
+        }
+        frameCount = count;
+        slowFrameCount = slow;
+        frozenFrameCount = frozen;
+        p50FrameNanos = percentile(frames, count, 50);
+        p90FrameNanos = percentile(frames, count, 90);
+        p95FrameNanos = percentile(frames, count, 95);
+        p99FrameNanos = percentile(frames, count, 99);
+    }
+
+    private static long percentile(@NonNull long[] sorted, int count, int percentile) {
+        if (count == 0) {
+            return 0;
+        }
+        int index = (int) Math.ceil(percentile / 100d * count) - 1;
+        return sorted[Math.max(0, index)];
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "ScrollStats{content=%d, itemCount=%d, refresh=%.1fms, frames=%d, slow=%d, frozen=%d, p50=%.1fms, p90=%.1fms, p95=%.1fms, p99=%.1fms}",
+                content, itemCount, refreshIntervalNanos / 1e6, frameCount, slowFrameCount, frozenFrameCount,
+                p50FrameNanos / 1e6, p90FrameNanos / 1e6, p95FrameNanos / 1e6, p99FrameNanos / 1e6);
+    }
+
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.metrics;
+
+import android.support.annotation.NonNull;
+import android.support.v4.os.TraceCompat;
+
+import com.andremion.louvre.BuildConfig;
+
+/**
+ * Named trace sections for systrace and Perfetto, all prefixed with "Louvre:".
+ * <p>
+ * They are off unless the library is built with the {@code TRACE} build config field or they are
+ * enabled at runtime, and then cost a single static field read.
+ * <pre>
+ * boolean traced = Tracer.begin("Louvre:bind");
+ * ...
+ * Tracer.end(traced);
+ * </pre>
+ * {@link #end(boolean)} takes the result of {@link #begin(String)}, so toggling the tracing in the
+ * middle of a section doesn't leave it unbalanced.
+ */
+public final class Tracer {
+
+    private static volatile boolean sEnabled = BuildConfig.TRACE;
+
+    private Tracer() {
+    }
+
+    public static void setEnabled(boolean enabled) {
+        sEnabled = enabled;
+    }
+
+    /**
+     * Begin a section, if the tracing is enabled
+     *
+     * @param section The section name. It must be a constant so nothing is allocated when the tracing is off.
+     * @return If the section was begun
+     */
+    public static boolean begin(@NonNull String section) {
+        if (!sEnabled) {
+            return false;
+        }
+        TraceCompat.beginSection(section);
+        return true;
+    }
+
+    /**
+     * End the section begun in the same thread
+     *
+     * @param begun The result of the matching {@link #begin(String)}
+     */
+    public static void end(boolean begun) {
+        if (begun) {
+            TraceCompat.endSection();
+        }
+    }
+
+}
@@ -40,7 +40,9 @@ import android.view.MenuItem;
 import android.view.View;
 import android.widget.CheckedTextView;
 
+import com.andremion.louvre.GalleryOptions;
 import com.andremion.louvre.R;
+import com.andremion.louvre.data.DirectorySource;
 import com.andremion.louvre.data.MediaLoader;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
 import com.andremion.louvre.util.transition.TransitionCallback;
@@ -57,19 +59,27 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
     private static final String EXTRA_BUCKET_ID = PreviewActivity.class.getPackage().getName() + ".extra.BUCKET_ID";
     private static final String EXTRA_POSITION = PreviewActivity.class.getPackage().getName() + ".extra.POSITION";
     private static final String EXTRA_SELECTION = PreviewActivity.class.getPackage().getName() + ".extra.SELECTION";
-    private static final String EXTRA_MAX_SELECTION = PreviewActivity.class.getPackage().getName() + ".extra.MAX_SELECTION";
-    private static final String EXTRA_MEDIA_TYPE_FILTER = PreviewActivity.class.getPackage().getName() + ".extra.MEDIA_TYPE_FILTER";
+    private static final String EXTRA_OPTIONS = PreviewActivity.class.getPackage().getName() + ".extra.OPTIONS";
 
     public static void startActivity(@NonNull Activity activity, int requestCode, @NonNull View imageView, @NonNull View checkView,
                                      @IntRange(from = 0) long bucketId, @IntRange(from = 0) int position,
                                      List<Uri> selection, int maxSelection, String... mediaTypeFilter) {
+        startActivity(activity, requestCode, imageView, checkView, bucketId, position, selection,
+                new GalleryOptions.Builder()
+                        .setMaxSelection(maxSelection)
+                        .setMediaTypeFilter(mediaTypeFilter)
+                        .build());
+    }
+
+    public static void startActivity(@NonNull Activity activity, int requestCode, @NonNull View imageView, @NonNull View checkView,
+                                     @IntRange(from = 0) long bucketId, @IntRange(from = 0) int position,
+                                     List<Uri> selection, @NonNull GalleryOptions options) {
 
         Intent intent = new Intent(activity, PreviewActivity.class);
         intent.putExtra(EXTRA_BUCKET_ID, bucketId);
         intent.putExtra(EXTRA_POSITION, position);
         intent.putExtra(EXTRA_SELECTION, new LinkedList<>(selection));
-        intent.putExtra(EXTRA_MAX_SELECTION, maxSelection);
-        intent.putExtra(EXTRA_MEDIA_TYPE_FILTER, mediaTypeFilter);
+        intent.putExtra(EXTRA_OPTIONS, options);
 
         Pair[] sharedElements = concatToSystemSharedElements(activity,
                 Pair.create(imageView, ViewCompat.getTransitionName(imageView)),
@@ -142,7 +152,10 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
         //noinspection unchecked
         List<Uri> selection = (List<Uri>) getIntent().getExtras().get(EXTRA_SELECTION);
         assert selection != null;
-        int maxSelection = getIntent().getExtras().getInt(EXTRA_MAX_SELECTION);
+        GalleryOptions options = getIntent().getParcelableExtra(EXTRA_OPTIONS);
+        if (options == null) {
+            options = GalleryOptions.defaults();
+        }
 
         mCheckbox = (CheckedTextView) findViewById(R.id.check);
         mCheckbox.setOnClickListener(new View.OnClickListener() {
@@ -154,15 +167,20 @@ public class PreviewActivity extends AppCompatActivity implements MediaLoader.Ca
 
         mAdapter = new PreviewAdapter(this, mCheckbox, sharedElementCallback, selection);
         mAdapter.setCallbacks(this);
-        mAdapter.setMaxSelection(maxSelection);
+        mAdapter.setMaxSelection(options.getMaxSelection());
 
         mViewPager = (ViewPager) findViewById(R.id.view_pager);
         mViewPager.setAdapter(mAdapter);
 
         mMediaLoader = new MediaLoader();
         mMediaLoader.onAttach(this, this);
-        if (getIntent().hasExtra(EXTRA_MEDIA_TYPE_FILTER)) {
-            mMediaLoader.setMediaTypes(getIntent().getStringArrayExtra(EXTRA_MEDIA_TYPE_FILTER));
+        // The pager shows the media as it is, so none of the gallery indexes are built
+        mMediaLoader.setOptions(new GalleryOptions.Builder()
+                .setMediaTypeFilter(options.getMediaTypeFilter())
+                .setMediaSourceUri(options.getMediaSourceUri())
+                .build());
+        if (options.getMediaDirectories().length > 0) {
+            mMediaLoader.addMediaSource(DirectorySource.of(this, options.getMediaDirectories()));
         }
 
         long bucketId = getIntent().getExtras().getLong(EXTRA_BUCKET_ID);
@@ -17,7 +17,6 @@
 package com.andremion.louvre.preview;
 
 import android.database.Cursor;
-import android.graphics.drawable.Drawable;
 import android.net.Uri;
 import android.provider.MediaStore;
 import android.support.annotation.IntRange;
@@ -34,13 +33,11 @@ import android.widget.CheckedTextView;
 import android.widget.ImageView;
 
 import com.andremion.louvre.R;
+import com.andremion.louvre.image.ImageEngine;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.metrics.Metrics;
+import com.andremion.louvre.metrics.Tracer;
 import com.andremion.louvre.util.transition.MediaSharedElementCallback;
-import com.bumptech.glide.Glide;
-import com.bumptech.glide.load.DataSource;
-import com.bumptech.glide.load.engine.GlideException;
-import com.bumptech.glide.request.RequestListener;
-import com.bumptech.glide.request.RequestOptions;
-import com.bumptech.glide.request.target.Target;
 
 import java.io.File;
 import java.util.LinkedList;
@@ -113,12 +110,17 @@ class PreviewAdapter extends PagerAdapter {
 
     @Override
     public Object instantiateItem(ViewGroup container, int position) {
-        View view = mInflater.inflate(R.layout.page_item_preview, container, false);
-        ViewHolder holder = new ViewHolder(view);
-        Uri data = getData(position);
-        onViewBound(holder, position, data);
-        container.addView(holder.itemView);
-        return holder;
+        boolean traced = Tracer.begin("Louvre:instantiatePreview");
+        try {
+            View view = mInflater.inflate(R.layout.page_item_preview, container, false);
+            ViewHolder holder = new ViewHolder(view);
+            Uri data = getData(position);
+            onViewBound(holder, position, data);
+            container.addView(holder.itemView);
+            return holder;
+        } finally {
+            Tracer.end(traced);
+        }
     }
 
     @Nullable
@@ -142,17 +144,7 @@ class PreviewAdapter extends PagerAdapter {
         String imageTransitionName = holder.imageView.getContext().getString(R.string.activity_gallery_image_transition, data.toString());
         ViewCompat.setTransitionName(holder.imageView, imageTransitionName);
 
-        RequestOptions options = new RequestOptions()
-                .skipMemoryCache(true)
-                .fitCenter();
-        if (mDontAnimate) {
-            options.dontAnimate();
-        }
-        Glide.with(mActivity)
-                .load(data)
-                .apply(options)
-                .listener(new ImageLoadingCallback(position))
-                .into(holder.imageView);
+        ImageEngines.get().loadPreview(holder.imageView, data, !mDontAnimate, new ImageLoadingCallback(position));
     }
 
     private boolean isSelected(int position) {
@@ -162,6 +154,7 @@ class PreviewAdapter extends PagerAdapter {
 
     private void startPostponedEnterTransition(int position) {
         if (position == mInitialPosition) {
+            Metrics.reportPreviewOpened();
             mActivity.supportStartPostponedEnterTransition();
         }
     }
@@ -185,8 +178,10 @@ class PreviewAdapter extends PagerAdapter {
 
     @Override
     public void destroyItem(ViewGroup container, int position, Object object) {
-        View view = ((ViewHolder) object).itemView;
-        container.removeView(view);
+        ViewHolder holder = (ViewHolder) object;
+        // Release the page bitmap into the pool, so the next pages and the gallery can decode into it
+        ImageEngines.get().cancel(holder.imageView);
+        container.removeView(holder.itemView);
     }
 
     void selectCurrentItem() {
@@ -232,7 +227,7 @@ class PreviewAdapter extends PagerAdapter {
 
     }
 
-    private class ImageLoadingCallback implements RequestListener<Drawable> {
+    private class ImageLoadingCallback implements ImageEngine.Listener {
 
         final int mPosition;
 
@@ -241,15 +236,13 @@ class PreviewAdapter extends PagerAdapter {
         }
 
         @Override
-        public boolean onResourceReady(Drawable resource, Object model, Target<Drawable> target, DataSource dataSource, boolean isFirstResource) {
+        public void onImageReady(boolean fromCache) {
             startPostponedEnterTransition(mPosition);
-            return false;
         }
 
         @Override
-        public boolean onLoadFailed(@Nullable GlideException e, Object model, Target<Drawable> target, boolean isFirstResource) {
+        public void onImageFailed() {
             startPostponedEnterTransition(mPosition);
-            return false;
         }
     }
 
@@ -0,0 +1,50 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.util;
+
+import android.os.Process;
+import android.support.annotation.NonNull;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Creates the daemon threads of the picker's background work, at background priority so they keep
+ * away from the UI thread's CPU time
+ */
+public class BackgroundThreadFactory implements ThreadFactory {
+
+    private final String mName;
+
+    public BackgroundThreadFactory(@NonNull String name) {
+        mName = name;
+    }
+
+    @Override
+    public Thread newThread(@NonNull final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }
+        }, mName);
+        thread.setDaemon(true);
+        return thread;
+    }
+
+}
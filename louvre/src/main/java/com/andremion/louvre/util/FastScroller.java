@@ -0,0 +1,241 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.graphics.RectF;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.v4.content.ContextCompat;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.util.AttributeSet;
+import android.view.MotionEvent;
+import android.view.View;
+
+import com.andremion.louvre.R;
+
+/**
+ * Overlay of a {@link RecyclerView} with a thumb to drag through its sections.
+ * <p>
+ * The thumb position is mapped to the section of the item at the same fraction of the list, and the list jumps
+ * straight to the first item of that section, so dragging costs the same on any list size.
+ * It only shows up while the list scrolls and there is more than one section.
+ */
+public class FastScroller extends View {
+
+    private static final long HIDE_DELAY = 1500;
+
+    /**
+     * Sections of the items of the scrolled adapter
+     */
+    public interface Sections {
+
+        int getSectionCount();
+
+        int getSectionForPosition(int position);
+
+        int getPositionForSection(int section);
+
+        @NonNull
+        String getSectionLabel(@NonNull Context context, int section);
+    }
+
+    /**
+     * Notified when the thumb starts and stops being dragged
+     */
+    public interface OnDragListener {
+
+        void onDragStateChanged(boolean dragging);
+    }
+
+    private final Paint mThumbPaint;
+    private final Paint mTextPaint;
+    private final RectF mRect = new RectF();
+    private final int mThumbWidth;
+    private final int mThumbHeight;
+    private final int mTouchWidth;
+    private final int mBubblePadding;
+    private final int mBubbleMargin;
+    private final Runnable mHideRunnable = new Runnable() {
+        @Override
+        public void run() {
+            animate().alpha(0f);
+        }
+    };
+
+    @Nullable
+    private RecyclerView mRecyclerView;
+    @Nullable
+    private Sections mSections;
+    @Nullable
+    private OnDragListener mOnDragListener;
+    private float mThumbOffset;
+    private boolean mDragging;
+    private int mSection = -1;
+    @Nullable
+    private String mLabel;
+
+    public FastScroller(Context context) {
+        this(context, null);
+    }
+
+    public FastScroller(Context context, @Nullable AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FastScroller(Context context, @Nullable AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr);
+        mThumbWidth = getResources().getDimensionPixelSize(R.dimen.fast_scroller_thumb_width);
+        mThumbHeight = getResources().getDimensionPixelSize(R.dimen.fast_scroller_thumb_height);
+        mTouchWidth = getResources().getDimensionPixelSize(R.dimen.fast_scroller_touch_width);
+        mBubblePadding = getResources().getDimensionPixelSize(R.dimen.fast_scroller_bubble_padding);
+        mBubbleMargin = getResources().getDimensionPixelSize(R.dimen.fast_scroller_bubble_margin);
+        mThumbPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mThumbPaint.setColor(ContextCompat.getColor(context, R.color.blue));
+        mTextPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        mTextPaint.setColor(ContextCompat.getColor(context, R.color.white));
+        mTextPaint.setTextSize(getResources().getDimension(R.dimen.fast_scroller_bubble_text_size));
+        setAlpha(0f);
+    }
+
+    public void attachTo(@NonNull RecyclerView recyclerView, @NonNull Sections sections) {
+        mRecyclerView = recyclerView;
+        mSections = sections;
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                if (!mDragging && dy != 0 && isScrollable()) {
+                    int range = recyclerView.computeVerticalScrollRange() - recyclerView.computeVerticalScrollExtent();
+                    mThumbOffset = range > 0 ? recyclerView.computeVerticalScrollOffset() / (float) range : 0;
+                    show();
+                    invalidate();
+                }
+            }
+        });
+    }
+
+    public void setOnDragListener(@Nullable OnDragListener listener) {
+        mOnDragListener = listener;
+    }
+
+    private void setDragging(boolean dragging) {
+        mDragging = dragging;
+        if (mOnDragListener != null) {
+            mOnDragListener.onDragStateChanged(dragging);
+        }
+    }
+
+    private boolean isScrollable() {
+        return mRecyclerView != null && mRecyclerView.getAdapter() != null && mSections != null
+                && mSections.getSectionCount() > 1;
+    }
+
+    private void show() {
+        removeCallbacks(mHideRunnable);
+        animate().cancel();
+        setAlpha(1f);
+        if (!mDragging) {
+            postDelayed(mHideRunnable, HIDE_DELAY);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+                // Only the edge under a visible thumb is taken, the rest of the touches go to the list
+                if (getAlpha() == 0f || event.getX() < getWidth() - mTouchWidth || !isScrollable()) {
+                    return false;
+                }
+                setDragging(true);
+                getParent().requestDisallowInterceptTouchEvent(true);
+                show();
+                scrollTo(event.getY());
+                return true;
+            case MotionEvent.ACTION_MOVE:
+                if (mDragging) {
+                    scrollTo(event.getY());
+                }
+                return mDragging;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                if (mDragging) {
+                    setDragging(false);
+                    mSection = -1;
+                    mLabel = null;
+                    show();
+                    invalidate();
+                    return true;
+                }
+                return false;
+            default:
+                return mDragging;
+        }
+    }
+
+    private void scrollTo(float y) {
+        assert mRecyclerView != null && mSections != null; // It is supposed not be null here
+        int range = getHeight() - mThumbHeight;
+        mThumbOffset = range > 0 ? Math.max(0f, Math.min(1f, (y - mThumbHeight / 2f) / range)) : 0;
+        int itemCount = mRecyclerView.getAdapter().getItemCount();
+        int section = mSections.getSectionForPosition(Math.round(mThumbOffset * (itemCount - 1)));
+        if (section != mSection) {
+            mSection = section;
+            mLabel = mSections.getSectionLabel(getContext(), section);
+            int position = mSections.getPositionForSection(section);
+            RecyclerView.LayoutManager layoutManager = mRecyclerView.getLayoutManager();
+            if (layoutManager instanceof LinearLayoutManager) {
+                ((LinearLayoutManager) layoutManager).scrollToPositionWithOffset(position, 0);
+            } else {
+                mRecyclerView.scrollToPosition(position);
+            }
+        }
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        float thumbTop = mThumbOffset * (getHeight() - mThumbHeight);
+        mRect.set(getWidth() - mThumbWidth, thumbTop, getWidth(), thumbTop + mThumbHeight);
+        canvas.drawRoundRect(mRect, mThumbWidth / 2f, mThumbWidth / 2f, mThumbPaint);
+
+        if (mDragging && mLabel != null) {
+            Paint.FontMetrics metrics = mTextPaint.getFontMetrics();
+            float textHeight = metrics.descent - metrics.ascent;
+            float height = textHeight + 2 * mBubblePadding;
+            float width = mTextPaint.measureText(mLabel) + 2 * mBubblePadding;
+            float right = getWidth() - mThumbWidth - mBubbleMargin;
+            float top = Math.max(0f, Math.min(getHeight() - height, thumbTop + (mThumbHeight - height) / 2f));
+            mRect.set(right - width, top, right, top + height);
+            canvas.drawRoundRect(mRect, height / 2f, height / 2f, mThumbPaint);
+            canvas.drawText(mLabel, mRect.left + mBubblePadding, mRect.top + mBubblePadding - metrics.ascent, mTextPaint);
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        super.onDetachedFromWindow();
+        removeCallbacks(mHideRunnable);
+        if (mDragging) {
+            setDragging(false);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+
+import com.andremion.louvre.image.GlideImageEngine;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.load.engine.cache.MemorySizeCalculator;
+
+/**
+ * Sets Glide up with the {@link SharedBitmapPool}, sized like the Glide default pool, and with the loader of
+ * the persistent thumbnail pack of the {@link GlideImageEngine}.
+ * <p>
+ * Opt-in, since the Glide instance belongs to the app: call it from the app's own {@code AppGlideModule}.
+ * <pre>
+ * &#64;GlideModule
+ * public class AppModule extends AppGlideModule {
+ *
+ *     &#64;Override
+ *     public void applyOptions(Context context, GlideBuilder builder) {
+ *         LouvreGlideModule.applyOptions(context, builder);
+ *     }
+ *
+ *     &#64;Override
+ *     public void registerComponents(Context context, Glide glide, Registry registry) {
+ *         LouvreGlideModule.registerComponents(context, registry);
+ *     }
+ * }
+ * </pre>
+ * Skip {@link #applyOptions(Context, GlideBuilder)} when the app sets its own bitmap pool, and both of them
+ * when the images are loaded with another {@link com.andremion.louvre.image.ImageEngine}.
+ */
+public final class LouvreGlideModule {
+
+    private LouvreGlideModule() {
+    }
+
+    /**
+     * Set the {@link SharedBitmapPool} as the bitmap pool of Glide
+     */
+    public static void applyOptions(@NonNull Context context, @NonNull GlideBuilder builder) {
+        MemorySizeCalculator calculator = new MemorySizeCalculator.Builder(context).build();
+        builder.setBitmapPool(new SharedBitmapPool(calculator.getBitmapPoolSize()));
+    }
+
+    /**
+     * Let Glide load the thumbnails from the persistent pack
+     */
+    public static void registerComponents(@NonNull Context context, @NonNull Registry registry) {
+        GlideImageEngine.registerComponents(context, registry);
+    }
+
+}
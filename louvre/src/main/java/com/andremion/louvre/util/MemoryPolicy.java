@@ -0,0 +1,229 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.app.ActivityManager;
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+import android.support.v4.app.ActivityManagerCompat;
+
+import com.andremion.louvre.image.ImageEngines;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.MemoryCategory;
+import com.bumptech.glide.load.DecodeFormat;
+import com.bumptech.glide.request.RequestOptions;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+/**
+ * Sizes the memory caches of the picker from the memory class of the device and sheds them under pressure.
+ * <p>
+ * There are three tiers, from the most expensive to rebuild to the cheapest to drop:
+ * <ul>
+ * <li>Thumbnails, the grid images kept in the Glide memory cache</li>
+ * <li>Previews, the full screen images kept in the Glide memory cache</li>
+ * <li>Snapshots, the in-memory copies of the data the picker scans, like the {@link Releasable}s register</li>
+ * </ul>
+ * The tiers are shed by {@link #onTrimMemory(int)} level, the previews first, and restored when a gallery starts.
+ * Low RAM devices never cache the previews and decode everything in RGB_565 to smaller thumbnail tiers.
+ */
+public class MemoryPolicy implements ComponentCallbacks2 {
+
+    // Memory classes, in megabytes, from which the Glide memory cache is allowed to grow
+    private static final int LARGE_MEMORY_CLASS = 256;
+    private static final int PREVIEW_MEMORY_CLASS = 128;
+    private static final float LOW_RAM_PREVIEW_SIZE_MULTIPLIER = .5f;
+
+    /**
+     * Holder of memory that can be rebuilt, released when the snapshots tier is shed
+     */
+    public interface Releasable {
+
+        /**
+         * Called on a background thread, so it may wait for the holder's own work to finish
+         */
+        @WorkerThread
+        void releaseMemory();
+    }
+
+    private static MemoryPolicy sInstance;
+
+    public static synchronized MemoryPolicy get(@NonNull Context context) {
+        if (sInstance == null) {
+            sInstance = new MemoryPolicy(context.getApplicationContext());
+        }
+        return sInstance;
+    }
+
+    private final Context mContext;
+    private final boolean mLowRamDevice;
+    private final int mMemoryClass;
+    private final Set<Releasable> mReleasables = Collections.newSetFromMap(new WeakHashMap<Releasable, Boolean>());
+    // The releasables may wait for a scan or flush to disk, so they are never released on the main thread
+    private final Executor mReleaser = Executors.newSingleThreadExecutor(new BackgroundThreadFactory(MemoryPolicy.class.getSimpleName()));
+    private volatile boolean mThumbnailsCached;
+    private volatile boolean mPreviewsCached;
+    private volatile boolean mSnapshotsKept;
+    private volatile RequestOptions mThumbnailOptions;
+    private volatile RequestOptions mPreviewOptions;
+
+    private MemoryPolicy(@NonNull Context context) {
+        mContext = context;
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        mLowRamDevice = ActivityManagerCompat.isLowRamDevice(activityManager);
+        mMemoryClass = activityManager.getMemoryClass();
+        restoreTiers();
+        context.registerComponentCallbacks(this);
+    }
+
+    public boolean isLowRamDevice() {
+        return mLowRamDevice;
+    }
+
+    /**
+     * @return The options every thumbnail request applies, which cache it in memory while its tier is kept
+     */
+    @NonNull
+    public RequestOptions getThumbnailOptions() {
+        return mThumbnailOptions;
+    }
+
+    /**
+     * @return The options every preview request applies, which cache it in memory while its tier is kept
+     */
+    @NonNull
+    public RequestOptions getPreviewOptions() {
+        return mPreviewOptions;
+    }
+
+    public boolean isSnapshotsKept() {
+        return mSnapshotsKept;
+    }
+
+    public void register(@NonNull Releasable releasable) {
+        synchronized (mReleasables) {
+            mReleasables.add(releasable);
+        }
+    }
+
+    public void unregister(@NonNull Releasable releasable) {
+        synchronized (mReleasables) {
+            mReleasables.remove(releasable);
+        }
+    }
+
+    /**
+     * Restore the tiers shed since the last gallery and size the Glide memory cache for the device,
+     * unless the app loads the images with its own {@link com.andremion.louvre.image.ImageEngine}
+     */
+    @MainThread
+    public void onGalleryStarted() {
+        restoreTiers();
+        if (!ImageEngines.usesGlide()) {
+            return;
+        }
+        MemoryCategory category;
+        if (mLowRamDevice) {
+            category = MemoryCategory.LOW;
+        } else if (mMemoryClass >= LARGE_MEMORY_CLASS) {
+            category = MemoryCategory.HIGH;
+        } else {
+            category = MemoryCategory.NORMAL;
+        }
+        Glide.get(mContext).setMemoryCategory(category);
+    }
+
+    /**
+     * Give the Glide memory cache back to the app at its default size, since the gallery is gone
+     */
+    @MainThread
+    public void onGalleryFinished() {
+        if (ImageEngines.usesGlide()) {
+            Glide.get(mContext).setMemoryCategory(MemoryCategory.NORMAL);
+        }
+    }
+
+    private void restoreTiers() {
+        mThumbnailsCached = true;
+        mPreviewsCached = !mLowRamDevice && mMemoryClass >= PREVIEW_MEMORY_CLASS;
+        mSnapshotsKept = !mLowRamDevice;
+        updateOptions();
+    }
+
+    private void updateOptions() {
+        DecodeFormat format = mLowRamDevice ? DecodeFormat.PREFER_RGB_565 : DecodeFormat.PREFER_ARGB_8888;
+        mThumbnailOptions = RequestOptions.skipMemoryCacheOf(!mThumbnailsCached)
+                .format(format)
+                .lock();
+        mPreviewOptions = RequestOptions.skipMemoryCacheOf(!mPreviewsCached)
+                .format(format)
+                .sizeMultiplier(mLowRamDevice ? LOW_RAM_PREVIEW_SIZE_MULTIPLIER : 1f)
+                .lock();
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        // Glide trims its own memory cache, so shedding a tier only stops adding to it
+        if (level >= TRIM_MEMORY_RUNNING_LOW) {
+            mPreviewsCached = false;
+        }
+        if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_BACKGROUND) {
+            mSnapshotsKept = false;
+            releaseSnapshots();
+        }
+        if (level == TRIM_MEMORY_RUNNING_CRITICAL || level >= TRIM_MEMORY_MODERATE) {
+            mThumbnailsCached = false;
+        }
+        updateOptions();
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // no-op
+    }
+
+    private void releaseSnapshots() {
+        final List<Releasable> releasables;
+        synchronized (mReleasables) {
+            releasables = new ArrayList<>(mReleasables);
+        }
+        mReleaser.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (Releasable releasable : releasables) {
+                    releasable.releaseMemory();
+                }
+            }
+        });
+    }
+
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.util;
+
+import android.annotation.TargetApi;
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.os.Build;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+import com.bumptech.glide.load.engine.bitmap_recycle.BitmapPool;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Size bucketed {@link BitmapPool} that Glide decodes the gallery thumbnails and the preview pages into,
+ * so the bitmaps released by one screen are reused by the other with {@code inBitmap}.
+ * <p>
+ * From KitKat on, the bitmaps are bucketed by config and allocation size, and a request takes the smallest
+ * bitmap large enough for it, reconfigured to its dimensions. Before KitKat only a bitmap of the exact
+ * dimensions can be reused. The least recently released bitmaps are evicted first.
+ * <p>
+ * It is installed by {@link LouvreGlideModule}, when the app calls it from its own Glide module.
+ */
+public class SharedBitmapPool implements BitmapPool {
+
+    // A larger bitmap is only reused for a request at most this many times smaller, like Glide does
+    private static final int MAX_OVERSIZE_MULTIPLE = 8;
+
+    /**
+     * Snapshot of the pool counters
+     */
+    public static class Stats {
+
+        public final long hits;
+        public final long misses;
+        public final long puts;
+        public final long evictions;
+        public final int currentSize;
+        public final int maxSize;
+
+        Stats(long hits, long misses, long puts, long evictions, int currentSize, int maxSize) {
+            this.hits = hits;
+            this.misses = misses;
+            this.puts = puts;
+            this.evictions = evictions;
+            this.currentSize = currentSize;
+            this.maxSize = maxSize;
+        }
+
+        /**
+         * @return The fraction of the decodes that reused a pooled bitmap, or 0 if nothing was decoded yet
+         */
+        public double reuseRate() {
+            long requests = hits + misses;
+            return requests == 0 ? 0 : hits / (double) requests;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "reuse=%.2f hits=%d misses=%d puts=%d evictions=%d size=%d/%d",
+                    reuseRate(), hits, misses, puts, evictions, currentSize, maxSize);
+        }
+    }
+
+    private final int mInitialMaxSize;
+    private final Map<Bitmap.Config, TreeMap<Integer, ArrayDeque<Bitmap>>> mBuckets = new EnumMap<>(Bitmap.Config.class);
+    // Least recently released first
+    private final LinkedHashSet<Bitmap> mOrder = new LinkedHashSet<>();
+    private int mMaxSize;
+    private int mCurrentSize;
+    private long mHits;
+    private long mMisses;
+    private long mPuts;
+    private long mEvictions;
+
+    public SharedBitmapPool(int maxSize) {
+        mInitialMaxSize = maxSize;
+        mMaxSize = maxSize;
+    }
+
+    @NonNull
+    public synchronized Stats getStats() {
+        return new Stats(mHits, mMisses, mPuts, mEvictions, mCurrentSize, mMaxSize);
+    }
+
+    @Override
+    public synchronized int getMaxSize() {
+        return mMaxSize;
+    }
+
+    @Override
+    public synchronized void setSizeMultiplier(float sizeMultiplier) {
+        mMaxSize = Math.round(mInitialMaxSize * sizeMultiplier);
+        trimToSize(mMaxSize);
+    }
+
+    @Override
+    public synchronized void put(Bitmap bitmap) {
+        int size = getSize(bitmap);
+        if (bitmap.isRecycled() || !bitmap.isMutable() || size > mMaxSize) {
+            bitmap.recycle();
+            return;
+        }
+        Bitmap.Config config = getConfig(bitmap.getConfig());
+        TreeMap<Integer, ArrayDeque<Bitmap>> buckets = mBuckets.get(config);
+        if (buckets == null) {
+            buckets = new TreeMap<>();
+            mBuckets.put(config, buckets);
+        }
+        ArrayDeque<Bitmap> bucket = buckets.get(size);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(size, bucket);
+        }
+        bucket.addLast(bitmap);
+        mOrder.add(bitmap);
+        mCurrentSize += size;
+        mPuts++;
+        trimToSize(mMaxSize);
+    }
+
+    @NonNull
+    @Override
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, getConfig(config));
+        if (bitmap != null) {
+            bitmap.eraseColor(Color.TRANSPARENT);
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, getConfig(config));
+    }
+
+    @NonNull
+    @Override
+    public Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = take(width, height, getConfig(config));
+        if (bitmap != null) {
+            return bitmap;
+        }
+        return Bitmap.createBitmap(width, height, getConfig(config));
+    }
+
+    @Override
+    public synchronized void clearMemory() {
+        trimToSize(0);
+    }
+
+    @Override
+    public synchronized void trimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clearMemory();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN
+                || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            trimToSize(mMaxSize / 2);
+        }
+    }
+
+    @Nullable
+    private synchronized Bitmap take(int width, int height, @NonNull Bitmap.Config config) {
+        TreeMap<Integer, ArrayDeque<Bitmap>> buckets = mBuckets.get(config);
+        Bitmap bitmap = null;
+        if (buckets != null) {
+            int size = width * height * getBytesPerPixel(config);
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+                Integer key = buckets.ceilingKey(size);
+                if (key != null && key <= size * MAX_OVERSIZE_MULTIPLE) {
+                    bitmap = removeFirst(buckets, key);
+                    reconfigure(bitmap, width, height, config);
+                }
+            } else {
+                bitmap = removeExact(buckets, size, width, height);
+            }
+        }
+        if (bitmap == null) {
+            mMisses++;
+        } else {
+            mHits++;
+        }
+        return bitmap;
+    }
+
+    @NonNull
+    private Bitmap removeFirst(@NonNull TreeMap<Integer, ArrayDeque<Bitmap>> buckets, int key) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        Bitmap bitmap = bucket.removeFirst();
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+        mOrder.remove(bitmap);
+        mCurrentSize -= key;
+        return bitmap;
+    }
+
+    @Nullable
+    private Bitmap removeExact(@NonNull TreeMap<Integer, ArrayDeque<Bitmap>> buckets, int key, int width, int height) {
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            return null;
+        }
+        for (Iterator<Bitmap> iterator = bucket.iterator(); iterator.hasNext(); ) {
+            Bitmap bitmap = iterator.next();
+            if (bitmap.getWidth() == width && bitmap.getHeight() == height) {
+                iterator.remove();
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+                mOrder.remove(bitmap);
+                mCurrentSize -= key;
+                return bitmap;
+            }
+        }
+        return null;
+    }
+
+    private void trimToSize(int maxSize) {
+        Iterator<Bitmap> iterator = mOrder.iterator();
+        while (mCurrentSize > maxSize && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            int size = getSize(bitmap);
+            TreeMap<Integer, ArrayDeque<Bitmap>> buckets = mBuckets.get(getConfig(bitmap.getConfig()));
+            ArrayDeque<Bitmap> bucket = buckets.get(size);
+            bucket.remove(bitmap);
+            if (bucket.isEmpty()) {
+                buckets.remove(size);
+            }
+            mCurrentSize -= size;
+            mEvictions++;
+            bitmap.recycle();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.KITKAT)
+    private static void reconfigure(@NonNull Bitmap bitmap, int width, int height, @NonNull Bitmap.Config config) {
+        bitmap.reconfigure(width, height, config);
+    }
+
+    private static int getSize(@NonNull Bitmap bitmap) {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            return bitmap.getAllocationByteCount();
+        }
+        return bitmap.getByteCount();
+    }
+
+    @NonNull
+    private static Bitmap.Config getConfig(@Nullable Bitmap.Config config) {
+        return config != null ? config : Bitmap.Config.ARGB_8888;
+    }
+
+    private static int getBytesPerPixel(@NonNull Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+            case ARGB_4444:
+                return 2;
+            default:
+                if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O && config == Bitmap.Config.RGBA_F16) {
+                    return 8;
+                }
+                return 4;
+        }
+    }
+
+}
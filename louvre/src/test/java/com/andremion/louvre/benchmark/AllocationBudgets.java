@@ -0,0 +1,109 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Checked-in allocation budgets of the benchmarked hot paths.
+ * <p>
+ * A change that makes any of them allocate more per call fails the suite. Lower a budget when an
+ * optimization lands, so it can't silently regress; raise it only with a reason in the commit.
+ * They are checked by {@code LouvreBenchmarksTest} on every unit test run, against the bytes the JVM
+ * allocates under Robolectric, whose framework code allocates more than a device does.
+ */
+public class AllocationBudgets {
+
+    private static final Map<String, Budget> BUDGETS = new HashMap<>();
+
+    static {
+        // Full bind of a media item, with an image engine that loads nothing. Its two Uris are about 600 bytes.
+        BUDGETS.put("adapter-bind", Budget.bytes(8 * 1024, false));
+        // Uri of the item plus the lookup in the selection, which builds the string of the Uri to compare it
+        BUDGETS.put("adapter-is-selected", Budget.bytes(1536, false));
+        // Replaces a 100 items selection, about 3 KB of list nodes, and notifies the visible items with the selection payload
+        BUDGETS.put("adapter-selection-changed", Budget.bytes(8 * 1024, false));
+        // The indexes are looked up on the cursor, not built
+        BUDGETS.put("adapter-swap-data", Budget.bytes(512, false));
+        // The Uri of every item and its node in the selection
+        BUDGETS.put("adapter-select-all", Budget.bytes(512, true));
+        // Inflates the page, which costs over a megabyte with the Robolectric resources
+        BUDGETS.put("preview-instantiate", Budget.bytes(4 * 1024 * 1024, false));
+        // The rows are read in place, so the only allocations are the column lookups
+        BUDGETS.put("cursor-snapshot", Budget.bytes(256, false));
+        // The "All Media" row and the merge, whatever the count of buckets
+        BUDGETS.put("bucket-aggregation", Budget.bytes(16 * 1024, false));
+        // The merged order, a byte and an int per row grown by doubling, so up to four times that with the copies
+        BUDGETS.put("sorted-merge", Budget.bytes(24, true));
+        BUDGETS.put("section-index", Budget.bytes(16, true));
+        BUDGETS.put("aspect-index", Budget.bytes(12, true));
+        // The words of every name, sorted
+        BUDGETS.put("name-index", Budget.bytes(512, true));
+        // Every keystroke of the query, which filters the previous results instead of sorting the matching words
+        BUDGETS.put("name-search", Budget.bytes(48, true));
+    }
+
+    private AllocationBudgets() {
+    }
+
+    /**
+     * Check the results against the budgets
+     *
+     * @return A description of every result over its budget, or an empty list if all of them are within it
+     */
+    @NonNull
+    public static List<String> check(@NonNull List<BenchmarkRunner.Result> results) {
+        List<String> failures = new ArrayList<>();
+        for (BenchmarkRunner.Result result : results) {
+            Budget budget = BUDGETS.get(result.name);
+            if (budget == null) {
+                continue;
+            }
+            double bytes = result.bytesPerOp();
+            if (budget.perItem) {
+                bytes /= result.size;
+            }
+            if (bytes > budget.bytes) {
+                failures.add(String.format(Locale.US, "%s size=%d: %.1f bytes%s, budget is %d",
+                        result.name, result.size, bytes, budget.perItem ? " per item" : " per call", budget.bytes));
+            }
+        }
+        return failures;
+    }
+
+    private static class Budget {
+
+        final int bytes;
+        final boolean perItem;
+
+        private Budget(int bytes, boolean perItem) {
+            this.bytes = bytes;
+            this.perItem = perItem;
+        }
+
+        static Budget bytes(int bytes, boolean perItem) {
+            return new Budget(bytes, perItem);
+        }
+    }
+
+}
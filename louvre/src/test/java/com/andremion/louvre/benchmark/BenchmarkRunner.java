@@ -0,0 +1,128 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import android.support.annotation.NonNull;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Minimal microbenchmark harness: warms an operation up, then runs it a fixed number of times while
+ * counting the bytes allocated by the current thread.
+ * <p>
+ * It runs in the JVM unit tests, under Robolectric. The number of calls is fixed rather than timed, so
+ * every run measures the same calls and allocates the same bytes, however busy the machine is. The JIT
+ * removes allocations by escape analysis once it has compiled a path, so the unit tests run with it
+ * turned off, see the {@code build.gradle} of the library. A garbage collection during the measured calls
+ * adds a varying amount of bytes to them, so the garbage of the warm-up is collected first, which leaves
+ * room in the heap for the calls of the operations that allocate little.
+ */
+public class BenchmarkRunner {
+
+    // Enough calls to initialize what an operation initializes lazily, like the views and the cursor windows
+    private static final int WARM_UP_OPS = 10;
+    private static final int MEASURE_OPS = 20;
+
+    private final int mWarmUpOps;
+    private final int mMeasureOps;
+    private final AllocationCounter mAllocationCounter = new AllocationCounter();
+
+    public BenchmarkRunner() {
+        this(WARM_UP_OPS, MEASURE_OPS);
+    }
+
+    public BenchmarkRunner(int warmUpOps, int measureOps) {
+        mWarmUpOps = warmUpOps;
+        mMeasureOps = measureOps;
+    }
+
+    public interface Operation {
+
+        void run();
+    }
+
+    public static class Result {
+
+        public final String name;
+        public final int size;
+        public final long ops;
+        public final long nanos;
+        public final long allocatedBytes;
+
+        Result(String name, int size, long ops, long nanos, long allocatedBytes) {
+            this.name = name;
+            this.size = size;
+            this.ops = ops;
+            this.nanos = nanos;
+            this.allocatedBytes = allocatedBytes;
+        }
+
+        public double opsPerSecond() {
+            return ops * (double) TimeUnit.SECONDS.toNanos(1) / nanos;
+        }
+
+        public double bytesPerOp() {
+            return allocatedBytes / (double) ops;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%-24s size=%-7d ops/s=%-12.2f bytes/op=%.1f",
+                    name, size, opsPerSecond(), bytesPerOp());
+        }
+    }
+
+    @NonNull
+    public Result measure(@NonNull String name, int size, @NonNull Operation operation) {
+        for (int i = 0; i < mWarmUpOps; i++) {
+            operation.run();
+        }
+        System.gc();
+
+        mAllocationCounter.start();
+        long start = System.nanoTime();
+        for (int i = 0; i < mMeasureOps; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        mAllocationCounter.stop();
+
+        return new Result(name, size, mMeasureOps, elapsed, mAllocationCounter.mAllocatedBytes);
+    }
+
+    /**
+     * Counter of the bytes allocated by the current thread, through the HotSpot ThreadMXBean
+     */
+    private static class AllocationCounter {
+
+        private final com.sun.management.ThreadMXBean mThreadMXBean =
+                (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        private long mStartBytes;
+        long mAllocatedBytes;
+
+        void start() {
+            mStartBytes = mThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+
+        void stop() {
+            mAllocatedBytes = mThreadMXBean.getThreadAllocatedBytes(Thread.currentThread().getId()) - mStartBytes;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.StyleRes;
+import android.support.v4.app.FragmentActivity;
+
+import com.andremion.louvre.R;
+import com.andremion.louvre.data.IndexBenchmarks;
+import com.andremion.louvre.data.MediaLoaderBenchmarks;
+import com.andremion.louvre.home.GalleryAdapterBenchmarks;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.image.TestImageEngine;
+import com.andremion.louvre.preview.PreviewAdapterBenchmarks;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs the benchmarks on the JVM, so every unit test run checks them against their {@link AllocationBudgets}.
+ * The adapters are bound on the main thread of an activity themed like the picker, with an image engine that
+ * loads nothing, so their benchmarks measure the adapter code only.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class LouvreBenchmarksTest {
+
+    @Before
+    public void setUp() {
+        ImageEngines.set(new TestImageEngine());
+    }
+
+    @After
+    public void tearDown() {
+        ImageEngines.set(null);
+    }
+
+    @Test
+    public void keepsTheCursorAndIndexBenchmarksWithinTheirBudgets() {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        MediaLoaderBenchmarks.run(runner, results);
+        IndexBenchmarks.run(runner, results);
+
+        assertMeasured(results);
+        assertEquals(Collections.<String>emptyList(), AllocationBudgets.check(results));
+    }
+
+    @Test
+    public void keepsTheAdapterBenchmarksWithinTheirBudgets() {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        List<BenchmarkRunner.Result> results = new ArrayList<>();
+        GalleryAdapterBenchmarks.run(activityOf(R.style.Louvre_Theme_Light), runner, results);
+        PreviewAdapterBenchmarks.run(activityOf(R.style.Louvre_Theme_Preview), runner, results);
+
+        assertMeasured(results);
+        assertEquals(Collections.<String>emptyList(), AllocationBudgets.check(results));
+    }
+
+    private static void assertMeasured(List<BenchmarkRunner.Result> results) {
+        for (BenchmarkRunner.Result result : results) {
+            assertTrue(result.name, result.ops > 0);
+            assertTrue(result.name, result.allocatedBytes >= 0);
+        }
+    }
+
+    @NonNull
+    private static FragmentActivity activityOf(@StyleRes int theme) {
+        ActivityController<FragmentActivity> controller = Robolectric.buildActivity(FragmentActivity.class);
+        controller.get().setTheme(theme);
+        return controller.setup().get();
+    }
+
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.benchmark;
+
+import android.database.MatrixCursor;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.support.annotation.NonNull;
+
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link MatrixCursor} factories shaped like the loader queries
+ */
+public class SyntheticCursors {
+
+    public static final int[] SIZES = {1000, 10000, 50000, 200000};
+
+    private static final long SEED = 20170101;
+    private static final int BUCKET_COUNT = 50;
+
+    private SyntheticCursors() {
+    }
+
+    @NonNull
+    public static MatrixCursor media(int size) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                ImageColumns._ID,
+                ImageColumns.BUCKET_ID,
+                ImageColumns.DISPLAY_NAME,
+                ImageColumns.DATA,
+                ImageColumns.DATE_MODIFIED,
+                ImageColumns.DATE_TAKEN,
+                ImageColumns.WIDTH,
+                ImageColumns.HEIGHT,
+                ImageColumns.ORIENTATION
+        }, size);
+        Random random = new Random(SEED);
+        long date = System.currentTimeMillis();
+        for (int id = 1; id <= size; id++) {
+            int bucket = 1 + random.nextInt(BUCKET_COUNT);
+            date -= TimeUnit.MINUTES.toMillis(random.nextInt(600));
+            boolean portrait = random.nextInt(3) == 0;
+            cursor.addRow(new Object[]{
+                    id,
+                    bucket,
+                    String.format(Locale.US, "IMG_%08d.jpg", id),
+                    String.format(Locale.US, "/storage/emulated/0/Bucket %d/IMG_%08d.jpg", bucket, id),
+                    TimeUnit.MILLISECONDS.toSeconds(date),
+                    date,
+                    portrait ? 3024 : 4032,
+                    portrait ? 4032 : 3024,
+                    0
+            });
+        }
+        return cursor;
+    }
+
+    @NonNull
+    public static MatrixCursor buckets(int size) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                ImageColumns.BUCKET_ID,
+                ImageColumns.BUCKET_DISPLAY_NAME,
+                ImageColumns.DATA,
+                ImageColumns.DATE_TAKEN
+        }, size);
+        long date = System.currentTimeMillis();
+        for (int id = 1; id <= size; id++) {
+            cursor.addRow(new Object[]{
+                    id,
+                    "Bucket " + id,
+                    String.format(Locale.US, "/storage/emulated/0/Bucket %d/IMG_%08d.jpg", id, id),
+                    date - TimeUnit.HOURS.toMillis(id)
+            });
+        }
+        return cursor;
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class AspectIndexTest {
+
+    private static final double DELTA = 1e-6;
+
+    @Test
+    public void takesTheAspectRatiosAsDisplayed() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Images.ImageColumns.WIDTH,
+                MediaStore.Images.ImageColumns.HEIGHT,
+                MediaStore.Images.ImageColumns.ORIENTATION});
+        cursor.addRow(new Object[]{4000, 3000, 0});
+        cursor.addRow(new Object[]{4000, 3000, 90});
+        cursor.addRow(new Object[]{null, null, 0});
+        cursor.addRow(new Object[]{10000, 1000, 0});
+        cursor.addRow(new Object[]{1000, 10000, 270});
+        cursor.addRow(new Object[]{100, 1000, 0});
+        AspectIndex index = AspectIndex.build(cursor);
+
+        assertEquals(6, index.getCount());
+        assertEquals(4 / 3d, index.getWidth(0, 1), DELTA);
+        // Rotated, so it is displayed as portrait
+        assertEquals(.75, index.getWidth(1, 2), DELTA);
+        // Without dimensions, as a square
+        assertEquals(1, index.getWidth(2, 3), DELTA);
+        // Panoramas and very tall images are cropped
+        assertEquals(3, index.getWidth(3, 4), DELTA);
+        assertEquals(3, index.getWidth(4, 5), DELTA);
+        assertEquals(.5, index.getWidth(5, 6), DELTA);
+    }
+
+    @Test
+    public void sumsTheAspectRatiosOfAnyRange() {
+        AspectIndex index = TestIndexes.aspectIndexOf(1, .5, 2, 1.5, 1);
+
+        assertEquals(6, index.getWidth(0, 5), DELTA);
+        assertEquals(4, index.getWidth(1, 4), DELTA);
+        assertEquals(0, index.getWidth(2, 2), DELTA);
+    }
+
+    @Test
+    public void findsTheFirstRowThatReachesTheWidth() {
+        AspectIndex index = TestIndexes.aspectIndexOf(1, .5, 2, 1.5, 1);
+
+        assertEquals(3, index.findEnd(0, 5, 3));
+        assertEquals(3, index.findEnd(0, 5, 3.5));
+        assertEquals(4, index.findEnd(0, 5, 3.6));
+        assertEquals(3, index.findEnd(2, 5, 2));
+        // Always takes at least a row, even if it is wider
+        assertEquals(3, index.findEnd(2, 5, .1));
+        // Or the rows up to the end, if they don't reach it
+        assertEquals(5, index.findEnd(3, 5, 10));
+        assertEquals(4, index.findEnd(0, 4, 10));
+    }
+
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.AbstractWindowedCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.database.MatrixCursor;
+import android.support.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class CursorGuardTest {
+
+    private static final int COUNT = 100;
+    private static final int WINDOW_SIZE = 10;
+
+    private final List<CursorGuard.Violation> mViolations = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        CursorGuard.setListener(new CursorGuard.Listener() {
+            @Override
+            public void onViolation(@NonNull CursorGuard.Violation violation) {
+                mViolations.add(violation);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        CursorGuard.setListener(null);
+    }
+
+    @Test
+    public void reportsTheMovesOutsideOfTheWindowOnly() {
+        PagedCursor paged = new PagedCursor();
+        paged.moveToFirst();
+        Cursor cursor = CursorGuard.wrap(paged);
+
+        for (int position = 0; position < WINDOW_SIZE; position++) {
+            assertTrue(cursor.moveToPosition(position));
+            assertEquals(position, cursor.getLong(0));
+        }
+        assertTrue(mViolations.isEmpty());
+
+        assertTrue(cursor.moveToNext());
+        assertEquals(1, mViolations.size());
+        assertEquals("moveToNext", mViolations.get(0).getOperation());
+        assertEquals(WINDOW_SIZE, mViolations.get(0).getPosition());
+    }
+
+    @Test
+    public void reportsTheFirstFill() {
+        Cursor cursor = CursorGuard.wrap(new PagedCursor());
+
+        assertTrue(cursor.moveToFirst());
+        assertEquals(1, mViolations.size());
+    }
+
+    @Test
+    public void ignoresTheFillsOffTheMainThread() throws InterruptedException {
+        final Cursor cursor = CursorGuard.wrap(new PagedCursor());
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while (cursor.moveToNext()) {
+                    cursor.getLong(0);
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+
+        assertTrue(cursor.isAfterLast());
+        assertTrue(mViolations.isEmpty());
+    }
+
+    @Test
+    public void findsTheWindowsBehindTheWrappers() {
+        PagedCursor paged = new PagedCursor();
+        paged.moveToFirst();
+        Cursor cursor = CursorGuard.wrap(new IndexedCursor(paged, null, null, null, null, null, null));
+
+        assertTrue(cursor.moveToPosition(WINDOW_SIZE - 1));
+        assertTrue(mViolations.isEmpty());
+        assertTrue(cursor.moveToLast());
+        assertEquals(1, mViolations.size());
+    }
+
+    @Test
+    public void leavesTheCursorsWithoutWindowUntouched() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{"_id"});
+
+        assertSame(cursor, CursorGuard.wrap(cursor));
+    }
+
+    @Test
+    public void bindsTheFilledWindowWithPenaltyDeath() {
+        CursorGuard.setListener(CursorGuard.PENALTY_DEATH);
+        PagedCursor paged = new PagedCursor();
+        // Filled on the loader thread
+        paged.getCount();
+        paged.moveToFirst();
+        paged.moveToPosition(-1);
+        Cursor cursor = CursorGuard.wrap(paged);
+
+        for (int position = 0; position < WINDOW_SIZE; position++) {
+            assertTrue(cursor.moveToPosition(position));
+            cursor.getLong(0);
+        }
+    }
+
+    @Test(expected = CursorGuard.Violation.class)
+    public void throwsOnTheFillWithPenaltyDeath() {
+        CursorGuard.setListener(CursorGuard.PENALTY_DEATH);
+        PagedCursor paged = new PagedCursor();
+        paged.moveToFirst();
+        Cursor cursor = CursorGuard.wrap(paged);
+
+        cursor.moveToPosition(COUNT / 2);
+    }
+
+    /**
+     * Cursor over the positions that fills a window of a few rows on every move outside of it, like a SQLiteCursor
+     */
+    private static class PagedCursor extends AbstractWindowedCursor {
+
+        @Override
+        public int getCount() {
+            return COUNT;
+        }
+
+        @Override
+        public String[] getColumnNames() {
+            return new String[]{"_id"};
+        }
+
+        @Override
+        public boolean onMove(int oldPosition, int newPosition) {
+            if (mWindow == null || newPosition < mWindow.getStartPosition()
+                    || newPosition >= mWindow.getStartPosition() + mWindow.getNumRows()) {
+                fillWindow(newPosition - newPosition % WINDOW_SIZE);
+            }
+            return true;
+        }
+
+        private void fillWindow(int startPosition) {
+            if (mWindow == null) {
+                setWindow(new CursorWindow("test"));
+            } else {
+                mWindow.clear();
+            }
+            mWindow.setStartPosition(startPosition);
+            mWindow.setNumColumns(1);
+            for (int position = startPosition; position < Math.min(startPosition + WINDOW_SIZE, COUNT); position++) {
+                mWindow.allocRow();
+                mWindow.putLong(position, position, 0);
+            }
+        }
+    }
+
+}
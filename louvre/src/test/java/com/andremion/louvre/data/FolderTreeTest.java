@@ -0,0 +1,141 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class FolderTreeTest {
+
+    private static final String STORAGE = "/storage/emulated/0";
+    // The rows newest first, including the ones without a directory
+    private static final Object[][] ROWS = {
+            {STORAGE + "/DCIM/Camera/IMG_1.jpg", 900L},
+            {STORAGE + "/Download/IMG_2.jpg", 800L},
+            {null, 750L},
+            {STORAGE + "/DCIM/Camera/IMG_3.jpg", 700L},
+            {STORAGE + "/DCIM/Screenshots/IMG_4.jpg", 600L},
+            {"IMG_5.jpg", 550L},
+            {STORAGE + "/DCIM/IMG_6.jpg", 500L},
+            {STORAGE + "/Pictures/Trips/2017/IMG_7.jpg", 400L},
+    };
+
+    private FolderTree mTree;
+
+    @Before
+    public void setUp() {
+        mTree = FolderTree.build(cursorOf(ROWS));
+    }
+
+    @Test
+    public void listsTheTopLevelFoldersNewestFirst() {
+        Cursor root = mTree.query(FolderTree.ROOT_ID);
+
+        assertEquals(6, mTree.getCount(FolderTree.ROOT_ID));
+        assertEquals(3, root.getCount());
+        assertRow(root, 0, "DCIM", STORAGE + "/DCIM/Camera/IMG_1.jpg", 4);
+        assertRow(root, 1, "Download", STORAGE + "/Download/IMG_2.jpg", 1);
+        assertRow(root, 2, "Pictures/Trips/2017", STORAGE + "/Pictures/Trips/2017/IMG_7.jpg", 1);
+    }
+
+    @Test
+    public void opensTheFoldersWithoutSubfoldersAsBuckets() {
+        Cursor root = mTree.query(FolderTree.ROOT_ID);
+        root.moveToPosition(1);
+        long bucketId = root.getLong(root.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID));
+
+        assertEquals(DirectorySource.bucketIdOf(new File(STORAGE + "/Download")), bucketId);
+        assertFalse(mTree.isFolder(bucketId));
+    }
+
+    @Test
+    public void listsTheMediaOfAFolderBeforeItsSubfolders() {
+        long dcimId = folderIdAt(mTree.query(FolderTree.ROOT_ID), 0);
+        Cursor dcim = mTree.query(dcimId);
+
+        assertTrue(mTree.isFolder(dcimId));
+        assertEquals("DCIM", mTree.getLabel(dcimId));
+        assertEquals(FolderTree.ROOT_ID, mTree.getParentId(dcimId));
+        assertEquals(3, dcim.getCount());
+        assertRow(dcim, 0, "DCIM", STORAGE + "/DCIM/IMG_6.jpg", 1);
+        assertRow(dcim, 1, "Camera", STORAGE + "/DCIM/Camera/IMG_1.jpg", 2);
+        assertRow(dcim, 2, "Screenshots", STORAGE + "/DCIM/Screenshots/IMG_4.jpg", 1);
+        dcim.moveToFirst();
+        assertEquals(DirectorySource.bucketIdOf(new File(STORAGE + "/DCIM")),
+                dcim.getLong(dcim.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID)));
+    }
+
+    @Test
+    public void keepsTheFolderIdsAcrossLoads() {
+        long dcimId = folderIdAt(mTree.query(FolderTree.ROOT_ID), 0);
+        // A new photo in another folder changes the order, but not the ids
+        Object[][] rows = new Object[ROWS.length + 1][];
+        rows[0] = new Object[]{STORAGE + "/Download/IMG_8.jpg", 1000L};
+        System.arraycopy(ROWS, 0, rows, 1, ROWS.length);
+        FolderTree tree = FolderTree.build(cursorOf(rows));
+
+        assertEquals(dcimId, folderIdAt(tree.query(FolderTree.ROOT_ID), 1));
+        assertEquals(3, tree.query(dcimId).getCount());
+    }
+
+    @Test
+    public void listsNothingForAnUnknownFolder() {
+        assertEquals(0, mTree.query(FolderTree.ROOT_ID + 1).getCount());
+        assertNull(mTree.getLabel(FolderTree.ROOT_ID + 1));
+        assertFalse(mTree.isFolder(FolderTree.ROOT_ID + 1));
+    }
+
+    private static Cursor cursorOf(Object[][] rows) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Images.ImageColumns.DATA,
+                MediaStore.Images.ImageColumns.DATE_TAKEN});
+        for (Object[] row : rows) {
+            cursor.addRow(row);
+        }
+        return cursor;
+    }
+
+    private static long folderIdAt(Cursor cursor, int position) {
+        cursor.moveToPosition(position);
+        return cursor.getLong(cursor.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_ID));
+    }
+
+    private static void assertRow(Cursor cursor, int position, String label, String cover, int count) {
+        assertTrue(cursor.moveToPosition(position));
+        assertEquals(label, cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.BUCKET_DISPLAY_NAME)));
+        assertEquals(cover, cursor.getString(cursor.getColumnIndex(MediaStore.Images.ImageColumns.DATA)));
+        assertEquals(count, cursor.getInt(cursor.getColumnIndex(FolderTree.COUNT)));
+    }
+
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+
+import com.andremion.louvre.benchmark.BenchmarkRunner;
+import com.andremion.louvre.benchmark.SyntheticCursors;
+
+import java.util.List;
+
+/**
+ * Benchmarks of the indexes the {@link MediaLoader} builds on its thread and the searches over them
+ */
+public class IndexBenchmarks {
+
+    // Typed one key at a time, like the search field refines its search
+    private static final String QUERY = "img 0000012";
+
+    private IndexBenchmarks() {
+    }
+
+    public static void run(@NonNull BenchmarkRunner runner, @NonNull List<BenchmarkRunner.Result> results) {
+        for (int size : SyntheticCursors.SIZES) {
+            Cursor cursor = SyntheticCursors.media(size);
+            try {
+                results.add(measureSectionIndex(runner, cursor));
+                results.add(measureAspectIndex(runner, cursor));
+                results.add(measureNameIndex(runner, cursor));
+                results.add(measureNameSearch(runner, cursor));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static BenchmarkRunner.Result measureSectionIndex(@NonNull BenchmarkRunner runner, @NonNull final Cursor cursor) {
+        return runner.measure("section-index", cursor.getCount(), new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                SectionIndex.build(cursor, SectionIndex.DAY);
+            }
+        });
+    }
+
+    private static BenchmarkRunner.Result measureAspectIndex(@NonNull BenchmarkRunner runner, @NonNull final Cursor cursor) {
+        return runner.measure("aspect-index", cursor.getCount(), new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                AspectIndex.build(cursor);
+            }
+        });
+    }
+
+    private static BenchmarkRunner.Result measureNameIndex(@NonNull BenchmarkRunner runner, @NonNull final Cursor cursor) {
+        return runner.measure("name-index", cursor.getCount(), new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                NameIndex.build(cursor);
+            }
+        });
+    }
+
+    /**
+     * Search every prefix of the query, each one refining the search of the previous one
+     */
+    private static BenchmarkRunner.Result measureNameSearch(@NonNull BenchmarkRunner runner, @NonNull Cursor cursor) {
+        final NameIndex index = NameIndex.build(cursor);
+        return runner.measure("name-search", cursor.getCount(), new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                NameIndex.Search search = null;
+                for (int length = 1; length <= QUERY.length(); length++) {
+                    search = index.search(QUERY.substring(0, length), search);
+                }
+            }
+        });
+    }
+
+}
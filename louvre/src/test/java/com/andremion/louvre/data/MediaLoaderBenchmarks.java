@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.support.annotation.NonNull;
+
+import com.andremion.louvre.benchmark.BenchmarkRunner;
+import com.andremion.louvre.benchmark.SyntheticCursors;
+
+import java.util.List;
+
+/**
+ * Benchmarks of the {@link MediaLoader} hot paths
+ */
+public class MediaLoaderBenchmarks {
+
+    private MediaLoaderBenchmarks() {
+    }
+
+    public static void run(@NonNull BenchmarkRunner runner, @NonNull List<BenchmarkRunner.Result> results) {
+        for (int size : SyntheticCursors.SIZES) {
+            results.add(measureSnapshot(runner, size));
+            results.add(measureBucketAggregation(runner, size));
+            results.add(measureSortedMerge(runner, size));
+        }
+    }
+
+    /**
+     * Read every row of a loaded cursor into columns, like the background passes over the loader data do
+     */
+    private static BenchmarkRunner.Result measureSnapshot(@NonNull BenchmarkRunner runner, final int size) {
+        final Cursor cursor = SyntheticCursors.media(size);
+        final long[] ids = new long[size];
+        final long[] buckets = new long[size];
+        final long[] dates = new long[size];
+        final String[] names = new String[size];
+        final String[] data = new String[size];
+        try {
+            return runner.measure("cursor-snapshot", size, new BenchmarkRunner.Operation() {
+                @Override
+                public void run() {
+                    int id = cursor.getColumnIndex(ImageColumns._ID);
+                    int bucket = cursor.getColumnIndex(ImageColumns.BUCKET_ID);
+                    int name = cursor.getColumnIndex(ImageColumns.DISPLAY_NAME);
+                    int path = cursor.getColumnIndex(ImageColumns.DATA);
+                    int date = cursor.getColumnIndex(ImageColumns.DATE_MODIFIED);
+                    cursor.moveToPosition(-1);
+                    for (int i = 0; cursor.moveToNext(); i++) {
+                        ids[i] = cursor.getLong(id);
+                        buckets[i] = cursor.getLong(bucket);
+                        names[i] = cursor.getString(name);
+                        data[i] = cursor.getString(path);
+                        dates[i] = cursor.getLong(date);
+                    }
+                }
+            });
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Add the "All Media" bucket and walk the merged bucket rows, like the bucket grid does
+     */
+    private static BenchmarkRunner.Result measureBucketAggregation(@NonNull BenchmarkRunner runner, final int size) {
+        final Cursor cursor = SyntheticCursors.buckets(size);
+        try {
+            return runner.measure("bucket-aggregation", size, new BenchmarkRunner.Operation() {
+                @Override
+                public void run() {
+                    Cursor merged = MediaLoader.addAllMediaBucketItem(cursor, "All Media");
+                    //noinspection ConstantConditions
+                    int bucket = merged.getColumnIndex(ImageColumns.BUCKET_ID);
+                    long sum = 0;
+                    while (merged.moveToNext()) {
+                        sum += merged.getLong(bucket);
+                    }
+                    if (sum < 0) {
+                        throw new AssertionError();
+                    }
+                }
+            });
+        } finally {
+            cursor.close();
+        }
+    }
+
+    /**
+     * Merge two halves of the media in date order and walk the result, like a media source merged into the MediaStore rows
+     */
+    private static BenchmarkRunner.Result measureSortedMerge(@NonNull BenchmarkRunner runner, final int size) {
+        final Cursor first = SyntheticCursors.media(size / 2);
+        final Cursor second = SyntheticCursors.media(size - size / 2);
+        try {
+            return runner.measure("sorted-merge", size, new BenchmarkRunner.Operation() {
+                @Override
+                public void run() {
+                    Cursor merged = new SortedMergeCursor(new Cursor[]{first, second}, ImageColumns.DATE_TAKEN);
+                    int id = merged.getColumnIndex(ImageColumns._ID);
+                    long sum = 0;
+                    while (merged.moveToNext()) {
+                        sum += merged.getLong(id);
+                    }
+                    if (sum < 0) {
+                        throw new AssertionError();
+                    }
+                }
+            });
+        } finally {
+            first.close();
+            second.close();
+        }
+    }
+
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.support.v4.app.FragmentActivity;
+
+import com.andremion.louvre.GalleryOptions;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Loads a large synthetic library through the loader manager of an activity, like the picker does
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class MediaLoaderTest {
+
+    private static final int COUNT = 10000;
+    private static final int BUCKETS = 50;
+
+    private MediaLoader mLoader;
+    private TestLoaderCallbacks mCallbacks;
+
+    @Before
+    public void setUp() {
+        Uri uri = SyntheticMediaProvider.register(COUNT, BUCKETS);
+        mLoader = new MediaLoader();
+        mLoader.setOptions(new GalleryOptions.Builder().setMediaSourceUri(uri).build());
+        mCallbacks = new TestLoaderCallbacks();
+        mLoader.onAttach(Robolectric.setupActivity(FragmentActivity.class), mCallbacks);
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.onDetach();
+    }
+
+    @Test(timeout = 60000)
+    public void loadsEveryMediaNewestFirst() throws InterruptedException {
+        mLoader.loadByBucket(MediaSource.ALL_MEDIA_BUCKET_ID);
+        Cursor media = mCallbacks.awaitMedia();
+
+        assertNotNull(media);
+        assertEquals(COUNT, media.getCount());
+        int dateTaken = media.getColumnIndex(ImageColumns.DATE_TAKEN);
+        long previous = Long.MAX_VALUE;
+        while (media.moveToNext()) {
+            long date = media.getLong(dateTaken);
+            assertTrue("Media at " + media.getPosition(), date <= previous);
+            previous = date;
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void loadsEveryBucketAfterTheAllMediaItem() throws InterruptedException {
+        mLoader.loadBuckets();
+        Cursor buckets = mCallbacks.awaitBuckets();
+
+        assertNotNull(buckets);
+        assertEquals(BUCKETS + 1, buckets.getCount());
+        int bucketId = buckets.getColumnIndex(ImageColumns.BUCKET_ID);
+        assertTrue(buckets.moveToFirst());
+        assertEquals(MediaSource.ALL_MEDIA_BUCKET_ID, buckets.getLong(bucketId));
+        Set<Long> bucketIds = new HashSet<>();
+        while (buckets.moveToNext()) {
+            bucketIds.add(buckets.getLong(bucketId));
+        }
+        assertEquals(BUCKETS, bucketIds.size());
+    }
+
+    @Test(timeout = 60000)
+    public void loadsTheMediaOfOneBucket() throws InterruptedException {
+        mLoader.loadBuckets();
+        Cursor buckets = mCallbacks.awaitBuckets();
+        assertNotNull(buckets);
+        assertTrue(buckets.moveToPosition(1));
+        long bucketId = buckets.getLong(buckets.getColumnIndex(ImageColumns.BUCKET_ID));
+
+        mLoader.loadByBucket(bucketId);
+        Cursor media = mCallbacks.awaitMedia();
+
+        assertNotNull(media);
+        assertTrue(media.getCount() > 0 && media.getCount() < COUNT);
+        int mediaBucketId = media.getColumnIndex(ImageColumns.BUCKET_ID);
+        while (media.moveToNext()) {
+            assertEquals(bucketId, media.getLong(mediaBucketId));
+        }
+    }
+
+}
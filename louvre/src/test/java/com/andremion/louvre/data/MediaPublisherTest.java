@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.CancellationSignal;
+import android.provider.MediaStore;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowContentResolver;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class MediaPublisherTest {
+
+    // The dates of the media by id, with ties and media without date
+    private static final Long[] DATES = {null, 5000L, 5000L, 3000L, null, 9000L, 5000L, 3000L, null, 1000L, 5000L, 9000L};
+    // The ids newest first, the media without date as the oldest, and the ties by id
+    private static final long[] ORDER = {12, 6, 11, 7, 3, 2, 8, 4, 10, 9, 5, 1};
+
+    private SQLiteDatabase mDatabase;
+    private ContentResolver mResolver;
+
+    @Before
+    public void setUp() {
+        mDatabase = imagesOf(DATES);
+        ShadowContentResolver.registerProviderInternal(MediaStore.AUTHORITY, new ImagesProvider(mDatabase));
+        mResolver = RuntimeEnvironment.application.getContentResolver();
+    }
+
+    @After
+    public void tearDown() {
+        mDatabase.close();
+    }
+
+    private static SQLiteDatabase imagesOf(Long... dates) {
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE images ("
+                + MediaStore.Images.ImageColumns._ID + " INTEGER PRIMARY KEY,"
+                + MediaStore.Images.ImageColumns.BUCKET_ID + " INTEGER,"
+                + MediaStore.Images.ImageColumns.DISPLAY_NAME + " TEXT,"
+                + MediaStore.Images.ImageColumns.DATA + " TEXT,"
+                + MediaStore.Images.ImageColumns.DATE_MODIFIED + " INTEGER,"
+                + MediaStore.Images.ImageColumns.DATE_TAKEN + " INTEGER,"
+                + MediaStore.Images.ImageColumns.WIDTH + " INTEGER,"
+                + MediaStore.Images.ImageColumns.HEIGHT + " INTEGER,"
+                + MediaStore.Images.ImageColumns.ORIENTATION + " INTEGER)");
+        for (int i = 0; i < dates.length; i++) {
+            ContentValues values = new ContentValues();
+            values.put(MediaStore.Images.ImageColumns._ID, i + 1);
+            values.put(MediaStore.Images.ImageColumns.BUCKET_ID, 1);
+            values.put(MediaStore.Images.ImageColumns.DISPLAY_NAME, "IMG_" + (i + 1) + ".jpg");
+            values.put(MediaStore.Images.ImageColumns.DATA, "/sdcard/DCIM/IMG_" + (i + 1) + ".jpg");
+            values.put(MediaStore.Images.ImageColumns.DATE_TAKEN, dates[i]);
+            database.insert("images", null, values);
+        }
+        return database;
+    }
+
+    @Test
+    public void pagesThroughEveryMediaOnceNewestFirst() {
+        for (int pageSize = 1; pageSize <= ORDER.length + 1; pageSize++) {
+            MediaPublisher.MediaPageSource source = new MediaPublisher.MediaPageSource(MediaQuery.GALLERY_URI, "1");
+            assertEquals("Page size " + pageSize, toString(ORDER), toString(pageThrough(source, pageSize)));
+        }
+    }
+
+    @Test
+    public void startsOverAfterReset() {
+        MediaPublisher.MediaPageSource source = new MediaPublisher.MediaPageSource(MediaQuery.GALLERY_URI, "1");
+        source.next(mResolver, 5, new CancellationSignal());
+        source.reset();
+
+        assertEquals(toString(ORDER), toString(pageThrough(source, 5)));
+    }
+
+    @Test
+    public void pagesThroughTheSourceUriInsteadOfTheMediaStore() {
+        Uri uri = Uri.parse("content://com.andremion.louvre.test/images");
+        SQLiteDatabase database = imagesOf(1000L, 3000L, 2000L);
+        ShadowContentResolver.registerProviderInternal(uri.getAuthority(), new ImagesProvider(database));
+        try {
+            MediaPublisher.MediaPageSource source = new MediaPublisher.MediaPageSource(uri, "1");
+
+            assertEquals("[2, 3, 1]", toString(pageThrough(source, 2)));
+        } finally {
+            database.close();
+        }
+    }
+
+    private List<Long> pageThrough(MediaPublisher.MediaPageSource source, int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        // Bounded, so a source that does not move forward fails instead of looping
+        for (int i = 0; i <= ORDER.length && !source.isExhausted(); i++) {
+            for (MediaItem item : source.next(mResolver, pageSize, new CancellationSignal())) {
+                ids.add(item.getId());
+            }
+        }
+        return ids;
+    }
+
+    private static String toString(long[] ids) {
+        List<Long> list = new ArrayList<>(ids.length);
+        for (long id : ids) {
+            list.add(id);
+        }
+        return list.toString();
+    }
+
+    private static String toString(List<Long> ids) {
+        return ids.toString();
+    }
+
+    /**
+     * The images collection of the MediaStore, over a plain table
+     */
+    private static class ImagesProvider extends ContentProvider {
+
+        private final SQLiteDatabase mDatabase;
+
+        ImagesProvider(SQLiteDatabase database) {
+            mDatabase = database;
+        }
+
+        @Override
+        public boolean onCreate() {
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            return mDatabase.query("images", projection, selection, selectionArgs, null, null, sortOrder);
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+}
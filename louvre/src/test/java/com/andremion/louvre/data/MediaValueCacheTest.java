@@ -0,0 +1,117 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MediaValueCacheTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    private File mFile;
+    private final long[] mOut = new long[1];
+
+    @Before
+    public void setUp() throws IOException {
+        mFile = new File(mFolder.getRoot(), "values.bin");
+    }
+
+    @Test
+    public void getsTheValueOfTheSameVersionOnly() {
+        MediaValueCache cache = new MediaValueCache(mFile);
+        cache.put(7, 100, 42);
+
+        assertTrue(cache.get(7, 100, mOut, 0));
+        assertEquals(42, mOut[0]);
+        assertFalse(cache.get(7, 101, mOut, 0));
+        assertFalse(cache.get(8, 100, mOut, 0));
+    }
+
+    @Test
+    public void keepsTheNewestValueOfEveryId() {
+        MediaValueCache cache = new MediaValueCache(mFile);
+        Random random = new Random(1);
+        long[] values = new long[1000];
+        // Many more puts than the recent values take, in random order and with repeated ids
+        for (int i = 0; i < 5000; i++) {
+            int id = i < values.length ? (i * 7919) % values.length : random.nextInt(values.length);
+            values[id] = random.nextLong();
+            cache.put(id, 1, values[id]);
+        }
+        assertEquals(values.length, cache.size());
+        for (int id = 0; id < values.length; id++) {
+            assertTrue(cache.get(id, 1, mOut, 0));
+            assertEquals(values[id], mOut[0]);
+        }
+    }
+
+    @Test
+    public void readsTheValuesBackAfterReleasingThem() {
+        MediaValueCache cache = new MediaValueCache(mFile);
+        for (int id = 300; id > 0; id--) {
+            cache.put(id, 1, id * 10);
+        }
+        cache.releaseMemory();
+
+        for (int id = 1; id <= 300; id++) {
+            assertTrue(cache.get(id, 1, mOut, 0));
+            assertEquals(id * 10, mOut[0]);
+        }
+    }
+
+    @Test
+    public void keepsWritingToTheCompactedFile() {
+        MediaValueCache cache = new MediaValueCache(mFile);
+        // Mostly outdated records, so the next load rewrites the file
+        for (int i = 0; i < 10; i++) {
+            cache.put(1, i, i);
+        }
+        cache.releaseMemory();
+        assertTrue(cache.get(1, 9, mOut, 0));
+        // Just the last record is left
+        assertEquals(24, mFile.length());
+
+        cache.put(2, 1, 20);
+        cache.releaseMemory();
+
+        assertTrue(cache.get(2, 1, mOut, 0));
+        assertEquals(20, mOut[0]);
+    }
+
+    @Test
+    public void sortsStably() {
+        long[] keys = {3, 1, 2, 1, 3, 0};
+
+        int[] order = MediaValueCache.sortedOrder(keys, keys.length);
+
+        assertArrayEquals(new int[]{5, 1, 3, 2, 0, 4}, order);
+    }
+
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class NameIndexTest {
+
+    private static final String[] NAMES = {
+            "IMG_2017.jpg",
+            "Beach day.png",
+            null,
+            "img-beach-2016.JPG",
+            "Screenshot_2017-06-30.png",
+            "beach_img.jpg"
+    };
+
+    private NameIndex mIndex;
+
+    @Before
+    public void setUp() {
+        mIndex = NameIndex.build(cursorOf(NAMES));
+    }
+
+    @Test
+    public void matchesThePrefixesOfEveryWordOfTheName() {
+        assertResult(mIndex.search("img", null), 0, 3, 5);
+        assertResult(mIndex.search("BEA", null), 1, 3, 5);
+        assertResult(mIndex.search("2017", null), 0, 4);
+        assertResult(mIndex.search("png", null), 1, 4);
+        assertResult(mIndex.search("gif", null));
+    }
+
+    @Test
+    public void matchesEveryWordOfTheQuery() {
+        assertResult(mIndex.search("img beach", null), 3, 5);
+        assertResult(mIndex.search("beach img 2016", null), 3);
+        assertResult(mIndex.search("jpg  -  2017", null), 0);
+    }
+
+    @Test
+    public void ignoresTheQueriesWithoutWords() {
+        assertNull(mIndex.search("", null));
+        assertNull(mIndex.search(" -_. ", null));
+    }
+
+    @Test
+    public void refinesThePreviousSearch() {
+        NameIndex.Search search = mIndex.search("b", null);
+        assertResult(search, 1, 3, 5);
+        search = mIndex.search("be", search);
+        assertResult(search, 1, 3, 5);
+        search = mIndex.search("be i", search);
+        assertResult(search, 3, 5);
+        search = mIndex.search("be im 2", search);
+        assertResult(search, 3);
+        // Not a refinement, so it searches the whole index again
+        search = mIndex.search("2", search);
+        assertResult(search, 0, 3, 4);
+    }
+
+    @Test
+    public void findsTheIndexOfTheResults() {
+        NameIndex.Search search = mIndex.search("png", null);
+
+        assertEquals(0, search.indexOf(1));
+        assertEquals(1, search.indexOf(4));
+        assertTrue(search.indexOf(2) < 0);
+        assertEquals(4, search.getPosition(1));
+    }
+
+    @Test
+    public void refinesLikeItSearches() {
+        Random random = new Random(1);
+        String[] names = new String[2000];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = String.format("%s %d %s", random.nextBoolean() ? "img" : "dsc", random.nextInt(500),
+                    random.nextBoolean() ? "jpg" : "png");
+        }
+        NameIndex index = NameIndex.build(cursorOf(names));
+        String query = "dsc 12 j";
+        NameIndex.Search search = null;
+        for (int length = 1; length <= query.length(); length++) {
+            String prefix = query.substring(0, length);
+            search = index.search(prefix, search);
+            NameIndex.Search fresh = index.search(prefix, null);
+            if (fresh == null) {
+                assertNull(search);
+            } else {
+                assertArrayEquals(prefix, positionsOf(fresh), positionsOf(search));
+            }
+        }
+    }
+
+    private static MatrixCursor cursorOf(String[] names) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{MediaStore.Images.ImageColumns.DISPLAY_NAME});
+        for (String name : names) {
+            cursor.addRow(new Object[]{name});
+        }
+        return cursor;
+    }
+
+    private static int[] positionsOf(NameIndex.Search search) {
+        int[] positions = new int[search.getCount()];
+        for (int i = 0; i < positions.length; i++) {
+            positions[i] = search.getPosition(i);
+        }
+        return positions;
+    }
+
+    private static void assertResult(NameIndex.Search search, int... positions) {
+        assertArrayEquals(positions, positionsOf(search));
+    }
+
+}
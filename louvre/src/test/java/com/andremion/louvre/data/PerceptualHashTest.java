@@ -0,0 +1,108 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class PerceptualHashTest {
+
+    private static final int WIDTH = 9;
+    private static final int HEIGHT = 8;
+
+    @Test
+    public void setsABitForEveryPixelBrighterThanItsRightNeighbour() {
+        int[] darkening = new int[WIDTH * HEIGHT];
+        int[] brightening = new int[WIDTH * HEIGHT];
+        for (int y = 0; y < HEIGHT; y++) {
+            for (int x = 0; x < WIDTH; x++) {
+                darkening[y * WIDTH + x] = gray(200 - x * 20);
+                brightening[y * WIDTH + x] = gray(x * 20);
+            }
+        }
+
+        assertEquals(-1L, PerceptualHash.compute(bitmapOf(darkening)));
+        assertEquals(0L, PerceptualHash.compute(bitmapOf(brightening)));
+    }
+
+    @Test
+    public void hashesTheSameImageAlikeAtAnotherBrightness() {
+        int[] pixels = randomPixels(1, 0);
+        int[] brighter = randomPixels(1, 40);
+
+        assertEquals(PerceptualHash.compute(bitmapOf(pixels)), PerceptualHash.compute(bitmapOf(brighter)));
+    }
+
+    @Test
+    public void keepsNearDuplicatesClose() {
+        int[] pixels = randomPixels(1, 0);
+        long hash = PerceptualHash.compute(bitmapOf(pixels));
+        // A small edit, like a burst shot that moved a little
+        pixels[3 * WIDTH + 4] = gray(Color.red(pixels[3 * WIDTH + 4]) > 100 ? 0 : 255);
+        long edited = PerceptualHash.compute(bitmapOf(pixels));
+
+        assertTrue(PerceptualHash.distance(hash, edited) <= 2);
+    }
+
+    @Test
+    public void keepsDifferentImagesApart() {
+        long hash1 = PerceptualHash.compute(bitmapOf(randomPixels(1, 0)));
+        long hash2 = PerceptualHash.compute(bitmapOf(randomPixels(2, 0)));
+
+        assertTrue(PerceptualHash.distance(hash1, hash2) > 16);
+    }
+
+    @Test
+    public void countsTheDifferentBits() {
+        assertEquals(0, PerceptualHash.distance(0x5a5aL, 0x5a5aL));
+        assertEquals(64, PerceptualHash.distance(0L, -1L));
+        assertEquals(3, PerceptualHash.distance(0b1011L, 0b0001_0010L));
+    }
+
+    private static int[] randomPixels(long seed, int brightness) {
+        Random random = new Random(seed);
+        int[] pixels = new int[WIDTH * HEIGHT];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = gray(random.nextInt(200) + brightness);
+        }
+        return pixels;
+    }
+
+    private static int gray(int level) {
+        return Color.rgb(level, level, level);
+    }
+
+    private static Bitmap bitmapOf(int[] pixels) {
+        Bitmap bitmap = Bitmap.createBitmap(WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        bitmap.setPixels(pixels, 0, WIDTH, 0, 0, WIDTH, HEIGHT);
+        return bitmap;
+    }
+
+}
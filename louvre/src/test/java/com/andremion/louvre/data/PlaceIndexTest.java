@@ -0,0 +1,152 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.provider.MediaStore.Images.ImageColumns;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class PlaceIndexTest {
+
+    private static final double[][] LISBON = {{38.72, -9.14}, {38.71, -9.13}};
+    private static final double[] FARO = {37.02, -7.93};
+    private static final double[] TOKYO = {35.68, 139.69};
+
+    @Test
+    public void clustersTheMediaOfTheSameCell() {
+        // Newest first: Tokyo, Lisbon, Faro, Lisbon
+        PlaceIndex index = PlaceIndex.build(cursorOf(new double[][]{TOKYO, LISBON[0], FARO, LISBON[1]}));
+
+        assertEquals(2, index.getPlaceCount(PlaceIndex.REGION));
+        assertEquals(3, index.getPlaceCount(PlaceIndex.CITY));
+        assertEquals(4, index.getPlaceCount(PlaceIndex.STREET));
+        assertEquals(0, index.getPlaceCount(PlaceIndex.NONE));
+
+        Cursor cursor = index.query(PlaceIndex.CITY);
+        assertEquals(3, cursor.getCount());
+        long[] placeIds = new long[cursor.getCount()];
+        int[] counts = new int[cursor.getCount()];
+        for (int i = 0; cursor.moveToNext(); i++) {
+            placeIds[i] = cursor.getLong(cursor.getColumnIndex(ImageColumns.BUCKET_ID));
+            counts[i] = cursor.getInt(cursor.getColumnIndex(FolderTree.COUNT));
+            assertTrue(PlaceIndex.isPlace(placeIds[i]));
+        }
+        // The places are newest first, like the buckets, and their media too
+        assertArrayEquals(new int[]{1, 2, 1}, counts);
+        assertArrayEquals(new long[]{1}, index.getIds(placeIds[0]));
+        assertArrayEquals(new long[]{2, 4}, index.getIds(placeIds[1]));
+        assertArrayEquals(new long[]{3}, index.getIds(placeIds[2]));
+        assertEquals(2, index.getCount(placeIds[1]));
+    }
+
+    @Test
+    public void keepsThePlaceIdsApartFromTheBucketIds() {
+        PlaceIndex index = PlaceIndex.build(cursorOf(new double[][]{LISBON[0]}));
+
+        assertFalse(PlaceIndex.isPlace(MediaLoader.ALL_MEDIA_BUCKET_ID));
+        assertFalse(PlaceIndex.isPlace(-1));
+        assertFalse(PlaceIndex.isPlace(Integer.MAX_VALUE));
+        assertNull(index.getIds(42));
+        assertEquals(0, index.getCount(42));
+    }
+
+    @Test
+    public void selectsTheSmallPlacesByTheirIds() {
+        PlaceIndex index = PlaceIndex.build(cursorOf(new double[][]{LISBON[0], LISBON[1]}));
+        long placeId = placeIdOf(index, PlaceIndex.REGION);
+
+        assertEquals(ImageColumns._ID + " IN (1,2)", PlaceIndex.selectionOf(placeId));
+    }
+
+    @Test
+    public void selectsTheLargePlacesByTheirCell() {
+        double[][] locations = new double[5000][];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = LISBON[i % 2];
+        }
+        PlaceIndex index = PlaceIndex.build(cursorOf(locations));
+        long placeId = placeIdOf(index, PlaceIndex.REGION);
+
+        String selection = PlaceIndex.selectionOf(placeId);
+        assertTrue(selection, selection.endsWith("=3 AND (CAST(MAX(-180,MIN(180," + ImageColumns.LONGITUDE + "))/10.0 AS INTEGER)"
+                + "-(MAX(-180,MIN(180," + ImageColumns.LONGITUDE + "))/10.0<CAST(MAX(-180,MIN(180," + ImageColumns.LONGITUDE + "))/10.0 AS INTEGER)))=-1"));
+    }
+
+    @Test
+    public void selectsTheRowsAtTheCellBoundsFromTheCellTheyWereClusteredIn() {
+        // 0.29 / .01 is a hair below 29, so these rows are clustered in the cells 28 and -29, which start below 0.29
+        double[][] locations = new double[1200][];
+        for (int i = 0; i < locations.length; i++) {
+            locations[i] = i % 2 == 0 ? new double[]{.29, .29} : new double[]{-.29, -.29};
+        }
+        PlaceIndex index = PlaceIndex.build(cursorOf(locations));
+        SQLiteDatabase database = SQLiteDatabase.create(null);
+        database.execSQL("CREATE TABLE images (" + ImageColumns.LATITUDE + " REAL, " + ImageColumns.LONGITUDE + " REAL)");
+        for (double[] location : locations) {
+            database.execSQL("INSERT INTO images VALUES (?, ?)", new Object[]{location[0], location[1]});
+        }
+
+        Cursor places = index.query(PlaceIndex.STREET);
+        assertEquals(2, places.getCount());
+        while (places.moveToNext()) {
+            long placeId = places.getLong(places.getColumnIndex(ImageColumns.BUCKET_ID));
+            assertEquals(600, index.getCount(placeId));
+            assertEquals(600, DatabaseUtils.queryNumEntries(database, "images", PlaceIndex.selectionOf(placeId)));
+        }
+        database.close();
+    }
+
+    private static long placeIdOf(PlaceIndex index, @PlaceIndex.Zoom int zoom) {
+        Cursor cursor = index.query(zoom);
+        assertTrue(cursor.moveToFirst());
+        return cursor.getLong(cursor.getColumnIndex(ImageColumns.BUCKET_ID));
+    }
+
+    /**
+     * The geotagged rows of the given locations, newest first, with the ids counted up from 1
+     */
+    private static MatrixCursor cursorOf(double[][] locations) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                ImageColumns._ID,
+                ImageColumns.DATA,
+                ImageColumns.DATE_TAKEN,
+                ImageColumns.LATITUDE,
+                ImageColumns.LONGITUDE
+        });
+        for (int i = 0; i < locations.length; i++) {
+            cursor.addRow(new Object[]{i + 1, "/sdcard/DCIM/IMG_" + i + ".jpg", 1000000L - i, locations[i][0], locations[i][1]});
+        }
+        return cursor;
+    }
+
+}
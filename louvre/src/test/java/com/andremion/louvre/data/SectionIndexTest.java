@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Calendar;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class SectionIndexTest {
+
+    // The count of rows taken each day, newest first
+    private static final int[] DAY_SIZES = {1, 4, 7, 3, 12, 2};
+
+    private SectionIndex mIndex;
+
+    @Before
+    public void setUp() {
+        MatrixCursor cursor = new MatrixCursor(new String[]{MediaStore.Images.ImageColumns.DATE_TAKEN});
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.JUNE, 30, 12, 0, 0);
+        for (int size : DAY_SIZES) {
+            for (int i = 0; i < size; i++) {
+                cursor.addRow(new Object[]{calendar.getTimeInMillis() - i});
+            }
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        mIndex = SectionIndex.build(cursor, SectionIndex.DAY);
+    }
+
+    @Test
+    public void putsAHeaderBeforeEverySection() {
+        assertEquals(DAY_SIZES.length, mIndex.getSectionCount());
+        assertEquals(29 + DAY_SIZES.length, mIndex.getItemCount());
+        int position = 0;
+        for (int section = 0; section < DAY_SIZES.length; section++) {
+            assertTrue(mIndex.isHeader(position));
+            assertEquals(position, mIndex.getHeaderPosition(section));
+            for (int i = 1; i <= DAY_SIZES[section]; i++) {
+                assertFalse(mIndex.isHeader(position + i));
+                assertEquals(position + i, mIndex.toPosition(mIndex.toDataPosition(position + i)));
+            }
+            position += DAY_SIZES[section] + 1;
+        }
+    }
+
+    @Test
+    public void findsTheRowOfEveryPosition() {
+        for (int spanCount = 1; spanCount <= 5; spanCount++) {
+            assertGrid(spanCount);
+        }
+        // Counted again when the span count changes back
+        assertGrid(3);
+    }
+
+    /**
+     * Walk the grid item by item, a header taking a full row
+     */
+    private void assertGrid(int spanCount) {
+        int row = -1;
+        int column = spanCount;
+        for (int position = 0; position < mIndex.getItemCount(); position++) {
+            if (mIndex.isHeader(position) || column == spanCount) {
+                row++;
+                column = 0;
+            }
+            assertEquals(column, mIndex.getSpanIndex(position, spanCount));
+            assertEquals(row, mIndex.getSpanGroupIndex(position, spanCount));
+            column = mIndex.isHeader(position) ? spanCount : column + 1;
+        }
+    }
+
+}
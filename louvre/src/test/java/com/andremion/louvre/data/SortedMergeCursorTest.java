@@ -0,0 +1,150 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.database.MatrixCursor;
+import android.provider.MediaStore.Images.ImageColumns;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class SortedMergeCursorTest {
+
+    private static final String[] COLUMNS = {ImageColumns._ID, ImageColumns.DATE_TAKEN, ImageColumns.DISPLAY_NAME};
+
+    @Test
+    public void mergesByTheKeyNewestFirstAndKeepsTheCursorOrderOfTies() {
+        Cursor cursor = new SortedMergeCursor(new Cursor[]{
+                cursorOf("a", 5, 3, 3, 1),
+                cursorOf("b", 4, 3, 2)
+        }, ImageColumns.DATE_TAKEN);
+
+        assertEquals(7, cursor.getCount());
+        assertNames(cursor, "a0", "b0", "a1", "a2", "b1", "b2", "a3");
+    }
+
+    @Test
+    public void skipsTheEmptyCursors() {
+        Cursor cursor = new SortedMergeCursor(new Cursor[]{
+                cursorOf("a"),
+                cursorOf("b", 2, 1),
+                cursorOf("c")
+        }, ImageColumns.DATE_TAKEN);
+
+        assertEquals(2, cursor.getCount());
+        assertNames(cursor, "b0", "b1");
+
+        Cursor empty = new SortedMergeCursor(new Cursor[]{cursorOf("a"), cursorOf("b")}, ImageColumns.DATE_TAKEN);
+        assertEquals(0, empty.getCount());
+        assertFalse(empty.moveToFirst());
+    }
+
+    @Test
+    public void growsPastItsInitialCapacity() {
+        long[] evenKeys = new long[300];
+        long[] oddKeys = new long[300];
+        for (int i = 0; i < evenKeys.length; i++) {
+            evenKeys[i] = 1000 - 2 * i;
+            oddKeys[i] = 999 - 2 * i;
+        }
+        Cursor cursor = new SortedMergeCursor(new Cursor[]{cursorOf("a", evenKeys), cursorOf("b", oddKeys)},
+                ImageColumns.DATE_TAKEN);
+
+        assertEquals(600, cursor.getCount());
+        int date = cursor.getColumnIndex(ImageColumns.DATE_TAKEN);
+        for (int position = 0; position < cursor.getCount(); position++) {
+            assertTrue(cursor.moveToPosition(position));
+            assertEquals(1000 - position, cursor.getLong(date));
+        }
+        assertFalse(cursor.moveToNext());
+    }
+
+    @Test
+    public void movesBackToThePositionsMergedSoFar() {
+        Cursor cursor = new SortedMergeCursor(new Cursor[]{
+                cursorOf("a", 9, 7, 5, 3, 1),
+                cursorOf("b", 8, 6, 4, 2, 0)
+        }, ImageColumns.DATE_TAKEN);
+        int date = cursor.getColumnIndex(ImageColumns.DATE_TAKEN);
+        int name = cursor.getColumnIndex(ImageColumns.DISPLAY_NAME);
+
+        assertTrue(cursor.moveToPosition(4));
+        assertEquals("a2", cursor.getString(name));
+        assertTrue(cursor.moveToPosition(1));
+        assertEquals("b0", cursor.getString(name));
+        assertEquals(8, cursor.getLong(date));
+        assertTrue(cursor.moveToPosition(0));
+        assertEquals("a0", cursor.getString(name));
+        // And on past the merged positions again
+        assertTrue(cursor.moveToPosition(7));
+        assertEquals("b3", cursor.getString(name));
+        assertTrue(cursor.moveToLast());
+        assertEquals(0, cursor.getLong(date));
+    }
+
+    @Test
+    public void failsToReadAColumnMissingFromTheCursorOfTheRow() {
+        MatrixCursor other = new MatrixCursor(new String[]{ImageColumns._ID, ImageColumns.DATE_TAKEN});
+        other.addRow(new Object[]{100, 4});
+        Cursor cursor = new SortedMergeCursor(new Cursor[]{cursorOf("a", 5, 3), other}, ImageColumns.DATE_TAKEN);
+        int id = cursor.getColumnIndex(ImageColumns._ID);
+        int name = cursor.getColumnIndex(ImageColumns.DISPLAY_NAME);
+
+        assertTrue(cursor.moveToPosition(1));
+        assertEquals(100, cursor.getLong(id));
+        try {
+            cursor.getString(name);
+            fail();
+        } catch (IllegalStateException expected) {
+        }
+        // The rows of the cursors that have the column still read it
+        assertTrue(cursor.moveToPosition(2));
+        assertEquals("a1", cursor.getString(name));
+    }
+
+    private static void assertNames(Cursor cursor, String... names) {
+        int name = cursor.getColumnIndex(ImageColumns.DISPLAY_NAME);
+        for (int position = 0; position < names.length; position++) {
+            assertTrue(cursor.moveToPosition(position));
+            assertEquals(names[position], cursor.getString(name));
+        }
+        assertFalse(cursor.moveToNext());
+    }
+
+    /**
+     * The rows of the given keys, named by the given prefix and their row
+     */
+    private static MatrixCursor cursorOf(String prefix, long... keys) {
+        MatrixCursor cursor = new MatrixCursor(COLUMNS);
+        for (int row = 0; row < keys.length; row++) {
+            cursor.addRow(new Object[]{row, keys[row], prefix + row});
+        }
+        return cursor;
+    }
+
+}
@@ -0,0 +1,341 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.content.ContentProvider;
+import android.content.ContentUris;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+import android.graphics.Bitmap;
+import android.graphics.Color;
+import android.net.Uri;
+import android.os.ParcelFileDescriptor;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import org.robolectric.Robolectric;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Stand-in for the MediaStore images collection that generates a synthetic library, to load test the loader
+ * and the adapters with huge libraries under Robolectric:
+ * <pre>
+ * Uri uri = SyntheticMediaProvider.register(100000, 50);
+ * loader.setOptions(new GalleryOptions.Builder().setMediaSourceUri(uri).build());
+ * </pre>
+ * The rows are kept in an in-memory SQLite database, so the loader queries, including the bucket
+ * GROUP BY hack, behave like they do against the MediaStore. Every bucket is a folder with a file per image,
+ * linked to one of a small pool of tiny JPEG files of the bucket.
+ */
+public class SyntheticMediaProvider extends ContentProvider {
+
+    private static final String AUTHORITY = "com.andremion.louvre.synthetic";
+    private static final String PATH_IMAGES = "images";
+    private static final String PARAM_COUNT = "count";
+    private static final String PARAM_BUCKETS = "buckets";
+    private static final int DEFAULT_COUNT = 100000;
+    private static final int DEFAULT_BUCKETS = 50;
+    private static final String TABLE = "images";
+    private static final String MEDIA_DIR = "synthetic-media";
+    private static final String POOL_DIR = "pool";
+    private static final int POOL_SIZE = 8;
+    private static final int IMAGE_SIZE = 16;
+    // Most photos are recent, so the age follows an exponential distribution with this mean
+    private static final long MEAN_AGE = TimeUnit.DAYS.toMillis(365);
+    private static final long MAX_AGE = TimeUnit.DAYS.toMillis(10 * 365);
+    // Chance of a photo to be part of a burst with the previous one
+    private static final float BURST_PROBABILITY = .15f;
+    private static final long SEED = 20170101;
+
+    /**
+     * Register the provider with the content resolver of the test
+     *
+     * @param count   The count of images
+     * @param buckets The count of buckets the images are spread across
+     * @return The Uri of the synthetic library
+     */
+    @NonNull
+    public static Uri register(int count, int buckets) {
+        Robolectric.setupContentProvider(SyntheticMediaProvider.class, AUTHORITY);
+        return buildUri(count, buckets);
+    }
+
+    /**
+     * Build the Uri of a synthetic library
+     *
+     * @param count   The count of images
+     * @param buckets The count of buckets the images are spread across
+     */
+    @NonNull
+    private static Uri buildUri(int count, int buckets) {
+        return new Uri.Builder()
+                .scheme("content")
+                .authority(AUTHORITY)
+                .appendPath(PATH_IMAGES)
+                .appendQueryParameter(PARAM_COUNT, String.valueOf(count))
+                .appendQueryParameter(PARAM_BUCKETS, String.valueOf(buckets))
+                .build();
+    }
+
+    private SQLiteDatabase mDatabase;
+    private int mCount;
+    private int mBuckets;
+
+    @Override
+    public boolean onCreate() {
+        return true;
+    }
+
+    @Nullable
+    @Override
+    public Cursor query(@NonNull Uri uri, @Nullable String[] projection, @Nullable String selection,
+                        @Nullable String[] selectionArgs, @Nullable String sortOrder) {
+        SQLiteDatabase database = ensureDatabase(uri);
+        // Same template as the MediaStore, which the bucket GROUP BY hack relies on
+        StringBuilder sql = new StringBuilder("SELECT ")
+                .append(projection != null ? TextUtils.join(",", projection) : "*")
+                .append(" FROM ").append(TABLE);
+        if (!TextUtils.isEmpty(selection)) {
+            sql.append(" WHERE (").append(selection).append(')');
+        }
+        if (!TextUtils.isEmpty(sortOrder)) {
+            sql.append(" ORDER BY ").append(sortOrder);
+        }
+        Cursor cursor = database.rawQuery(sql.toString(), selectionArgs);
+        //noinspection ConstantConditions
+        cursor.setNotificationUri(getContext().getContentResolver(), uri);
+        return cursor;
+    }
+
+    @Nullable
+    @Override
+    public ParcelFileDescriptor openFile(@NonNull Uri uri, @NonNull String mode) throws FileNotFoundException {
+        Cursor cursor = ensureDatabase(uri).rawQuery("SELECT " + ImageColumns.DATA + " FROM " + TABLE + " WHERE " + ImageColumns._ID + "=?",
+                new String[]{String.valueOf(ContentUris.parseId(uri))});
+        try {
+            if (!cursor.moveToFirst()) {
+                throw new FileNotFoundException(uri.toString());
+            }
+            return ParcelFileDescriptor.open(new File(cursor.getString(0)), ParcelFileDescriptor.MODE_READ_ONLY);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Nullable
+    @Override
+    public String getType(@NonNull Uri uri) {
+        return "image/jpeg";
+    }
+
+    @Nullable
+    @Override
+    public Uri insert(@NonNull Uri uri, @Nullable ContentValues values) {
+        throw new UnsupportedOperationException("The synthetic library is read-only");
+    }
+
+    @Override
+    public int delete(@NonNull Uri uri, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The synthetic library is read-only");
+    }
+
+    @Override
+    public int update(@NonNull Uri uri, @Nullable ContentValues values, @Nullable String selection, @Nullable String[] selectionArgs) {
+        throw new UnsupportedOperationException("The synthetic library is read-only");
+    }
+
+    /**
+     * Generate the library described by the given Uri, if it is not the current one yet.
+     */
+    @NonNull
+    private synchronized SQLiteDatabase ensureDatabase(@NonNull Uri uri) {
+        int count = parseInt(uri.getQueryParameter(PARAM_COUNT), DEFAULT_COUNT);
+        int buckets = Math.max(1, parseInt(uri.getQueryParameter(PARAM_BUCKETS), DEFAULT_BUCKETS));
+        if (mDatabase != null && mCount == count && mBuckets == buckets) {
+            return mDatabase;
+        }
+        if (mDatabase != null) {
+            mDatabase.close();
+        }
+        mDatabase = SQLiteDatabase.create(null);
+        mCount = count;
+        mBuckets = buckets;
+        //noinspection ConstantConditions
+        File dir = new File(getContext().getCacheDir(), MEDIA_DIR);
+        populate(mDatabase, dir, generateImages(dir, buckets), count);
+        return mDatabase;
+    }
+
+    /**
+     * Generate the pool of images of every bucket, which differ in their gradient so they are not near-duplicates
+     */
+    @NonNull
+    private static File[][] generateImages(@NonNull File dir, int buckets) {
+        File poolDir = new File(dir, POOL_DIR);
+        //noinspection ResultOfMethodCallIgnored
+        poolDir.mkdirs();
+        File[][] pools = new File[buckets][POOL_SIZE];
+        Bitmap bitmap = Bitmap.createBitmap(IMAGE_SIZE, IMAGE_SIZE, Bitmap.Config.ARGB_8888);
+        int[] pixels = new int[IMAGE_SIZE * IMAGE_SIZE];
+        try {
+            for (int i = 0; i < buckets; i++) {
+                //noinspection ResultOfMethodCallIgnored
+                new File(dir, bucketDirOf(i)).mkdirs();
+                for (int j = 0; j < POOL_SIZE; j++) {
+                    pools[i][j] = new File(poolDir, "bucket_" + i + "_" + j + ".jpg");
+                    if (pools[i][j].exists()) {
+                        continue;
+                    }
+                    for (int y = 0; y < IMAGE_SIZE; y++) {
+                        for (int x = 0; x < IMAGE_SIZE; x++) {
+                            // Every image of the pool slopes its gradient its own way
+                            float value = (float) ((x * (j + 1) + y * (POOL_SIZE - j)) % IMAGE_SIZE) / IMAGE_SIZE;
+                            pixels[y * IMAGE_SIZE + x] = Color.HSVToColor(new float[]{360f * i / buckets, .6f, .3f + .6f * value});
+                        }
+                    }
+                    bitmap.setPixels(pixels, 0, IMAGE_SIZE, 0, 0, IMAGE_SIZE, IMAGE_SIZE);
+                    FileOutputStream out = new FileOutputStream(pools[i][j]);
+                    try {
+                        bitmap.compress(Bitmap.CompressFormat.JPEG, 80, out);
+                    } finally {
+                        out.close();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to generate the synthetic images", e);
+        } finally {
+            bitmap.recycle();
+        }
+        return pools;
+    }
+
+    @NonNull
+    private static String bucketDirOf(int bucket) {
+        return "bucket_" + bucket;
+    }
+
+    /**
+     * Link the path of an image to a file of the pool, so every row has a path of its own without writing
+     * as many files. Where the file system cannot link, like on Windows without the privilege to, the rows of
+     * a bucket share the files of its pool.
+     */
+    @NonNull
+    private static File link(@NonNull File path, @NonNull File image) {
+        if (!path.exists()) {
+            // A dangling link of a previous library
+            //noinspection ResultOfMethodCallIgnored
+            path.delete();
+            try {
+                Files.createSymbolicLink(path.toPath(), image.toPath());
+            } catch (IOException | UnsupportedOperationException e) {
+                return image;
+            }
+        }
+        return path;
+    }
+
+    private static void populate(@NonNull SQLiteDatabase database, @NonNull File dir, @NonNull File[][] pools, int count) {
+        database.execSQL("CREATE TABLE " + TABLE + " ("
+                + ImageColumns._ID + " INTEGER PRIMARY KEY,"
+                + ImageColumns.DATA + " TEXT,"
+                + ImageColumns.DISPLAY_NAME + " TEXT,"
+                + ImageColumns.MIME_TYPE + " TEXT,"
+                + ImageColumns.SIZE + " INTEGER,"
+                + ImageColumns.BUCKET_ID + " INTEGER,"
+                + ImageColumns.BUCKET_DISPLAY_NAME + " TEXT,"
+                + ImageColumns.DATE_TAKEN + " INTEGER,"
+                + ImageColumns.DATE_ADDED + " INTEGER,"
+                + ImageColumns.DATE_MODIFIED + " INTEGER,"
+                + ImageColumns.WIDTH + " INTEGER,"
+                + ImageColumns.HEIGHT + " INTEGER,"
+                + ImageColumns.ORIENTATION + " INTEGER,"
+                + ImageColumns.LATITUDE + " REAL,"
+                + ImageColumns.LONGITUDE + " REAL)");
+        database.execSQL("CREATE INDEX date_taken_index ON " + TABLE + " (" + ImageColumns.DATE_TAKEN + ")");
+        database.execSQL("CREATE INDEX bucket_index ON " + TABLE + " (" + ImageColumns.BUCKET_ID + ")");
+
+        SQLiteStatement statement = database.compileStatement("INSERT INTO " + TABLE + " VALUES (?,?,?,?,?,?,?,?,?,?,?,?,?,?,?)");
+        Random random = new Random(SEED);
+        long now = System.currentTimeMillis();
+        long dateTaken = now;
+        database.beginTransaction();
+        try {
+            for (int id = 1; id <= count; id++) {
+                if (id == 1 || random.nextFloat() >= BURST_PROBABILITY) {
+                    long age = (long) (-Math.log(1 - random.nextDouble()) * MEAN_AGE);
+                    dateTaken = now - Math.min(age, MAX_AGE);
+                } else {
+                    dateTaken += TimeUnit.SECONDS.toMillis(1 + random.nextInt(3));
+                }
+                // Skewed towards the first buckets, like a camera folder that has most of the photos
+                float skew = random.nextFloat();
+                int bucket = (int) (pools.length * skew * skew);
+                boolean portrait = random.nextInt(3) == 0;
+                String name = String.format(Locale.US, "IMG_%08d.jpg", id);
+                File image = pools[bucket][random.nextInt(POOL_SIZE)];
+                File path = link(new File(new File(dir, bucketDirOf(bucket)), name), image);
+
+                statement.clearBindings();
+                statement.bindLong(1, id);
+                statement.bindString(2, path.getPath());
+                statement.bindString(3, name);
+                statement.bindString(4, "image/jpeg");
+                statement.bindLong(5, image.length());
+                statement.bindLong(6, bucket + 1);
+                statement.bindString(7, "Bucket " + (bucket + 1));
+                statement.bindLong(8, dateTaken);
+                statement.bindLong(9, TimeUnit.MILLISECONDS.toSeconds(dateTaken));
+                statement.bindLong(10, TimeUnit.MILLISECONDS.toSeconds(dateTaken));
+                statement.bindLong(11, portrait ? 3024 : 4032);
+                statement.bindLong(12, portrait ? 4032 : 3024);
+                statement.bindLong(13, 0);
+                statement.bindDouble(14, -90 + random.nextDouble() * 180);
+                statement.bindDouble(15, -180 + random.nextDouble() * 360);
+                statement.executeInsert();
+            }
+            database.setTransactionSuccessful();
+        } finally {
+            database.endTransaction();
+            statement.close();
+        }
+    }
+
+    private static int parseInt(@Nullable String value, int defaultValue) {
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.data;
+
+import android.database.MatrixCursor;
+import android.provider.MediaStore;
+
+import java.util.Calendar;
+
+/**
+ * Builds the indexes of synthetic rows, for the tests of the classes outside this package that lay them out
+ */
+public final class TestIndexes {
+
+    private TestIndexes() {
+    }
+
+    /**
+     * @return The aspect index of rows with the given aspect ratios
+     */
+    public static AspectIndex aspectIndexOf(double... aspectRatios) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{
+                MediaStore.Images.ImageColumns.WIDTH,
+                MediaStore.Images.ImageColumns.HEIGHT,
+                MediaStore.Images.ImageColumns.ORIENTATION});
+        for (double aspectRatio : aspectRatios) {
+            cursor.addRow(new Object[]{Math.round(aspectRatio * 1000), 1000, 0});
+        }
+        return AspectIndex.build(cursor);
+    }
+
+    /**
+     * @return The daily section index of rows taken in days with the given counts of rows, newest first
+     */
+    public static SectionIndex sectionIndexOf(int... daySizes) {
+        MatrixCursor cursor = new MatrixCursor(new String[]{MediaStore.Images.ImageColumns.DATE_TAKEN});
+        Calendar calendar = Calendar.getInstance();
+        calendar.set(2017, Calendar.JUNE, 30, 12, 0, 0);
+        for (int size : daySizes) {
+            for (int i = 0; i < size; i++) {
+                cursor.addRow(new Object[]{calendar.getTimeInMillis() - i});
+            }
+            calendar.add(Calendar.DAY_OF_MONTH, -1);
+        }
+        return SectionIndex.build(cursor, SectionIndex.DAY);
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.data;
+
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lets the tests wait for the media and the buckets loaded in background by a {@link MediaLoader}
+ */
+public class TestLoaderCallbacks implements MediaLoader.Callbacks {
+
+    private CountDownLatch mBucketsLoaded = new CountDownLatch(1);
+    private CountDownLatch mMediaLoaded = new CountDownLatch(1);
+    private Cursor mBuckets;
+    private Cursor mMedia;
+
+    @Override
+    public void onBucketLoadFinished(@Nullable Cursor data) {
+        mBuckets = data;
+        mBucketsLoaded.countDown();
+    }
+
+    @Override
+    public void onMediaLoadFinished(@Nullable Cursor data) {
+        mMedia = data;
+        mMediaLoaded.countDown();
+    }
+
+    /**
+     * @return The buckets delivered after the last call, running the main thread tasks until then
+     */
+    @Nullable
+    public Cursor awaitBuckets() throws InterruptedException {
+        await(mBucketsLoaded);
+        mBucketsLoaded = new CountDownLatch(1);
+        return mBuckets;
+    }
+
+    /**
+     * @return The media delivered after the last call, running the main thread tasks until then
+     */
+    @Nullable
+    public Cursor awaitMedia() throws InterruptedException {
+        await(mMediaLoaded);
+        mMediaLoaded = new CountDownLatch(1);
+        return mMedia;
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        while (!latch.await(10, TimeUnit.MILLISECONDS)) {
+            ShadowLooper.runUiThreadTasks();
+        }
+    }
+
+}
@@ -0,0 +1,176 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.export;
+
+import android.graphics.Bitmap;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.shadows.ShadowBitmap;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26, shadows = HeapBudgetTest.ShadowAllocatedBitmap.class)
+public class HeapBudgetTest {
+
+    // A 10x10 ARGB_8888 bitmap
+    private static final long BITMAP_BYTES = 400;
+
+    @Test(timeout = 5000)
+    public void blocksUntilTheBytesFit() throws InterruptedException {
+        final HeapBudget budget = new HeapBudget(1000, 0);
+        HeapBudget.Lease lease = budget.acquire(600, 0);
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    budget.acquire(600, 0);
+                    acquired.countDown();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+        budget.release(lease, null);
+        assertTrue(acquired.await(1, TimeUnit.SECONDS));
+        thread.join();
+    }
+
+    @Test(timeout = 5000)
+    public void refusesAnItemBiggerThanTheBudget() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 0);
+        try {
+            budget.acquire(1001, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+        }
+
+        // Nothing was taken from the budget
+        budget.release(budget.acquire(1000, 0), null);
+    }
+
+    @Test
+    public void samplesAnItemBiggerThanTheBudgetDownUntilItFits() {
+        // 4000x3000 decoded at 2000x1500, 12000000 bytes, and scaled to 1920x1440, 11059200 bytes
+        assertEquals(2, MediaExporter.calculateInSampleSize(4000, 3000, 1920, false, Long.MAX_VALUE));
+        assertEquals(4, MediaExporter.calculateInSampleSize(4000, 3000, 1920, false, 12000000));
+        // Rotated at 1000x750 it needs a copy of the same size, 6000000 bytes
+        assertEquals(8, MediaExporter.calculateInSampleSize(4000, 3000, 1920, true, 3000000 + 2999999));
+        assertEquals(0, MediaExporter.calculateInSampleSize(4000, 3000, 1920, true, 7));
+    }
+
+    @Test(timeout = 5000)
+    public void reusesAPooledBitmapWithinTheSameBytes() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 2);
+        Bitmap bitmap = newBitmap();
+        budget.release(budget.acquire(BITMAP_BYTES, 0), bitmap);
+
+        HeapBudget.Lease lease = budget.acquire(600, BITMAP_BYTES);
+
+        assertSame(bitmap, lease.reusable);
+        assertEquals(600, lease.bytes);
+        // The pooled bitmap was already accounted, so what is left still fits
+        budget.release(budget.acquire(400, 0), null);
+        budget.release(lease, null);
+    }
+
+    @Test(timeout = 5000)
+    public void doesNotReuseASmallerBitmap() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 2);
+        budget.release(budget.acquire(BITMAP_BYTES, 0), newBitmap());
+
+        assertNull(budget.acquire(BITMAP_BYTES + 1, BITMAP_BYTES + 1).reusable);
+    }
+
+    @Test(timeout = 5000)
+    public void evictsThePooledBitmapsInsteadOfWaiting() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 2);
+        Bitmap bitmap = newBitmap();
+        budget.release(budget.acquire(BITMAP_BYTES, 0), bitmap);
+
+        HeapBudget.Lease lease = budget.acquire(1000, 0);
+
+        assertNull(lease.reusable);
+        assertTrue(bitmap.isRecycled());
+    }
+
+    @Test(timeout = 5000)
+    public void recyclesTheBitmapsItCannotPool() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 1);
+        Bitmap pooled = newBitmap();
+        Bitmap overflow = newBitmap();
+        Bitmap immutable = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        budget.release(budget.acquire(BITMAP_BYTES, 0), pooled);
+        budget.release(budget.acquire(BITMAP_BYTES, 0), overflow);
+        budget.release(budget.acquire(BITMAP_BYTES, 0), immutable);
+
+        assertFalse(pooled.isRecycled());
+        assertTrue(overflow.isRecycled());
+        assertTrue(immutable.isRecycled());
+    }
+
+    @Test(timeout = 5000)
+    public void givesTheBytesOfThePoolBackOnClear() throws InterruptedException {
+        HeapBudget budget = new HeapBudget(1000, 2);
+        Bitmap bitmap = newBitmap();
+        budget.release(budget.acquire(BITMAP_BYTES, 0), bitmap);
+
+        budget.clear();
+
+        assertTrue(bitmap.isRecycled());
+        HeapBudget.Lease lease = budget.acquire(1000, BITMAP_BYTES);
+        assertNull(lease.reusable);
+        assertEquals(1000, lease.bytes);
+    }
+
+    private static Bitmap newBitmap() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        assertEquals(BITMAP_BYTES, HeapBudget.sizeOf(bitmap));
+        return bitmap;
+    }
+
+    /**
+     * The Robolectric bitmaps allocate nothing, so they report the bytes of their pixels instead
+     */
+    @Implements(Bitmap.class)
+    public static class ShadowAllocatedBitmap extends ShadowBitmap {
+
+        @Implementation
+        public int getAllocationByteCount() {
+            return getByteCount();
+        }
+    }
+
+}
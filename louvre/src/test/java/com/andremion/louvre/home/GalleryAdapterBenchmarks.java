@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.app.Activity;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.MediaStore.Images.ImageColumns;
+import android.support.annotation.NonNull;
+import android.support.v7.widget.GridLayoutManager;
+import android.widget.FrameLayout;
+
+import com.andremion.louvre.benchmark.BenchmarkRunner;
+import com.andremion.louvre.benchmark.SyntheticCursors;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of the {@link GalleryAdapter} bind and selection hot paths, run on the main thread of a themed activity
+ */
+public class GalleryAdapterBenchmarks {
+
+    private static final int SELECTION_SIZE = 100;
+
+    private GalleryAdapterBenchmarks() {
+    }
+
+    public static void run(@NonNull Activity activity, @NonNull BenchmarkRunner runner,
+                           @NonNull List<BenchmarkRunner.Result> results) {
+        for (int size : SyntheticCursors.SIZES) {
+            Cursor cursor = SyntheticCursors.media(size);
+            try {
+                results.add(measureBind(activity, runner, cursor));
+                results.add(measureIsSelected(runner, cursor));
+                results.add(measureSelectionChanged(activity, runner, cursor));
+                results.add(measureSwapData(runner, cursor));
+                results.add(measureSelectAll(runner, cursor));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static BenchmarkRunner.Result measureBind(@NonNull Activity activity, @NonNull BenchmarkRunner runner,
+                                                      @NonNull final Cursor cursor) {
+        final GalleryAdapter adapter = new GalleryAdapter();
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+        final GalleryAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(activity), GalleryAdapter.VIEW_TYPE_MEDIA);
+        return runner.measure("adapter-bind", cursor.getCount(), new BenchmarkRunner.Operation() {
+
+            int mPosition;
+
+            @Override
+            public void run() {
+                adapter.onBindViewHolder(holder, mPosition);
+                mPosition = (mPosition + 1) % cursor.getCount();
+            }
+        });
+    }
+
+    private static BenchmarkRunner.Result measureIsSelected(@NonNull BenchmarkRunner runner, @NonNull final Cursor cursor) {
+        final GalleryAdapter adapter = new GalleryAdapter();
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+        adapter.setSelection(selectionOf(cursor));
+        return runner.measure("adapter-is-selected", cursor.getCount(), new BenchmarkRunner.Operation() {
+
+            int mPosition;
+
+            @Override
+            public void run() {
+                adapter.isSelected(mPosition);
+                mPosition = (mPosition + 1) % cursor.getCount();
+            }
+        });
+    }
+
+    /**
+     * Swap between two selections, which notifies the selection change to the visible items
+     */
+    private static BenchmarkRunner.Result measureSelectionChanged(@NonNull Activity activity, @NonNull BenchmarkRunner runner,
+                                                                  @NonNull Cursor cursor) {
+        final GalleryAdapter adapter = new GalleryAdapter();
+        adapter.setMaxSelection(Integer.MAX_VALUE);
+        adapter.setLayoutManager(new GridLayoutManager(activity, 3));
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+        final List<Uri> selection = selectionOf(cursor);
+        final List<Uri> otherSelection = new ArrayList<>(selection.subList(1, selection.size()));
+        return runner.measure("adapter-selection-changed", cursor.getCount(), new BenchmarkRunner.Operation() {
+
+            boolean mOther;
+
+            @Override
+            public void run() {
+                adapter.setSelection(mOther ? otherSelection : selection);
+                mOther = !mOther;
+            }
+        });
+    }
+
+    /**
+     * Swap between two cursors, like a bucket change does
+     */
+    private static BenchmarkRunner.Result measureSwapData(@NonNull BenchmarkRunner runner, @NonNull final Cursor cursor) {
+        final GalleryAdapter adapter = new GalleryAdapter();
+        final Cursor otherCursor = SyntheticCursors.media(1);
+        try {
+            return runner.measure("adapter-swap-data", cursor.getCount(), new BenchmarkRunner.Operation() {
+
+                boolean mOther;
+
+                @Override
+                public void run() {
+                    adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, mOther ? otherCursor : cursor);
+                    mOther = !mOther;
+                }
+            });
+        } finally {
+            otherCursor.close();
+        }
+    }
+
+    private static BenchmarkRunner.Result measureSelectAll(@NonNull BenchmarkRunner runner, @NonNull Cursor cursor) {
+        final GalleryAdapter adapter = new GalleryAdapter();
+        adapter.setMaxSelection(Integer.MAX_VALUE);
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, cursor);
+        return runner.measure("adapter-select-all", cursor.getCount(), new BenchmarkRunner.Operation() {
+            @Override
+            public void run() {
+                adapter.clearSelection();
+                adapter.selectAll();
+            }
+        });
+    }
+
+    /**
+     * Pick items spread over the whole data, so the lookups can't stop early
+     */
+    @NonNull
+    private static List<Uri> selectionOf(@NonNull Cursor cursor) {
+        List<Uri> selection = new ArrayList<>(SELECTION_SIZE);
+        int step = Math.max(1, cursor.getCount() / SELECTION_SIZE);
+        int data = cursor.getColumnIndex(ImageColumns.DATA);
+        for (int position = 0; position < cursor.getCount() && selection.size() < SELECTION_SIZE; position += step) {
+            cursor.moveToPosition(position);
+            selection.add(Uri.fromFile(new File(cursor.getString(data))));
+        }
+        return selection;
+    }
+
+}
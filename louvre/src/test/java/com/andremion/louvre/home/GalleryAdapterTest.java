@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.home;
+
+import android.database.Cursor;
+import android.os.Looper;
+import android.support.v4.app.FragmentActivity;
+import android.widget.FrameLayout;
+
+import com.andremion.louvre.GalleryOptions;
+import com.andremion.louvre.R;
+import com.andremion.louvre.data.CursorGuard;
+import com.andremion.louvre.data.MediaLoader;
+import com.andremion.louvre.data.MediaSource;
+import com.andremion.louvre.data.SyntheticMediaProvider;
+import com.andremion.louvre.data.TestLoaderCallbacks;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.image.TestImageEngine;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Binds the media of a large synthetic library, loaded like the picker does, on the main thread of an activity
+ * themed like the picker
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class GalleryAdapterTest {
+
+    private static final int COUNT = 10000;
+    private static final int BUCKETS = 50;
+    // About the rows of the first screen, which the loader thread filled the window with
+    private static final int FIRST_ROWS = 100;
+
+    private FragmentActivity mActivity;
+    private MediaLoader mLoader;
+
+    @Before
+    public void setUp() {
+        ImageEngines.set(new TestImageEngine());
+        ActivityController<FragmentActivity> controller = Robolectric.buildActivity(FragmentActivity.class);
+        controller.get().setTheme(R.style.Louvre_Theme_Light);
+        mActivity = controller.setup().get();
+        mLoader = new MediaLoader();
+        mLoader.setOptions(new GalleryOptions.Builder()
+                .setMediaSourceUri(SyntheticMediaProvider.register(COUNT, BUCKETS))
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.onDetach();
+        ImageEngines.set(null);
+        CursorGuard.setListener(null);
+    }
+
+    @Test(timeout = 60000)
+    public void bindsEveryMedia() throws InterruptedException {
+        GalleryAdapter adapter = new GalleryAdapter();
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, loadMedia());
+        GalleryAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(mActivity), GalleryAdapter.VIEW_TYPE_MEDIA);
+
+        assertEquals(COUNT, adapter.getItemCount());
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            adapter.onBindViewHolder(holder, position);
+        }
+    }
+
+    @Test(timeout = 60000)
+    public void selectsEveryMedia() throws InterruptedException {
+        GalleryAdapter adapter = new GalleryAdapter();
+        adapter.setMaxSelection(Integer.MAX_VALUE);
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, loadMedia());
+
+        adapter.selectAll();
+
+        assertEquals(COUNT, adapter.getSelection().size());
+        assertTrue(adapter.isSelected(0));
+        assertTrue(adapter.isSelected(COUNT - 1));
+    }
+
+    /**
+     * Runs without a timeout, which would run the test off the main thread, where the guard doesn't check the cursor
+     */
+    @Test
+    public void bindsTheFirstRowsOfTheGuardedMediaWithPenaltyDeath() throws InterruptedException {
+        CursorGuard.setListener(CursorGuard.PENALTY_DEATH);
+        GalleryAdapter adapter = new GalleryAdapter();
+        adapter.swapData(GalleryAdapter.VIEW_TYPE_MEDIA, loadMedia());
+        GalleryAdapter.ViewHolder holder = adapter.onCreateViewHolder(new FrameLayout(mActivity), GalleryAdapter.VIEW_TYPE_MEDIA);
+
+        assertSame(Looper.getMainLooper(), Looper.myLooper());
+        assertEquals(COUNT, adapter.getItemCount());
+        for (int position = 0; position < FIRST_ROWS; position++) {
+            adapter.onBindViewHolder(holder, position);
+        }
+    }
+
+    private Cursor loadMedia() throws InterruptedException {
+        TestLoaderCallbacks callbacks = new TestLoaderCallbacks();
+        mLoader.onAttach(mActivity, callbacks);
+        mLoader.loadByBucket(MediaSource.ALL_MEDIA_BUCKET_ID);
+        Cursor media = callbacks.awaitMedia();
+        assertNotNull(media);
+        return media;
+    }
+
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.home;
+
+import com.andremion.louvre.data.AspectIndex;
+import com.andremion.louvre.data.SectionIndex;
+import com.andremion.louvre.data.TestIndexes;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE, sdk = 26)
+public class JustifiedLayoutTest {
+
+    private static final int SPAN_COUNT = JustifiedLayout.SPAN_COUNT;
+
+    @Test(timeout = 5000)
+    public void fillsTheRowsWithTheirImages() throws InterruptedException {
+        JustifiedLayout layout = layoutOf(TestIndexes.aspectIndexOf(1, 1, 1, 1, 1, 1, 1, 1, 1, 1), null, 300, 100);
+
+        assertRowStarts(layout, 10, 0, 3, 6, 9);
+        for (int position = 0; position < 9; position++) {
+            assertEquals(position % 3 * SPAN_COUNT / 3, layout.getSpanIndex(position, SPAN_COUNT));
+            assertEquals(SPAN_COUNT / 3, layout.getSpanSize(position, SPAN_COUNT));
+            assertEquals(100, layout.getRowHeight(position));
+        }
+        // The short last row keeps the target height instead of being stretched
+        assertEquals(0, layout.getSpanIndex(9, SPAN_COUNT));
+        assertEquals(SPAN_COUNT / 3, layout.getSpanSize(9, SPAN_COUNT));
+        assertEquals(100, layout.getRowHeight(9));
+    }
+
+    @Test(timeout = 5000)
+    public void stretchesTheRowWhenItIsCloserToTheTargetHeight() throws InterruptedException {
+        JustifiedLayout layout = layoutOf(TestIndexes.aspectIndexOf(1, 1, .5, 2), null, 300, 100);
+
+        // With the last image the row would be 4.5 wide, so it breaks before it and is stretched from 2.5
+        assertRowStarts(layout, 4, 0, 3);
+        assertEquals(120, layout.getRowHeight(0));
+        assertEquals(SPAN_COUNT, layout.getSpanIndex(2, SPAN_COUNT) + layout.getSpanSize(2, SPAN_COUNT));
+    }
+
+    @Test(timeout = 5000)
+    public void breaksTheRowsAtTheStartOfEverySection() throws InterruptedException {
+        JustifiedLayout layout = layoutOf(TestIndexes.aspectIndexOf(1, 1, 1, 1, 1, 1, 1, 1),
+                TestIndexes.sectionIndexOf(4, 4), 300, 100);
+
+        assertRowStarts(layout, 8, 0, 3, 4, 7);
+    }
+
+    @Test(timeout = 5000)
+    public void fillsTheWholeSpanCountOnEveryFullRow() throws InterruptedException {
+        Random random = new Random(1);
+        double[] aspectRatios = new double[1000];
+        for (int i = 0; i < aspectRatios.length; i++) {
+            aspectRatios[i] = .5 + random.nextDouble() * 2.5;
+        }
+        AspectIndex aspectIndex = TestIndexes.aspectIndexOf(aspectRatios);
+        JustifiedLayout layout = layoutOf(aspectIndex, null, 1080, 240);
+
+        int lastRow = layout.getRow(aspectRatios.length - 1);
+        int position = 0;
+        for (int row = 0; row < lastRow; row++) {
+            int spans = 0;
+            int start = position;
+            for (; position < aspectRatios.length && layout.getRow(position) == row; position++) {
+                assertEquals(spans, layout.getSpanIndex(position, SPAN_COUNT));
+                spans += layout.getSpanSize(position, SPAN_COUNT);
+            }
+            assertEquals(SPAN_COUNT, spans);
+            // Every row is about the target height
+            int height = layout.getRowHeight(start);
+            assertTrue("Row " + row + " is " + height + " high", height > 240 * 2 / 3 && height < 240 * 3 / 2);
+        }
+    }
+
+    @Test
+    public void laysOutSquaresUntilTheRowsAreComputed() {
+        JustifiedLayout layout = new JustifiedLayout(TestIndexes.aspectIndexOf(2, 2, 2, 2, .5, .5, .5, .5),
+                TestIndexes.sectionIndexOf(5, 3), 100, new RowsCallback());
+
+        // Three squares per row, like the plain grid, breaking at the start of the second section
+        assertRowStarts(layout, 8, 0, 3, 5);
+        assertEquals(0, layout.getSpanIndex(3, SPAN_COUNT));
+        assertEquals(SPAN_COUNT / 3, layout.getSpanIndex(4, SPAN_COUNT));
+        assertEquals(SPAN_COUNT / 3, layout.getSpanSize(4, SPAN_COUNT));
+        assertEquals(2 * SPAN_COUNT / 3, layout.getSpanIndex(7, SPAN_COUNT));
+        assertEquals(100, layout.getRowHeight(7));
+    }
+
+    private static JustifiedLayout layoutOf(AspectIndex aspectIndex, SectionIndex sectionIndex, int width, int rowHeight)
+            throws InterruptedException {
+        RowsCallback callback = new RowsCallback();
+        JustifiedLayout layout = new JustifiedLayout(aspectIndex, sectionIndex, 100, callback);
+        layout.setSize(width, rowHeight);
+        callback.await();
+        return layout;
+    }
+
+    private static void assertRowStarts(JustifiedLayout layout, int count, int... starts) {
+        int row = 0;
+        for (int position = 0; position < count; position++) {
+            if (row + 1 < starts.length && position == starts[row + 1]) {
+                row++;
+            }
+            assertEquals("Row of " + position, row, layout.getRow(position));
+        }
+        assertEquals(starts.length - 1, row);
+    }
+
+    /**
+     * Lets the tests wait for the rows computed in background
+     */
+    private static class RowsCallback implements JustifiedLayout.Callback {
+
+        private final CountDownLatch mChanged = new CountDownLatch(1);
+
+        @Override
+        public void onRowsChanged() {
+            mChanged.countDown();
+        }
+
+        void await() throws InterruptedException {
+            while (!mChanged.await(10, TimeUnit.MILLISECONDS)) {
+                ShadowLooper.runUiThreadTasks();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.image;
+
+import android.content.Context;
+import android.graphics.drawable.Drawable;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.widget.ImageView;
+
+/**
+ * An {@link ImageEngine} that loads nothing, so the adapters can be bound on the JVM without Glide
+ * and their benchmarks measure their own work only
+ */
+public class TestImageEngine implements ImageEngine {
+
+    @Override
+    public void loadThumbnail(@NonNull ImageView view, @NonNull Uri uri, long mediaId, long dateModified, int size, int cachedSize,
+                              @Nullable Drawable placeholder, @Nullable Listener listener) {
+    }
+
+    @Override
+    public void loadPreview(@NonNull ImageView view, @NonNull Uri uri, boolean animate, @Nullable Listener listener) {
+    }
+
+    @Override
+    public void preloadThumbnail(@NonNull Context context, @NonNull Uri uri, long mediaId, long dateModified, int size) {
+    }
+
+    @Override
+    public void pause(@NonNull Context context) {
+    }
+
+    @Override
+    public void resume(@NonNull Context context) {
+    }
+
+    @Override
+    public void cancel(@NonNull ImageView view) {
+    }
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.preview;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.annotation.NonNull;
+import android.support.v4.app.FragmentActivity;
+import android.widget.CheckedTextView;
+import android.widget.FrameLayout;
+
+import com.andremion.louvre.benchmark.BenchmarkRunner;
+import com.andremion.louvre.benchmark.SyntheticCursors;
+import com.andremion.louvre.util.transition.MediaSharedElementCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Benchmarks of the {@link PreviewAdapter} page instantiation, run on the main thread of a themed activity
+ */
+public class PreviewAdapterBenchmarks {
+
+    private PreviewAdapterBenchmarks() {
+    }
+
+    public static void run(@NonNull FragmentActivity activity, @NonNull BenchmarkRunner runner,
+                           @NonNull List<BenchmarkRunner.Result> results) {
+        for (int size : SyntheticCursors.SIZES) {
+            Cursor cursor = SyntheticCursors.media(size);
+            try {
+                results.add(measureInstantiate(activity, runner, cursor));
+            } finally {
+                cursor.close();
+            }
+        }
+    }
+
+    private static BenchmarkRunner.Result measureInstantiate(@NonNull FragmentActivity activity, @NonNull BenchmarkRunner runner,
+                                                             @NonNull final Cursor cursor) {
+        final PreviewAdapter adapter = new PreviewAdapter(activity, new CheckedTextView(activity),
+                new MediaSharedElementCallback(), new ArrayList<Uri>());
+        // No page is the initial one, so the benchmark doesn't start the enter transition
+        adapter.setInitialPosition(-1);
+        adapter.swapData(cursor);
+        final FrameLayout container = new FrameLayout(activity);
+        return runner.measure("preview-instantiate", cursor.getCount(), new BenchmarkRunner.Operation() {
+
+            int mPosition;
+
+            @Override
+            public void run() {
+                Object page = adapter.instantiateItem(container, mPosition);
+                adapter.destroyItem(container, mPosition, page);
+                mPosition = (mPosition + 1) % cursor.getCount();
+            }
+        });
+    }
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.preview;
+
+import android.database.Cursor;
+import android.net.Uri;
+import android.support.v4.app.FragmentActivity;
+import android.widget.CheckedTextView;
+import android.widget.FrameLayout;
+
+import com.andremion.louvre.GalleryOptions;
+import com.andremion.louvre.R;
+import com.andremion.louvre.data.MediaLoader;
+import com.andremion.louvre.data.MediaSource;
+import com.andremion.louvre.data.SyntheticMediaProvider;
+import com.andremion.louvre.data.TestLoaderCallbacks;
+import com.andremion.louvre.image.ImageEngines;
+import com.andremion.louvre.image.TestImageEngine;
+import com.andremion.louvre.util.transition.MediaSharedElementCallback;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.android.controller.ActivityController;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Pages through the media of a large synthetic library, loaded like the preview does, on the main thread of an
+ * activity themed like the preview
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 26)
+public class PreviewAdapterTest {
+
+    private static final int COUNT = 10000;
+    private static final int BUCKETS = 50;
+    private static final int PAGES = 100;
+
+    private FragmentActivity mActivity;
+    private MediaLoader mLoader;
+
+    @Before
+    public void setUp() {
+        ImageEngines.set(new TestImageEngine());
+        ActivityController<FragmentActivity> controller = Robolectric.buildActivity(FragmentActivity.class);
+        controller.get().setTheme(R.style.Louvre_Theme_Preview);
+        mActivity = controller.setup().get();
+        mLoader = new MediaLoader();
+        mLoader.setOptions(new GalleryOptions.Builder()
+                .setMediaSourceUri(SyntheticMediaProvider.register(COUNT, BUCKETS))
+                .build());
+    }
+
+    @After
+    public void tearDown() {
+        mLoader.onDetach();
+        ImageEngines.set(null);
+    }
+
+    @Test(timeout = 60000)
+    public void instantiatesThePagesAcrossTheWholeMedia() throws InterruptedException {
+        PreviewAdapter adapter = new PreviewAdapter(mActivity, new CheckedTextView(mActivity),
+                new MediaSharedElementCallback(), new ArrayList<Uri>());
+        // No page is the initial one, so the test doesn't start the enter transition
+        adapter.setInitialPosition(-1);
+        adapter.swapData(loadMedia());
+        FrameLayout container = new FrameLayout(mActivity);
+
+        assertEquals(COUNT, adapter.getCount());
+        for (int position = 0; position < COUNT; position += COUNT / PAGES) {
+            Object page = adapter.instantiateItem(container, position);
+            assertEquals(1, container.getChildCount());
+            assertTrue(adapter.isViewFromObject(container.getChildAt(0), page));
+            adapter.destroyItem(container, position, page);
+            assertEquals(0, container.getChildCount());
+        }
+    }
+
+    private Cursor loadMedia() throws InterruptedException {
+        TestLoaderCallbacks callbacks = new TestLoaderCallbacks();
+        mLoader.onAttach(mActivity, callbacks);
+        mLoader.loadByBucket(MediaSource.ALL_MEDIA_BUCKET_ID);
+        Cursor media = callbacks.awaitMedia();
+        assertNotNull(media);
+        return media;
+    }
+
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.andremion.louvre.sample;
+
+import android.app.Application;
+import android.os.StrictMode;
+
+import com.andremion.louvre.data.CursorGuard;
+
+/**
+ * Debug-only application that reports the disk I/O and cursor accesses made on the main thread
+ */
+public class DebugApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        StrictMode.setThreadPolicy(new StrictMode.ThreadPolicy.Builder()
+                .detectDiskReads()
+                .detectDiskWrites()
+                .penaltyLog()
+                .build());
+        CursorGuard.setListener(CursorGuard.PENALTY_LOG);
+    }
+
+}
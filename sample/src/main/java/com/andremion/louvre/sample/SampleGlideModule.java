@@ -0,0 +1,45 @@
+/*
+ * Copyright (c) 2017. André Mion
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.andremion.louvre.sample;
+
+import android.content.Context;
+
+import com.andremion.louvre.util.LouvreGlideModule;
+import com.bumptech.glide.Glide;
+import com.bumptech.glide.GlideBuilder;
+import com.bumptech.glide.Registry;
+import com.bumptech.glide.annotation.GlideModule;
+import com.bumptech.glide.module.AppGlideModule;
+
+/**
+ * Opts in to the bitmap pool and the thumbnail pack of the picker
+ */
+@GlideModule
+public class SampleGlideModule extends AppGlideModule {
+
+    @Override
+    public void applyOptions(Context context, GlideBuilder builder) {
+        LouvreGlideModule.applyOptions(context, builder);
+    }
+
+    @Override
+    public void registerComponents(Context context, Glide glide, Registry registry) {
+        LouvreGlideModule.registerComponents(context, registry);
+    }
+
+}